@@ -109,6 +109,34 @@ public boolean getBoolean(boolean defaultValue) {
       return get_(BOOLEAN_CONVERTER, Boolean.toString(defaultValue));
     }
 
+    /** Returns the integer value of this property. Throws if not set and no
+     * default. */
+    public int getInt() {
+      return getInt((Number) property.defaultValue());
+    }
+
+    /** Returns the integer value of this property. Throws if not set and no
+     * default. */
+    public int getInt(Number defaultValue) {
+      assert property.type() == ConnectionProperty.Type.NUMBER;
+      return get_(NUMBER_CONVERTER,
+          defaultValue == null ? null : defaultValue.toString()).intValue();
+    }
+
+    /** Returns the long value of this property. Throws if not set and no
+     * default. */
+    public long getLong() {
+      return getLong((Number) property.defaultValue());
+    }
+
+    /** Returns the long value of this property. Throws if not set and no
+     * default. */
+    public long getLong(Number defaultValue) {
+      assert property.type() == ConnectionProperty.Type.NUMBER;
+      return get_(NUMBER_CONVERTER,
+          defaultValue == null ? null : defaultValue.toString()).longValue();
+    }
+
     /** Returns the enum value of this property. Throws if not set and no
      * default. */
     public <E extends Enum<E>> E getEnum(Class<E> enumClass) {
@@ -141,6 +169,23 @@ public Boolean apply(ConnectionProperty connectionProperty, String s) {
         }
       };
 
+  public static final Converter<Long> NUMBER_CONVERTER =
+      new Converter<Long>() {
+        public Long apply(ConnectionProperty connectionProperty, String s) {
+          if (s == null) {
+            throw new RuntimeException("Required property '"
+                + connectionProperty.camelName() + "' not specified");
+          }
+          try {
+            return Long.valueOf(s.trim());
+          } catch (NumberFormatException e) {
+            throw new RuntimeException("Property '"
+                + connectionProperty.camelName() + "' requires a number, got '"
+                + s + "'");
+          }
+        }
+      };
+
   public static final Converter<String> IDENTITY_CONVERTER =
       new Converter<String>() {
         public String apply(ConnectionProperty connectionProperty, String s) {
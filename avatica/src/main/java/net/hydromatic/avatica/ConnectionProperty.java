@@ -46,6 +46,7 @@ public interface ConnectionProperty {
   enum Type {
     BOOLEAN,
     STRING,
+    NUMBER,
     ENUM;
 
     public boolean valid(Object defaultValue) {
@@ -54,6 +55,8 @@ public boolean valid(Object defaultValue) {
         return defaultValue instanceof Boolean;
       case STRING:
         return defaultValue instanceof String;
+      case NUMBER:
+        return defaultValue instanceof Number;
       default:
         return defaultValue instanceof Enum;
       }
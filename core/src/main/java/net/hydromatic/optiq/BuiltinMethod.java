@@ -64,10 +64,15 @@ public enum BuiltinMethod {
   JDBC_SCHEMA_DATA_SOURCE(JdbcSchema.class, "getDataSource"),
   RESULT_SET_ENUMERABLE_OF(ResultSetEnumerable.class, "of", DataSource.class,
       String.class, Function1.class),
+  RESULT_SET_ENUMERABLE_OF_CONTEXT(ResultSetEnumerable.class, "of",
+      DataSource.class, String.class, Function1.class, DataContext.class),
   JOIN(ExtendedEnumerable.class, "join", Enumerable.class, Function1.class,
       Function1.class, Function2.class),
   SEMI_JOIN(Enumerables.class, "semiJoin", Enumerable.class, Enumerable.class,
       Function1.class, Function1.class),
+  LONG_HASH_JOIN(Enumerables.class, "longHashJoin", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, Function2.class,
+      boolean.class, boolean.class, boolean.class, DataContext.class),
   SELECT(ExtendedEnumerable.class, "select", Function1.class),
   SELECT2(ExtendedEnumerable.class, "select", Function2.class),
   SELECT_MANY(ExtendedEnumerable.class, "selectMany", Function1.class),
@@ -82,6 +87,26 @@ public enum BuiltinMethod {
       Function2.class, Function1.class),
   ORDER_BY(ExtendedEnumerable.class, "orderBy", Function1.class,
       Comparator.class),
+  SPILLING_GROUP_BY(Enumerables.class, "groupBy", Enumerable.class,
+      Function1.class, Function0.class, Function2.class, Function2.class,
+      EqualityComparer.class, DataContext.class),
+  SPILLING_ORDER_BY(Enumerables.class, "orderBy", Enumerable.class,
+      Function1.class, Comparator.class, DataContext.class),
+  VECTOR_SCAN(Vectors.class, "scan", ColumnarTable.class, int[].class,
+      String[].class, int.class, long.class, long.class),
+  VECTOR_FROM_ENUMERABLE(Vectors.class, "fromEnumerable", Enumerable.class,
+      String[].class),
+  VECTOR_CALC(Vectors.class, "calc", Vectors.Node.class, Vectors.Expr.class,
+      Vectors.Expr[].class),
+  VECTOR_AGGREGATE(Vectors.class, "aggregate", Vectors.Node.class, int.class,
+      String[].class, int[].class),
+  VECTOR_TO_ENUMERABLE(Vectors.class, "toEnumerable", Vectors.Node.class,
+      String[].class, DataContext.class),
+  VECTOR_FIELD(Vectors.class, "field", int.class, boolean.class),
+  VECTOR_LONG_LITERAL(Vectors.class, "literal", long.class),
+  VECTOR_DOUBLE_LITERAL(Vectors.class, "literal", double.class),
+  VECTOR_CAST(Vectors.class, "cast", Vectors.Expr.class, String.class),
+  VECTOR_CALL(Vectors.class, "call", String.class, Vectors.Expr[].class),
   UNION(ExtendedEnumerable.class, "union", Enumerable.class),
   CONCAT(ExtendedEnumerable.class, "concat", Enumerable.class),
   INTERSECT(ExtendedEnumerable.class, "intersect", Enumerable.class),
@@ -137,6 +162,8 @@ public enum BuiltinMethod {
   SORTED_MULTI_MAP_ARRAYS(SortedMultiMap.class, "arrays", Comparator.class),
   SORTED_MULTI_MAP_SINGLETON(SortedMultiMap.class, "singletonArrayIterator",
       Comparator.class, List.class),
+  SORTED_MULTI_MAP_ADJACENT(SortedMultiMap.class, "adjacentArrays",
+      Enumerable.class, Function1.class, Comparator.class),
   BINARY_SEARCH5_LOWER(BinarySearch.class, "lowerBound", Object[].class,
       Object.class, int.class, int.class, Comparator.class),
   BINARY_SEARCH5_UPPER(BinarySearch.class, "upperBound", Object[].class,
@@ -166,6 +193,13 @@ public enum BuiltinMethod {
   RTRIM(SqlFunctions.class, "rtrim", String.class),
   LIKE(SqlFunctions.class, "like", String.class, String.class),
   SIMILAR(SqlFunctions.class, "similar", String.class, String.class),
+  LIKE_MATCHER(Like.class, "likeMatcher", String.class, String.class),
+  SIMILAR_MATCHER(Like.class, "similarMatcher", String.class, String.class),
+  MATCHER_MATCHES(Like.Matcher.class, "matches", String.class),
+  MIN_MAX_DEQUE_ADD(MinMaxDeque.class, "add", int.class, Comparable.class),
+  MIN_MAX_DEQUE_REMOVE(MinMaxDeque.class, "remove", int.class),
+  MIN_MAX_DEQUE_GET(MinMaxDeque.class, "get"),
+  MIN_MAX_DEQUE_IS_EMPTY(MinMaxDeque.class, "isEmpty"),
   IS_TRUE(SqlFunctions.class, "isTrue", Boolean.class),
   IS_NOT_FALSE(SqlFunctions.class, "isNotFalse", Boolean.class),
   NOT(SqlFunctions.class, "not", Boolean.class),
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq;
+
+/**
+ * Statistics about a column of a {@link Table}.
+ *
+ * <p>Each of the methods may return {@code null} meaning "not known".</p>
+ *
+ * <p>Values returned by {@link #getMin()}, {@link #getMax()} and held in the
+ * {@link #getHistogram() histogram} are in the internal representation of
+ * the column's type; for example, a {@code DATE} value is an {@link Integer}
+ * number of days since the epoch.</p>
+ *
+ * @see Statistic#getColumnStatistic(int)
+ * @see Statistics#column
+ */
+public interface ColumnStatistic {
+  /** Returns the approximate number of distinct values in the column, not
+   * counting null. */
+  Double getDistinctCount();
+
+  /** Returns the approximate fraction of rows whose value is null, between 0
+   * and 1. */
+  Double getNullFraction();
+
+  /** Returns the smallest value in the column. */
+  Comparable getMin();
+
+  /** Returns the largest value in the column. */
+  Comparable getMax();
+
+  /** Returns an equi-depth histogram of the values in the column that are
+   * not null. */
+  Histogram getHistogram();
+}
+
+// End ColumnStatistic.java
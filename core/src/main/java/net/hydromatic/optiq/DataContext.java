@@ -21,6 +21,8 @@
 import net.hydromatic.linq4j.expressions.ParameterExpression;
 
 import net.hydromatic.optiq.impl.java.JavaTypeFactory;
+import net.hydromatic.optiq.runtime.EnumeratorCloser;
+import net.hydromatic.optiq.runtime.MemoryBudget;
 
 import org.eigenbase.sql.advise.SqlAdvisor;
 import org.eigenbase.util.Util;
@@ -82,7 +84,35 @@ enum Variable {
     /** Time zone in which the current statement is executing. Required;
      * defaults to the time zone of the JVM if the connection does not specify a
      * time zone. */
-    TIME_ZONE("timeZone", TimeZone.class);
+    TIME_ZONE("timeZone", TimeZone.class),
+
+    /** Memory that operators may use before they spill to disk. Optional; if
+     * not present, operators never spill. */
+    MEMORY_BUDGET("memoryBudget", MemoryBudget.class),
+
+    /** Number of threads that a vectorized operator may use to process
+     * partitions of its input. Optional; if not present, operators use one
+     * thread. */
+    PARALLELISM("parallelism", Integer.class),
+
+    /** Number of rows that the JDBC adapter asks a back-end database to
+     * return in each round trip. Optional; if not present, the driver's
+     * default is used. */
+    JDBC_FETCH_SIZE("jdbcFetchSize", Integer.class),
+
+    /** Number of rows that the JDBC adapter may read ahead on a background
+     * thread. Optional; if not present, rows are read when needed. */
+    JDBC_PREFETCH_SIZE("jdbcPrefetchSize", Integer.class),
+
+    /** Whether the JDBC adapter starts each back-end query as soon as the
+     * statement starts. Optional; if not present, each query starts when
+     * its rows are first needed. */
+    JDBC_PARALLEL("jdbcParallel", Boolean.class),
+
+    /** Enumerators that must be closed when the statement's result set is
+     * closed, even if their rows were never read. Optional; if not present,
+     * each operator closes only the enumerators that it reads. */
+    ENUMERATOR_CLOSER("enumeratorCloser", EnumeratorCloser.class);
 
     public final String camelName;
     public final Class clazz;
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Equi-depth histogram of the values of a column.
+ *
+ * <p>The histogram consists of a sorted array of {@code n + 1} bounds that
+ * divide the values into {@code n} buckets, each containing approximately
+ * the same number of values. A value that occurs very often may be a bound
+ * several times; this is how the histogram detects skew.</p>
+ *
+ * <p>Numeric values are interpolated within a bucket; other values are
+ * assumed to be in the middle of the bucket.</p>
+ *
+ * @see ColumnStatistic#getHistogram()
+ */
+public class Histogram implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Comparable[] bounds;
+
+  private Histogram(Comparable[] bounds) {
+    assert bounds.length >= 2;
+    this.bounds = bounds;
+  }
+
+  /** Creates a histogram with at most {@code bucketCount} buckets from a
+   * sorted list of values, none of them null. Returns null if the list is
+   * empty. */
+  public static Histogram of(List<? extends Comparable> sortedValues,
+      int bucketCount) {
+    final int n = sortedValues.size();
+    if (n == 0) {
+      return null;
+    }
+    final int b = Math.max(1, Math.min(bucketCount, n - 1));
+    final Comparable[] bounds = new Comparable[b + 1];
+    for (int i = 0; i <= b; i++) {
+      bounds[i] = sortedValues.get((int) ((long) i * (n - 1) / b));
+    }
+    return new Histogram(bounds);
+  }
+
+  @Override public String toString() {
+    return Arrays.toString(bounds);
+  }
+
+  /** Returns the number of buckets. */
+  public int getBucketCount() {
+    return bounds.length - 1;
+  }
+
+  /** Returns the bounds of the buckets; one more than the number of
+   * buckets. */
+  public List<Comparable> getBounds() {
+    return Collections.unmodifiableList(Arrays.asList(bounds));
+  }
+
+  /** Returns the estimated fraction of values that are less than
+   * {@code value}, or, if {@code inclusive}, less than or equal to it.
+   * Returns null if {@code value} cannot be compared with the values in the
+   * histogram. */
+  public Double fractionBelow(Comparable value, boolean inclusive) {
+    // Find k, the number of bounds less than (or not greater than) value.
+    int lo = 0;
+    int hi = bounds.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      final Integer c = compare(bounds[mid], value);
+      if (c == null) {
+        return null;
+      }
+      if (c < 0 || inclusive && c == 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    final int k = lo;
+    if (k == 0) {
+      return 0d;
+    }
+    if (k == bounds.length) {
+      return 1d;
+    }
+    // Value is in bucket k - 1, between bounds[k - 1] and bounds[k].
+    return (k - 1 + interpolate(bounds[k - 1], bounds[k], value))
+        / (bounds.length - 1);
+  }
+
+  /** Returns the estimated fraction of values equal to {@code value}, or null
+   * if it cannot be compared with the values in the histogram.
+   *
+   * <p>The estimate is non-zero only if {@code value} is one of the bounds.
+   * A caller should combine it with an estimate based on the number of
+   * distinct values.</p> */
+  public Double fractionEqual(Comparable value) {
+    final Double below = fractionBelow(value, false);
+    final Double notAbove = fractionBelow(value, true);
+    if (below == null || notAbove == null) {
+      return null;
+    }
+    return notAbove - below;
+  }
+
+  private static double interpolate(Comparable lo, Comparable hi,
+      Comparable value) {
+    if (lo instanceof Number
+        && hi instanceof Number
+        && value instanceof Number) {
+      final double l = ((Number) lo).doubleValue();
+      final double h = ((Number) hi).doubleValue();
+      if (h > l) {
+        final double x = (((Number) value).doubleValue() - l) / (h - l);
+        return Math.max(0d, Math.min(1d, x));
+      }
+    }
+    return 0.5d;
+  }
+
+  /** Compares two values; returns null if they are not comparable. Numbers
+   * of different types are compared by value. */
+  private static Integer compare(Comparable v0, Comparable v1) {
+    if (v0 instanceof Number && v1 instanceof Number) {
+      return Double.compare(((Number) v0).doubleValue(),
+          ((Number) v1).doubleValue());
+    }
+    if (v0.getClass().isInstance(v1)) {
+      //noinspection unchecked
+      return v0.compareTo(v1);
+    }
+    return null;
+  }
+}
+
+// End Histogram.java
@@ -33,6 +33,10 @@ public interface Statistic {
    * of a unique key, of the table.
    */
   boolean isKey(BitSet columns);
+
+  /** Returns statistics about the values of a column, or null if not
+   * known. */
+  ColumnStatistic getColumnStatistic(int column);
 }
 
 // End Statistic.java
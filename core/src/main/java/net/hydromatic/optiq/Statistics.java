@@ -18,6 +18,7 @@
 
 import net.hydromatic.optiq.util.BitSets;
 
+import java.io.Serializable;
 import java.util.*;
 
 /**
@@ -37,10 +38,22 @@ public Double getRowCount() {
         public boolean isKey(BitSet columns) {
           return false;
         }
+
+        public ColumnStatistic getColumnStatistic(int column) {
+          return null;
+        }
       };
 
   /** Returns a statistic with a given row count and set of unique keys. */
-  public static Statistic of(final double rowCount, final List<BitSet> keys) {
+  public static Statistic of(double rowCount, List<BitSet> keys) {
+    return of(rowCount, keys, Collections.<ColumnStatistic>emptyList());
+  }
+
+  /** Returns a statistic with a given row count, set of unique keys, and
+   * statistics for each column. An element of {@code columns} may be null,
+   * and the list may be shorter than the number of columns. */
+  public static Statistic of(final double rowCount, final List<BitSet> keys,
+      final List<ColumnStatistic> columns) {
     return new Statistic() {
       public Double getRowCount() {
         return rowCount;
@@ -54,8 +67,72 @@ public boolean isKey(BitSet columns) {
         }
         return false;
       }
+
+      public ColumnStatistic getColumnStatistic(int column) {
+        return column < columns.size() ? columns.get(column) : null;
+      }
     };
   }
+
+  /** Returns statistics about a column. Any of the arguments may be null,
+   * meaning "not known". The result is serializable if {@code min} and
+   * {@code max} are. */
+  public static ColumnStatistic column(final Double distinctCount,
+      final Double nullFraction, final Comparable min, final Comparable max,
+      final Histogram histogram) {
+    return new ColumnStatisticImpl(distinctCount, nullFraction, min, max,
+        histogram);
+  }
+
+  /** Implementation of {@link ColumnStatistic} that holds its values. */
+  private static class ColumnStatisticImpl
+      implements ColumnStatistic, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Double distinctCount;
+    private final Double nullFraction;
+    private final Comparable min;
+    private final Comparable max;
+    private final Histogram histogram;
+
+    ColumnStatisticImpl(Double distinctCount, Double nullFraction,
+        Comparable min, Comparable max, Histogram histogram) {
+      this.distinctCount = distinctCount;
+      this.nullFraction = nullFraction;
+      this.min = min;
+      this.max = max;
+      this.histogram = histogram;
+    }
+
+    @Override public String toString() {
+      return "{distinctCount: " + distinctCount
+          + ", nullFraction: " + nullFraction
+          + ", min: " + min
+          + ", max: " + max
+          + ", histogram: " + histogram
+          + "}";
+    }
+
+    public Double getDistinctCount() {
+      return distinctCount;
+    }
+
+    public Double getNullFraction() {
+      return nullFraction;
+    }
+
+    public Comparable getMin() {
+      return min;
+    }
+
+    public Comparable getMax() {
+      return max;
+    }
+
+    public Histogram getHistogram() {
+      return histogram;
+    }
+  }
 }
 
 // End Statistics.java
@@ -44,6 +44,30 @@ public interface OptiqConnectionConfig extends ConnectionConfig {
   boolean caseSensitive();
   /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#SPARK */
   boolean spark();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#PLAN_CACHE_SIZE */
+  int planCacheSize();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#MEMORY_BUDGET */
+  long memoryBudget();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#SPILL_DIRECTORY */
+  String spillDirectory();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#VECTORIZE */
+  boolean vectorize();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#PARALLELISM */
+  int parallelism();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#PLANNER_TIME_BUDGET */
+  long plannerTimeBudget();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#PLANNER_TICK_BUDGET */
+  int plannerTickBudget();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#RULE_PROFILE */
+  boolean ruleProfile();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#JDBC_FETCH_SIZE */
+  int jdbcFetchSize();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#JDBC_PREFETCH_SIZE */
+  int jdbcPrefetchSize();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#JDBC_PARALLEL */
+  boolean jdbcParallel();
+  /** @see net.hydromatic.optiq.config.OptiqConnectionProperty#INTERPRETER_THRESHOLD */
+  long interpreterThreshold();
 }
 
 // End OptiqConnectionConfig.java
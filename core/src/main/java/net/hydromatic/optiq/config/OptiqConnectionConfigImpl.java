@@ -82,6 +82,60 @@ public boolean caseSensitive() {
   public boolean spark() {
     return OptiqConnectionProperty.SPARK.wrap(properties).getBoolean();
   }
+
+  public int planCacheSize() {
+    return OptiqConnectionProperty.PLAN_CACHE_SIZE.wrap(properties).getInt();
+  }
+
+  public long memoryBudget() {
+    return OptiqConnectionProperty.MEMORY_BUDGET.wrap(properties).getLong();
+  }
+
+  public String spillDirectory() {
+    return OptiqConnectionProperty.SPILL_DIRECTORY.wrap(properties)
+        .getString();
+  }
+
+  public boolean vectorize() {
+    return OptiqConnectionProperty.VECTORIZE.wrap(properties).getBoolean();
+  }
+
+  public int parallelism() {
+    return OptiqConnectionProperty.PARALLELISM.wrap(properties).getInt();
+  }
+
+  public long plannerTimeBudget() {
+    return OptiqConnectionProperty.PLANNER_TIME_BUDGET.wrap(properties)
+        .getLong();
+  }
+
+  public int plannerTickBudget() {
+    return OptiqConnectionProperty.PLANNER_TICK_BUDGET.wrap(properties)
+        .getInt();
+  }
+
+  public boolean ruleProfile() {
+    return OptiqConnectionProperty.RULE_PROFILE.wrap(properties).getBoolean();
+  }
+
+  public int jdbcFetchSize() {
+    return OptiqConnectionProperty.JDBC_FETCH_SIZE.wrap(properties).getInt();
+  }
+
+  public int jdbcPrefetchSize() {
+    return OptiqConnectionProperty.JDBC_PREFETCH_SIZE.wrap(properties)
+        .getInt();
+  }
+
+  public boolean jdbcParallel() {
+    return OptiqConnectionProperty.JDBC_PARALLEL.wrap(properties)
+        .getBoolean();
+  }
+
+  public long interpreterThreshold() {
+    return OptiqConnectionProperty.INTERPRETER_THRESHOLD.wrap(properties)
+        .getLong();
+  }
 }
 
 // End OptiqConnectionConfigImpl.java
@@ -68,7 +68,83 @@ public enum OptiqConnectionProperty implements ConnectionProperty {
   SPARK("spark", Type.BOOLEAN, false),
 
   /** Timezone, for example 'gmt-3'. Default is the JVM's time zone. */
-  TIMEZONE("timezone", Type.STRING, null);
+  TIMEZONE("timezone", Type.STRING, null),
+
+  /** Maximum number of prepared statements to keep in the connection's plan
+   * cache. A statement whose SQL text matches a cached statement skips
+   * parsing, validation and planning. If 0 (the default), there is no plan
+   * cache. */
+  PLAN_CACHE_SIZE("planCacheSize", Type.NUMBER, 0),
+
+  /** Number of bytes of rows that the sort, aggregate and join operators of a
+   * statement may hold in memory before they spill to disk. If 0 (the
+   * default), there is no limit and operators never spill. */
+  MEMORY_BUDGET("memoryBudget", Type.NUMBER, 0),
+
+  /** Directory in which operators create spill files. Default is the JVM's
+   * temporary directory. */
+  SPILL_DIRECTORY("spillDirectory", Type.STRING, null),
+
+  /** Specifies whether the planner may execute scans, filters, projections
+   * and aggregations over in-memory column stores (such as tables of a
+   * {@link net.hydromatic.optiq.impl.clone.CloneSchema}) a batch of rows at a
+   * time, using primitive arrays. Default false. */
+  VECTORIZE("vectorize", Type.BOOLEAN, false),
+
+  /** Number of threads that vectorized scans, filters and aggregations may
+   * use. Each thread processes a range of rows, and partial aggregates are
+   * merged at the end. Has no effect unless {@link #VECTORIZE} is true.
+   * Default 1. */
+  PARALLELISM("parallelism", Type.NUMBER, 1),
+
+  /** Maximum time, in milliseconds, that the planner may spend optimizing a
+   * statement. When it runs out, it returns the best plan found so far. If 0
+   * (the default), there is no limit. */
+  PLANNER_TIME_BUDGET("plannerTimeBudget", Type.NUMBER, 0),
+
+  /** Maximum number of rules the planner may fire while optimizing a
+   * statement. When it runs out, it returns the best plan found so far. If 0
+   * (the default), there is no limit. */
+  PLANNER_TICK_BUDGET("plannerTickBudget", Type.NUMBER, 0),
+
+  /** Whether to record, for each rule, the number of times the planner fires
+   * it and the time it takes; see
+   * {@link org.eigenbase.relopt.RelOptRuleProfiler}. The profile is logged,
+   * and passed to {@link net.hydromatic.optiq.runtime.Hook#RULE_PROFILE}.
+   * Default false. */
+  RULE_PROFILE("ruleProfile", Type.BOOLEAN, false),
+
+  /** Number of rows that the JDBC adapter asks a back-end database to return
+   * in each round trip; see {@link java.sql.Statement#setFetchSize(int)}. If
+   * 0 (the default), the driver's default is used. */
+  JDBC_FETCH_SIZE("jdbcFetchSize", Type.NUMBER, 0),
+
+  /** Number of rows that the JDBC adapter may read ahead, on a background
+   * thread, from a back-end database. Reading ahead overlaps the latency of
+   * the back-end with the work done on the rows it has already returned. If
+   * 0 (the default), rows are read only when they are needed. */
+  JDBC_PREFETCH_SIZE("jdbcPrefetchSize", Type.NUMBER, 0),
+
+  /** Whether the JDBC adapter starts each back-end query, on a background
+   * thread, as soon as the statement starts executing, and buffers its
+   * rows until they are needed. If a statement reads from several
+   * back-end databases, their latencies then overlap. Default false.
+   *
+   * <p>The buffer is unbounded, so a back-end query's rows may all be held
+   * in memory until the statement reads them; a bounded buffer could stall
+   * the back-end query while the statement reads another input. Background
+   * queries whose rows are not read are stopped when the statement's result
+   * set is closed.</p> */
+  JDBC_PARALLEL("jdbcParallel", Type.BOOLEAN, false),
+
+  /** Estimated number of rows below which a statement is executed by
+   * interpreting its plan, rather than by generating and compiling Java code.
+   * The estimate is the largest number of rows that any relational expression
+   * in the plan is expected to produce. For a statement that processes few
+   * rows, compiling costs more than executing. Statements that use operators
+   * or expressions that the interpreter does not support are compiled as
+   * usual. If 0 (the default), statements are always compiled. */
+  INTERPRETER_THRESHOLD("interpreterThreshold", Type.NUMBER, 0);
 
   private final String camelName;
   private final Type type;
@@ -22,6 +22,7 @@
 import net.hydromatic.optiq.*;
 import net.hydromatic.optiq.impl.AbstractTableQueryable;
 import net.hydromatic.optiq.impl.java.AbstractQueryableTable;
+import net.hydromatic.optiq.runtime.ColumnarTable;
 import net.hydromatic.optiq.util.BitSets;
 
 import org.eigenbase.reltype.*;
@@ -32,6 +33,7 @@
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Type;
+import java.nio.*;
 import java.util.*;
 
 /**
@@ -40,7 +42,7 @@
  * values in the column; see {@link Representation} and
  * {@link RepresentationType}.
  */
-class ArrayTable extends AbstractQueryableTable {
+class ArrayTable extends AbstractQueryableTable implements ColumnarTable {
   private final RelProtoDataType protoRowType;
   private final Supplier<Content> supplier;
 
@@ -58,13 +60,20 @@ public RelDataType getRowType(RelDataTypeFactory typeFactory) {
 
   public Statistic getStatistic() {
     final List<BitSet> keys = new ArrayList<BitSet>();
+    final List<ColumnStatistic> columnStatistics =
+        new ArrayList<ColumnStatistic>();
     final Content content = supplier.get();
     for (Ord<Column> ord : Ord.zip(content.columns)) {
       if (ord.e.cardinality == content.size) {
         keys.add(BitSets.of(ord.i));
       }
+      columnStatistics.add(ord.e.statistic);
     }
-    return Statistics.of(content.size, keys);
+    return Statistics.of(content.size, keys, columnStatistics);
+  }
+
+  public Reader reader() {
+    return supplier.get();
   }
 
   public <T> Queryable<T> asQueryable(final QueryProvider queryProvider,
@@ -188,6 +197,27 @@ enum RepresentationType {
      * @see ByteStringDictionary
      */
     BYTE_STRING_DICTIONARY,
+
+    /**
+     * Run-length encoded array of primitives. Each run of consecutive equal
+     * values is stored once. Null values not possible. Good for sorted columns
+     * and columns whose values rarely change; a scan can skip a run whose
+     * value does not satisfy a predicate without reading its rows.
+     *
+     * @see RunLengthPrimitiveArray
+     */
+    RUN_LENGTH_PRIMITIVE_ARRAY,
+
+    /**
+     * Frame-of-reference encoded array of primitives. Stores the minimum
+     * value, and for each row the difference between its value and the
+     * minimum, using one of the previous methods. Null values not possible.
+     * Good for columns whose values are large but close together, such as
+     * surrogate keys and timestamps.
+     *
+     * @see FrameOfReferencePrimitiveArray
+     */
+    FRAME_OF_REFERENCE_PRIMITIVE_ARRAY,
   }
 
   /** Column definition and value set. */
@@ -195,18 +225,61 @@ public static class Column {
     final Representation representation;
     final Object dataSet;
     final int cardinality;
+    /** Statistics about the values in the column; may be null. */
+    final ColumnStatistic statistic;
 
-    Column(Representation representation, Object data, int cardinality) {
+    Column(Representation representation, Object data, int cardinality,
+        ColumnStatistic statistic) {
       this.representation = representation;
       this.dataSet = data;
       this.cardinality = cardinality;
+      this.statistic = statistic;
     }
 
     public Column permute(int[] sources) {
       return new Column(
           representation,
           representation.permute(dataSet, sources),
-          cardinality);
+          cardinality,
+          statistic);
+    }
+
+    /** Returns a column with the same values, whose arrays of primitive
+     * values are copied into direct buffers, outside the Java heap.
+     *
+     * <p>Applies to {@link PrimitiveArray} and {@link BitSlicedPrimitiveArray},
+     * including when they hold the codes of an {@link ObjectDictionary} or the
+     * offsets of a {@link FrameOfReferencePrimitiveArray}. Other
+     * representations are either small or consist of objects, and remain on
+     * the heap.</p> */
+    public Column toDirect() {
+      return new Column(
+          representation,
+          toDirect(representation, dataSet),
+          cardinality,
+          statistic);
+    }
+
+    private static Object toDirect(Representation representation,
+        Object dataSet) {
+      switch (representation.getType()) {
+      case PRIMITIVE_ARRAY:
+      case BIT_SLICED_PRIMITIVE_ARRAY:
+        return dataSet instanceof Buffer ? dataSet : toDirectBuffer(dataSet);
+      case OBJECT_DICTIONARY:
+        final Pair<Object, Comparable[]> pair =
+            (Pair<Object, Comparable[]>) dataSet;
+        return Pair.of(
+            toDirect(((ObjectDictionary) representation).representation,
+                pair.left),
+            pair.right);
+      case FRAME_OF_REFERENCE_PRIMITIVE_ARRAY:
+        return toDirect(
+            ((FrameOfReferencePrimitiveArray) representation).representation,
+            dataSet);
+      default:
+        return dataSet;
+      }
     }
 
     @Override
@@ -307,11 +380,12 @@ public String toString(Object dataSet) {
   }
 
   /** Representation that stores the values of a column in an array of
-   * primitive values. */
+   * primitive values, or in a {@link Buffer} of primitive values if the
+   * column has been moved off the heap. */
   public static class PrimitiveArray implements Representation {
     final int ordinal;
-    private final Primitive primitive;
-    private final Primitive p;
+    final Primitive primitive;
+    final Primitive p;
 
     public PrimitiveArray(int ordinal, Primitive primitive, Primitive p) {
       this.ordinal = ordinal;
@@ -337,22 +411,47 @@ public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
     }
 
     public Object permute(Object dataSet, int[] sources) {
+      if (dataSet instanceof Buffer) {
+        return toDirectBuffer(
+            primitive.permute(toArray((Buffer) dataSet), sources));
+      }
       return primitive.permute(dataSet, sources);
     }
 
     public Object getObject(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        final Buffer buffer = (Buffer) dataSet;
+        if (buffer instanceof DoubleBuffer) {
+          final double d = ((DoubleBuffer) buffer).get(ordinal);
+          return p == Primitive.FLOAT ? (Object) (float) d : (Object) d;
+        }
+        if (buffer instanceof FloatBuffer) {
+          final float f = ((FloatBuffer) buffer).get(ordinal);
+          return p == Primitive.DOUBLE ? (Object) (double) f : (Object) f;
+        }
+        return box(p, getLong(buffer, ordinal));
+      }
       return p.arrayItem(dataSet, ordinal);
     }
 
     public int getInt(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        return (int) getLong((Buffer) dataSet, ordinal);
+      }
       return Array.getInt(dataSet, ordinal);
     }
 
     public int size(Object dataSet) {
+      if (dataSet instanceof Buffer) {
+        return ((Buffer) dataSet).capacity();
+      }
       return Array.getLength(dataSet);
     }
 
     public String toString(Object dataSet) {
+      if (dataSet instanceof Buffer) {
+        return Column.asList(this, dataSet).toString();
+      }
       return p.arrayToString(dataSet);
     }
   }
@@ -679,6 +778,9 @@ public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
     }
 
     public Object permute(Object dataSet, int[] sources) {
+      if (dataSet instanceof LongBuffer) {
+        return toDirectBuffer(permute(toArray((LongBuffer) dataSet), sources));
+      }
       final long[] longs0 = (long[]) dataSet;
       int n = sources.length;
       final long[] longs = new long[longs0.length];
@@ -691,10 +793,9 @@ public Object permute(Object dataSet, int[] sources) {
     }
 
     public Object getObject(Object dataSet, int ordinal) {
-      final long[] longs = (long[]) dataSet;
       final int chunksPerWord = 64 / bitCount;
       final int word = ordinal / chunksPerWord;
-      final long v = longs[word];
+      final long v = word(dataSet, word);
       final int chunk = ordinal % chunksPerWord;
       final int mask = (1 << bitCount) - 1;
       final int signMask = 1 << (bitCount - 1);
@@ -723,10 +824,9 @@ public Object getObject(Object dataSet, int ordinal) {
     }
 
     public int getInt(Object dataSet, int ordinal) {
-      final long[] longs = (long[]) dataSet;
       final int chunksPerWord = 64 / bitCount;
       final int word = ordinal / chunksPerWord;
-      final long v = longs[word];
+      final long v = word(dataSet, word);
       final int chunk = ordinal % chunksPerWord;
       final int mask = (1 << bitCount) - 1;
       final int signMask = 1 << (bitCount - 1);
@@ -739,6 +839,14 @@ public int getInt(Object dataSet, int ordinal) {
       return (int) x;
     }
 
+    /** Returns a word of a data set, which is either a {@code long[]} or,
+     * if the column has been moved off the heap, a {@link LongBuffer}. */
+    private static long word(Object dataSet, int word) {
+      return dataSet instanceof long[]
+          ? ((long[]) dataSet)[word]
+          : ((LongBuffer) dataSet).get(word);
+    }
+
     public static long getLong(int bitCount, long[] values, int ordinal) {
       return getLong(
           bitCount, 64 / bitCount, (1L << bitCount) - 1L,
@@ -773,9 +881,204 @@ public static void orLong(
     }
 
     public int size(Object dataSet) {
-      final long[] longs = (long[]) dataSet;
+      final int wordCount = dataSet instanceof long[]
+          ? ((long[]) dataSet).length
+          : ((LongBuffer) dataSet).capacity();
       final int chunksPerWord = 64 / bitCount;
-      return longs.length * chunksPerWord; // may be slightly too high
+      return wordCount * chunksPerWord; // may be slightly too high
+    }
+
+    public String toString(Object dataSet) {
+      return Column.asList(this, dataSet).toString();
+    }
+  }
+
+  /** Representation that stores runs of equal values of a column of a
+   * fixed-precision primitive type (boolean, byte, char, short, int, long).
+   *
+   * <p>The data set is a pair: an array containing the value of each run,
+   * and an array containing the ordinal of the row after the last row of
+   * each run.</p> */
+  public static class RunLengthPrimitiveArray implements Representation {
+    final int ordinal;
+    final Primitive primitive;
+
+    public RunLengthPrimitiveArray(int ordinal, Primitive primitive) {
+      this.ordinal = ordinal;
+      this.primitive = primitive;
+    }
+
+    public String toString() {
+      return "RunLengthPrimitiveArray(ordinal=" + ordinal
+          + ", primitive=" + primitive
+          + ")";
+    }
+
+    public RepresentationType getType() {
+      return RepresentationType.RUN_LENGTH_PRIMITIVE_ARRAY;
+    }
+
+    public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
+      final List<Comparable> list = permuteList(valueSet.values, sources);
+      final long[] longs = new long[list.size()];
+      for (int i = 0; i < longs.length; i++) {
+        longs[i] = ColumnLoader.ValueSet.toLong(list.get(i));
+      }
+      return encode(longs);
+    }
+
+    private static Pair<long[], int[]> encode(long[] longs) {
+      int runCount = 0;
+      for (int i = 0; i < longs.length; i++) {
+        if (i == 0 || longs[i] != longs[i - 1]) {
+          ++runCount;
+        }
+      }
+      final long[] values = new long[runCount];
+      final int[] ends = new int[runCount];
+      int r = -1;
+      for (int i = 0; i < longs.length; i++) {
+        if (i == 0 || longs[i] != longs[i - 1]) {
+          values[++r] = longs[i];
+        }
+        ends[r] = i + 1;
+      }
+      return Pair.of(values, ends);
+    }
+
+    public Object permute(Object dataSet, int[] sources) {
+      final int size = size(dataSet);
+      final long[] longs = new long[size];
+      for (int i = 0; i < size; i++) {
+        longs[i] = getLong(dataSet, sources[i]);
+      }
+      return encode(longs);
+    }
+
+    /** Returns the ordinal of the run that contains a given row. */
+    private static int run(int[] ends, int ordinal) {
+      final int i = Arrays.binarySearch(ends, ordinal);
+      return i < 0 ? -(i + 1) : i + 1;
+    }
+
+    static long getLong(Object dataSet, int ordinal) {
+      @SuppressWarnings("unchecked")
+      final Pair<long[], int[]> pair = (Pair<long[], int[]>) dataSet;
+      return pair.left[run(pair.right, ordinal)];
+    }
+
+    public Object getObject(Object dataSet, int ordinal) {
+      return box(primitive, getLong(dataSet, ordinal));
+    }
+
+    public int getInt(Object dataSet, int ordinal) {
+      return (int) getLong(dataSet, ordinal);
+    }
+
+    public int size(Object dataSet) {
+      @SuppressWarnings("unchecked")
+      final Pair<long[], int[]> pair = (Pair<long[], int[]>) dataSet;
+      final int[] ends = pair.right;
+      return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    public String toString(Object dataSet) {
+      return Column.asList(this, dataSet).toString();
+    }
+
+    /** Copies values into an array, filling one run at a time. */
+    void read(Object dataSet, int offset, int count, long[] target) {
+      @SuppressWarnings("unchecked")
+      final Pair<long[], int[]> pair = (Pair<long[], int[]>) dataSet;
+      final long[] values = pair.left;
+      final int[] ends = pair.right;
+      final int end = offset + count;
+      int i = offset;
+      for (int r = run(ends, offset); i < end; r++) {
+        final int runEnd = Math.min(ends[r], end);
+        Arrays.fill(target, i - offset, runEnd - offset, values[r]);
+        i = runEnd;
+      }
+    }
+
+    /** Returns the first row, at or after {@code offset} and before
+     * {@code end}, whose value is between {@code lower} and {@code upper}
+     * (inclusive); or {@code end} if there is none. Skips whole runs. */
+    int seek(Object dataSet, int offset, int end, long lower, long upper) {
+      @SuppressWarnings("unchecked")
+      final Pair<long[], int[]> pair = (Pair<long[], int[]>) dataSet;
+      final long[] values = pair.left;
+      final int[] ends = pair.right;
+      for (int r = run(ends, offset); r < ends.length; r++) {
+        final int start = r == 0 ? 0 : ends[r - 1];
+        if (start >= end) {
+          break;
+        }
+        if (values[r] >= lower && values[r] <= upper) {
+          return Math.max(start, offset);
+        }
+      }
+      return end;
+    }
+  }
+
+  /** Representation that stores values of a fixed-precision primitive type
+   * (byte, short, int, long) as their difference from a base value, using
+   * another representation for the differences. */
+  public static class FrameOfReferencePrimitiveArray implements Representation {
+    final int ordinal;
+    final Primitive primitive;
+    final long base;
+    final Representation representation;
+
+    public FrameOfReferencePrimitiveArray(int ordinal, Primitive primitive,
+        long base, Representation representation) {
+      this.ordinal = ordinal;
+      this.primitive = primitive;
+      this.base = base;
+      this.representation = representation;
+    }
+
+    public String toString() {
+      return "FrameOfReferencePrimitiveArray(ordinal=" + ordinal
+          + ", primitive=" + primitive
+          + ", base=" + base
+          + ", representation=" + representation
+          + ")";
+    }
+
+    public RepresentationType getType() {
+      return RepresentationType.FRAME_OF_REFERENCE_PRIMITIVE_ARRAY;
+    }
+
+    public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
+      final ColumnLoader.ValueSet offsetValueSet =
+          new ColumnLoader.ValueSet(long.class);
+      for (Comparable value : permuteList(valueSet.values, sources)) {
+        offsetValueSet.add(ColumnLoader.ValueSet.toLong(value) - base);
+      }
+      return representation.freeze(offsetValueSet, null);
+    }
+
+    public Object permute(Object dataSet, int[] sources) {
+      return representation.permute(dataSet, sources);
+    }
+
+    private long getLong(Object dataSet, int ordinal) {
+      return base
+          + ((Number) representation.getObject(dataSet, ordinal)).longValue();
+    }
+
+    public Object getObject(Object dataSet, int ordinal) {
+      return box(primitive, getLong(dataSet, ordinal));
+    }
+
+    public int getInt(Object dataSet, int ordinal) {
+      return (int) getLong(dataSet, ordinal);
+    }
+
+    public int size(Object dataSet) {
+      return representation.size(dataSet);
     }
 
     public String toString(Object dataSet) {
@@ -783,6 +1086,120 @@ public String toString(Object dataSet) {
     }
   }
 
+  /** Converts a {@code long} value to a boxed value of a given primitive
+   * type. */
+  private static Object box(Primitive primitive, long x) {
+    switch (primitive) {
+    case BOOLEAN:
+      return x != 0;
+    case BYTE:
+      return (byte) x;
+    case CHAR:
+      return (char) x;
+    case SHORT:
+      return (short) x;
+    case INT:
+      return (int) x;
+    case LONG:
+      return x;
+    default:
+      throw new AssertionError(primitive + " unexpected");
+    }
+  }
+
+  /** Copies an array of primitive values into a direct buffer of the same
+   * type, in native byte order. */
+  static Buffer toDirectBuffer(Object array) {
+    final int length = Array.getLength(array);
+    if (array instanceof long[]) {
+      return allocateDirect(length, 8).asLongBuffer().put((long[]) array);
+    } else if (array instanceof int[]) {
+      return allocateDirect(length, 4).asIntBuffer().put((int[]) array);
+    } else if (array instanceof short[]) {
+      return allocateDirect(length, 2).asShortBuffer().put((short[]) array);
+    } else if (array instanceof byte[]) {
+      return allocateDirect(length, 1).put((byte[]) array);
+    } else if (array instanceof char[]) {
+      return allocateDirect(length, 2).asCharBuffer().put((char[]) array);
+    } else if (array instanceof double[]) {
+      return allocateDirect(length, 8).asDoubleBuffer().put((double[]) array);
+    } else if (array instanceof float[]) {
+      return allocateDirect(length, 4).asFloatBuffer().put((float[]) array);
+    } else {
+      throw new AssertionError("cannot copy " + array.getClass()
+          + " to buffer");
+    }
+  }
+
+  private static ByteBuffer allocateDirect(int count, int bytesPerValue) {
+    return ByteBuffer.allocateDirect(count * bytesPerValue)
+        .order(ByteOrder.nativeOrder());
+  }
+
+  /** Copies the contents of a buffer of integral or floating-point values
+   * into an array of the same type. */
+  static Object toArray(Buffer buffer) {
+    final int n = buffer.capacity();
+    if (buffer instanceof LongBuffer) {
+      final long[] values = new long[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((LongBuffer) buffer).get(i);
+      }
+      return values;
+    } else if (buffer instanceof IntBuffer) {
+      final int[] values = new int[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((IntBuffer) buffer).get(i);
+      }
+      return values;
+    } else if (buffer instanceof ShortBuffer) {
+      final short[] values = new short[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((ShortBuffer) buffer).get(i);
+      }
+      return values;
+    } else if (buffer instanceof ByteBuffer) {
+      final byte[] values = new byte[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((ByteBuffer) buffer).get(i);
+      }
+      return values;
+    } else if (buffer instanceof CharBuffer) {
+      final char[] values = new char[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((CharBuffer) buffer).get(i);
+      }
+      return values;
+    } else if (buffer instanceof DoubleBuffer) {
+      final double[] values = new double[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((DoubleBuffer) buffer).get(i);
+      }
+      return values;
+    } else {
+      final float[] values = new float[n];
+      for (int i = 0; i < n; i++) {
+        values[i] = ((FloatBuffer) buffer).get(i);
+      }
+      return values;
+    }
+  }
+
+  /** Returns a value of a buffer of integral values as a {@code long}. */
+  private static long getLong(Buffer buffer, int ordinal) {
+    if (buffer instanceof LongBuffer) {
+      return ((LongBuffer) buffer).get(ordinal);
+    } else if (buffer instanceof IntBuffer) {
+      return ((IntBuffer) buffer).get(ordinal);
+    } else if (buffer instanceof ShortBuffer) {
+      return ((ShortBuffer) buffer).get(ordinal);
+    } else if (buffer instanceof ByteBuffer) {
+      return ((ByteBuffer) buffer).get(ordinal);
+    } else {
+      return ((CharBuffer) buffer).get(ordinal);
+    }
+  }
+
   private static <E> List<E> permuteList(
       final List<E> list, final int[] sources) {
     if (sources == null) {
@@ -800,16 +1217,124 @@ public int size() {
   }
 
   /** Contents of a table. */
-  public static class Content {
-    private final List<Column> columns;
-    private final int size;
-    private final int sortField;
+  public static class Content implements ColumnarTable.Reader {
+    final List<Column> columns;
+    final int size;
+    final int sortField;
 
     public Content(List<? extends Column> columns, int size, int sortField) {
       this.columns = ImmutableList.copyOf(columns);
       this.size = size;
       this.sortField = sortField;
     }
+
+    public int getRowCount() {
+      return size;
+    }
+
+    public void read(int column, int offset, int count, long[] target) {
+      final Column c = columns.get(column);
+      if (c.representation instanceof RunLengthPrimitiveArray) {
+        ((RunLengthPrimitiveArray) c.representation).read(
+            c.dataSet, offset, count, target);
+        return;
+      }
+      if (c.representation.getType() == RepresentationType.PRIMITIVE_ARRAY) {
+        final Object dataSet = c.dataSet;
+        if (dataSet instanceof long[]) {
+          System.arraycopy(dataSet, offset, target, 0, count);
+          return;
+        }
+        if (dataSet instanceof LongBuffer) {
+          final LongBuffer buffer = ((LongBuffer) dataSet).duplicate();
+          buffer.position(offset);
+          buffer.get(target, 0, count);
+          return;
+        }
+        if (dataSet instanceof int[]) {
+          final int[] values = (int[]) dataSet;
+          for (int i = 0; i < count; i++) {
+            target[i] = values[offset + i];
+          }
+          return;
+        }
+        if (dataSet instanceof short[]) {
+          final short[] values = (short[]) dataSet;
+          for (int i = 0; i < count; i++) {
+            target[i] = values[offset + i];
+          }
+          return;
+        }
+        if (dataSet instanceof byte[]) {
+          final byte[] values = (byte[]) dataSet;
+          for (int i = 0; i < count; i++) {
+            target[i] = values[offset + i];
+          }
+          return;
+        }
+        if (dataSet instanceof boolean[]) {
+          final boolean[] values = (boolean[]) dataSet;
+          for (int i = 0; i < count; i++) {
+            target[i] = values[offset + i] ? 1 : 0;
+          }
+          return;
+        }
+      }
+      for (int i = 0; i < count; i++) {
+        final Object o = c.representation.getObject(c.dataSet, offset + i);
+        target[i] = o instanceof Boolean
+            ? ((Boolean) o ? 1 : 0)
+            : ((Number) o).longValue();
+      }
+    }
+
+    public void read(int column, int offset, int count, double[] target) {
+      final Column c = columns.get(column);
+      if (c.representation.getType() == RepresentationType.PRIMITIVE_ARRAY) {
+        final Object dataSet = c.dataSet;
+        if (dataSet instanceof double[]) {
+          System.arraycopy(dataSet, offset, target, 0, count);
+          return;
+        }
+        if (dataSet instanceof DoubleBuffer) {
+          final DoubleBuffer buffer = ((DoubleBuffer) dataSet).duplicate();
+          buffer.position(offset);
+          buffer.get(target, 0, count);
+          return;
+        }
+        if (dataSet instanceof float[]) {
+          final float[] values = (float[]) dataSet;
+          for (int i = 0; i < count; i++) {
+            target[i] = values[offset + i];
+          }
+          return;
+        }
+      }
+      for (int i = 0; i < count; i++) {
+        final Object o = c.representation.getObject(c.dataSet, offset + i);
+        target[i] = ((Number) o).doubleValue();
+      }
+    }
+
+    public int seek(int column, int offset, int end, long lower, long upper) {
+      final Column c = columns.get(column);
+      switch (c.representation.getType()) {
+      case RUN_LENGTH_PRIMITIVE_ARRAY:
+        return ((RunLengthPrimitiveArray) c.representation).seek(
+            c.dataSet, offset, end, lower, upper);
+      case CONSTANT:
+        final Object o = c.representation.getObject(c.dataSet, offset);
+        if (o instanceof Number || o instanceof Boolean) {
+          final long value = ColumnLoader.ValueSet.toLong(o);
+          if (value < lower || value > upper) {
+            return end;
+          }
+        }
+        return offset;
+      default:
+        return offset;
+      }
+    }
   }
 }
 
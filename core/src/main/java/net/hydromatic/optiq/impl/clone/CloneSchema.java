@@ -26,12 +26,16 @@
 import net.hydromatic.optiq.impl.jdbc.JdbcSchema;
 import net.hydromatic.optiq.jdbc.OptiqConnection;
 
+import org.eigenbase.reltype.RelDataType;
 import org.eigenbase.reltype.RelProtoDataType;
 
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +51,8 @@ public class CloneSchema extends AbstractSchema {
   // TODO: test Factory
 
   private final SchemaPlus sourceSchema;
+  private final boolean offHeap;
+  private final File directory;
 
   /**
    * Creates a CloneSchema.
@@ -54,8 +60,42 @@ public class CloneSchema extends AbstractSchema {
    * @param sourceSchema JDBC data source
    */
   public CloneSchema(SchemaPlus sourceSchema) {
+    this(sourceSchema, false);
+  }
+
+  /**
+   * Creates a CloneSchema, optionally storing column values outside the Java
+   * heap.
+   *
+   * @param sourceSchema JDBC data source
+   * @param offHeap Whether to store arrays of primitive values in direct
+   *                buffers, so that large tables do not burden the garbage
+   *                collector
+   */
+  public CloneSchema(SchemaPlus sourceSchema, boolean offHeap) {
+    this(sourceSchema, offHeap, null);
+  }
+
+  /**
+   * Creates a CloneSchema that persists its tables to files.
+   *
+   * <p>The first time a table is used, if the directory contains a
+   * {@link ColumnFile column file} for the table, its columns are mapped into
+   * memory from the file, and the source is not read. Otherwise the table is
+   * loaded from the source and written to the file.</p>
+   *
+   * @param sourceSchema JDBC data source
+   * @param offHeap Whether to store arrays of primitive values in direct
+   *                buffers, so that large tables do not burden the garbage
+   *                collector
+   * @param directory Directory for column files, or null to not persist
+   */
+  public CloneSchema(SchemaPlus sourceSchema, boolean offHeap,
+      File directory) {
     super();
     this.sourceSchema = sourceSchema;
+    this.offHeap = offHeap;
+    this.directory = directory;
   }
 
   @Override
@@ -79,13 +119,37 @@ private Table createCloneTable(QueryProvider queryProvider,
     final JavaTypeFactory typeFactory =
         ((OptiqConnection) queryProvider).getTypeFactory();
     return createCloneTable(typeFactory, Schemas.proto(sourceTable), null,
-        queryable);
+        queryable, offHeap,
+        directory == null ? null : new File(directory, name + ".columns"));
   }
 
   public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
       final RelProtoDataType protoRowType,
       final List<ColumnMetaData.Rep> repList,
       final Enumerable<T> source) {
+    return createCloneTable(typeFactory, protoRowType, repList, source, false,
+        null);
+  }
+
+  /** Creates a table that contains an in-memory copy of the rows of an
+   * enumerable. The rows are read the first time the table is used.
+   *
+   * @param typeFactory Type factory
+   * @param protoRowType Row type
+   * @param repList How each column is represented in the source rows, or
+   *                null
+   * @param source Source rows
+   * @param offHeap Whether to store arrays of primitive values in direct
+   *                buffers, outside the Java heap
+   * @param file File to read the table from if it exists, and otherwise to
+   *             write the table to after loading it; or null
+   */
+  public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
+      final RelProtoDataType protoRowType,
+      final List<ColumnMetaData.Rep> repList,
+      final Enumerable<T> source,
+      final boolean offHeap,
+      final File file) {
     final Type elementType = source instanceof QueryableTable
         ? ((QueryableTable) source).getElementType()
         : Object[].class;
@@ -95,15 +159,67 @@ public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
         Suppliers.memoize(
             new Supplier<ArrayTable.Content>() {
               public ArrayTable.Content get() {
+                final RelDataType rowType = protoRowType.apply(typeFactory);
+                if (file != null && file.exists()) {
+                  final ArrayTable.Content content =
+                      readColumnFile(file, rowType);
+                  if (content != null) {
+                    return content;
+                  }
+                  // The file was written by a different version, the
+                  // table's fields have changed since the file was written,
+                  // or the file is damaged. Load the table again, and
+                  // overwrite the file.
+                }
                 final ColumnLoader loader =
                     new ColumnLoader<T>(typeFactory, source, protoRowType,
                         repList);
-                return new ArrayTable.Content(loader.representationValues,
-                    loader.size(), loader.sortField);
+                @SuppressWarnings("unchecked")
+                final List<ArrayTable.Column> columns =
+                    loader.representationValues;
+                if (file != null) {
+                  ColumnFile.write(
+                      new ArrayTable.Content(columns, loader.size(),
+                          loader.sortField),
+                      rowType, file);
+                }
+                if (offHeap) {
+                  final List<ArrayTable.Column> directColumns =
+                      new ArrayList<ArrayTable.Column>();
+                  for (ArrayTable.Column column : columns) {
+                    directColumns.add(column.toDirect());
+                  }
+                  return new ArrayTable.Content(directColumns, loader.size(),
+                      loader.sortField);
+                }
+                return new ArrayTable.Content(columns, loader.size(),
+                    loader.sortField);
               }
             }));
   }
 
+  /** Reads a table from a column file; returns null if the file cannot be
+   * used, so that the caller reloads the table and rewrites the file. */
+  private static ArrayTable.Content readColumnFile(File file,
+      RelDataType rowType) {
+    try {
+      return ColumnFile.read(file, rowType);
+    } catch (IOException e) {
+      // Includes EOFException, if the file is truncated.
+      return null;
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (ClassCastException e) {
+      // The file is damaged, and an object was read where another was
+      // expected.
+      return null;
+    } catch (IllegalArgumentException e) {
+      // The file is damaged, and the name of a representation or primitive
+      // is not valid.
+      return null;
+    }
+  }
+
   /** Schema factory that creates a
    * {@link net.hydromatic.optiq.impl.clone.CloneSchema}.
    * This allows you to create a clone schema inside a model.json file.
@@ -121,12 +237,19 @@ public ArrayTable.Content get() {
    *         jdbcDriver: 'com.mysql.jdbc.Driver',
    *         jdbcUrl: 'jdbc:mysql://localhost/foodmart',
    *         jdbcUser: 'foodmart',
-   *         jdbcPassword: 'foodmart'
+   *         jdbcPassword: 'foodmart',
+   *         offHeap: true,
+   *         directory: '/var/cache/foodmart'
    *       }
    *     }
    *   ]
    * }
    * }</pre>
+   *
+   * <p>The optional {@code offHeap} operand (default false) stores column
+   * values outside the Java heap, and the optional {@code directory} operand
+   * persists tables to files in that directory; see
+   * {@link CloneSchema#CloneSchema(SchemaPlus, boolean, File)}.</p>
    */
   public static class Factory implements SchemaFactory {
     public Schema create(
@@ -136,7 +259,10 @@ public Schema create(
       SchemaPlus schema =
           parentSchema.add(name,
               JdbcSchema.create(parentSchema, name + "$source", operand));
-      return new CloneSchema(schema);
+      final String directory = (String) operand.get("directory");
+      return new CloneSchema(schema,
+          Boolean.TRUE.equals(operand.get("offHeap")),
+          directory == null ? null : new File(directory));
     }
   }
 }
@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.impl.clone;
+
+import net.hydromatic.linq4j.expressions.Primitive;
+
+import net.hydromatic.optiq.ColumnStatistic;
+
+import org.eigenbase.reltype.RelDataType;
+import org.eigenbase.reltype.RelDataTypeField;
+import org.eigenbase.util.Pair;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File that holds the columns of an {@link ArrayTable}, so that a table can
+ * be reloaded without reading its source again.
+ *
+ * <p>The file contains a header, which includes the name and type of each
+ * field of the table, then each column's representation, data and
+ * statistics. Arrays of primitive values are written in big-endian
+ * order, aligned to 8 bytes; {@link #read} maps them into memory using
+ * {@link FileChannel#map}, so that they are loaded lazily by the operating
+ * system and do not occupy the Java heap. Values that are objects (for
+ * example the values of an {@link ArrayTable.ObjectArray} or the dictionary
+ * of an {@link ArrayTable.ObjectDictionary}) are written using Java
+ * serialization and read onto the heap.</p>
+ *
+ * <p>The file does not record the source it was loaded from. If the source
+ * changes, delete the file.</p>
+ */
+class ColumnFile {
+  /** "OPTQ" */
+  private static final int MAGIC = 0x4F505451;
+  private static final int VERSION = 3;
+
+  private ColumnFile() {}
+
+  /** Writes the contents of a table to a file. Writes to a temporary file,
+   * then renames it, so that a reader never sees a partial file. */
+  public static void write(ArrayTable.Content content, RelDataType rowType,
+      File file) {
+    final File tempFile = new File(file.getPath() + ".tmp");
+    try {
+      final CountingOutputStream counter =
+          new CountingOutputStream(
+              new BufferedOutputStream(new FileOutputStream(tempFile)));
+      final DataOutputStream out = new DataOutputStream(counter);
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        final List<RelDataTypeField> fields = rowType.getFieldList();
+        out.writeInt(fields.size());
+        for (RelDataTypeField field : fields) {
+          out.writeUTF(field.getName());
+          out.writeUTF(field.getType().getFullTypeString());
+        }
+        out.writeInt(content.size);
+        out.writeInt(content.sortField);
+        out.writeInt(content.columns.size());
+        for (ArrayTable.Column column : content.columns) {
+          out.writeInt(column.cardinality);
+          writeRepresentation(out, column.representation);
+          writeDataSet(out, counter, column.representation, column.dataSet);
+          writeObject(out, column.statistic);
+        }
+      } finally {
+        out.close();
+      }
+      if (file.exists() && !file.delete()
+          || !tempFile.renameTo(file)) {
+        throw new IOException("cannot rename " + tempFile + " to " + file);
+      }
+    } catch (IOException e) {
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+      throw new RuntimeException("while writing column file " + file, e);
+    }
+  }
+
+  /** Reads the contents of a table from a file, mapping arrays of primitive
+   * values into memory.
+   *
+   * <p>Returns null if the file is not a column file, was written by a
+   * different version of this class, or was written for a table whose field
+   * names or types differ from {@code rowType}; the caller should load the
+   * table from its source, and overwrite the file.</p>
+   *
+   * @throws IOException if the file is truncated or cannot be read
+   * @throws ClassNotFoundException if the file contains an object whose
+   *     class is not available
+   */
+  public static ArrayTable.Content read(File file, RelDataType rowType)
+      throws IOException, ClassNotFoundException {
+    final RandomAccessFile in = new RandomAccessFile(file, "r");
+    try {
+      if (in.length() < 8
+          || in.readInt() != MAGIC
+          || in.readInt() != VERSION) {
+        return null;
+      }
+      final List<RelDataTypeField> fields = rowType.getFieldList();
+      if (in.readInt() != fields.size()) {
+        return null;
+      }
+      for (RelDataTypeField field : fields) {
+        if (!in.readUTF().equals(field.getName())
+            || !in.readUTF().equals(field.getType().getFullTypeString())) {
+          return null;
+        }
+      }
+      final int size = in.readInt();
+      final int sortField = in.readInt();
+      final int columnCount = in.readInt();
+      final List<ArrayTable.Column> columns =
+          new ArrayList<ArrayTable.Column>();
+      for (int i = 0; i < columnCount; i++) {
+        final int cardinality = in.readInt();
+        final ArrayTable.Representation representation =
+            readRepresentation(in);
+        final Object dataSet = readDataSet(in, representation);
+        final ColumnStatistic statistic = (ColumnStatistic) readObject(in);
+        columns.add(
+            new ArrayTable.Column(representation, dataSet, cardinality,
+                statistic));
+      }
+      return new ArrayTable.Content(columns, size, sortField);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeRepresentation(DataOutputStream out,
+      ArrayTable.Representation representation) throws IOException {
+    final ArrayTable.RepresentationType type = representation.getType();
+    out.writeUTF(type.name());
+    switch (type) {
+    case OBJECT_ARRAY:
+      out.writeInt(((ArrayTable.ObjectArray) representation).ordinal);
+      return;
+    case PRIMITIVE_ARRAY:
+      final ArrayTable.PrimitiveArray primitiveArray =
+          (ArrayTable.PrimitiveArray) representation;
+      out.writeInt(primitiveArray.ordinal);
+      out.writeUTF(primitiveArray.primitive.name());
+      out.writeUTF(primitiveArray.p.name());
+      return;
+    case OBJECT_DICTIONARY:
+      final ArrayTable.ObjectDictionary objectDictionary =
+          (ArrayTable.ObjectDictionary) representation;
+      out.writeInt(objectDictionary.ordinal);
+      writeRepresentation(out, objectDictionary.representation);
+      return;
+    case CONSTANT:
+      out.writeInt(((ArrayTable.Constant) representation).ordinal);
+      return;
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      final ArrayTable.BitSlicedPrimitiveArray bitSliced =
+          (ArrayTable.BitSlicedPrimitiveArray) representation;
+      out.writeInt(bitSliced.ordinal);
+      out.writeInt(bitSliced.bitCount);
+      out.writeUTF(bitSliced.primitive.name());
+      out.writeBoolean(bitSliced.signed);
+      return;
+    case RUN_LENGTH_PRIMITIVE_ARRAY:
+      final ArrayTable.RunLengthPrimitiveArray runLength =
+          (ArrayTable.RunLengthPrimitiveArray) representation;
+      out.writeInt(runLength.ordinal);
+      out.writeUTF(runLength.primitive.name());
+      return;
+    case FRAME_OF_REFERENCE_PRIMITIVE_ARRAY:
+      final ArrayTable.FrameOfReferencePrimitiveArray frameOfReference =
+          (ArrayTable.FrameOfReferencePrimitiveArray) representation;
+      out.writeInt(frameOfReference.ordinal);
+      out.writeUTF(frameOfReference.primitive.name());
+      out.writeLong(frameOfReference.base);
+      writeRepresentation(out, frameOfReference.representation);
+      return;
+    default:
+      throw new UnsupportedOperationException(
+          "cannot write representation " + type);
+    }
+  }
+
+  private static ArrayTable.Representation readRepresentation(
+      RandomAccessFile in) throws IOException {
+    final ArrayTable.RepresentationType type =
+        ArrayTable.RepresentationType.valueOf(in.readUTF());
+    switch (type) {
+    case OBJECT_ARRAY:
+      return new ArrayTable.ObjectArray(in.readInt());
+    case PRIMITIVE_ARRAY:
+      return new ArrayTable.PrimitiveArray(in.readInt(),
+          Primitive.valueOf(in.readUTF()), Primitive.valueOf(in.readUTF()));
+    case OBJECT_DICTIONARY:
+      return new ArrayTable.ObjectDictionary(in.readInt(),
+          readRepresentation(in));
+    case CONSTANT:
+      return new ArrayTable.Constant(in.readInt());
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      return new ArrayTable.BitSlicedPrimitiveArray(in.readInt(),
+          in.readInt(), Primitive.valueOf(in.readUTF()), in.readBoolean());
+    case RUN_LENGTH_PRIMITIVE_ARRAY:
+      return new ArrayTable.RunLengthPrimitiveArray(in.readInt(),
+          Primitive.valueOf(in.readUTF()));
+    case FRAME_OF_REFERENCE_PRIMITIVE_ARRAY:
+      return new ArrayTable.FrameOfReferencePrimitiveArray(in.readInt(),
+          Primitive.valueOf(in.readUTF()), in.readLong(),
+          readRepresentation(in));
+    default:
+      throw new IOException("cannot read representation " + type);
+    }
+  }
+
+  private static void writeDataSet(DataOutputStream out,
+      CountingOutputStream counter, ArrayTable.Representation representation,
+      Object dataSet) throws IOException {
+    switch (representation.getType()) {
+    case OBJECT_ARRAY:
+      writeObject(out, dataSet);
+      return;
+    case PRIMITIVE_ARRAY:
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      writeArray(out, counter, dataSet);
+      return;
+    case OBJECT_DICTIONARY:
+      final Pair<Object, Comparable[]> codes =
+          (Pair<Object, Comparable[]>) dataSet;
+      writeDataSet(out, counter,
+          ((ArrayTable.ObjectDictionary) representation).representation,
+          codes.left);
+      writeObject(out, codes.right);
+      return;
+    case CONSTANT:
+      final Pair<Object, Integer> constant = (Pair<Object, Integer>) dataSet;
+      writeObject(out, constant.left);
+      out.writeInt(constant.right);
+      return;
+    case RUN_LENGTH_PRIMITIVE_ARRAY:
+      final Pair<long[], int[]> runs = (Pair<long[], int[]>) dataSet;
+      writeArray(out, counter, runs.left);
+      writeArray(out, counter, runs.right);
+      return;
+    case FRAME_OF_REFERENCE_PRIMITIVE_ARRAY:
+      writeDataSet(out, counter,
+          ((ArrayTable.FrameOfReferencePrimitiveArray) representation)
+              .representation,
+          dataSet);
+      return;
+    default:
+      throw new AssertionError(representation);
+    }
+  }
+
+  private static Object readDataSet(RandomAccessFile in,
+      ArrayTable.Representation representation)
+      throws IOException, ClassNotFoundException {
+    switch (representation.getType()) {
+    case OBJECT_ARRAY:
+      return readObject(in);
+    case PRIMITIVE_ARRAY:
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      return mapArray(in);
+    case OBJECT_DICTIONARY:
+      final Object codes = readDataSet(in,
+          ((ArrayTable.ObjectDictionary) representation).representation);
+      return Pair.of(codes, (Comparable[]) readObject(in));
+    case CONSTANT:
+      final Object value = readObject(in);
+      return Pair.of(value, in.readInt());
+    case RUN_LENGTH_PRIMITIVE_ARRAY:
+      // Runs are small; read them onto the heap.
+      final long[] values = (long[]) ArrayTable.toArray(mapArray(in));
+      final int[] ends = (int[]) ArrayTable.toArray(mapArray(in));
+      return Pair.of(values, ends);
+    case FRAME_OF_REFERENCE_PRIMITIVE_ARRAY:
+      return readDataSet(in,
+          ((ArrayTable.FrameOfReferencePrimitiveArray) representation)
+              .representation);
+    default:
+      throw new AssertionError(representation);
+    }
+  }
+
+  private static void writeObject(DataOutputStream out, Object o)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+    objectOut.writeObject(o);
+    objectOut.close();
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  private static Object readObject(RandomAccessFile in)
+      throws IOException, ClassNotFoundException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    final ObjectInputStream objectIn =
+        new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return objectIn.readObject();
+    } finally {
+      objectIn.close();
+    }
+  }
+
+  /** Writes an array of primitive values, or a buffer holding such values,
+   * aligned so that it can be mapped. */
+  private static void writeArray(DataOutputStream out,
+      CountingOutputStream counter, Object dataSet) throws IOException {
+    final Object array = dataSet instanceof Buffer
+        ? ArrayTable.toArray((Buffer) dataSet)
+        : dataSet;
+    final Primitive primitive =
+        Primitive.of(array.getClass().getComponentType());
+    out.writeUTF(primitive.name());
+    final int length = java.lang.reflect.Array.getLength(array);
+    out.writeInt(length);
+    while (counter.count % 8 != 0) {
+      out.writeByte(0);
+    }
+    switch (primitive) {
+    case LONG:
+      for (long v : (long[]) array) {
+        out.writeLong(v);
+      }
+      return;
+    case INT:
+      for (int v : (int[]) array) {
+        out.writeInt(v);
+      }
+      return;
+    case SHORT:
+      for (short v : (short[]) array) {
+        out.writeShort(v);
+      }
+      return;
+    case BYTE:
+      out.write((byte[]) array);
+      return;
+    case CHAR:
+      for (char v : (char[]) array) {
+        out.writeChar(v);
+      }
+      return;
+    case DOUBLE:
+      for (double v : (double[]) array) {
+        out.writeDouble(v);
+      }
+      return;
+    case FLOAT:
+      for (float v : (float[]) array) {
+        out.writeFloat(v);
+      }
+      return;
+    default:
+      throw new AssertionError(primitive);
+    }
+  }
+
+  /** Maps an array written by {@link #writeArray} into memory, and returns a
+   * buffer of the same type as the array. */
+  private static Buffer mapArray(RandomAccessFile in) throws IOException {
+    final Primitive primitive = Primitive.valueOf(in.readUTF());
+    final int length = in.readInt();
+    long position = in.getFilePointer();
+    position += (8 - position % 8) % 8;
+    final int bytesPerValue = bytesPerValue(primitive);
+    final long byteCount = (long) length * bytesPerValue;
+    final ByteBuffer buffer =
+        in.getChannel().map(FileChannel.MapMode.READ_ONLY, position,
+            byteCount);
+    in.seek(position + byteCount);
+    switch (primitive) {
+    case LONG:
+      return buffer.asLongBuffer();
+    case INT:
+      return buffer.asIntBuffer();
+    case SHORT:
+      return buffer.asShortBuffer();
+    case BYTE:
+      return buffer;
+    case CHAR:
+      return buffer.asCharBuffer();
+    case DOUBLE:
+      return buffer.asDoubleBuffer();
+    case FLOAT:
+      return buffer.asFloatBuffer();
+    default:
+      throw new AssertionError(primitive);
+    }
+  }
+
+  private static int bytesPerValue(Primitive primitive) {
+    switch (primitive) {
+    case LONG:
+    case DOUBLE:
+      return 8;
+    case INT:
+    case FLOAT:
+      return 4;
+    case SHORT:
+    case CHAR:
+      return 2;
+    default:
+      return 1;
+    }
+  }
+
+  /** Output stream that counts the bytes written to it. */
+  private static class CountingOutputStream extends FilterOutputStream {
+    long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override public void write(int b) throws IOException {
+      out.write(b);
+      ++count;
+    }
+
+    @Override public void write(byte[] b, int off, int len)
+        throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
+
+// End ColumnFile.java
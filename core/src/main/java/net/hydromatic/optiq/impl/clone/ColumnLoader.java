@@ -24,6 +24,9 @@
 import net.hydromatic.linq4j.function.Function1;
 import net.hydromatic.linq4j.function.Functions;
 
+import net.hydromatic.optiq.ColumnStatistic;
+import net.hydromatic.optiq.Histogram;
+import net.hydromatic.optiq.Statistics;
 import net.hydromatic.optiq.impl.java.JavaTypeFactory;
 
 import org.eigenbase.reltype.RelDataType;
@@ -49,6 +52,10 @@
     0x2, 0xC, 0xF0, 0xFF00, 0xFFFF0000, 0xFFFFFFFF00000000L};
   static final int[] LONG_S = {1, 2, 4, 8, 16, 32};
 
+  /** Maximum number of buckets in the histogram of each column. */
+  static final int HISTOGRAM_BUCKET_COUNT =
+      Integer.getInteger("optiq.clone.histogram.buckets", 100);
+
   private static final Function1<Timestamp, Long> TIMESTAMP_TO_LONG =
       new Function1<Timestamp, Long>() {
         public Long apply(Timestamp a0) {
@@ -324,13 +331,40 @@ void add(Comparable e) {
     /** Freezes the contents of this value set into a column, optionally
      * re-ordering if {@code sources} is specified. */
     ArrayTable.Column freeze(int ordinal, int[] sources) {
-      ArrayTable.Representation representation = chooseRep(ordinal);
+      ArrayTable.Representation representation = chooseRep(ordinal, sources);
       final int cardinality = map.size() + (containsNull ? 1 : 0);
       final Object data = representation.freeze(this, sources);
-      return new ArrayTable.Column(representation, data, cardinality);
+      return new ArrayTable.Column(representation, data, cardinality,
+          statistic());
+    }
+
+    /** Computes the number of distinct values, null fraction, range and
+     * histogram of the values in this set. */
+    ColumnStatistic statistic() {
+      final List<Comparable> sorted = new ArrayList<Comparable>(values.size());
+      for (Comparable value : values) {
+        if (value != null) {
+          sorted.add(value);
+        }
+      }
+      //noinspection unchecked
+      Collections.sort((List) sorted);
+      final int nullCount = values.size() - sorted.size();
+      return Statistics.column(
+          (double) map.size(),
+          values.isEmpty() ? null : (double) nullCount / values.size(),
+          min,
+          max,
+          Histogram.of(sorted, HISTOGRAM_BUCKET_COUNT));
     }
 
     ArrayTable.Representation chooseRep(int ordinal) {
+      return chooseRep(ordinal, null);
+    }
+
+    /** Chooses a representation for the values of this set, in the order
+     * they will have after being permuted by {@code sources}. */
+    ArrayTable.Representation chooseRep(int ordinal, int[] sources) {
       Primitive primitive = Primitive.of(clazz);
       Primitive boxPrimitive = Primitive.ofBox(clazz);
       Primitive p = primitive != null ? primitive : boxPrimitive;
@@ -344,8 +378,10 @@ ArrayTable.Representation chooseRep(int ordinal) {
           throw new AssertionError("wtf?!");
         }
         if (canBeLong(min) && canBeLong(max)) {
-          return chooseFixedRep(
-              ordinal, p, toLong(min), toLong(max));
+          final long minLong = toLong(min);
+          final long maxLong = toLong(max);
+          return chooseCompressedRep(ordinal, p, minLong, maxLong,
+              chooseFixedRep(ordinal, p, minLong, maxLong), sources);
         }
       }
 
@@ -365,7 +401,7 @@ ArrayTable.Representation chooseRep(int ordinal) {
       return new ArrayTable.ObjectArray(ordinal);
     }
 
-    private long toLong(Object o) {
+    static long toLong(Object o) {
       // We treat Boolean and Character as if they were subclasses of
       // Number but actually they are not.
       if (o instanceof Boolean) {
@@ -441,6 +477,78 @@ private ArrayTable.Representation chooseFixedRep(
           ordinal, bitCount, p, signed);
     }
 
+    /** Chooses a run-length or frame-of-reference representation if it would
+     * take at most half the space of a given fixed representation; otherwise
+     * returns the fixed representation. */
+    private ArrayTable.Representation chooseCompressedRep(int ordinal,
+        Primitive p, long min, long max, ArrayTable.Representation fixed,
+        int[] sources) {
+      final int bitCount = bitCount(fixed);
+      if (bitCount == 0) {
+        return fixed;
+      }
+
+      // Each run costs a 64-bit value and a 32-bit row ordinal.
+      final long runCount = runCount(sources);
+      if (runCount * 96 * 2 <= (long) values.size() * bitCount) {
+        return new ArrayTable.RunLengthPrimitiveArray(ordinal, p);
+      }
+
+      switch (p) {
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+        final long range = max - min;
+        if (range >= 0) { // otherwise the range overflowed
+          final ArrayTable.Representation offsets =
+              chooseFixedRep(-1, Primitive.LONG, 0, range);
+          if (bitCount(offsets) * 2 <= bitCount) {
+            return new ArrayTable.FrameOfReferencePrimitiveArray(
+                ordinal, p, min, offsets);
+          }
+        }
+      }
+      return fixed;
+    }
+
+    /** Returns the number of bits per value used by a fixed
+     * representation. */
+    private static int bitCount(ArrayTable.Representation representation) {
+      if (representation instanceof ArrayTable.BitSlicedPrimitiveArray) {
+        return ((ArrayTable.BitSlicedPrimitiveArray) representation).bitCount;
+      }
+      if (representation instanceof ArrayTable.PrimitiveArray) {
+        switch (((ArrayTable.PrimitiveArray) representation).primitive) {
+        case BYTE:
+          return 8;
+        case SHORT:
+          return 16;
+        case INT:
+          return 32;
+        default:
+          return 64;
+        }
+      }
+      return 0;
+    }
+
+    /** Returns the number of runs of consecutive equal values, in the order
+     * the values will have after being permuted by {@code sources}. */
+    private int runCount(int[] sources) {
+      int runCount = 0;
+      Comparable previous = null;
+      for (int i = 0; i < values.size(); i++) {
+        final Comparable value =
+            values.get(sources == null ? i : sources[i]);
+        if (i == 0 || !value.equals(previous)) {
+          ++runCount;
+        }
+        previous = value;
+      }
+      return runCount;
+    }
+
     /** Two's complement absolute on int value. */
     private static int abs2(int v) {
       // -128 becomes +127
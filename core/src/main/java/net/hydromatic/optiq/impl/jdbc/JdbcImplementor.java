@@ -488,6 +488,16 @@ public void setOrderBy(SqlNodeList nodeList) {
       select.setOrderBy(nodeList);
     }
 
+    public void setOffset(SqlNode offset) {
+      assert clauses.contains(Clause.FETCH);
+      select.setOffset(offset);
+    }
+
+    public void setFetch(SqlNode fetch) {
+      assert clauses.contains(Clause.FETCH);
+      select.setFetch(fetch);
+    }
+
     public Result result() {
       return JdbcImplementor.this.result(select, clauses, rel);
     }
@@ -496,7 +506,7 @@ public Result result() {
   /** Clauses in a SQL query. Ordered by evaluation order.
    * SELECT is set only when there is a NON-TRIVIAL SELECT clause. */
   enum Clause {
-    FROM, WHERE, GROUP_BY, HAVING, SELECT, SET_OP, ORDER_BY
+    FROM, WHERE, GROUP_BY, HAVING, SELECT, SET_OP, ORDER_BY, FETCH
   }
 }
 
@@ -502,6 +502,12 @@ private JdbcAggregateRule(JdbcConvention out) {
 
     public RelNode convert(RelNode rel) {
       final AggregateRel agg = (AggregateRel) rel;
+      for (AggregateCall aggCall : agg.getAggCallList()) {
+        if (!(aggCall.getAggregation() instanceof SqlAggFunction)) {
+          // User-defined aggregate functions cannot be generated as SQL.
+          return null;
+        }
+      }
       final RelTraitSet traitSet =
           agg.getTraitSet().replace(out);
       try {
@@ -577,13 +583,20 @@ private JdbcSortRule(JdbcConvention out) {
 
     public RelNode convert(RelNode rel) {
       final SortRel sort = (SortRel) rel;
-      if (sort.offset != null || sort.fetch != null) {
-        // Cannot implement "OFFSET n FETCH n" currently.
+      if (sort.offset != null
+          && !(sort.offset instanceof RexLiteral
+              && out.dialect.supportsOffset())) {
+        return null;
+      }
+      if (sort.fetch != null
+          && !(sort.fetch instanceof RexLiteral
+              && out.dialect.supportsFetch())) {
         return null;
       }
       final RelTraitSet traitSet = sort.getTraitSet().replace(out);
       return new JdbcSortRel(rel.getCluster(), traitSet,
-          convert(sort.getChild(), traitSet), sort.getCollation());
+          convert(sort.getChild(), traitSet), sort.getCollation(),
+          sort.offset, sort.fetch);
     }
   }
 
@@ -596,21 +609,51 @@ public JdbcSortRel(
         RelTraitSet traitSet,
         RelNode child,
         RelCollation collation) {
-      super(cluster, traitSet, child, collation);
+      this(cluster, traitSet, child, collation, null, null);
+    }
+
+    public JdbcSortRel(
+        RelOptCluster cluster,
+        RelTraitSet traitSet,
+        RelNode child,
+        RelCollation collation,
+        RexNode offset,
+        RexNode fetch) {
+      super(cluster, traitSet, child, collation, offset, fetch);
       assert getConvention() instanceof JdbcConvention;
       assert getConvention() == child.getConvention();
     }
 
     @Override
     public JdbcSortRel copy(RelTraitSet traitSet, RelNode newInput,
-        RelCollation newCollation) {
-      return new JdbcSortRel(getCluster(), traitSet, newInput, newCollation);
+        RelCollation newCollation, RexNode offset, RexNode fetch) {
+      return new JdbcSortRel(getCluster(), traitSet, newInput, newCollation,
+          offset, fetch);
     }
 
     public JdbcImplementor.Result implement(JdbcImplementor implementor) {
+      // "select ... order by ... offset m rows fetch next n rows only"
       final JdbcImplementor.Result x = implementor.visitChild(0, getChild());
+      final List<JdbcImplementor.Clause> clauses =
+          new ArrayList<JdbcImplementor.Clause>();
+      if (!collation.getFieldCollations().isEmpty()) {
+        clauses.add(JdbcImplementor.Clause.ORDER_BY);
+      }
+      if (offset != null || fetch != null) {
+        clauses.add(JdbcImplementor.Clause.FETCH);
+      }
       final JdbcImplementor.Builder builder =
-          x.builder(this, JdbcImplementor.Clause.ORDER_BY);
+          x.builder(this,
+              clauses.toArray(new JdbcImplementor.Clause[clauses.size()]));
+      if (offset != null) {
+        builder.setOffset(builder.context.toSql(null, offset));
+      }
+      if (fetch != null) {
+        builder.setFetch(builder.context.toSql(null, fetch));
+      }
+      if (collation.getFieldCollations().isEmpty()) {
+        return builder.result();
+      }
       List<SqlNode> orderByList = Expressions.list();
       for (RelFieldCollation fieldCollation : collation.getFieldCollations()) {
         if (fieldCollation.nullDirection
@@ -16,13 +16,16 @@
  */
 package net.hydromatic.optiq.impl.jdbc;
 
+import net.hydromatic.linq4j.Ord;
 import net.hydromatic.linq4j.expressions.Expression;
 
 import net.hydromatic.optiq.*;
 import net.hydromatic.optiq.Table;
+import net.hydromatic.optiq.util.BitSets;
 
 import org.eigenbase.reltype.*;
 import org.eigenbase.sql.SqlDialect;
+import org.eigenbase.sql.SqlIdentifier;
 import org.eigenbase.sql.type.SqlTypeFactoryImpl;
 import org.eigenbase.sql.type.SqlTypeName;
 import org.eigenbase.util.Util;
@@ -48,6 +51,7 @@ public class JdbcSchema implements Schema {
   final String schema;
   public final SqlDialect dialect;
   final JdbcConvention convention;
+  final boolean analyze;
   private ImmutableMap<String, JdbcTable> tableMap;
 
   /**
@@ -61,12 +65,30 @@ public class JdbcSchema implements Schema {
    */
   public JdbcSchema(DataSource dataSource, SqlDialect dialect,
       JdbcConvention convention, String catalog, String schema) {
+    this(dataSource, dialect, convention, catalog, schema, false);
+  }
+
+  /**
+   * Creates a JDBC schema, optionally analyzing its tables.
+   *
+   * @param dataSource Data source
+   * @param dialect SQL dialect
+   * @param convention Calling convention
+   * @param catalog Catalog name, or null
+   * @param schema Schema name pattern
+   * @param analyze Whether to query each table for statistics the first
+   *                time the planner needs them
+   */
+  public JdbcSchema(DataSource dataSource, SqlDialect dialect,
+      JdbcConvention convention, String catalog, String schema,
+      boolean analyze) {
     super();
     this.dataSource = dataSource;
     this.dialect = dialect;
     this.convention = convention;
     this.catalog = catalog;
     this.schema = schema;
+    this.analyze = analyze;
     assert dialect != null;
     assert dataSource != null;
   }
@@ -77,12 +99,23 @@ public static JdbcSchema create(
       DataSource dataSource,
       String catalog,
       String schema) {
+    return create(parentSchema, name, dataSource, catalog, schema, false);
+  }
+
+  public static JdbcSchema create(
+      SchemaPlus parentSchema,
+      String name,
+      DataSource dataSource,
+      String catalog,
+      String schema,
+      boolean analyze) {
     final Expression expression =
         Schemas.subSchemaExpression(parentSchema, name, JdbcSchema.class);
     final SqlDialect dialect = createDialect(dataSource);
     final JdbcConvention convention =
         JdbcConvention.of(dialect, expression, name);
-    return new JdbcSchema(dataSource, dialect, convention, catalog, schema);
+    return new JdbcSchema(dataSource, dialect, convention, catalog, schema,
+        analyze);
   }
 
   /**
@@ -115,8 +148,9 @@ public static JdbcSchema create(
     }
     String jdbcCatalog = (String) operand.get("jdbcCatalog");
     String jdbcSchema = (String) operand.get("jdbcSchema");
+    boolean jdbcAnalyze = Boolean.TRUE.equals(operand.get("jdbcAnalyze"));
     return JdbcSchema.create(parentSchema, name, dataSource, jdbcCatalog,
-        jdbcSchema);
+        jdbcSchema, jdbcAnalyze);
   }
 
   /** Returns a suitable SQL dialect for the given data source. */
@@ -232,6 +266,69 @@ RelProtoDataType getRelDataType(String catalogName, String schemaName,
     }
   }
 
+  /** Computes statistics about a table by querying it: its row count, and
+   * the number of distinct values and nulls in each column, and the range of
+   * each numeric column. Returns {@link Statistics#UNKNOWN} if the query
+   * fails. */
+  Statistic analyze(SqlIdentifier tableName, RelDataType rowType) {
+    final StringBuilder buf = new StringBuilder("SELECT COUNT(*)");
+    final List<RelDataTypeField> fields = rowType.getFieldList();
+    for (RelDataTypeField field : fields) {
+      final String column = dialect.quoteIdentifier(field.getName());
+      buf.append(", COUNT(DISTINCT ").append(column).append(")")
+          .append(", COUNT(").append(column).append(")");
+      if (isNumeric(field)) {
+        buf.append(", MIN(").append(column).append(")")
+            .append(", MAX(").append(column).append(")");
+      }
+    }
+    buf.append(" FROM ").append(tableName.toSqlString(dialect).getSql());
+    Connection connection = null;
+    Statement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = dataSource.getConnection();
+      statement = connection.createStatement();
+      resultSet = statement.executeQuery(buf.toString());
+      if (!resultSet.next()) {
+        return Statistics.UNKNOWN;
+      }
+      final double rowCount = resultSet.getLong(1);
+      final List<BitSet> keys = new ArrayList<BitSet>();
+      final List<ColumnStatistic> columns = new ArrayList<ColumnStatistic>();
+      int i = 2;
+      for (Ord<RelDataTypeField> field : Ord.zip(fields)) {
+        final double distinctCount = resultSet.getLong(i++);
+        final double notNullCount = resultSet.getLong(i++);
+        Comparable min = null;
+        Comparable max = null;
+        if (isNumeric(field.e)) {
+          min = (Comparable) resultSet.getObject(i++);
+          max = (Comparable) resultSet.getObject(i++);
+        }
+        if (distinctCount == rowCount) {
+          keys.add(BitSets.of(field.i));
+        }
+        columns.add(
+            Statistics.column(distinctCount,
+                rowCount == 0 ? null : 1d - notNullCount / rowCount,
+                min, max, null));
+      }
+      return Statistics.of(rowCount, keys, columns);
+    } catch (SQLException e) {
+      // The table may contain columns that the database cannot count, such
+      // as LOBs. Carry on without statistics.
+      return Statistics.UNKNOWN;
+    } finally {
+      close(connection, statement, resultSet);
+    }
+  }
+
+  private static boolean isNumeric(RelDataTypeField field) {
+    return SqlTypeName.NUMERIC_TYPES.contains(
+        field.getType().getSqlTypeName());
+  }
+
   RelProtoDataType getRelDataType(DatabaseMetaData metaData, String catalogName,
       String schemaName, String tableName) throws SQLException {
     final ResultSet resultSet =
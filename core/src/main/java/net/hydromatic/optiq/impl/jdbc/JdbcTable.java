@@ -24,6 +24,7 @@
 import net.hydromatic.optiq.impl.AbstractTableQueryable;
 import net.hydromatic.optiq.impl.java.AbstractQueryableTable;
 import net.hydromatic.optiq.impl.java.JavaTypeFactory;
+import net.hydromatic.optiq.jdbc.JavaTypeFactoryImpl;
 import net.hydromatic.optiq.jdbc.OptiqConnection;
 import net.hydromatic.optiq.runtime.ResultSetEnumerable;
 
@@ -59,6 +60,7 @@ class JdbcTable extends AbstractQueryableTable implements TranslatableTable {
   private final String jdbcSchemaName;
   private final String jdbcTableName;
   private final Schema.TableType jdbcTableType;
+  private Statistic statistic;
 
   public JdbcTable(JdbcSchema jdbcSchema, String jdbcCatalogName,
       String jdbcSchemaName, String tableName, Schema.TableType jdbcTableType) {
@@ -78,6 +80,18 @@ public String toString() {
     return jdbcTableType;
   }
 
+  @Override public synchronized Statistic getStatistic() {
+    if (!jdbcSchema.analyze) {
+      return super.getStatistic();
+    }
+    if (statistic == null) {
+      statistic =
+          jdbcSchema.analyze(tableName(),
+              getRowType(new JavaTypeFactoryImpl()));
+    }
+    return statistic;
+  }
+
   public RelDataType getRowType(RelDataTypeFactory typeFactory) {
     if (protoRowType == null) {
       try {
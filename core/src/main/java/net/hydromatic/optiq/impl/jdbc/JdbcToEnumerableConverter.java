@@ -19,6 +19,7 @@
 import net.hydromatic.linq4j.expressions.*;
 
 import net.hydromatic.optiq.BuiltinMethod;
+import net.hydromatic.optiq.DataContext;
 import net.hydromatic.optiq.Schemas;
 import net.hydromatic.optiq.impl.java.JavaTypeFactory;
 import net.hydromatic.optiq.prepare.OptiqPrepareImpl;
@@ -68,7 +69,8 @@ public RelOptCost computeSelfCost(RelOptPlanner planner) {
 
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     // Generate:
-    //   ResultSetEnumerable.of(schema.getDataSource(), "select ...")
+    //   ResultSetEnumerable.of(schema.getDataSource(), "select ...",
+    //       rowBuilderFactory, root)
     final BlockBuilder builder0 = new BlockBuilder(false);
     final JdbcRel child = (JdbcRel) getChild();
     final PhysType physType =
@@ -143,13 +145,14 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         builder0.append(
             "enumerable",
             Expressions.call(
-                BuiltinMethod.RESULT_SET_ENUMERABLE_OF.method,
+                BuiltinMethod.RESULT_SET_ENUMERABLE_OF_CONTEXT.method,
                 Expressions.call(
                     Schemas.unwrap(jdbcConvention.expression,
                         JdbcSchema.class),
                     BuiltinMethod.JDBC_SCHEMA_DATA_SOURCE.method),
                 sql_,
-                rowBuilderFactory_));
+                rowBuilderFactory_,
+                DataContext.ROOT));
     builder0.add(
         Expressions.return_(null, enumerable));
     return implementor.result(physType, builder0.toBlock());
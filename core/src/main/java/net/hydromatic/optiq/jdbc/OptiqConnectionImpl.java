@@ -31,7 +31,9 @@
 import net.hydromatic.optiq.materialize.Lattice;
 import net.hydromatic.optiq.materialize.MaterializationService;
 import net.hydromatic.optiq.prepare.OptiqCatalogReader;
+import net.hydromatic.optiq.runtime.EnumeratorCloser;
 import net.hydromatic.optiq.runtime.Hook;
+import net.hydromatic.optiq.runtime.MemoryBudget;
 import net.hydromatic.optiq.server.OptiqServer;
 import net.hydromatic.optiq.server.OptiqServerStatement;
 
@@ -44,6 +46,7 @@
 
 import com.google.common.collect.*;
 
+import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.*;
 import java.sql.*;
@@ -302,6 +305,30 @@ static class DataContextImpl implements DataContext {
           .put(Variable.CURRENT_TIMESTAMP.camelName, time + currentOffset)
           .put(Variable.LOCAL_TIMESTAMP.camelName, time + localOffset)
           .put(Variable.TIME_ZONE.camelName, timeZone);
+      final long memoryBudget = connection.config().memoryBudget();
+      if (memoryBudget > 0) {
+        final String spillDirectory = connection.config().spillDirectory();
+        builder.put(Variable.MEMORY_BUDGET.camelName,
+            new MemoryBudget(memoryBudget,
+                spillDirectory == null ? null : new File(spillDirectory)));
+      }
+      final int parallelism = connection.config().parallelism();
+      if (parallelism > 1) {
+        builder.put(Variable.PARALLELISM.camelName, parallelism);
+      }
+      final int jdbcFetchSize = connection.config().jdbcFetchSize();
+      if (jdbcFetchSize > 0) {
+        builder.put(Variable.JDBC_FETCH_SIZE.camelName, jdbcFetchSize);
+      }
+      final int jdbcPrefetchSize = connection.config().jdbcPrefetchSize();
+      if (jdbcPrefetchSize > 0) {
+        builder.put(Variable.JDBC_PREFETCH_SIZE.camelName, jdbcPrefetchSize);
+      }
+      if (connection.config().jdbcParallel()) {
+        builder.put(Variable.JDBC_PARALLEL.camelName, true)
+            .put(Variable.ENUMERATOR_CLOSER.camelName,
+                new EnumeratorCloser());
+      }
       for (Ord<Object> value : Ord.zip(parameterValues)) {
         Object e = value.e;
         if (e == null) {
@@ -277,7 +277,11 @@ private Enumerable<T> getEnumerable(DataContext dataContext) {
     }
 
     public Enumerator<T> enumerator(DataContext dataContext) {
-      return getEnumerable(dataContext).enumerator();
+      final Enumerator<T> enumerator =
+          getEnumerable(dataContext).enumerator();
+      final EnumeratorCloser closer =
+          DataContext.Variable.ENUMERATOR_CLOSER.get(dataContext);
+      return closer == null ? enumerator : closer.wrap(enumerator);
     }
 
     public Iterator<T> iterator(DataContext dataContext) {
@@ -17,15 +17,47 @@
 package net.hydromatic.optiq.jdbc;
 
 import net.hydromatic.optiq.Schema;
+import net.hydromatic.optiq.prepare.PlanCache;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Root schema.
  */
 public class OptiqRootSchema extends OptiqSchema {
+  /** Incremented each time an object is added to this schema or one of its
+   * sub-schemas, or a schema's path changes. */
+  private final AtomicLong version = new AtomicLong();
+
+  /** Cache of prepared statements; created on first use. */
+  private PlanCache planCache;
+
   /** Creates a root schema. */
   OptiqRootSchema(Schema schema) {
     super(null, schema, "");
   }
+
+  /** Returns the version of this schema tree. Any plan prepared against an
+   * earlier version may refer to objects that have since been replaced. */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /** Called when an object in this schema tree has been added or
+   * changed. */
+  void bumpVersion() {
+    version.incrementAndGet();
+  }
+
+  /** Returns the plan cache of this schema tree, creating it if necessary.
+   * Returns null if {@code maxSize} is 0 and the cache has not been
+   * created. */
+  public synchronized PlanCache getPlanCache(int maxSize) {
+    if (planCache == null && maxSize > 0) {
+      planCache = new PlanCache(maxSize);
+    }
+    return planCache;
+  }
 }
 
 // End OptiqRootSchema.java
@@ -127,6 +127,7 @@ public TableEntry add(String tableName, Table table) {
     final TableEntryImpl entry =
         new TableEntryImpl(this, tableName, table);
     tableMap.put(tableName, entry);
+    root().bumpVersion();
     return entry;
   }
 
@@ -138,6 +139,7 @@ private FunctionEntry add(String name, Function function) {
     if (function.getParameters().isEmpty()) {
       nullaryFunctionMap.put(name, entry);
     }
+    root().bumpVersion();
     return entry;
   }
 
@@ -147,6 +149,7 @@ private LatticeEntry add(String name, Lattice lattice) {
     }
     final LatticeEntryImpl entry = new LatticeEntryImpl(this, name, lattice);
     latticeMap.put(name, entry);
+    root().bumpVersion();
     return entry;
   }
 
@@ -224,6 +227,7 @@ public final OptiqSchema getSubSchema(String schemaName,
   public OptiqSchema add(String name, Schema schema) {
     final OptiqSchema optiqSchema = new OptiqSchema(this, schema, name);
     subSchemaMap.put(name, optiqSchema);
+    root().bumpVersion();
     return optiqSchema;
   }
 
@@ -613,6 +617,7 @@ public <T> T unwrap(Class<T> clazz) {
 
     public void setPath(ImmutableList<ImmutableList<String>> path) {
       OptiqSchema.this.path = path;
+      root().bumpVersion();
     }
 
     public void add(String name, Table table) {
@@ -28,6 +28,7 @@ public class JsonJdbcSchema extends JsonSchema {
   public String jdbcPassword;
   public String jdbcCatalog;
   public String jdbcSchema;
+  public Boolean jdbcAnalyze;
 
   @Override
   public void accept(ModelHandler handler) {
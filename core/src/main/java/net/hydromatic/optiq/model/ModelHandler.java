@@ -207,7 +207,8 @@ public void visit(JsonJdbcSchema jsonSchema) {
             jsonSchema.jdbcPassword);
     JdbcSchema schema =
         JdbcSchema.create(parentSchema, jsonSchema.name, dataSource,
-            jsonSchema.jdbcCatalog, jsonSchema.jdbcSchema);
+            jsonSchema.jdbcCatalog, jsonSchema.jdbcSchema,
+            Boolean.TRUE.equals(jsonSchema.jdbcAnalyze));
     final SchemaPlus optiqSchema = parentSchema.add(jsonSchema.name, schema);
     populateSchema(jsonSchema, optiqSchema);
   }
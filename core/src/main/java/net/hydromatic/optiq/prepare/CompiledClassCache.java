@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.prepare;
+
+import net.hydromatic.optiq.runtime.Hook;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe cache of classes compiled from generated Java source.
+ *
+ * <p>The key is the generated source code. Two statements that differ only in
+ * the values of their dynamic parameters generate identical code, and
+ * therefore share a compiled class.</p>
+ *
+ * <p>The cache holds classes, not instances. Generated classes store the
+ * {@link net.hydromatic.optiq.DataContext} in a field, so each statement must
+ * have its own instance.</p>
+ *
+ * <p>After each lookup, calls {@link Hook#COMPILED_CLASS_CACHE} with the
+ * current {@link Statistics}.</p>
+ */
+public class CompiledClassCache {
+  /** Default maximum number of classes in a cache. Override by setting the
+   * system property "optiq.compiled.class.cache.max.size"; a value of 0
+   * disables caching. */
+  public static final int DEFAULT_MAX_SIZE =
+      Integer.getInteger("optiq.compiled.class.cache.max.size", 1000);
+
+  private final String name;
+  private final int maxSize;
+  private final Cache<String, Class> cache;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /** Creates a CompiledClassCache.
+   *
+   * @param name Name of the cache, used when reporting statistics
+   * @param maxSize Maximum number of classes; if 0, the cache is disabled
+   */
+  public CompiledClassCache(String name, int maxSize) {
+    this.name = name;
+    this.maxSize = maxSize;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .removalListener(
+            new RemovalListener<String, Class>() {
+              public void onRemoval(
+                  RemovalNotification<String, Class> notification) {
+                if (notification.wasEvicted()) {
+                  evictionCount.incrementAndGet();
+                }
+              }
+            })
+        .build();
+  }
+
+  /** Returns the class compiled from the given source, calling
+   * {@code compiler} if it is not in the cache.
+   *
+   * <p>If several threads ask for the same source at the same time, only one
+   * of them compiles it; the others wait.</p>
+   *
+   * @param source Generated source code
+   * @param compiler Compiles the source; called at most once per cache miss
+   * @return Compiled class
+   * @throws Exception if compilation fails
+   */
+  public Class get(String source, final Callable<Class> compiler)
+      throws Exception {
+    if (maxSize <= 0) {
+      missCount.incrementAndGet();
+      return compiler.call();
+    }
+    final boolean[] compiled = {false};
+    final Class clazz;
+    try {
+      clazz = cache.get(source,
+          new Callable<Class>() {
+            public Class call() throws Exception {
+              compiled[0] = true;
+              return compiler.call();
+            }
+          });
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), Exception.class);
+      throw Throwables.propagate(e.getCause());
+    }
+    if (compiled[0]) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    Hook.COMPILED_CLASS_CACHE.run(statistics());
+    return clazz;
+  }
+
+  /** Removes all entries from this cache. Does not reset statistics. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Returns a snapshot of this cache's statistics. */
+  public Statistics statistics() {
+    return new Statistics(name, hitCount.get(), missCount.get(),
+        evictionCount.get(), cache.size());
+  }
+
+  /** Snapshot of the statistics of a {@link CompiledClassCache}. */
+  public static class Statistics {
+    public final String name;
+    public final long hitCount;
+    public final long missCount;
+    public final long evictionCount;
+    public final long size;
+
+    public Statistics(String name, long hitCount, long missCount,
+        long evictionCount, long size) {
+      this.name = name;
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.evictionCount = evictionCount;
+      this.size = size;
+    }
+
+    @Override public String toString() {
+      return "{name: " + name
+          + ", hits: " + hitCount
+          + ", misses: " + missCount
+          + ", evictions: " + evictionCount
+          + ", size: " + size
+          + "}";
+    }
+  }
+}
+
+// End CompiledClassCache.java
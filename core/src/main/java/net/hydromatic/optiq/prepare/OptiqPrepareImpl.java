@@ -31,11 +31,13 @@
 import net.hydromatic.optiq.jdbc.OptiqSchema;
 import net.hydromatic.optiq.materialize.MaterializationService;
 import net.hydromatic.optiq.rules.java.*;
+import net.hydromatic.optiq.rules.vector.VectorRules;
 import net.hydromatic.optiq.runtime.*;
 import net.hydromatic.optiq.server.OptiqServerStatement;
 import net.hydromatic.optiq.tools.Frameworks;
 
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.RelMetadataQuery;
 import org.eigenbase.rel.rules.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.relopt.hep.*;
@@ -55,6 +57,8 @@
 import org.eigenbase.sql2rel.StandardConvertletTable;
 import org.eigenbase.util.Util;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.*;
 
 import org.codehaus.commons.compiler.CompileException;
@@ -70,6 +74,7 @@
 import java.math.BigDecimal;
 import java.sql.DatabaseMetaData;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Shit just got real.
@@ -93,6 +98,10 @@ public class OptiqPrepareImpl implements OptiqPrepare {
    * disabled, then enabled. */
   private static final boolean ENABLE_COLLATION_TRAIT = true;
 
+  /** Classes compiled from generated Java code, shared by all statements. */
+  public static final CompiledClassCache BINDABLE_CACHE =
+      new CompiledClassCache("bindable", CompiledClassCache.DEFAULT_MAX_SIZE);
+
   private static final Set<String> SIMPLE_SQLS =
       ImmutableSet.of(
           "SELECT 1",
@@ -238,6 +247,9 @@ protected RelOptPlanner createPlanner(
     }
     final VolcanoPlanner planner =
         new VolcanoPlanner(costFactory, externalContext);
+    final OptiqConnectionConfig config = prepareContext.config();
+    planner.setTimeBudget(config.plannerTimeBudget());
+    planner.setTickBudget(config.plannerTickBudget());
     planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
     if (ENABLE_COLLATION_TRAIT) {
       planner.addRelTraitDef(RelCollationTraitDef.INSTANCE);
@@ -255,6 +267,12 @@ protected RelOptPlanner createPlanner(
       }
     }
 
+    if (prepareContext.config().vectorize()) {
+      for (RelOptRule rule : VectorRules.RULES) {
+        planner.addRule(rule);
+      }
+    }
+
     final SparkHandler spark = prepareContext.spark();
     if (spark.enabled()) {
       spark.registerRules(
@@ -295,6 +313,27 @@ <T> PrepareResult<T> prepare_(
     if (SIMPLE_SQLS.contains(sql)) {
       return simplePrepare(context, sql);
     }
+    final PlanCache planCache =
+        sql == null
+            ? null
+            : context.getRootSchema().getPlanCache(
+                context.config().planCacheSize());
+    final List<Object> planKey;
+    final long schemaVersion;
+    if (planCache != null) {
+      // Read the version before preparing. If the schema changes while we
+      // are preparing, the entry we add will be out of date.
+      schemaVersion = context.getRootSchema().getVersion();
+      planKey = PlanCache.key(sql, context.getDefaultSchemaPath(), elementType,
+          maxRowCount);
+      final PrepareResult<T> result = planCache.get(planKey, schemaVersion);
+      if (result != null) {
+        return result;
+      }
+    } else {
+      schemaVersion = -1;
+      planKey = null;
+    }
     final JavaTypeFactory typeFactory = context.getTypeFactory();
     OptiqCatalogReader catalogReader =
         new OptiqCatalogReader(
@@ -314,9 +353,13 @@ <T> PrepareResult<T> prepare_(
         throw new AssertionError("factory returned null planner");
       }
       try {
-        return prepare2_(
-            context, sql, queryable, elementType, maxRowCount,
-            catalogReader, planner);
+        final PrepareResult<T> result =
+            prepare2_(context, sql, queryable, elementType, maxRowCount,
+                catalogReader, planner);
+        if (planCache != null) {
+          planCache.put(planKey, schemaVersion, result);
+        }
+        return result;
       } catch (RelOptPlanner.CannotPlanException e) {
         exception = e;
       }
@@ -607,6 +650,16 @@ public <R> R perform(OptiqServerStatement statement,
         createPlanner(prepareContext,
             action.getConfig().getContext(),
             action.getConfig().getCostFactory());
+    if (planner instanceof VolcanoPlanner) {
+      // Budgets in the framework config override connection properties.
+      final VolcanoPlanner volcanoPlanner = (VolcanoPlanner) planner;
+      if (action.getConfig().getPlannerTimeBudget() > 0) {
+        volcanoPlanner.setTimeBudget(action.getConfig().getPlannerTimeBudget());
+      }
+      if (action.getConfig().getPlannerTickBudget() > 0) {
+        volcanoPlanner.setTickBudget(action.getConfig().getPlannerTickBudget());
+      }
+    }
     final RelOptQuery query = new RelOptQuery(planner);
     final RelOptCluster cluster =
         query.createCluster(rexBuilder.getTypeFactory(), rexBuilder);
@@ -791,9 +844,10 @@ protected PreparedResult implement(
       boolean isDml = sqlKind.belongsTo(SqlKind.DML);
       EnumerableRelImplementor relImplementor =
           getRelImplementor(rootRel.getCluster().getRexBuilder());
-      ClassDeclaration expr =
+      final ClassDeclaration expr =
           relImplementor.implementRoot((EnumerableRel) rootRel, prefer);
-      String s = Expressions.toString(expr.memberDeclarations, "\n", false);
+      final String s =
+          Expressions.toString(expr.memberDeclarations, "\n", false);
 
       if (DEBUG) {
         debugCode(System.out, s);
@@ -801,15 +855,25 @@ protected PreparedResult implement(
 
       Hook.JAVA_PLAN.run(s);
 
-      final Bindable bindable;
-      try {
-        bindable = getBindable(expr, s);
-      } catch (Exception e) {
-        throw Helper.INSTANCE.wrap(
-            "Error while compiling generated Java code:\n"
-            + s,
-            e);
+      Bindable interpreted = null;
+      if (!isDml && shouldInterpret(rootRel)) {
+        try {
+          interpreted =
+              EnumerableInterpreter.create(context.getTypeFactory(),
+                  (EnumerableRel) rootRel,
+                  Suppliers.memoize(
+                      new Supplier<Bindable>() {
+                        public Bindable get() {
+                          return getCompiledBindable(expr, s);
+                        }
+                      }));
+        } catch (UnsupportedOperationException e) {
+          // The interpreter does not support this plan. Compile it.
+        }
       }
+      final Bindable bindable = interpreted != null
+          ? interpreted
+          : getCompiledBindable(expr, s);
 
       if (timingTracer != null) {
         timingTracer.traceTime("end codegen");
@@ -840,6 +904,29 @@ public Type getElementType() {
       };
     }
 
+    /** Returns whether to execute a plan by interpreting it rather than by
+     * compiling its generated code. True if rows are arrays, and no
+     * relational expression in the plan is expected to produce as many rows
+     * as the "interpreterThreshold" connection property. */
+    private boolean shouldInterpret(RelNode rootRel) {
+      final long threshold = context.config().interpreterThreshold();
+      return threshold > 0
+          && prefer == EnumerableRel.Prefer.ARRAY
+          && !context.spark().enabled()
+          && maxRowCount(rootRel) < threshold;
+    }
+
+    /** Returns the largest number of rows that any relational expression in
+     * a tree is expected to produce. */
+    private static double maxRowCount(RelNode rel) {
+      final Double rowCount = RelMetadataQuery.getRowCount(rel);
+      double max = rowCount == null ? Double.POSITIVE_INFINITY : rowCount;
+      for (RelNode input : rel.getInputs()) {
+        max = Math.max(max, maxRowCount(input));
+      }
+      return max;
+    }
+
     /**
      * Prints the given code with line numbering.
      */
@@ -864,11 +951,35 @@ private void debugCode(PrintStream out, String code) {
       }
     }
 
-    private Bindable getBindable(ClassDeclaration expr,
-        String s) throws CompileException, IOException {
+    private Bindable getCompiledBindable(ClassDeclaration expr, String s) {
+      try {
+        return getBindable(expr, s);
+      } catch (Exception e) {
+        throw Helper.INSTANCE.wrap(
+            "Error while compiling generated Java code:\n"
+            + s,
+            e);
+      }
+    }
+
+    private Bindable getBindable(final ClassDeclaration expr,
+        final String s) throws Exception {
       if (context.spark().enabled()) {
-        return context.spark().compile(expr, s);
+        return new CompiledBindable(
+            context.spark().compile(expr, s).getClass());
       }
+      final Class clazz =
+          BINDABLE_CACHE.get(s,
+              new Callable<Class>() {
+                public Class call() throws Exception {
+                  return compile(expr, s);
+                }
+              });
+      return new CompiledBindable(clazz);
+    }
+
+    private Class compile(ClassDeclaration expr,
+        String s) throws CompileException, IOException {
       ICompilerFactory compilerFactory;
       try {
         compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
@@ -885,7 +996,43 @@ private Bindable getBindable(ClassDeclaration expr,
         // Add line numbers to the generated janino class
         cbe.setDebuggingInformation(true, true, true);
       }
-      return (Bindable) cbe.createInstance(new StringReader(s));
+      cbe.cook(new StringReader(s));
+      return cbe.getClazz();
+    }
+  }
+
+  /** Bindable that creates an instance of a compiled class each time it is
+   * bound.
+   *
+   * <p>An instance of generated code stores the {@link DataContext} it is
+   * bound to in a field, and its enumerators read that field while they are
+   * iterated. A prepared statement may be executed again (or, via the plan
+   * cache, by another statement) while a result set from an earlier execution
+   * is still open; if the executions shared an instance, the open result set
+   * would read the later execution's parameters. */
+  private static class CompiledBindable implements Bindable, Typed {
+    private final Class clazz;
+    private final Type elementType;
+
+    CompiledBindable(Class clazz) throws Exception {
+      this.clazz = clazz;
+      this.elementType = ((Typed) clazz.newInstance()).getElementType();
+    }
+
+    public Enumerable bind(DataContext dataContext) {
+      final Bindable bindable;
+      try {
+        bindable = (Bindable) clazz.newInstance();
+      } catch (InstantiationException e) {
+        throw new RuntimeException(e);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+      return bindable.bind(dataContext);
+    }
+
+    public Type getElementType() {
+      return elementType;
     }
   }
 
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.prepare;
+
+import net.hydromatic.optiq.jdbc.OptiqPrepare;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the results of preparing SQL statements.
+ *
+ * <p>The key is the SQL text, the default schema path, the element type and
+ * the maximum row count. Each entry remembers the version of the root schema
+ * (see {@link net.hydromatic.optiq.jdbc.OptiqRootSchema#getVersion()}) that
+ * it was prepared against; an entry prepared against an older version is
+ * discarded when it is next looked up.</p>
+ *
+ * <p>When the cache is full, the least-recently used entries are evicted.</p>
+ *
+ * <p>Changes to the contents of a schema that are not made via
+ * {@link net.hydromatic.optiq.SchemaPlus} (for instance, a new table appearing
+ * in the back-end database of a JDBC schema) do not change the version.
+ * Disable the cache if your schemas change in this way.</p>
+ */
+public class PlanCache {
+  private final Cache<List<Object>, Entry> cache;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong staleCount = new AtomicLong();
+
+  /** Creates a PlanCache that holds at most {@code maxSize} entries. */
+  public PlanCache(int maxSize) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .build();
+  }
+
+  /** Creates a cache key. */
+  public static List<Object> key(String sql, List<String> defaultSchemaPath,
+      Type elementType, int maxRowCount) {
+    return ImmutableList.<Object>of(sql,
+        ImmutableList.copyOf(defaultSchemaPath), elementType, maxRowCount);
+  }
+
+  /** Returns the cached result for a given key, or null if there is no
+   * result prepared against the given schema version. */
+  public <T> OptiqPrepare.PrepareResult<T> get(List<Object> key,
+      long version) {
+    final Entry entry = cache.getIfPresent(key);
+    if (entry == null) {
+      missCount.incrementAndGet();
+      return null;
+    }
+    if (entry.version != version) {
+      staleCount.incrementAndGet();
+      cache.invalidate(key);
+      return null;
+    }
+    hitCount.incrementAndGet();
+    //noinspection unchecked
+    return (OptiqPrepare.PrepareResult<T>) entry.result;
+  }
+
+  /** Adds a result that was prepared against a given schema version. */
+  public void put(List<Object> key, long version,
+      OptiqPrepare.PrepareResult result) {
+    cache.put(key, new Entry(version, result));
+  }
+
+  /** Removes all entries. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  /** Returns the number of lookups that found a valid entry. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of lookups that found no entry. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of lookups that found an entry prepared against an
+   * out-of-date schema. */
+  public long getStaleCount() {
+    return staleCount.get();
+  }
+
+  /** Entry in a {@link PlanCache}. */
+  private static class Entry {
+    final long version;
+    final OptiqPrepare.PrepareResult result;
+
+    Entry(long version, OptiqPrepare.PrepareResult result) {
+      this.version = version;
+      this.result = result;
+    }
+  }
+}
+
+// End PlanCache.java
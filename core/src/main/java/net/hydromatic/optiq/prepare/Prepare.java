@@ -112,6 +112,14 @@ protected RelNode optimize(RelDataType logicalRowType, final RelNode rootRel,
     final DataContext dataContext = context.getDataContext();
     planner.setExecutor(new RexExecutorImpl(dataContext));
 
+    final RelOptRuleProfiler profiler;
+    if (context.config().ruleProfile()) {
+      profiler = new RelOptRuleProfiler();
+      planner.addListener(profiler);
+    } else {
+      profiler = null;
+    }
+
     for (Materialization materialization : materializations) {
       planner.addMaterialization(
           new RelOptMaterialization(materialization.tableRel,
@@ -135,6 +143,12 @@ protected RelNode optimize(RelDataType logicalRowType, final RelNode rootRel,
           "Plan after physical tweaks: "
           + RelOptUtil.toString(rootRel4, SqlExplainLevel.ALL_ATTRIBUTES));
     }
+    if (profiler != null) {
+      if (LOGGER.isLoggable(Level.FINE)) {
+        LOGGER.fine("Rule profile:\n" + profiler.report());
+      }
+      Hook.RULE_PROFILE.run(profiler);
+    }
 
     return rootRel4;
   }
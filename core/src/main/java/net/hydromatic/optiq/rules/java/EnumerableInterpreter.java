@@ -0,0 +1,509 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.rules.java;
+
+import net.hydromatic.linq4j.AbstractEnumerable;
+import net.hydromatic.linq4j.Enumerable;
+import net.hydromatic.linq4j.Enumerator;
+import net.hydromatic.linq4j.Linq4j;
+import net.hydromatic.linq4j.Queryable;
+import net.hydromatic.linq4j.expressions.Primitive;
+import net.hydromatic.linq4j.function.Function1;
+import net.hydromatic.linq4j.function.Predicate1;
+
+import net.hydromatic.optiq.DataContext;
+import net.hydromatic.optiq.QueryableTable;
+import net.hydromatic.optiq.SchemaPlus;
+import net.hydromatic.optiq.Table;
+import net.hydromatic.optiq.impl.java.JavaTypeFactory;
+import net.hydromatic.optiq.runtime.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.RelOptTable;
+import org.eigenbase.reltype.RelDataType;
+import org.eigenbase.reltype.RelDataTypeField;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.type.SqlTypeName;
+import org.eigenbase.util.Util;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Executes a tree of {@link EnumerableRel} relational expressions by
+ * interpreting it, rather than by generating and compiling Java code.
+ *
+ * <p>Compiling the generated code of a statement takes much longer than
+ * executing a statement that reads only a few rows; interpreting such a
+ * statement gives it lower latency. The interpreter supports table scans,
+ * {@code VALUES}, filters, projections, calcs, sorts, limits and
+ * {@code UNION ALL}, and evaluates expressions using
+ * {@link RexInterpreter}. Each node reads rows from its input as they are
+ * needed, so a limit stops reading its input once it has enough rows; only a
+ * sort holds all of its input in memory.</p>
+ *
+ * <p>Rows have the same representation as in generated code, so the
+ * interpreter and generated code are interchangeable. If the tree uses an
+ * operator or expression that the interpreter does not support,
+ * {@link #create} throws. If the interpreter cannot evaluate an expression
+ * for a particular row, for example because arithmetic would overflow, the
+ * statement is executed using generated code instead. So that this can
+ * happen before any row has been returned, the statement's rows are read
+ * into memory when it starts executing; the interpreter is only used for
+ * statements that produce few rows.</p>
+ */
+public class EnumerableInterpreter {
+  private EnumerableInterpreter() {
+  }
+
+  /** Creates a {@link Bindable} that executes a relational expression by
+   * interpreting it. The rows are arrays, or values if there is one column.
+   *
+   * @param typeFactory Type factory
+   * @param rel Relational expression
+   * @param fallback Supplies a bindable that executes the relational
+   *                 expression using generated code; called if the
+   *                 interpreter cannot evaluate an expression
+   * @return Bindable that is also {@link Typed}
+   * @throws UnsupportedOperationException if the tree contains a relational
+   *   expression or a row expression that the interpreter does not support
+   */
+  public static Bindable create(JavaTypeFactory typeFactory,
+      EnumerableRel rel, Supplier<Bindable> fallback) {
+    final List<RelDataTypeField> fields = rel.getRowType().getFieldList();
+    final Type elementType;
+    switch (fields.size()) {
+    case 0:
+      throw unsupported(rel);
+    case 1:
+      elementType = typeFactory.getJavaClass(fields.get(0).getType());
+      break;
+    default:
+      elementType = Object[].class;
+    }
+    return new InterpretedBindable(node(rel), elementType, fields.size() == 1,
+        fallback);
+  }
+
+  private static UnsupportedOperationException unsupported(Object o) {
+    return new UnsupportedOperationException("cannot interpret " + o);
+  }
+
+  private static Node node(RelNode rel) {
+    if (rel instanceof JavaRules.EnumerableTableAccessRel) {
+      return new TableAccessNode((JavaRules.EnumerableTableAccessRel) rel);
+    } else if (rel instanceof JavaRules.EnumerableValuesRel) {
+      return new ValuesNode((JavaRules.EnumerableValuesRel) rel);
+    } else if (rel instanceof JavaRules.EnumerableFilterRel) {
+      final JavaRules.EnumerableFilterRel filter =
+          (JavaRules.EnumerableFilterRel) rel;
+      return new CalcNode(node(filter.getChild()), filter.getCondition(),
+          null);
+    } else if (rel instanceof JavaRules.EnumerableProjectRel) {
+      final JavaRules.EnumerableProjectRel project =
+          (JavaRules.EnumerableProjectRel) rel;
+      return new CalcNode(node(project.getChild()), null,
+          project.getProjects());
+    } else if (rel instanceof JavaRules.EnumerableCalcRel) {
+      final JavaRules.EnumerableCalcRel calc =
+          (JavaRules.EnumerableCalcRel) rel;
+      final RexProgram program = calc.getProgram();
+      final List<RexNode> projects = new ArrayList<RexNode>();
+      for (RexLocalRef ref : program.getProjectList()) {
+        projects.add(program.expandLocalRef(ref));
+      }
+      return new CalcNode(node(calc.getChild()),
+          program.getCondition() == null
+              ? null
+              : program.expandLocalRef(program.getCondition()),
+          projects);
+    } else if (rel instanceof JavaRules.EnumerableSortRel) {
+      final JavaRules.EnumerableSortRel sort =
+          (JavaRules.EnumerableSortRel) rel;
+      if (sort.offset != null || sort.fetch != null) {
+        throw unsupported(rel);
+      }
+      return new SortNode(node(sort.getChild()),
+          sort.getCollation().getFieldCollations());
+    } else if (rel instanceof JavaRules.EnumerableLimitRel) {
+      final JavaRules.EnumerableLimitRel limit =
+          (JavaRules.EnumerableLimitRel) rel;
+      return new LimitNode(node(limit.getChild()),
+          limit.offset == null ? 0 : RexLiteral.intValue(limit.offset),
+          limit.fetch == null ? -1 : RexLiteral.intValue(limit.fetch));
+    } else if (rel instanceof JavaRules.EnumerableUnionRel
+        && ((JavaRules.EnumerableUnionRel) rel).all) {
+      final List<Node> inputs = new ArrayList<Node>();
+      for (RelNode input : rel.getInputs()) {
+        inputs.add(node(input));
+      }
+      return new UnionAllNode(inputs);
+    }
+    throw unsupported(rel);
+  }
+
+  /** Node in a tree of interpreted relational expressions. */
+  private interface Node {
+    /** Returns the rows produced by this node. Rows are computed as they are
+     * enumerated; the caller must not modify them. */
+    Enumerable<Object[]> execute(DataContext dataContext);
+  }
+
+  /** Bindable that executes a tree of nodes. */
+  private static class InterpretedBindable implements Bindable, Typed {
+    private final Node node;
+    private final Type elementType;
+    private final boolean scalar;
+    private final Supplier<Bindable> fallback;
+
+    InterpretedBindable(Node node, Type elementType, boolean scalar,
+        Supplier<Bindable> fallback) {
+      this.node = node;
+      this.elementType = elementType;
+      this.scalar = scalar;
+      this.fallback = fallback;
+    }
+
+    public Enumerable bind(final DataContext dataContext) {
+      return new AbstractEnumerable<Object>() {
+        public Enumerator<Object> enumerator() {
+          // Read every row before returning the first, so that if the
+          // interpreter fails part way, generated code can produce all of
+          // the rows instead.
+          final List<Object> rows = new ArrayList<Object>();
+          try {
+            final Enumerator<Object[]> enumerator =
+                node.execute(dataContext).enumerator();
+            try {
+              while (enumerator.moveNext()) {
+                final Object[] row = enumerator.current();
+                rows.add(scalar ? row[0] : row);
+              }
+            } finally {
+              enumerator.close();
+            }
+          } catch (UnsupportedOperationException e) {
+            //noinspection unchecked
+            return fallback.get().bind(dataContext).enumerator();
+          }
+          return Linq4j.enumerator(rows);
+        }
+      };
+    }
+
+    public Type getElementType() {
+      return elementType;
+    }
+  }
+
+  /** Node that reads the rows of a {@link QueryableTable}.
+   *
+   * <p>As in generated code, if the table has one column, each element is a
+   * value; if the table's element type is an array, each element is a row;
+   * otherwise each column is a public field of the element. */
+  private static class TableAccessNode implements Node {
+    private final List<String> names;
+    private final int fieldCount;
+    private final Field[] fields;
+
+    TableAccessNode(JavaRules.EnumerableTableAccessRel rel) {
+      final RelOptTable table = rel.getTable();
+      if (table.unwrap(QueryableTable.class) == null) {
+        throw unsupported(rel);
+      }
+      this.names = table.getQualifiedName();
+      final List<RelDataTypeField> fieldList = rel.getRowType().getFieldList();
+      this.fieldCount = fieldList.size();
+      if (fieldCount == 0) {
+        throw unsupported(rel);
+      }
+      if (fieldCount == 1 || Object[].class.isAssignableFrom(rel.elementType)) {
+        this.fields = null;
+        return;
+      }
+      this.fields = new Field[fieldCount];
+      for (RelDataTypeField field : fieldList) {
+        final Field javaField;
+        try {
+          javaField = rel.elementType.getField(field.getName());
+        } catch (NoSuchFieldException e) {
+          throw unsupported(rel);
+        }
+        if (!isSupported(javaField.getType())) {
+          throw unsupported(javaField);
+        }
+        fields[field.getIndex()] = javaField;
+      }
+    }
+
+    /** Returns whether values of a Java field have the same representation
+     * as in generated code. (Generated code converts, say, a
+     * {@link java.sql.Date}.) */
+    private static boolean isSupported(Class clazz) {
+      final Primitive primitive = Primitive.ofBoxOr(clazz);
+      return primitive != null && primitive != Primitive.CHAR
+          || clazz == String.class
+          || clazz == BigDecimal.class;
+    }
+
+    public Enumerable<Object[]> execute(final DataContext dataContext) {
+      return new AbstractEnumerable<Object[]>() {
+        public Enumerator<Object[]> enumerator() {
+          return table(dataContext)
+              .select(
+                  new Function1<Object, Object[]>() {
+                    public Object[] apply(Object element) {
+                      return row(element);
+                    }
+                  })
+              .enumerator();
+        }
+      };
+    }
+
+    /** Finds the table in the data context's schema. */
+    private Enumerable<Object> table(DataContext dataContext) {
+      SchemaPlus schema = dataContext.getRootSchema();
+      for (String name : Util.skipLast(names)) {
+        schema = schema.getSubSchema(name);
+        if (schema == null) {
+          throw unsupported(names);
+        }
+      }
+      final String tableName = Util.last(names);
+      final Table table = schema.getTable(tableName);
+      if (!(table instanceof QueryableTable)) {
+        throw unsupported(names);
+      }
+      final Queryable<Object> queryable =
+          ((QueryableTable) table).asQueryable(dataContext.getQueryProvider(),
+              schema, tableName);
+      return queryable.asEnumerable();
+    }
+
+    private Object[] row(Object element) {
+      if (fields == null) {
+        return fieldCount == 1 ? new Object[] {element} : (Object[]) element;
+      }
+      final Object[] row = new Object[fieldCount];
+      try {
+        for (int i = 0; i < fieldCount; i++) {
+          row[i] = fields[i].get(element);
+        }
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      }
+      return row;
+    }
+  }
+
+  /** Node that returns constant rows. */
+  private static class ValuesNode implements Node {
+    private final List<Object[]> rows;
+
+    ValuesNode(JavaRules.EnumerableValuesRel rel) {
+      final List<RelDataTypeField> fields = rel.getRowType().getFieldList();
+      final ImmutableList.Builder<Object[]> builder = ImmutableList.builder();
+      for (List<RexLiteral> tuple : rel.getTuples()) {
+        final Object[] row = new Object[tuple.size()];
+        for (int i = 0; i < row.length; i++) {
+          final RexLiteral literal = tuple.get(i);
+          // Generated code converts a literal to the type of its column;
+          // we only handle literals that need no conversion.
+          if (!RexLiteral.isNullLiteral(literal)
+              && !sameType(literal.getType(), fields.get(i).getType())) {
+            throw unsupported(literal);
+          }
+          row[i] = RexInterpreter.evaluate(literal, null);
+        }
+        builder.add(row);
+      }
+      this.rows = builder.build();
+    }
+
+    private static boolean sameType(RelDataType type0, RelDataType type1) {
+      final SqlTypeName name0 = type0.getSqlTypeName();
+      final SqlTypeName name1 = type1.getSqlTypeName();
+      return name0 == name1
+          || SqlTypeName.CHAR_TYPES.contains(name0)
+          && SqlTypeName.CHAR_TYPES.contains(name1);
+    }
+
+    public Enumerable<Object[]> execute(DataContext dataContext) {
+      return Linq4j.asEnumerable(rows);
+    }
+  }
+
+  /** Node that filters and projects rows. */
+  private static class CalcNode implements Node {
+    private final Node input;
+    private final RexNode condition;
+    private final List<RexNode> projects;
+
+    /** Creates a CalcNode.
+     *
+     * @param input Input node
+     * @param condition Condition, or null if all rows pass
+     * @param projects Expressions to project, or null to return each row
+     */
+    CalcNode(Node input, RexNode condition, List<RexNode> projects) {
+      if (condition != null && !RexInterpreter.canInterpret(condition)) {
+        throw unsupported(condition);
+      }
+      if (projects != null) {
+        for (RexNode project : projects) {
+          if (!RexInterpreter.canInterpret(project)) {
+            throw unsupported(project);
+          }
+        }
+      }
+      this.input = input;
+      this.condition = condition;
+      this.projects = projects;
+    }
+
+    public Enumerable<Object[]> execute(DataContext dataContext) {
+      Enumerable<Object[]> rows = input.execute(dataContext);
+      if (condition != null) {
+        rows = rows.where(
+            new Predicate1<Object[]>() {
+              public boolean apply(Object[] row) {
+                return Boolean.TRUE.equals(
+                    RexInterpreter.evaluate(condition, row));
+              }
+            });
+      }
+      if (projects != null) {
+        rows = rows.select(
+            new Function1<Object[], Object[]>() {
+              public Object[] apply(Object[] row) {
+                final Object[] row2 = new Object[projects.size()];
+                for (int i = 0; i < row2.length; i++) {
+                  row2[i] = RexInterpreter.evaluate(projects.get(i), row);
+                }
+                return row2;
+              }
+            });
+      }
+      return rows;
+    }
+  }
+
+  /** Node that sorts rows.
+   *
+   * <p>Collates in the same order as the comparator generated by
+   * {@link PhysType#generateCollationKey}. In particular, if there is one
+   * sort key, {@code DESC} does not move nulls to the other end; if there
+   * are several, it does. */
+  private static class SortNode implements Node, Comparator<Object[]> {
+    private final Node input;
+    private final List<RelFieldCollation> collations;
+
+    SortNode(Node input, List<RelFieldCollation> collations) {
+      this.input = input;
+      this.collations = collations;
+    }
+
+    public Enumerable<Object[]> execute(final DataContext dataContext) {
+      return new AbstractEnumerable<Object[]>() {
+        public Enumerator<Object[]> enumerator() {
+          final List<Object[]> rows =
+              input.execute(dataContext).into(new ArrayList<Object[]>());
+          Collections.sort(rows, SortNode.this);
+          return Linq4j.enumerator(rows);
+        }
+      };
+    }
+
+    public int compare(Object[] row0, Object[] row1) {
+      for (RelFieldCollation collation : collations) {
+        final Comparable v0 = (Comparable) row0[collation.getFieldIndex()];
+        final Comparable v1 = (Comparable) row1[collation.getFieldIndex()];
+        final int c =
+            collation.nullDirection == RelFieldCollation.NullDirection.FIRST
+                ? Utilities.compareNullsFirst(v0, v1)
+                : Utilities.compareNullsLast(v0, v1);
+        if (c != 0) {
+          if (collation.getDirection()
+              == RelFieldCollation.Direction.DESCENDING
+              && (collations.size() > 1 || v0 != null && v1 != null)) {
+            return -c;
+          }
+          return c;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /** Node that skips the first {@code offset} rows and returns at most
+   * {@code fetch} rows. */
+  private static class LimitNode implements Node {
+    private final Node input;
+    private final int offset;
+    private final int fetch;
+
+    /** Creates a LimitNode.
+     *
+     * @param input Input node
+     * @param offset Number of rows to skip
+     * @param fetch Maximum number of rows to return, or -1 if no limit
+     */
+    LimitNode(Node input, int offset, int fetch) {
+      this.input = input;
+      this.offset = offset;
+      this.fetch = fetch;
+    }
+
+    public Enumerable<Object[]> execute(DataContext dataContext) {
+      Enumerable<Object[]> rows = input.execute(dataContext);
+      if (offset > 0) {
+        rows = rows.skip(offset);
+      }
+      if (fetch >= 0) {
+        // Stops reading the input after "fetch" rows.
+        rows = rows.take(fetch);
+      }
+      return rows;
+    }
+  }
+
+  /** Node that returns the rows of each of its inputs in turn. */
+  private static class UnionAllNode implements Node {
+    private final List<Node> inputs;
+
+    UnionAllNode(List<Node> inputs) {
+      this.inputs = inputs;
+    }
+
+    public Enumerable<Object[]> execute(DataContext dataContext) {
+      Enumerable<Object[]> rows = null;
+      for (Node input : inputs) {
+        final Enumerable<Object[]> inputRows = input.execute(dataContext);
+        rows = rows == null ? inputRows : rows.concat(inputRows);
+      }
+      return rows;
+    }
+  }
+}
+
+// End EnumerableInterpreter.java
@@ -39,6 +39,7 @@
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
 import org.eigenbase.sql.fun.SqlStdOperatorTable;
+import org.eigenbase.sql.type.SqlTypeName;
 import org.eigenbase.trace.EigenbaseTrace;
 import org.eigenbase.util.*;
 
@@ -249,6 +250,33 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
       final PhysType physType =
           PhysTypeImpl.of(
               implementor.getTypeFactory(), getRowType(), pref.preferArray());
+      if (isIntegralKey()) {
+        // Build a hash table on the smaller input, keyed on primitive longs.
+        final boolean buildLeft =
+            RelMetadataQuery.getRowCount(left)
+            < RelMetadataQuery.getRowCount(right);
+        return implementor.result(
+            physType,
+            builder.append(
+                Expressions.call(
+                    BuiltinMethod.LONG_HASH_JOIN.method,
+                    Expressions.list(
+                        leftExpression,
+                        rightExpression,
+                        leftResult.physType.generateAccessor(leftKeys),
+                        rightResult.physType.generateAccessor(rightKeys),
+                        generateSelector(
+                            physType,
+                            ImmutableList.of(
+                                leftResult.physType, rightResult.physType)),
+                        Expressions.constant(
+                            joinType.generatesNullsOnLeft()),
+                        Expressions.constant(
+                            joinType.generatesNullsOnRight()),
+                        Expressions.constant(buildLeft),
+                        DataContext.ROOT)))
+                .toBlock());
+      }
       final PhysType keyPhysType =
           leftResult.physType.project(
               leftKeys, JavaRowFormat.LIST);
@@ -275,6 +303,22 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                           joinType.generatesNullsOnRight())))).toBlock());
     }
 
+    /** Returns whether this join has a single key, and the key is of an
+     * integral type (such as INTEGER or BIGINT) on both sides. */
+    private boolean isIntegralKey() {
+      if (leftKeys.size() != 1) {
+        return false;
+      }
+      final SqlTypeName leftType =
+          left.getRowType().getFieldList().get(leftKeys.get(0)).getType()
+              .getSqlTypeName();
+      final SqlTypeName rightType =
+          right.getRowType().getFieldList().get(rightKeys.get(0)).getType()
+              .getSqlTypeName();
+      return SqlTypeName.INT_TYPES.contains(leftType)
+          && SqlTypeName.INT_TYPES.contains(rightType);
+    }
+
     Expression generateSelector(PhysType physType,
         List<PhysType> inputPhysTypes) {
       // A parameter for each input.
@@ -499,7 +543,7 @@ public int size() {
   public static class EnumerableTableAccessRel
       extends TableAccessRelBase
       implements EnumerableRel {
-    private final Class elementType;
+    final Class elementType;
 
     public EnumerableTableAccessRel(RelOptCluster cluster, RelTraitSet traitSet,
         RelOptTable table, Class elementType) {
@@ -1297,20 +1341,19 @@ public RexToLixTranslator rowTranslator() {
                     resultBlock.toBlock(),
                     key_,
                     acc_));
+        final Expression comparer = keyPhysType.comparer();
         builder.add(
             Expressions.return_(
                 null,
                 Expressions.call(
+                    BuiltinMethod.SPILLING_GROUP_BY.method,
                     childExp,
-                    BuiltinMethod.GROUP_BY2.method,
-                    Expressions
-                        .list(
-                            keySelector,
-                            accumulatorInitializer,
-                            accumulatorAdder,
-                            resultSelector)
-                        .appendIfNotNull(
-                            keyPhysType.comparer()))));
+                    keySelector,
+                    accumulatorInitializer,
+                    accumulatorAdder,
+                    resultSelector,
+                    comparer != null ? comparer : Expressions.constant(null),
+                    DataContext.ROOT)));
       }
       return implementor.result(physType, builder.toBlock());
     }
@@ -1403,12 +1446,13 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
           Expressions.return_(
               null,
               Expressions.call(
+                  BuiltinMethod.SPILLING_ORDER_BY.method,
                   childExp,
-                  BuiltinMethod.ORDER_BY.method,
-                  Expressions.list(
-                      builder.append("keySelector", pair.left))
-                  .appendIfNotNull(builder.appendIfNotNull("comparator",
-                      pair.right)))));
+                  builder.append("keySelector", pair.left),
+                  pair.right == null
+                      ? Expressions.constant(null)
+                      : builder.append("comparator", pair.right),
+                  DataContext.ROOT)));
       return implementor.result(physType, builder.toBlock());
     }
   }
@@ -1465,8 +1509,8 @@ public void onMatch(RelOptRuleCall call) {
   public static class EnumerableLimitRel
       extends SingleRel
       implements EnumerableRel {
-    private final RexNode offset;
-    private final RexNode fetch;
+    final RexNode offset;
+    final RexNode fetch;
 
     public EnumerableLimitRel(
         RelOptCluster cluster,
@@ -2121,6 +2165,35 @@ public RelNode convert(RelNode rel) {
       return new EnumerableWindowRel(rel.getCluster(), traitSet, convertedChild,
           winAgg.getConstants(), winAgg.getRowType(), winAgg.windows);
     }
+
+    @Override
+    public void onMatch(RelOptRuleCall call) {
+      super.onMatch(call);
+
+      // Also offer an implementation whose input is sorted on the partition
+      // keys of the first window. It can stream one partition at a time, and
+      // wins if the input is already sorted or sorting is cheaper than
+      // hashing. See EnumerableWindowRel.computeSelfCost.
+      final WindowRel winAgg = call.rel(0);
+      final RelNode child = winAgg.getChild();
+      final WindowRel.Window window = winAgg.windows.get(0);
+      if (window.groupSet.isEmpty()
+          || !winAgg.getTraitSet().contains(Convention.NONE)
+          || child.getTraitSet().getTrait(RelCollationTraitDef.INSTANCE)
+              == null) {
+        return;
+      }
+      final RelNode sortedChild =
+          convert(child,
+              child.getTraitSet()
+                  .replace(EnumerableConvention.INSTANCE)
+                  .replace(EnumerableWindowRel.partitionCollation(window)));
+      call.transformTo(
+          new EnumerableWindowRel(winAgg.getCluster(),
+              winAgg.getTraitSet().replace(EnumerableConvention.INSTANCE),
+              sortedChild, winAgg.getConstants(), winAgg.getRowType(),
+              winAgg.windows));
+    }
   }
 
   /** Implementation of {@link org.eigenbase.rel.WindowRel} in
@@ -2156,7 +2229,86 @@ public RelOptCost computeSelfCost(RelOptPlanner planner) {
       for (WindowRel.Window window : windows) {
         count += window.aggCalls.size();
       }
-      return planner.getCostFactory().makeCost(rowsIn, rowsIn * count, 0);
+      double rows = rowsIn;
+      final Window window = windows.get(0);
+      if (!window.groupSet.isEmpty()
+          && !isSorted(getChild(), window, false)) {
+        // Rows are hashed on the partition key, then each partition is
+        // sorted. Costed like SortRel, so that the planner can compare with
+        // sorting the whole input.
+        Double partitionCount =
+            RelMetadataQuery.getDistinctRowCount(getChild(), window.groupSet,
+                null);
+        if (partitionCount == null) {
+          // Guess. With more than one partition, hashing is cheaper than
+          // sorting the whole input.
+          partitionCount = Math.max(2d, rowsIn / 10d);
+        }
+        partitionCount = Math.max(1d, Math.min(partitionCount, rowsIn));
+        final double bytesPerRow = getChild().getRowType().getFieldCount() * 4;
+        rows += rowsIn
+            + partitionCount * Util.nLogN(rowsIn / partitionCount)
+            * bytesPerRow;
+      }
+      return planner.getCostFactory().makeCost(rows, rowsIn * count, 0);
+    }
+
+    /** Returns the collation that allows the input of a window to be
+     * streamed a partition at a time: the partition keys, followed by those
+     * order keys that are not partition keys. */
+    static RelCollation partitionCollation(Window window) {
+      final List<RelFieldCollation> fieldCollations =
+          new ArrayList<RelFieldCollation>();
+      for (int key : BitSets.toIter(window.groupSet)) {
+        fieldCollations.add(new RelFieldCollation(key));
+      }
+      fieldCollations.addAll(nonKeyOrderKeys(window));
+      return RelCollationImpl.of(fieldCollations);
+    }
+
+    private static List<RelFieldCollation> nonKeyOrderKeys(Window window) {
+      final List<RelFieldCollation> fieldCollations =
+          new ArrayList<RelFieldCollation>();
+      for (RelFieldCollation fieldCollation
+          : window.orderKeys.getFieldCollations()) {
+        if (!window.groupSet.get(fieldCollation.getFieldIndex())) {
+          fieldCollations.add(fieldCollation);
+        }
+      }
+      return fieldCollations;
+    }
+
+    /** Returns whether rows arrive from {@code input} sorted on the partition
+     * keys of a window, in any order and direction; and, if
+     * {@code orderKeys}, then on the window's order keys. */
+    static boolean isSorted(RelNode input, Window window, boolean orderKeys) {
+      final RelCollation collation =
+          input.getTraitSet().getTrait(RelCollationTraitDef.INSTANCE);
+      if (collation == null || window.groupSet.isEmpty()) {
+        return false;
+      }
+      final List<RelFieldCollation> fieldCollations =
+          collation.getFieldCollations();
+      final int keyCount = window.groupSet.cardinality();
+      if (fieldCollations.size() < keyCount) {
+        return false;
+      }
+      final BitSet keys = new BitSet();
+      for (RelFieldCollation fieldCollation
+          : fieldCollations.subList(0, keyCount)) {
+        keys.set(fieldCollation.getFieldIndex());
+      }
+      if (!keys.equals(window.groupSet)) {
+        return false;
+      }
+      if (!orderKeys) {
+        return true;
+      }
+      final List<RelFieldCollation> rest =
+          fieldCollations.subList(keyCount, fieldCollations.size());
+      final List<RelFieldCollation> windowOrderKeys = nonKeyOrderKeys(window);
+      return rest.size() >= windowOrderKeys.size()
+          && rest.subList(0, windowOrderKeys.size()).equals(windowOrderKeys);
     }
 
     private static class WindowRelInputGetter implements
@@ -2209,10 +2361,21 @@ private void sampleOfTheGeneratedWindowedAggregate() {
           // builder5
           int actualStart = 0;
           if (start != prevStart || end < prevEnd) {
-            // builder6
-            // recompute
-            actualStart = start;
-            // implementReset
+            if (prevStart >= 0 && start > prevStart && end >= prevEnd
+                && start <= prevEnd + 1) {
+              // builder8
+              // The frame has slid forward. Generated only if every
+              // aggregate function implements RemovableAggImplementor.
+              for (int j = prevStart; j < start; j++) {
+                // implementRemove
+              }
+              actualStart = prevEnd + 1;
+            } else {
+              // builder6
+              // recompute
+              actualStart = start;
+              // implementReset
+            }
           } else { // must be start == prevStart && end > prevEnd
             actualStart = prevEnd + 1;
           }
@@ -2229,7 +2392,7 @@ private void sampleOfTheGeneratedWindowedAggregate() {
           // list.add(new Xxx(row.deptno, row.empid, sum, count));
         }
       }
-      // multiMap.clear(); // allows gc
+      // multiMap.clear(); // allows gc; no map if input is sorted
       // source = Linq4j.asEnumerable(list);
     }
 
@@ -2275,9 +2438,18 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                 inputPhysType.generateComparator(
                     window.collation()));
 
+        // Only the first window reads rows from the child; subsequent windows
+        // read the output of the previous window.
+        final boolean sortedInput =
+            windowIdx == 0 && isSorted(child, window, false);
         Pair<Expression, Expression> partitionIterator =
-            getPartitionIterator(builder, source_, inputPhysType, window,
-                comparator_);
+            sortedInput
+                ? getSortedPartitionIterator(builder, source_, inputPhysType,
+                    window, isSorted(child, window, true)
+                        ? Expressions.constant(null, Comparator.class)
+                        : comparator_)
+                : getPartitionIterator(builder, source_, inputPhysType, window,
+                    comparator_);
         final Expression collectionExpr = partitionIterator.left;
         final Expression iterator_ = partitionIterator.right;
 
@@ -2300,13 +2472,18 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
             PhysTypeImpl.of(
                 typeFactory, outputRowType, pref.prefer(result.format));
 
+        // Output rows are collected for the whole input, even if the
+        // partitions are streamed; see getSortedPartitionIterator.
         final Expression list_ =
             builder.append(
                 "list",
-                Expressions.new_(
-                    ArrayList.class,
-                    Expressions.call(
-                        collectionExpr, BuiltinMethod.COLLECTION_SIZE.method)),
+                collectionExpr == null
+                    ? Expressions.new_(ArrayList.class)
+                    : Expressions.new_(
+                        ArrayList.class,
+                        Expressions.call(
+                            collectionExpr,
+                            BuiltinMethod.COLLECTION_SIZE.method)),
                 false);
 
         Pair<Expression, Expression> collationKey =
@@ -2466,27 +2643,6 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
             lowerBoundCanChange,
             Expressions.lessThan(endX, prevEnd));
 
-        BlockStatement resetWindowState = builder6.toBlock();
-        if (resetWindowState.statements.size() == 1) {
-          builder5.add(Expressions.declare(0, actualStart,
-              Expressions.condition(needRecomputeWindow,
-                  startX, Expressions.add(prevEnd, Expressions.constant(1)))));
-        } else {
-          builder5.add(Expressions.declare(0, actualStart,
-              null));
-          builder5.add(Expressions.ifThenElse(needRecomputeWindow,
-              resetWindowState,
-              Expressions.statement(Expressions.assign(actualStart,
-                  Expressions.add(prevEnd, Expressions.constant(1))))));
-        }
-
-        if (lowerBoundCanChange instanceof BinaryExpression) {
-          builder5.add(Expressions.statement(
-              Expressions.assign(prevStart, startX)));
-        }
-        builder5.add(Expressions.statement(
-            Expressions.assign(prevEnd, endX)));
-
         final BlockBuilder builder7 = new BlockBuilder(true, builder5);
         final DeclarationStatement jDecl =
             Expressions.declare(0, "j", actualStart);
@@ -2519,7 +2675,63 @@ public List<RexNode> apply(AggImpState agg) {
               }
             };
 
-        implementAdd(aggs, builder7, resultContextBuilder, rexArguments, jDecl);
+        BlockStatement resetWindowState = builder6.toBlock();
+        if (lowerBoundCanChange instanceof BinaryExpression
+            && canRemove(aggs)) {
+          // If the frame has slid forward, remove the rows that have left
+          // it, then add the rows that have entered it.
+          final BlockBuilder builder8 = new BlockBuilder(true, builder5);
+          implementAdd(aggs, builder8, resultContextBuilder, rexArguments,
+              jDecl, true);
+          final Expression one = Expressions.constant(1);
+          final Expression canSlide =
+              Expressions.foldAnd(
+                  ImmutableList.of(
+                      Expressions.greaterThanOrEqual(prevStart,
+                          Expressions.constant(0)),
+                      Expressions.greaterThan(startX, prevStart),
+                      Expressions.greaterThanOrEqual(endX, prevEnd),
+                      Expressions.lessThanOrEqual(startX,
+                          Expressions.add(prevEnd, one))));
+          final Statement slide =
+              Expressions.block(
+                  Expressions.for_(
+                      Expressions.declare(0, jDecl.parameter, prevStart),
+                      Expressions.lessThan(jDecl.parameter, startX),
+                      Expressions.preIncrementAssign(jDecl.parameter),
+                      builder8.toBlock()),
+                  Expressions.statement(
+                      Expressions.assign(actualStart,
+                          Expressions.add(prevEnd, one))));
+          builder5.add(Expressions.declare(0, actualStart, null));
+          builder5.add(
+              Expressions.ifThenElse(needRecomputeWindow,
+                  Expressions.ifThenElse(canSlide, slide, resetWindowState),
+                  Expressions.statement(
+                      Expressions.assign(actualStart,
+                          Expressions.add(prevEnd, one)))));
+        } else if (resetWindowState.statements.size() == 1) {
+          builder5.add(Expressions.declare(0, actualStart,
+              Expressions.condition(needRecomputeWindow,
+                  startX, Expressions.add(prevEnd, Expressions.constant(1)))));
+        } else {
+          builder5.add(Expressions.declare(0, actualStart,
+              null));
+          builder5.add(Expressions.ifThenElse(needRecomputeWindow,
+              resetWindowState,
+              Expressions.statement(Expressions.assign(actualStart,
+                  Expressions.add(prevEnd, Expressions.constant(1))))));
+        }
+
+        if (lowerBoundCanChange instanceof BinaryExpression) {
+          builder5.add(Expressions.statement(
+              Expressions.assign(prevStart, startX)));
+        }
+        builder5.add(Expressions.statement(
+            Expressions.assign(prevEnd, endX)));
+
+        implementAdd(aggs, builder7, resultContextBuilder, rexArguments, jDecl,
+            false);
 
         BlockStatement forBlock = builder7.toBlock();
         if (!forBlock.statements.isEmpty()) {
@@ -2567,11 +2779,13 @@ public List<RexNode> apply(AggImpState agg) {
                     iterator_,
                     BuiltinMethod.ITERATOR_HAS_NEXT.method),
                 builder3.toBlock()));
-        builder.add(
-            Expressions.statement(
-                Expressions.call(
-                    collectionExpr,
-                    BuiltinMethod.MAP_CLEAR.method)));
+        if (collectionExpr != null) {
+          builder.add(
+              Expressions.statement(
+                  Expressions.call(
+                      collectionExpr,
+                      BuiltinMethod.MAP_CLEAR.method)));
+        }
 
         // We're not assigning to "source". For each window, create a new
         // final variable called "source" or "sourceN".
@@ -2706,6 +2920,53 @@ public Expression getPartitionRowCount() {
       };
     }
 
+    /** Generates an iterator over the partitions of an input that is sorted
+     * on the partition keys. Returns a null collection, because there is no
+     * map to clear.
+     *
+     * <p>The iterator holds only one partition of the input in memory at a
+     * time. But {@link #implement} still adds every output row to a list,
+     * and does not return until the input is exhausted, so the window's
+     * memory use remains proportional to its input. Only the memory to
+     * group the input into partitions is saved.</p>
+     *
+     * <pre>{@code
+     *   Iterator<Employee[]> iterator =
+     *       SortedMultiMap.adjacentArrays(source,
+     *           new Function1<Employee, Integer>() {
+     *             public Integer apply(Employee v) {
+     *               return v.deptno;
+     *             }
+     *           },
+     *           comparator);
+     *   final List<Xxx> list = new ArrayList<Xxx>();
+     * }</pre>
+     *
+     * @param comparator_ Sorts each partition; a null constant if the input
+     *                    is also sorted on the order keys
+     */
+    private Pair<Expression, Expression> getSortedPartitionIterator(
+        BlockBuilder builder,
+        Expression source_,
+        PhysType inputPhysType,
+        Window window,
+        Expression comparator_) {
+      final ParameterExpression v_ =
+          Expressions.parameter(inputPhysType.getJavaRowType(), "v");
+      final Expression keySelector_ =
+          inputPhysType.generateSelector(v_, BitSets.toList(window.groupSet),
+              JavaRowFormat.LIST);
+      return Pair.<Expression, Expression>of(null,
+          builder.append(
+              "iterator",
+              Expressions.call(
+                  null,
+                  BuiltinMethod.SORTED_MULTI_MAP_ADJACENT.method,
+                  source_,
+                  keySelector_,
+                  comparator_)));
+    }
+
     private Pair<Expression, Expression> getPartitionIterator(
         BlockBuilder builder,
         Expression source_,
@@ -2883,11 +3144,25 @@ public List<? extends RelDataType> parameterRelTypes() {
       }
     }
 
+    /** Returns whether every aggregate function can remove rows that leave
+     * a sliding window frame. */
+    private static boolean canRemove(List<AggImpState> aggs) {
+      for (AggImpState agg : aggs) {
+        if (!(agg.implementor instanceof RemovableAggImplementor)
+            || !((RemovableAggImplementor) agg.implementor)
+                .canRemove(agg.context)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     private void implementAdd(List<AggImpState> aggs,
         final BlockBuilder builder7,
         final Function<BlockBuilder, WinAggFrameResultContext> frame,
         final Function<AggImpState, List<RexNode>> rexArguments,
-        final DeclarationStatement jDecl) {
+        final DeclarationStatement jDecl,
+        boolean remove) {
       for (final AggImpState agg : aggs) {
         final WinAggAddContext addContext =
             new WinAggAddContextImpl(builder7, agg.state, frame) {
@@ -2899,7 +3174,12 @@ public List<RexNode> rexArguments() {
                 return rexArguments.apply(agg);
               }
             };
-        agg.implementor.implementAdd(agg.context, addContext);
+        if (remove) {
+          ((RemovableAggImplementor) agg.implementor).implementRemove(
+              agg.context, addContext);
+        } else {
+          agg.implementor.implementAdd(agg.context, addContext);
+        }
       }
     }
 
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.rules.java;
+
+/**
+ * Implements an aggregate function whose intermediate variables can remove
+ * a value as well as add one.
+ *
+ * <p>When the frame of a window slides forward, Optiq removes the rows that
+ * have left the frame and adds the rows that have entered it, rather than
+ * resetting the intermediate variables and adding every row in the frame.
+ * Thus a moving sum over a frame of {@code w} rows costs O(1) per row, not
+ * O(w).</p>
+ *
+ * <p>Removal is only used when implementing windowed aggregates. The
+ * context passed to
+ * {@link #implementRemove(AggContext, AggAddContext)} is a
+ * {@link WinAggAddContext}, and
+ * {@link WinAggAddContext#currentPosition()} is the row being removed.</p>
+ *
+ * @see net.hydromatic.optiq.rules.java.RexImpTable.CountImplementor
+ * @see net.hydromatic.optiq.rules.java.RexImpTable.SumImplementor
+ * @see net.hydromatic.optiq.rules.java.RexImpTable.MinMaxWinImplementor
+ */
+public interface RemovableAggImplementor extends AggImplementor {
+  /**
+   * Returns whether this implementation can remove values for a particular
+   * call. Optiq calls this method after
+   * {@link #getStateType(AggContext)}.
+   *
+   * @param info aggregate context
+   * @return whether {@link #implementRemove(AggContext, AggAddContext)} may
+   *   be called
+   */
+  boolean canRemove(AggContext info);
+
+  /**
+   * Updates intermediate values to account for a value that has left the
+   * window frame. The value was previously added using
+   * {@link #implementAdd(AggContext, AggAddContext)}. Values are removed in
+   * the same order that they were added.
+   *
+   * @param info aggregate context
+   * @param remove context; its arguments are those of the row being removed
+   */
+  void implementRemove(AggContext info, AggAddContext remove);
+}
+
+// End RemovableAggImplementor.java
@@ -22,6 +22,7 @@
 import net.hydromatic.optiq.*;
 import net.hydromatic.optiq.Function;
 import net.hydromatic.optiq.impl.AggregateFunctionImpl;
+import net.hydromatic.optiq.runtime.MinMaxDeque;
 import net.hydromatic.optiq.runtime.SqlFunctions;
 
 import org.eigenbase.rel.Aggregation;
@@ -137,13 +138,13 @@ public class RexImpTable {
     map.put(IS_NOT_FALSE, new IsXxxImplementor(false, true));
 
     // LIKE and SIMILAR
-    final MethodImplementor likeImplementor =
-        new MethodImplementor(BuiltinMethod.LIKE.method);
+    final PatternImplementor likeImplementor =
+        new PatternImplementor(BuiltinMethod.LIKE_MATCHER.method);
     defineImplementor(LIKE, NullPolicy.STRICT, likeImplementor, false);
     defineImplementor(NOT_LIKE, NullPolicy.STRICT,
         NotImplementor.of(likeImplementor), false);
-    final MethodImplementor similarImplementor =
-        new MethodImplementor(BuiltinMethod.SIMILAR.method);
+    final PatternImplementor similarImplementor =
+        new PatternImplementor(BuiltinMethod.SIMILAR_MATCHER.method);
     defineImplementor(SIMILAR_TO, NullPolicy.STRICT, similarImplementor, false);
     defineImplementor(NOT_SIMILAR_TO, NullPolicy.STRICT,
         NotImplementor.of(similarImplementor), false);
@@ -201,6 +202,10 @@ public class RexImpTable {
     winAggMap.put(LAG, constructorSupplier(LagImplementor.class));
     winAggMap.put(NTILE, constructorSupplier(NtileImplementor.class));
     winAggMap.put(COUNT, constructorSupplier(CountWinImplementor.class));
+    Supplier<MinMaxWinImplementor> minMaxWin =
+        constructorSupplier(MinMaxWinImplementor.class);
+    winAggMap.put(MIN, minMaxWin);
+    winAggMap.put(MAX, minMaxWin);
   }
 
   private <T> Supplier<T> constructorSupplier(Class<T> klass) {
@@ -779,15 +784,24 @@ static Expression getDefaultValue(Type type) {
     return Expressions.constant(null, type);
   }
 
-  static class CountImplementor extends StrictAggImplementor {
+  static class CountImplementor extends StrictAggImplementor
+      implements RemovableAggImplementor {
     @Override
     public void implementNotNullAdd(AggContext info, AggAddContext add) {
       add.currentBlock().add(Expressions.statement(
           Expressions.postIncrementAssign(add.accumulator().get(0))));
     }
+
+    @Override
+    protected void implementNotNullRemove(AggContext info,
+        AggAddContext remove) {
+      remove.currentBlock().add(Expressions.statement(
+          Expressions.postDecrementAssign(remove.accumulator().get(0))));
+    }
   }
 
-  static class CountWinImplementor extends StrictWinAggImplementor {
+  static class CountWinImplementor extends StrictWinAggImplementor
+      implements RemovableAggImplementor {
     boolean justFrameRowCount;
 
     @Override
@@ -815,6 +829,16 @@ public void implementNotNullAdd(WinAggContext info, WinAggAddContext add) {
           Expressions.postIncrementAssign(add.accumulator().get(0))));
     }
 
+    @Override
+    protected void implementNotNullRemove(WinAggContext info,
+        WinAggAddContext remove) {
+      if (justFrameRowCount) {
+        return;
+      }
+      remove.currentBlock().add(Expressions.statement(
+          Expressions.postDecrementAssign(remove.accumulator().get(0))));
+    }
+
     @Override
     protected Expression implementNotNullResult(WinAggContext info,
         WinAggResultContext result) {
@@ -825,7 +849,8 @@ protected Expression implementNotNullResult(WinAggContext info,
     }
   }
 
-  static class SumImplementor extends StrictAggImplementor {
+  static class SumImplementor extends StrictAggImplementor
+      implements RemovableAggImplementor {
     @Override
     protected void implementNotNullReset(AggContext info,
         AggResetContext reset) {
@@ -850,6 +875,40 @@ public void implementNotNullAdd(AggContext info, AggAddContext add) {
       accAdvance(add, acc, next);
     }
 
+    /** {@inheritDoc}
+     *
+     * <p>Returns false if the argument or the sum is approximate (FLOAT,
+     * REAL or DOUBLE). Subtracting a floating-point value does not undo
+     * adding it: {@code 1e16 + 1 - 1e16} is 0, and once an infinite value
+     * has been added, subtracting it gives NaN. Such a sum, and an AVG
+     * built on it, is recomputed whenever the frame moves. */
+    @Override
+    public boolean canRemove(AggContext info) {
+      if (SqlTypeUtil.isApproximateNumeric(info.returnRelType())) {
+        return false;
+      }
+      for (RelDataType type : info.parameterRelTypes()) {
+        if (SqlTypeUtil.isApproximateNumeric(type)) {
+          return false;
+        }
+      }
+      return super.canRemove(info);
+    }
+
+    @Override
+    protected void implementNotNullRemove(AggContext info,
+        AggAddContext remove) {
+      Expression acc = remove.accumulator().get(0);
+      Expression next;
+      if (info.returnType() == BigDecimal.class) {
+        next = Expressions.call(acc, "subtract", remove.arguments().get(0));
+      } else {
+        next = Expressions.subtract(acc,
+            Types.castIfNecessary(acc.type, remove.arguments().get(0)));
+      }
+      accAdvance(remove, acc, next);
+    }
+
     @Override
     public Expression implementNotNullResult(AggContext info,
         AggResultContext result) {
@@ -883,6 +942,67 @@ public void implementNotNullAdd(AggContext info, AggAddContext add) {
     }
   }
 
+  /** Implementor for MIN and MAX in window context. The state is a
+   * {@link MinMaxDeque}, so that rows leaving a sliding window frame can be
+   * removed. */
+  static class MinMaxWinImplementor extends StrictWinAggImplementor
+      implements RemovableAggImplementor {
+    @Override
+    public List<Type> getNotNullState(WinAggContext info) {
+      return Collections.<Type>singletonList(MinMaxDeque.class);
+    }
+
+    @Override
+    protected void implementNotNullReset(WinAggContext info,
+        WinAggResetContext reset) {
+      reset.currentBlock().add(Expressions.statement(Expressions.assign(
+          reset.accumulator().get(0),
+          Expressions.new_(MinMaxDeque.class,
+              Expressions.constant(MIN == info.aggregation())))));
+    }
+
+    @Override
+    protected void implementNotNullAdd(WinAggContext info,
+        WinAggAddContext add) {
+      final Expression arg = add.arguments().get(0);
+      add.currentBlock().add(Expressions.statement(
+          Expressions.call(add.accumulator().get(0),
+              BuiltinMethod.MIN_MAX_DEQUE_ADD.method,
+              add.currentPosition(),
+              RexToLixTranslator.convert(arg, Primitive.box(arg.getType())))));
+    }
+
+    @Override
+    protected void implementNotNullRemove(WinAggContext info,
+        WinAggAddContext remove) {
+      remove.currentBlock().add(Expressions.statement(
+          Expressions.call(remove.accumulator().get(0),
+              BuiltinMethod.MIN_MAX_DEQUE_REMOVE.method,
+              remove.currentPosition())));
+    }
+
+    @Override
+    protected Expression implementNotNullResult(WinAggContext info,
+        WinAggResultContext result) {
+      final Expression acc = result.accumulator().get(0);
+      final Type type = info.returnType();
+      final Expression value =
+          Expressions.convert_(
+              Expressions.call(acc, BuiltinMethod.MIN_MAX_DEQUE_GET.method),
+              Primitive.box(type));
+      final Primitive p = Primitive.of(type);
+      if (p == null) {
+        return value;
+      }
+      // If there are no values, return the same as MinMaxImplementor.
+      final Object inf = MIN == info.aggregation() ? p.max : p.min;
+      return Expressions.condition(
+          Expressions.call(acc, BuiltinMethod.MIN_MAX_DEQUE_IS_EMPTY.method),
+          Expressions.constant(inf, type),
+          RexToLixTranslator.convert(value, type));
+    }
+  }
+
   static class SingleValueImplementor implements AggImplementor {
     public List<Type> getStateType(AggContext info) {
       return Arrays.asList(boolean.class, info.returnType());
@@ -1256,6 +1376,36 @@ public Expression implement(
     }
   }
 
+  /** Implementor for the {@code LIKE} and {@code SIMILAR TO} operators.
+   *
+   * <p>Generates a call to a factory method that returns a
+   * {@link net.hydromatic.optiq.runtime.Like.Matcher}, and calls the matcher.
+   * If the pattern and escape are literals, the factory is deterministic
+   * and its arguments are constant, so the code generator hoists the call
+   * into a static field; otherwise the factory finds the matcher in a
+   * cache.</p> */
+  private static class PatternImplementor implements NotNullImplementor {
+    private final Method method;
+
+    PatternImplementor(Method method) {
+      this.method = method;
+    }
+
+    public Expression implement(
+        RexToLixTranslator translator,
+        RexCall call,
+        List<Expression> translatedOperands) {
+      final Expression escape =
+          translatedOperands.size() > 2
+              ? translatedOperands.get(2)
+              : Expressions.constant(null, String.class);
+      return Expressions.call(
+          Expressions.call(method, translatedOperands.get(1), escape),
+          BuiltinMethod.MATCHER_MATCHES.method,
+          translatedOperands.get(0));
+    }
+  }
+
   private static class MethodNameImplementor implements NotNullImplementor {
     private final String methodName;
 
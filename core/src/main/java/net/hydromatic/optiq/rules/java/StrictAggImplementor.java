@@ -28,10 +28,14 @@
  * The base implementation of strict aggregate function.
  * @see net.hydromatic.optiq.rules.java.RexImpTable.CountImplementor
  * @see net.hydromatic.optiq.rules.java.RexImpTable.SumImplementor
+ * @see RemovableAggImplementor
  */
 public abstract class StrictAggImplementor implements AggImplementor {
   private boolean needTrackEmptySet;
   private boolean trackNullsPerRow;
+  /** Whether the per-row null tracker is a count of the not-null rows (so
+   * that rows can be removed) rather than a flag. */
+  private boolean countNullsPerRow;
   private int stateSize;
 
   protected boolean nonDefaultOnEmptySet(AggContext info) {
@@ -64,13 +68,26 @@ public final List<Type> getStateType(AggContext info) {
       }
     }
     trackNullsPerRow = !(info instanceof WinAggContext) || hasNullableArgs;
+    countNullsPerRow = trackNullsPerRow && info instanceof WinAggContext;
 
     List<Type> res = new ArrayList<Type>(subState.size() + 1);
     res.addAll(subState);
-    res.add(boolean.class); // has not nulls
+    if (countNullsPerRow) {
+      res.add(int.class); // number of not-null rows
+    } else {
+      res.add(boolean.class); // has not nulls
+    }
     return res;
   }
 
+  /** Returns whether this implementation can remove values, as required by
+   * {@link RemovableAggImplementor}. Sub-classes that implement that
+   * interface must also override
+   * {@link #implementNotNullRemove(AggContext, AggAddContext)}. */
+  public boolean canRemove(AggContext info) {
+    return !trackNullsPerRow || countNullsPerRow;
+  }
+
   public List<Type> getNotNullState(AggContext info) {
     return Collections.singletonList(Primitive.unbox(info.returnType()));
   }
@@ -100,6 +117,19 @@ protected void implementNotNullReset(AggContext info,
   }
 
   public final void implementAdd(AggContext info, final AggAddContext add) {
+    implementAddOrRemove(info, add, false);
+  }
+
+  /** Implements removal of a value; see
+   * {@link RemovableAggImplementor#implementRemove(AggContext, AggAddContext)}.
+   */
+  public final void implementRemove(AggContext info,
+      final AggAddContext remove) {
+    implementAddOrRemove(info, remove, true);
+  }
+
+  private void implementAddOrRemove(AggContext info, final AggAddContext add,
+      boolean remove) {
     List<RexNode> args = add.rexArguments();
     RexToLixTranslator translator = add.rowTranslator();
     List<Expression> conditions =
@@ -116,11 +146,16 @@ public final void implementAdd(AggContext info, final AggAddContext add) {
         : new BlockBuilder(true, add.currentBlock());
     if (trackNullsPerRow) {
       List<Expression> acc = add.accumulator();
-      thenBlock.add(Expressions.statement(Expressions.assign(
-          acc.get(acc.size() - 1), Expressions.constant(true))));
+      final Expression flag = acc.get(acc.size() - 1);
+      thenBlock.add(Expressions.statement(
+          countNullsPerRow
+              ? (remove
+                  ? Expressions.postDecrementAssign(flag)
+                  : Expressions.postIncrementAssign(flag))
+              : Expressions.assign(flag, Expressions.constant(true))));
     }
     if (argsNotNull) {
-      implementNotNullAdd(info, add);
+      implementNotNullAddOrRemove(info, add, remove);
       return;
     }
 
@@ -131,14 +166,32 @@ public final void implementAdd(AggContext info, final AggAddContext add) {
       }
     }
     add.nestBlock(thenBlock, nullables);
-    implementNotNullAdd(info, add);
+    implementNotNullAddOrRemove(info, add, remove);
     add.exitBlock();
     add.currentBlock().add(Expressions.ifThen(condition, thenBlock.toBlock()));
   }
 
+  private void implementNotNullAddOrRemove(AggContext info,
+      AggAddContext add, boolean remove) {
+    if (remove) {
+      implementNotNullRemove(info, add);
+    } else {
+      implementNotNullAdd(info, add);
+    }
+  }
+
   protected abstract void implementNotNullAdd(AggContext info,
       AggAddContext add);
 
+  /** Updates the state to account for the removal of a value that is not
+   * null. Sub-classes that implement {@link RemovableAggImplementor} must
+   * override this method. */
+  protected void implementNotNullRemove(AggContext info,
+      AggAddContext remove) {
+    throw new UnsupportedOperationException(
+        "Aggregate " + info.aggregation() + " cannot remove values");
+  }
+
   public final Expression implementResult(AggContext info,
       final AggResultContext result) {
     if (!needTrackEmptySet) {
@@ -159,7 +212,10 @@ public final Expression implementResult(AggContext info,
     thenBlock.add(Expressions.statement(Expressions.assign(res, nonNull)));
     BlockStatement thenBranch = thenBlock.toBlock();
     Expression seenNotNullRows =
-        trackNullsPerRow
+        countNullsPerRow
+        ? Expressions.notEqual(acc.get(acc.size() - 1),
+            Expressions.constant(0))
+        : trackNullsPerRow
         ? acc.get(acc.size() - 1)
         : ((WinAggResultContext) result).hasRows();
 
@@ -32,6 +32,11 @@ public abstract class StrictWinAggImplementor extends StrictAggImplementor
   protected abstract void implementNotNullAdd(WinAggContext info,
       WinAggAddContext add);
 
+  protected void implementNotNullRemove(WinAggContext info,
+      WinAggAddContext remove) {
+    super.implementNotNullRemove(info, remove);
+  }
+
   protected boolean nonDefaultOnEmptySet(WinAggContext info) {
     return super.nonDefaultOnEmptySet(info);
   }
@@ -55,6 +60,12 @@ protected final void implementNotNullAdd(AggContext info, AggAddContext add) {
     implementNotNullAdd((WinAggContext) info, (WinAggAddContext) add);
   }
 
+  @Override
+  protected final void implementNotNullRemove(AggContext info,
+      AggAddContext remove) {
+    implementNotNullRemove((WinAggContext) info, (WinAggAddContext) remove);
+  }
+
   @Override
   protected boolean nonDefaultOnEmptySet(AggContext info) {
     return nonDefaultOnEmptySet((WinAggContext) info);
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.rules.vector;
+
+import net.hydromatic.linq4j.expressions.*;
+
+import net.hydromatic.optiq.BuiltinMethod;
+import net.hydromatic.optiq.rules.java.*;
+
+import org.eigenbase.rel.RelNode;
+import org.eigenbase.rel.convert.ConverterRelImpl;
+import org.eigenbase.relopt.*;
+import org.eigenbase.util.Util;
+
+import java.util.List;
+
+/**
+ * Relational expression that converts input of
+ * {@link EnumerableConvention} into
+ * {@link VectorRel#CONVENTION vectorized convention}.
+ *
+ * <p>Concretely, this means calling
+ * {@link net.hydromatic.optiq.runtime.Vectors#fromEnumerable} to copy the
+ * values of each row into batches.</p>
+ */
+public class EnumerableToVectorConverter
+    extends ConverterRelImpl
+    implements VectorRel {
+  protected EnumerableToVectorConverter(RelOptCluster cluster,
+      RelTraitSet traits,
+      RelNode input) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+  }
+
+  @Override
+  public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new EnumerableToVectorConverter(
+        getCluster(), traitSet, sole(inputs));
+  }
+
+  public Expression implement(Implementor implementor) {
+    // Generate:
+    //   Enumerable input = ...;
+    //   Vectors.Node node =
+    //       Vectors.fromEnumerable(input, new String[] {"INT", ...});
+    final EnumerableRel.Result result =
+        implementor.enumerableImplementor.visitChild(null, 0,
+            (EnumerableRel) getChild(), EnumerableRel.Prefer.ARRAY);
+    Expression input = implementor.builder.append("input", result.block);
+    final int fieldCount = getRowType().getFieldCount();
+    final JavaRowFormat format = result.physType.getFormat();
+    if (fieldCount == 1
+        ? format != JavaRowFormat.SCALAR
+        : format != JavaRowFormat.ARRAY) {
+      // Vectors.fromEnumerable expects a scalar if there is one field,
+      // otherwise an Object[].
+      final ParameterExpression v =
+          Expressions.parameter(result.physType.getJavaRowType(), "v");
+      input =
+          implementor.builder.append("input",
+              Expressions.call(input, BuiltinMethod.SELECT.method,
+                  result.physType.generateSelector(v,
+                      Util.range(0, fieldCount),
+                      JavaRowFormat.ARRAY)));
+    }
+    return implementor.builder.append("node",
+        Expressions.call(
+            BuiltinMethod.VECTOR_FROM_ENUMERABLE.method,
+            input,
+            VectorRules.primitives(getRowType())));
+  }
+}
+
+// End EnumerableToVectorConverter.java
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.rules.vector;
+
+import net.hydromatic.linq4j.expressions.BlockBuilder;
+import net.hydromatic.linq4j.expressions.Expression;
+
+import net.hydromatic.optiq.rules.java.EnumerableRelImplementor;
+
+import org.eigenbase.rel.RelNode;
+import org.eigenbase.relopt.Convention;
+
+/**
+ * Relational expression that uses vectorized calling convention.
+ *
+ * <p>A vectorized relational expression processes batches of rows stored
+ * column-wise; see {@link net.hydromatic.optiq.runtime.Vectors}.</p>
+ */
+public interface VectorRel extends RelNode {
+  /** Calling convention for relational operations that process batches of
+   * primitive column values. */
+  Convention CONVENTION = new Convention.Impl("VECTOR", VectorRel.class);
+
+  /** Generates code that builds a
+   * {@link net.hydromatic.optiq.runtime.Vectors.Node}, and returns an
+   * expression for it. */
+  Expression implement(Implementor implementor);
+
+  /** Context for generating code for a tree of vectorized relational
+   * expressions. */
+  public class Implementor {
+    public final EnumerableRelImplementor enumerableImplementor;
+    public final BlockBuilder builder;
+
+    public Implementor(EnumerableRelImplementor enumerableImplementor,
+        BlockBuilder builder) {
+      this.enumerableImplementor = enumerableImplementor;
+      this.builder = builder;
+    }
+
+    public Expression visitChild(VectorRel input) {
+      return input.implement(this);
+    }
+  }
+}
+
+// End VectorRel.java
@@ -0,0 +1,835 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.rules.vector;
+
+import net.hydromatic.linq4j.expressions.*;
+
+import net.hydromatic.optiq.BuiltinMethod;
+import net.hydromatic.optiq.rules.java.EnumerableConvention;
+import net.hydromatic.optiq.runtime.ColumnarTable;
+import net.hydromatic.optiq.runtime.Vectors;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.convert.ConverterRule;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.RelDataType;
+import org.eigenbase.reltype.RelDataTypeField;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.SqlKind;
+import org.eigenbase.sql.fun.SqlStdOperatorTable;
+import org.eigenbase.sql.type.SqlTypeName;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+
+import java.util.*;
+
+/**
+ * Rules and relational operators for the
+ * {@link VectorRel#CONVENTION vectorized calling convention}.
+ *
+ * <p>A vectorized plan reads a {@link ColumnarTable} in batches of primitive
+ * column values, filters, projects and aggregates them, and converts the
+ * result to {@link EnumerableConvention enumerable convention}. Only columns
+ * and expressions whose type is a non-nullable numeric or boolean type are
+ * vectorized.</p>
+ */
+public abstract class VectorRules {
+  private VectorRules() {}
+
+  /** Operators that can be evaluated on vectors, and the name of each in
+   * {@link Vectors#call}. */
+  private static final Map<SqlKind, String> OPERATORS =
+      ImmutableMap.<SqlKind, String>builder()
+          .put(SqlKind.PLUS, "+")
+          .put(SqlKind.MINUS, "-")
+          .put(SqlKind.TIMES, "*")
+          .put(SqlKind.DIVIDE, "/")
+          .put(SqlKind.MINUS_PREFIX, "NEG")
+          .put(SqlKind.EQUALS, "=")
+          .put(SqlKind.NOT_EQUALS, "<>")
+          .put(SqlKind.LESS_THAN, "<")
+          .put(SqlKind.LESS_THAN_OR_EQUAL, "<=")
+          .put(SqlKind.GREATER_THAN, ">")
+          .put(SqlKind.GREATER_THAN_OR_EQUAL, ">=")
+          .put(SqlKind.AND, "AND")
+          .put(SqlKind.OR, "OR")
+          .put(SqlKind.NOT, "NOT")
+          .build();
+
+  private static final Set<SqlKind> ARITHMETIC =
+      EnumSet.of(SqlKind.PLUS, SqlKind.MINUS, SqlKind.TIMES, SqlKind.DIVIDE,
+          SqlKind.MINUS_PREFIX);
+
+  public static final VectorTableAccessRule VECTOR_TABLE_ACCESS_RULE =
+      new VectorTableAccessRule();
+
+  public static final VectorProjectTableAccessRule
+  VECTOR_PROJECT_TABLE_ACCESS_RULE = new VectorProjectTableAccessRule();
+
+  public static final VectorProjectRule VECTOR_PROJECT_RULE =
+      new VectorProjectRule();
+
+  public static final VectorFilterRule VECTOR_FILTER_RULE =
+      new VectorFilterRule();
+
+  public static final VectorCalcRule VECTOR_CALC_RULE = new VectorCalcRule();
+
+  public static final VectorAggregateRule VECTOR_AGGREGATE_RULE =
+      new VectorAggregateRule();
+
+  public static final VectorScanRangeRule VECTOR_SCAN_RANGE_RULE =
+      new VectorScanRangeRule();
+
+  public static final VectorToEnumerableConverterRule
+  VECTOR_TO_ENUMERABLE_CONVERTER_RULE = new VectorToEnumerableConverterRule();
+
+  public static final EnumerableToVectorConverterRule
+  ENUMERABLE_TO_VECTOR_CONVERTER_RULE = new EnumerableToVectorConverterRule();
+
+  /** Rules that implement relational expressions in vectorized
+   * convention. */
+  public static final List<RelOptRule> RULES =
+      ImmutableList.<RelOptRule>of(
+          VECTOR_TABLE_ACCESS_RULE,
+          VECTOR_PROJECT_TABLE_ACCESS_RULE,
+          VECTOR_PROJECT_RULE,
+          VECTOR_FILTER_RULE,
+          VECTOR_CALC_RULE,
+          VECTOR_AGGREGATE_RULE,
+          VECTOR_SCAN_RANGE_RULE,
+          VECTOR_TO_ENUMERABLE_CONVERTER_RULE,
+          ENUMERABLE_TO_VECTOR_CONVERTER_RULE);
+
+  /** Returns whether values of a given type can be held in a vector: that is,
+   * whether the type is a non-nullable numeric or boolean type. */
+  public static boolean isVectorizable(RelDataType type) {
+    if (type.isStruct()) {
+      for (RelDataTypeField field : type.getFieldList()) {
+        if (!isVectorizable(field.getType())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return !type.isNullable() && primitive(type) != null;
+  }
+
+  /** Returns the Java primitive that represents values of a type, or null if
+   * the type cannot be held in a vector. */
+  static Primitive primitive(RelDataType type) {
+    switch (type.getSqlTypeName()) {
+    case TINYINT:
+      return Primitive.BYTE;
+    case SMALLINT:
+      return Primitive.SHORT;
+    case INTEGER:
+      return Primitive.INT;
+    case BIGINT:
+      return Primitive.LONG;
+    case REAL:
+    case FLOAT:
+      return Primitive.FLOAT;
+    case DOUBLE:
+      return Primitive.DOUBLE;
+    case BOOLEAN:
+      return Primitive.BOOLEAN;
+    default:
+      return null;
+    }
+  }
+
+  /** Returns whether values of a type are held in a {@code double[]}
+   * vector (as opposed to a {@code long[]} vector). */
+  static boolean isDouble(RelDataType type) {
+    final Primitive primitive = primitive(type);
+    return primitive == Primitive.DOUBLE || primitive == Primitive.FLOAT;
+  }
+
+  /** Generates an array of the names of the primitive type of each field of a
+   * row type. */
+  static Expression primitives(RelDataType rowType) {
+    final List<Expression> list = new ArrayList<Expression>();
+    for (RelDataTypeField field : rowType.getFieldList()) {
+      list.add(Expressions.constant(primitive(field.getType()).name()));
+    }
+    return Expressions.newArrayInit(String.class, list);
+  }
+
+  /** Returns whether an expression can be evaluated on vectors. */
+  static boolean canTranslate(RexNode node) {
+    return canTranslate(node, false);
+  }
+
+  /** Returns whether an expression can be evaluated on vectors.
+   *
+   * <p>{@code AND} and {@code OR} are evaluated on vectors without
+   * short-circuiting: every operand is computed for every row of the batch.
+   * Row-at-a-time code does not evaluate {@code a / b} in
+   * {@code b <> 0 AND a / b > 1} when {@code b} is 0; vectorized code would,
+   * and integer division by zero throws. So we do not vectorize an integer
+   * division beneath {@code AND} or {@code OR}.
+   *
+   * @param node Expression
+   * @param inLogical Whether the expression is an operand, direct or
+   *                  indirect, of {@code AND} or {@code OR}
+   */
+  private static boolean canTranslate(RexNode node, boolean inLogical) {
+    if (!isVectorizable(node.getType())) {
+      return false;
+    }
+    if (node instanceof RexInputRef) {
+      return true;
+    }
+    if (node instanceof RexLiteral) {
+      return ((RexLiteral) node).getValue() != null;
+    }
+    if (node instanceof RexCall) {
+      final RexCall call = (RexCall) node;
+      switch (call.getKind()) {
+      case CAST:
+      case PLUS_PREFIX:
+        break;
+      case AND:
+      case OR:
+        inLogical = true;
+        break;
+      case DIVIDE:
+        if (inLogical && !isDouble(call.getType())) {
+          return false;
+        }
+        break;
+      default:
+        if (!OPERATORS.containsKey(call.getKind())) {
+          return false;
+        }
+      }
+      for (RexNode operand : call.getOperands()) {
+        if (!canTranslate(operand, inLogical)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** Returns whether every expression in a program can be evaluated on
+   * vectors. */
+  static boolean canTranslate(RexProgram program) {
+    if (!isVectorizable(program.getInputRowType())) {
+      return false;
+    }
+    if (program.getCondition() != null
+        && !canTranslate(program.expandLocalRef(program.getCondition()))) {
+      return false;
+    }
+    for (RexLocalRef project : program.getProjectList()) {
+      if (!canTranslate(program.expandLocalRef(project))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Generates code that creates a
+   * {@link Vectors.Expr} that evaluates a given
+   * expression. */
+  static Expression translate(RexNode node) {
+    final boolean isDouble = isDouble(node.getType());
+    if (node instanceof RexInputRef) {
+      return Expressions.call(
+          BuiltinMethod.VECTOR_FIELD.method,
+          Expressions.constant(((RexInputRef) node).getIndex()),
+          Expressions.constant(isDouble));
+    }
+    if (node instanceof RexLiteral) {
+      final Comparable value = ((RexLiteral) node).getValue();
+      if (value instanceof Boolean) {
+        return Expressions.call(
+            BuiltinMethod.VECTOR_LONG_LITERAL.method,
+            Expressions.constant((Boolean) value ? 1L : 0L));
+      }
+      if (isDouble) {
+        return Expressions.call(
+            BuiltinMethod.VECTOR_DOUBLE_LITERAL.method,
+            Expressions.constant(((Number) value).doubleValue()));
+      }
+      return Expressions.call(
+          BuiltinMethod.VECTOR_LONG_LITERAL.method,
+          Expressions.constant(((Number) value).longValue()));
+    }
+    final RexCall call = (RexCall) node;
+    final List<Expression> operands = new ArrayList<Expression>();
+    for (RexNode operand : call.getOperands()) {
+      operands.add(translate(operand));
+    }
+    switch (call.getKind()) {
+    case PLUS_PREFIX:
+      return operands.get(0);
+    case CAST:
+      return cast(operands.get(0), node.getType());
+    }
+    final Expression expression =
+        Expressions.call(
+            BuiltinMethod.VECTOR_CALL.method,
+            Expressions.constant(OPERATORS.get(call.getKind())),
+            Expressions.newArrayInit(
+                Vectors.Expr.class, operands));
+    if (ARITHMETIC.contains(call.getKind()) && !isDouble) {
+      // Vectors compute in long; narrow the result so that it overflows the
+      // same way as Java arithmetic on the declared type.
+      return cast(expression, node.getType());
+    }
+    return expression;
+  }
+
+  private static Expression cast(Expression expression, RelDataType type) {
+    return Expressions.call(
+        BuiltinMethod.VECTOR_CAST.method,
+        expression,
+        Expressions.constant(primitive(type).name()));
+  }
+
+  /** Rule that converts a {@link TableAccessRel} whose table is a
+   * {@link ColumnarTable} to a {@link VectorTableAccessRel}. */
+  private static class VectorTableAccessRule extends RelOptRule {
+    private VectorTableAccessRule() {
+      super(operand(TableAccessRel.class, none()), "VectorTableAccessRule");
+    }
+
+    public void onMatch(RelOptRuleCall call) {
+      final TableAccessRel scan = call.rel(0);
+      if (scan.getTable().unwrap(ColumnarTable.class) == null
+          || !isVectorizable(scan.getRowType())) {
+        return;
+      }
+      final int[] fields = new int[scan.getRowType().getFieldCount()];
+      for (int i = 0; i < fields.length; i++) {
+        fields[i] = i;
+      }
+      call.transformTo(
+          new VectorTableAccessRel(scan.getCluster(),
+              scan.getTraitSet().replace(VectorRel.CONVENTION),
+              scan.getTable(), fields, scan.getRowType()));
+    }
+  }
+
+  /** Rule that converts a {@link ProjectRel} that selects columns of a
+   * {@link TableAccessRel} to a {@link VectorTableAccessRel} that reads only
+   * those columns. */
+  private static class VectorProjectTableAccessRule extends RelOptRule {
+    private VectorProjectTableAccessRule() {
+      super(
+          operand(ProjectRel.class,
+              operand(TableAccessRel.class, none())),
+          "VectorProjectTableAccessRule");
+    }
+
+    public void onMatch(RelOptRuleCall call) {
+      final ProjectRel project = call.rel(0);
+      final TableAccessRel scan = call.rel(1);
+      if (scan.getTable().unwrap(ColumnarTable.class) == null
+          || !isVectorizable(project.getRowType())) {
+        return;
+      }
+      final List<RexNode> projects = project.getProjects();
+      final int[] fields = new int[projects.size()];
+      for (int i = 0; i < fields.length; i++) {
+        if (!(projects.get(i) instanceof RexInputRef)) {
+          return;
+        }
+        fields[i] = ((RexInputRef) projects.get(i)).getIndex();
+      }
+      call.transformTo(
+          new VectorTableAccessRel(project.getCluster(),
+              project.getTraitSet().replace(VectorRel.CONVENTION),
+              scan.getTable(), fields, project.getRowType()));
+    }
+  }
+
+  /** Rule that finds, in the condition of a {@link VectorCalcRel} on a
+   * {@link VectorTableAccessRel}, a range of values of an integral column, and
+   * tells the scan to skip rows outside that range.
+   *
+   * <p>The condition must be a conjunction with at least one comparison
+   * between the column and an integer literal; for example,
+   * {@code deptno >= 10 AND deptno < 20 AND salary > 1000} gives the range
+   * [10, 19] of {@code deptno}. The calc still evaluates the whole
+   * condition; tables such as run-length encoded
+   * {@link net.hydromatic.optiq.impl.clone.ArrayTable}s use the range to
+   * skip runs of rows without reading them.</p> */
+  private static class VectorScanRangeRule extends RelOptRule {
+    private VectorScanRangeRule() {
+      super(
+          operand(VectorCalcRel.class,
+              operand(VectorTableAccessRel.class, none())),
+          "VectorScanRangeRule");
+    }
+
+    public void onMatch(RelOptRuleCall call) {
+      final VectorCalcRel calc = call.rel(0);
+      final VectorTableAccessRel scan = call.rel(1);
+      final RexProgram program = calc.getProgram();
+      if (scan.filterColumn >= 0 || program.getCondition() == null) {
+        return;
+      }
+      int field = -1;
+      long lower = Long.MIN_VALUE;
+      long upper = Long.MAX_VALUE;
+      for (RexNode node : RelOptUtil.conjunctions(
+          program.expandLocalRef(program.getCondition()))) {
+        if (!(node instanceof RexCall)) {
+          continue;
+        }
+        final RexCall comparison = (RexCall) node;
+        SqlKind kind = comparison.getKind();
+        if (comparison.getOperands().size() != 2) {
+          continue;
+        }
+        RexNode ref = comparison.getOperands().get(0);
+        RexNode literal = comparison.getOperands().get(1);
+        if (literal instanceof RexInputRef) {
+          final RexNode temp = ref;
+          ref = literal;
+          literal = temp;
+          kind = reverse(kind);
+        }
+        if (kind == null
+            || !(ref instanceof RexInputRef)
+            || !(literal instanceof RexLiteral)
+            || !SqlTypeName.INT_TYPES.contains(
+                literal.getType().getSqlTypeName())
+            || isDouble(ref.getType())
+            || primitive(ref.getType()) == Primitive.BOOLEAN) {
+          continue;
+        }
+        final int index = ((RexInputRef) ref).getIndex();
+        if (field >= 0 && index != field) {
+          continue;
+        }
+        final Object value = ((RexLiteral) literal).getValue();
+        if (!(value instanceof Number)) {
+          continue;
+        }
+        final long v = ((Number) value).longValue();
+        switch (kind) {
+        case EQUALS:
+          lower = Math.max(lower, v);
+          upper = Math.min(upper, v);
+          break;
+        case LESS_THAN:
+          if (v == Long.MIN_VALUE) {
+            continue;
+          }
+          upper = Math.min(upper, v - 1);
+          break;
+        case LESS_THAN_OR_EQUAL:
+          upper = Math.min(upper, v);
+          break;
+        case GREATER_THAN:
+          if (v == Long.MAX_VALUE) {
+            continue;
+          }
+          lower = Math.max(lower, v + 1);
+          break;
+        case GREATER_THAN_OR_EQUAL:
+          lower = Math.max(lower, v);
+          break;
+        default:
+          continue;
+        }
+        field = index;
+      }
+      if (field < 0) {
+        return;
+      }
+      final VectorTableAccessRel newScan =
+          new VectorTableAccessRel(scan.getCluster(), scan.getTraitSet(),
+              scan.getTable(), scan.fields, scan.getRowType(),
+              scan.fields[field], lower, upper);
+      call.transformTo(
+          calc.copy(calc.getTraitSet(), ImmutableList.<RelNode>of(newScan)));
+    }
+
+    /** Returns the comparison that results from swapping the operands of a
+     * comparison, or null if the kind is not a comparison supported by this
+     * rule. */
+    private static SqlKind reverse(SqlKind kind) {
+      switch (kind) {
+      case EQUALS:
+        return SqlKind.EQUALS;
+      case LESS_THAN:
+        return SqlKind.GREATER_THAN;
+      case LESS_THAN_OR_EQUAL:
+        return SqlKind.GREATER_THAN_OR_EQUAL;
+      case GREATER_THAN:
+        return SqlKind.LESS_THAN;
+      case GREATER_THAN_OR_EQUAL:
+        return SqlKind.LESS_THAN_OR_EQUAL;
+      default:
+        return null;
+      }
+    }
+  }
+
+  /** Relational expression that reads columns of a {@link ColumnarTable} in
+   * vectorized convention.
+   *
+   * <p>If {@code filterColumn} is not -1, the table may skip rows whose value
+   * of that column is not between {@code lower} and {@code upper}; see
+   * {@link ColumnarTable.Reader#seek}.</p> */
+  public static class VectorTableAccessRel
+      extends TableAccessRelBase
+      implements VectorRel {
+    private final int[] fields;
+    private final RelDataType projectRowType;
+    final int filterColumn;
+    final long lower;
+    final long upper;
+
+    public VectorTableAccessRel(RelOptCluster cluster, RelTraitSet traitSet,
+        RelOptTable table, int[] fields, RelDataType rowType) {
+      this(cluster, traitSet, table, fields, rowType, -1, Long.MIN_VALUE,
+          Long.MAX_VALUE);
+    }
+
+    public VectorTableAccessRel(RelOptCluster cluster, RelTraitSet traitSet,
+        RelOptTable table, int[] fields, RelDataType rowType, int filterColumn,
+        long lower, long upper) {
+      super(cluster, traitSet, table);
+      assert getConvention() == VectorRel.CONVENTION;
+      this.fields = fields;
+      this.projectRowType = rowType;
+      this.filterColumn = filterColumn;
+      this.lower = lower;
+      this.upper = upper;
+    }
+
+    @Override public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+      assert inputs.isEmpty();
+      return new VectorTableAccessRel(getCluster(), traitSet, table, fields,
+          projectRowType, filterColumn, lower, upper);
+    }
+
+    @Override public RelDataType deriveRowType() {
+      return projectRowType;
+    }
+
+    @Override public RelWriter explainTerms(RelWriter pw) {
+      return super.explainTerms(pw)
+          .item("fields", Ints.asList(fields))
+          .itemIf("filterColumn", filterColumn, filterColumn >= 0)
+          .itemIf("lower", lower, filterColumn >= 0)
+          .itemIf("upper", upper, filterColumn >= 0);
+    }
+
+    @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+      // Reading a few columns in batches is much cheaper than creating a
+      // row object for each row. A scan that can skip rows is cheaper still.
+      return super.computeSelfCost(planner)
+          .multiplyBy(.1 * (fields.length + 2D)
+              / (table.getRowType().getFieldCount() + 2D)
+              * (filterColumn >= 0 ? .9 : 1D));
+    }
+
+    public Expression implement(Implementor implementor) {
+      final List<Expression> list = new ArrayList<Expression>();
+      for (int field : fields) {
+        list.add(Expressions.constant(field));
+      }
+      return implementor.builder.append("scan",
+          Expressions.call(
+              BuiltinMethod.VECTOR_SCAN.method,
+              table.getExpression(ColumnarTable.class),
+              Expressions.newArrayInit(int.class, list),
+              primitives(getRowType()),
+              Expressions.constant(filterColumn),
+              Expressions.constant(lower),
+              Expressions.constant(upper)));
+    }
+  }
+
+  /** Rule that converts a {@link ProjectRel} to a {@link VectorCalcRel}. */
+  private static class VectorProjectRule extends ConverterRule {
+    private VectorProjectRule() {
+      super(ProjectRel.class, Convention.NONE, VectorRel.CONVENTION,
+          "VectorProjectRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final ProjectRel project = (ProjectRel) rel;
+      final RelNode child = project.getChild();
+      final RexProgram program =
+          RexProgram.create(
+              child.getRowType(),
+              project.getProjects(),
+              null,
+              project.getRowType(),
+              project.getCluster().getRexBuilder());
+      return VectorCalcRel.create(project, child, program);
+    }
+  }
+
+  /** Rule that converts a {@link FilterRel} to a {@link VectorCalcRel}. */
+  private static class VectorFilterRule extends ConverterRule {
+    private VectorFilterRule() {
+      super(FilterRel.class, Convention.NONE, VectorRel.CONVENTION,
+          "VectorFilterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final FilterRel filter = (FilterRel) rel;
+      final RelNode child = filter.getChild();
+      final RexProgramBuilder programBuilder =
+          new RexProgramBuilder(child.getRowType(),
+              filter.getCluster().getRexBuilder());
+      programBuilder.addIdentity();
+      programBuilder.addCondition(filter.getCondition());
+      return VectorCalcRel.create(filter, child, programBuilder.getProgram());
+    }
+  }
+
+  /** Rule that converts a {@link CalcRel} to a {@link VectorCalcRel}. */
+  private static class VectorCalcRule extends ConverterRule {
+    private VectorCalcRule() {
+      super(CalcRel.class, Convention.NONE, VectorRel.CONVENTION,
+          "VectorCalcRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final CalcRel calc = (CalcRel) rel;
+      return VectorCalcRel.create(calc, calc.getChild(), calc.getProgram());
+    }
+  }
+
+  /** Relational expression that filters and projects batches of rows in
+   * vectorized convention. */
+  public static class VectorCalcRel extends CalcRelBase implements VectorRel {
+    public VectorCalcRel(
+        RelOptCluster cluster,
+        RelTraitSet traitSet,
+        RelNode child,
+        RelDataType rowType,
+        RexProgram program,
+        List<RelCollation> collationList) {
+      super(cluster, traitSet, child, rowType, program, collationList);
+      assert getConvention() == VectorRel.CONVENTION;
+      assert !program.containsAggs();
+    }
+
+    /** Creates a VectorCalcRel that implements a given relational expression,
+     * or returns null if the program cannot be evaluated on vectors. */
+    static VectorCalcRel create(RelNode rel, RelNode child,
+        RexProgram program) {
+      if (program.containsAggs() || !canTranslate(program)) {
+        return null;
+      }
+      final RelTraitSet traitSet =
+          rel.getTraitSet().replace(VectorRel.CONVENTION);
+      return new VectorCalcRel(rel.getCluster(), traitSet,
+          RelOptRule.convert(child,
+              child.getTraitSet().replace(VectorRel.CONVENTION)),
+          rel.getRowType(), program, ImmutableList.<RelCollation>of());
+    }
+
+    @Override public VectorCalcRel copy(RelTraitSet traitSet, RelNode child,
+        RexProgram program, List<RelCollation> collationList) {
+      return new VectorCalcRel(getCluster(), traitSet, child,
+          program.getOutputRowType(), program, collationList);
+    }
+
+    @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+      return super.computeSelfCost(planner).multiplyBy(.1);
+    }
+
+    public Expression implement(Implementor implementor) {
+      final Expression input = implementor.visitChild((VectorRel) getChild());
+      final Expression condition =
+          program.getCondition() == null
+              ? Expressions.constant(null)
+              : translate(program.expandLocalRef(program.getCondition()));
+      final List<Expression> projects = new ArrayList<Expression>();
+      for (RexLocalRef project : program.getProjectList()) {
+        projects.add(translate(program.expandLocalRef(project)));
+      }
+      return implementor.builder.append("calc",
+          Expressions.call(
+              BuiltinMethod.VECTOR_CALC.method,
+              input,
+              condition,
+              Expressions.newArrayInit(
+                  Vectors.Expr.class,
+                  projects)));
+    }
+  }
+
+  /** Rule that converts an {@link AggregateRel} to a
+   * {@link VectorAggregateRel}. */
+  private static class VectorAggregateRule extends ConverterRule {
+    private VectorAggregateRule() {
+      super(AggregateRel.class, Convention.NONE, VectorRel.CONVENTION,
+          "VectorAggregateRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      final AggregateRel agg = (AggregateRel) rel;
+      final RelDataType inputRowType = agg.getChild().getRowType();
+      if (agg.getGroupSet().cardinality() > 1
+          || !isVectorizable(inputRowType)
+          || !isVectorizable(agg.getRowType())) {
+        return null;
+      }
+      if (agg.getGroupCount() == 1) {
+        final int groupField = agg.getGroupSet().nextSetBit(0);
+        if (isDouble(inputRowType.getFieldList().get(groupField).getType())) {
+          return null;
+        }
+      }
+      for (AggregateCall aggCall : agg.getAggCallList()) {
+        final String function = function(aggCall);
+        if (function == null || aggCall.isDistinct()) {
+          return null;
+        }
+        if (!function.equals("COUNT")) {
+          // Result is held in a vector of the same kind as the argument.
+          final RelDataType argType =
+              inputRowType.getFieldList().get(aggCall.getArgList().get(0))
+                  .getType();
+          if (isDouble(argType) != isDouble(aggCall.getType())) {
+            return null;
+          }
+        }
+      }
+      final RelTraitSet traitSet =
+          agg.getTraitSet().replace(VectorRel.CONVENTION);
+      return new VectorAggregateRel(rel.getCluster(), traitSet,
+          convert(agg.getChild(), traitSet), agg.getGroupSet(),
+          agg.getAggCallList());
+    }
+  }
+
+  /** Returns the name of the function in
+   * {@link Vectors#aggregate} that implements an
+   * aggregate call, or null if there is none. */
+  private static String function(AggregateCall aggCall) {
+    final Aggregation aggregation = aggCall.getAggregation();
+    if (aggregation == SqlStdOperatorTable.COUNT) {
+      // Arguments are never null, so COUNT(x) is the same as COUNT(*).
+      return "COUNT";
+    } else if (aggregation == SqlStdOperatorTable.SUM
+        || aggregation == SqlStdOperatorTable.SUM0) {
+      return "SUM";
+    } else if (aggregation == SqlStdOperatorTable.MIN) {
+      return "MIN";
+    } else if (aggregation == SqlStdOperatorTable.MAX) {
+      return "MAX";
+    } else {
+      return null;
+    }
+  }
+
+  /** Relational expression that aggregates batches of rows in vectorized
+   * convention. Supports at most one group key, which must be integral, and
+   * the aggregate functions {@code COUNT}, {@code SUM}, {@code MIN} and
+   * {@code MAX}. */
+  public static class VectorAggregateRel
+      extends AggregateRelBase
+      implements VectorRel {
+    public VectorAggregateRel(
+        RelOptCluster cluster,
+        RelTraitSet traitSet,
+        RelNode child,
+        BitSet groupSet,
+        List<AggregateCall> aggCalls) {
+      super(cluster, traitSet, child, groupSet, aggCalls);
+      assert getConvention() == VectorRel.CONVENTION;
+      assert groupSet.cardinality() <= 1;
+    }
+
+    @Override public VectorAggregateRel copy(RelTraitSet traitSet,
+        RelNode input, BitSet groupSet, List<AggregateCall> aggCalls) {
+      return new VectorAggregateRel(getCluster(), traitSet, input, groupSet,
+          aggCalls);
+    }
+
+    @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+      return super.computeSelfCost(planner).multiplyBy(.1);
+    }
+
+    public Expression implement(Implementor implementor) {
+      final Expression input = implementor.visitChild((VectorRel) getChild());
+      final List<Expression> functions = new ArrayList<Expression>();
+      final List<Expression> args = new ArrayList<Expression>();
+      for (AggregateCall aggCall : aggCalls) {
+        functions.add(Expressions.constant(function(aggCall)));
+        args.add(
+            Expressions.constant(
+                aggCall.getArgList().isEmpty()
+                    ? -1
+                    : aggCall.getArgList().get(0)));
+      }
+      return implementor.builder.append("aggregate",
+          Expressions.call(
+              BuiltinMethod.VECTOR_AGGREGATE.method,
+              input,
+              Expressions.constant(
+                  groupSet.isEmpty() ? -1 : groupSet.nextSetBit(0)),
+              Expressions.newArrayInit(String.class, functions),
+              Expressions.newArrayInit(int.class, args)));
+    }
+  }
+
+  /** Rule that converts a relational expression from vectorized convention
+   * to {@link EnumerableConvention enumerable convention}. */
+  private static class VectorToEnumerableConverterRule extends ConverterRule {
+    private VectorToEnumerableConverterRule() {
+      super(RelNode.class, VectorRel.CONVENTION, EnumerableConvention.INSTANCE,
+          "VectorToEnumerableConverterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      if (rel.getRowType().getFieldCount() == 0) {
+        return null;
+      }
+      return new VectorToEnumerableConverter(rel.getCluster(),
+          rel.getTraitSet().replace(EnumerableConvention.INSTANCE), rel);
+    }
+  }
+
+  /** Rule that converts a relational expression from
+   * {@link EnumerableConvention enumerable convention} to vectorized
+   * convention. */
+  private static class EnumerableToVectorConverterRule extends ConverterRule {
+    private EnumerableToVectorConverterRule() {
+      super(RelNode.class, EnumerableConvention.INSTANCE, VectorRel.CONVENTION,
+          "EnumerableToVectorConverterRule");
+    }
+
+    public RelNode convert(RelNode rel) {
+      if (rel.getRowType().getFieldCount() == 0
+          || !isVectorizable(rel.getRowType())) {
+        return null;
+      }
+      return new EnumerableToVectorConverter(rel.getCluster(),
+          rel.getTraitSet().replace(VectorRel.CONVENTION), rel);
+    }
+  }
+}
+
+// End VectorRules.java
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.rules.vector;
+
+import net.hydromatic.linq4j.expressions.BlockBuilder;
+import net.hydromatic.linq4j.expressions.Expression;
+import net.hydromatic.linq4j.expressions.Expressions;
+
+import net.hydromatic.optiq.BuiltinMethod;
+import net.hydromatic.optiq.DataContext;
+import net.hydromatic.optiq.rules.java.*;
+
+import org.eigenbase.rel.RelNode;
+import org.eigenbase.rel.convert.ConverterRelImpl;
+import org.eigenbase.relopt.*;
+
+import java.util.List;
+
+/**
+ * Relational expression that converts input of
+ * {@link VectorRel#CONVENTION vectorized convention} into
+ * {@link EnumerableConvention}.
+ *
+ * <p>Concretely, this means building the plan of
+ * {@link net.hydromatic.optiq.runtime.Vectors.Node}s and calling
+ * {@link net.hydromatic.optiq.runtime.Vectors#toEnumerable} to box the values
+ * of each batch into rows.</p>
+ */
+public class VectorToEnumerableConverter
+    extends ConverterRelImpl
+    implements EnumerableRel {
+  protected VectorToEnumerableConverter(RelOptCluster cluster,
+      RelTraitSet traits,
+      RelNode input) {
+    super(cluster, ConventionTraitDef.INSTANCE, traits, input);
+  }
+
+  @Override
+  public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+    return new VectorToEnumerableConverter(
+        getCluster(), traitSet, sole(inputs));
+  }
+
+  public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
+    // Generate:
+    //   Vectors.Node node = ...;
+    //   return Vectors.toEnumerable(node, new String[] {"INT", ...}, root);
+    final BlockBuilder builder = new BlockBuilder();
+    final VectorRel child = (VectorRel) getChild();
+    final PhysType physType =
+        PhysTypeImpl.of(implementor.getTypeFactory(),
+            getRowType(),
+            JavaRowFormat.ARRAY);
+    final Expression node =
+        child.implement(new VectorRel.Implementor(implementor, builder));
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(
+                BuiltinMethod.VECTOR_TO_ENUMERABLE.method,
+                node,
+                VectorRules.primitives(getRowType()),
+                DataContext.ROOT)));
+    return implementor.result(physType, builder.toBlock());
+  }
+}
+
+// End VectorToEnumerableConverter.java
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.optiq.Table;
+
+/**
+ * Table that stores its data column-wise, and can copy a range of a column's
+ * values into an array of primitives.
+ *
+ * <p>Used by {@link Vectors#scan} to read batches without creating a row
+ * object per row.</p>
+ */
+public interface ColumnarTable extends Table {
+  /** Returns a reader over the table's current contents. */
+  Reader reader();
+
+  /** Reads columns of a {@link ColumnarTable}. */
+  interface Reader {
+    /** Returns the number of rows. */
+    int getRowCount();
+
+    /** Copies values of an integral or boolean column into an array. Boolean
+     * values are copied as 0 or 1.
+     *
+     * @param column Ordinal of column
+     * @param offset Ordinal of first row to copy
+     * @param count Number of rows to copy
+     * @param target Array to copy into, starting at position 0
+     */
+    void read(int column, int offset, int count, long[] target);
+
+    /** Copies values of a numeric column into an array. */
+    void read(int column, int offset, int count, double[] target);
+
+    /** Returns the first row, at or after {@code offset} and before
+     * {@code end}, that might have a value of an integral column between
+     * {@code lower} and {@code upper} (inclusive); or {@code end} if no row
+     * in the range does.
+     *
+     * <p>Allows a scan to skip rows that a filter would reject, without
+     * reading them. A reader that cannot tell returns {@code offset}; a row
+     * returned may still fail to match.</p>
+     */
+    int seek(int column, int offset, int end, long lower, long upper);
+  }
+}
+
+// End ColumnarTable.java
@@ -19,11 +19,19 @@
 import net.hydromatic.linq4j.AbstractEnumerable;
 import net.hydromatic.linq4j.Enumerable;
 import net.hydromatic.linq4j.Enumerator;
+import net.hydromatic.linq4j.Linq4j;
 import net.hydromatic.linq4j.function.EqualityComparer;
+import net.hydromatic.linq4j.function.Function0;
 import net.hydromatic.linq4j.function.Function1;
+import net.hydromatic.linq4j.function.Function2;
 import net.hydromatic.linq4j.function.Predicate1;
 
+import net.hydromatic.optiq.DataContext;
+
 import org.eigenbase.util.Bug;
+import org.eigenbase.util.Pair;
+
+import java.util.*;
 
 /**
  * Utilities for processing {@link net.hydromatic.linq4j.Enumerable}
@@ -75,6 +83,180 @@ public boolean apply(TSource v0) {
     };
   }
 
+  /**
+   * Joins two inputs whose join key is a single integral value (such as an
+   * {@code int} or {@code long} column).
+   *
+   * <p>Builds a {@link LongHashMultiMap} from one input (the "build" input)
+   * and streams the other input (the "probe" input) through it. The caller
+   * should choose the smaller input as the build input. Keys that are null
+   * never match.</p>
+   *
+   * @param outer Left input
+   * @param inner Right input
+   * @param outerKeySelector Returns the key of a left row, or null
+   * @param innerKeySelector Returns the key of a right row, or null
+   * @param resultSelector Combines a left row and a right row; either may be
+   *                       null if the join is outer
+   * @param generateNullsOnLeft Whether to emit right rows that have no match
+   * @param generateNullsOnRight Whether to emit left rows that have no match
+   * @param buildOuter Whether to build on the left input (the default is the
+   *                   right input)
+   */
+  public static <TSource, TInner, TResult> Enumerable<TResult> longHashJoin(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, Number> outerKeySelector,
+      final Function1<TInner, Number> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight,
+      final boolean buildOuter) {
+    return longHashJoin(outer, inner, outerKeySelector, innerKeySelector,
+        resultSelector, generateNullsOnLeft, generateNullsOnRight, buildOuter,
+        null);
+  }
+
+  /**
+   * Joins two inputs on a key of primitive integral type, spilling to disk if
+   * the build input does not fit into the statement's {@link MemoryBudget}.
+   *
+   * <p>If the build input exceeds the budget, both inputs are partitioned on
+   * the hash of their key into {@link SpillFile}s, and each pair of partitions
+   * is then joined in memory (a "grace" hash join). There is one level of
+   * partitioning; a partition is joined in memory even if it exceeds the
+   * budget.</p>
+   *
+   * <p>Other parameters are as for
+   * {@link #longHashJoin(Enumerable, Enumerable, Function1, Function1, Function2, boolean, boolean, boolean)}.</p>
+   *
+   * @param root Data context, from which the budget is obtained; may be null
+   */
+  public static <TSource, TInner, TResult> Enumerable<TResult> longHashJoin(
+      final Enumerable<TSource> outer, final Enumerable<TInner> inner,
+      final Function1<TSource, Number> outerKeySelector,
+      final Function1<TInner, Number> innerKeySelector,
+      final Function2<TSource, TInner, TResult> resultSelector,
+      final boolean generateNullsOnLeft,
+      final boolean generateNullsOnRight,
+      final boolean buildOuter,
+      DataContext root) {
+    final MemoryBudget budget = MemoryBudget.of(root);
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        //noinspection unchecked
+        return buildOuter
+            ? new LongHashJoinEnumerator<TResult>(
+                (Enumerable) outer, (Enumerable) inner,
+                (Function1) outerKeySelector, (Function1) innerKeySelector,
+                new Function2<Object, Object, TResult>() {
+                  public TResult apply(Object build, Object probe) {
+                    return resultSelector.apply((TSource) build,
+                        (TInner) probe);
+                  }
+                },
+                generateNullsOnRight, generateNullsOnLeft, budget)
+            : new LongHashJoinEnumerator<TResult>(
+                (Enumerable) inner, (Enumerable) outer,
+                (Function1) innerKeySelector, (Function1) outerKeySelector,
+                new Function2<Object, Object, TResult>() {
+                  public TResult apply(Object build, Object probe) {
+                    return resultSelector.apply((TSource) probe,
+                        (TInner) build);
+                  }
+                },
+                generateNullsOnLeft, generateNullsOnRight, budget);
+      }
+    };
+  }
+
+  /**
+   * Sorts the elements of a sequence according to a key, spilling sorted runs
+   * to disk if the input does not fit into the statement's
+   * {@link MemoryBudget}. Elements with equal keys are returned in the order
+   * they were read.
+   *
+   * <p>If the statement has no budget, equivalent to
+   * {@link Enumerable#orderBy(Function1, Comparator)}.</p>
+   *
+   * @param source Input
+   * @param keySelector Returns the sort key of an element
+   * @param comparator Compares keys; if null, keys must be {@link Comparable}
+   * @param root Data context, from which the budget is obtained; may be null
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      final Comparator<TKey> comparator,
+      DataContext root) {
+    final MemoryBudget budget = MemoryBudget.of(root);
+    if (budget == null) {
+      //noinspection unchecked
+      return comparator == null
+          ? source.orderBy((Function1) keySelector)
+          : source.orderBy(keySelector, comparator);
+    }
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        return new SortEnumerator<TSource, TKey>(source, keySelector,
+            comparator == null ? Enumerables.<TKey>naturalComparator()
+                : comparator,
+            budget);
+      }
+    };
+  }
+
+  private static <T> Comparator<T> naturalComparator() {
+    return new Comparator<T>() {
+      public int compare(T o1, T o2) {
+        //noinspection unchecked
+        return ((Comparable) o1).compareTo(o2);
+      }
+    };
+  }
+
+  /**
+   * Groups the elements of a sequence according to a key and aggregates each
+   * group, spilling to disk if the groups do not fit into the statement's
+   * {@link MemoryBudget}.
+   *
+   * <p>When the budget is exhausted, groups already in memory continue to be
+   * aggregated in memory; elements that belong to any other group are written
+   * to partitions according to the hash of their key, and each partition is
+   * aggregated after the input is exhausted. A partition that does not fit is
+   * partitioned again, up to a fixed depth.</p>
+   *
+   * <p>If the statement has no budget, equivalent to
+   * {@link Enumerable#groupBy(Function1, Function0, Function2, Function2, EqualityComparer)}.</p>
+   *
+   * @param comparer Compares keys; if null, uses {@link Object#equals} and
+   *                 {@link Object#hashCode}
+   * @param root Data context, from which the budget is obtained; may be null
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult>
+  groupBy(final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      final Function0<TAccumulate> accumulatorInitializer,
+      final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      final Function2<TKey, TAccumulate, TResult> resultSelector,
+      final EqualityComparer<TKey> comparer,
+      DataContext root) {
+    final MemoryBudget budget = MemoryBudget.of(root);
+    if (budget == null) {
+      return comparer == null
+          ? source.groupBy(keySelector, accumulatorInitializer,
+              accumulatorAdder, resultSelector)
+          : source.groupBy(keySelector, accumulatorInitializer,
+              accumulatorAdder, resultSelector, comparer);
+    }
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return new GroupByEnumerator<TSource, TKey, TAccumulate, TResult>(
+            source, keySelector, accumulatorInitializer, accumulatorAdder,
+            resultSelector, comparer, budget);
+      }
+    };
+  }
+
   /**
    * Filters a sequence of values based on a
    * predicate.
@@ -117,6 +299,687 @@ public void close() {
     };
   }
 
+  /** Enumerator that implements
+   * {@link Enumerables#longHashJoin}. Rows are described as "build" or "probe"
+   * rows, regardless of whether they come from the left or right input.
+   *
+   * <p>If the build input exceeds the memory budget, both inputs are written
+   * to partitions, and the enumerator joins one pair of partitions at a
+   * time.</p>
+   *
+   * @param <TResult> Result type */
+  private static class LongHashJoinEnumerator<TResult>
+      implements Enumerator<TResult> {
+    /** Number of partitions when spilling. A power of 2; the partition of a
+     * key is given by the top bits of its hash, whereas its slot in a
+     * {@link LongHashMultiMap} is given by the bottom bits. */
+    private static final int PARTITION_COUNT = 16;
+
+    private final Enumerable<Object> build;
+    private final Enumerable<Object> probe;
+    private final Function1<Object, Number> buildKeySelector;
+    private final Function1<Object, Number> probeKeySelector;
+    private final Function2<Object, Object, TResult> resultSelector;
+    private final boolean emitUnmatchedBuild;
+    private final boolean emitUnmatchedProbe;
+    private final MemoryBudget budget;
+
+    /** Pairs of build and probe partitions not yet joined; null until the
+     * build input has been read, empty if it did not spill. */
+    private Deque<SpillFile[]> partitions;
+    private long reserved;
+
+    private LongHashMultiMap<Object> map;
+    /** Build rows whose key is null; they match nothing. */
+    private List<Object> nullKeyRows;
+    /** Which build entries have matched; null unless
+     * {@link #emitUnmatchedBuild}. */
+    private boolean[] matched;
+
+    private Enumerator<Object> probeEnumerator;
+    private boolean probing;
+    private Object probeRow;
+    private boolean probeRowPending;
+    private boolean probeRowMatched;
+    private int entry;
+    private int unmatchedOrdinal;
+    private TResult current;
+
+    LongHashJoinEnumerator(Enumerable<Object> build,
+        Enumerable<Object> probe,
+        Function1<Object, Number> buildKeySelector,
+        Function1<Object, Number> probeKeySelector,
+        Function2<Object, Object, TResult> resultSelector,
+        boolean emitUnmatchedBuild,
+        boolean emitUnmatchedProbe,
+        MemoryBudget budget) {
+      this.build = build;
+      this.probe = probe;
+      this.buildKeySelector = buildKeySelector;
+      this.probeKeySelector = probeKeySelector;
+      this.resultSelector = resultSelector;
+      this.emitUnmatchedBuild = emitUnmatchedBuild;
+      this.emitUnmatchedProbe = emitUnmatchedProbe;
+      this.budget = budget;
+      finish();
+    }
+
+    private static int partition(Number key) {
+      return key == null
+          ? 0
+          : LongHashMultiMap.hash(key.longValue()) >>> 28;
+    }
+
+    /** Reads build rows into the hash table. If a budget is given and the
+     * rows do not fit, writes all build and probe rows to partitions, and
+     * returns false. */
+    private boolean populate(Enumerator<Object> enumerator,
+        MemoryBudget budget) {
+      map = new LongHashMultiMap<Object>();
+      nullKeyRows = new ArrayList<Object>();
+      try {
+        while (enumerator.moveNext()) {
+          final Object row = enumerator.current();
+          if (budget != null) {
+            final long size = MemoryBudget.estimateSize(row) + 16;
+            if (!budget.reserve(size)) {
+              spill(row, enumerator, budget);
+              return false;
+            }
+            reserved += size;
+          }
+          final Number key = buildKeySelector.apply(row);
+          if (key == null) {
+            nullKeyRows.add(row);
+          } else {
+            map.put(key.longValue(), row);
+          }
+        }
+      } finally {
+        enumerator.close();
+      }
+      if (emitUnmatchedBuild) {
+        matched = new boolean[map.size()];
+      }
+      return true;
+    }
+
+    /** Writes the build rows read so far, the current build row, the
+     * remaining build rows, and all probe rows, to partitions. */
+    private void spill(Object row, Enumerator<Object> enumerator,
+        MemoryBudget budget) {
+      final SpillFile[] builds = new SpillFile[PARTITION_COUNT];
+      final SpillFile[] probes = new SpillFile[PARTITION_COUNT];
+      for (int i = 0; i < PARTITION_COUNT; i++) {
+        builds[i] = budget.createSpillFile();
+        probes[i] = budget.createSpillFile();
+        partitions.add(new SpillFile[] {builds[i], probes[i]});
+      }
+      for (int e = 0; e < map.size(); e++) {
+        final Object buildRow = map.get(e);
+        builds[partition(buildKeySelector.apply(buildRow))].write(buildRow);
+      }
+      for (Object buildRow : nullKeyRows) {
+        builds[0].write(buildRow);
+      }
+      releaseTable();
+      for (;;) {
+        builds[partition(buildKeySelector.apply(row))].write(row);
+        if (!enumerator.moveNext()) {
+          break;
+        }
+        row = enumerator.current();
+      }
+      final Enumerator<Object> probeRows = probe.enumerator();
+      try {
+        while (probeRows.moveNext()) {
+          final Object probeRow = probeRows.current();
+          probes[partition(probeKeySelector.apply(probeRow))]
+              .write(probeRow);
+        }
+      } finally {
+        probeRows.close();
+      }
+    }
+
+    /** Starts joining the next pair of inputs; returns false if there are no
+     * more. */
+    private boolean start() {
+      if (partitions == null) {
+        partitions = new ArrayDeque<SpillFile[]>();
+        if (populate(build.enumerator(), budget)) {
+          probeEnumerator = probe.enumerator();
+          return true;
+        }
+      }
+      final SpillFile[] pair = partitions.poll();
+      if (pair == null) {
+        return false;
+      }
+      populate(pair[0].<Object>enumerator(), null);
+      probeEnumerator = pair[1].enumerator();
+      return true;
+    }
+
+    private void releaseTable() {
+      map = null;
+      nullKeyRows = null;
+      matched = null;
+      if (reserved > 0) {
+        budget.release(reserved);
+        reserved = 0;
+      }
+    }
+
+    private void finish() {
+      if (probeEnumerator != null) {
+        probeEnumerator.close();
+        probeEnumerator = null;
+      }
+      releaseTable();
+      probing = true;
+      probeRow = null;
+      probeRowPending = false;
+      entry = -1;
+      unmatchedOrdinal = 0;
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      for (;;) {
+        if (map == null && !start()) {
+          return false;
+        }
+        if (moveNextInTable()) {
+          return true;
+        }
+        finish();
+      }
+    }
+
+    private boolean moveNextInTable() {
+      while (probing) {
+        if (entry >= 0) {
+          final int e = entry;
+          entry = map.next(e);
+          if (matched != null) {
+            matched[e] = true;
+          }
+          probeRowMatched = true;
+          current = resultSelector.apply(map.get(e), probeRow);
+          return true;
+        }
+        if (probeRowPending) {
+          probeRowPending = false;
+          if (!probeRowMatched && emitUnmatchedProbe) {
+            current = resultSelector.apply(null, probeRow);
+            return true;
+          }
+        }
+        if (!probeEnumerator.moveNext()) {
+          probing = false;
+          break;
+        }
+        probeRow = probeEnumerator.current();
+        probeRowPending = true;
+        probeRowMatched = false;
+        final Number key = probeKeySelector.apply(probeRow);
+        entry = key == null ? -1 : map.first(key.longValue());
+      }
+      if (!emitUnmatchedBuild) {
+        return false;
+      }
+      while (unmatchedOrdinal < matched.length) {
+        final int e = unmatchedOrdinal++;
+        if (!matched[e]) {
+          current = resultSelector.apply(map.get(e), null);
+          return true;
+        }
+      }
+      final int i = unmatchedOrdinal++ - matched.length;
+      if (i < nullKeyRows.size()) {
+        current = resultSelector.apply(nullKeyRows.get(i), null);
+        return true;
+      }
+      return false;
+    }
+
+    public void reset() {
+      close();
+      current = null;
+    }
+
+    public void close() {
+      finish();
+      if (partitions != null) {
+        for (SpillFile[] pair : partitions) {
+          pair[0].delete();
+          pair[1].delete();
+        }
+        partitions = null;
+      }
+    }
+  }
+
+  /** Enumerator that implements
+   * {@link Enumerables#orderBy(Enumerable, Function1, Comparator, DataContext)}.
+   *
+   * <p>Reads the input into memory until the budget is exhausted, sorts it,
+   * and writes it to a {@link SpillFile} (a "run"); then merges the runs,
+   * at most {@link #MERGE_WIDTH} at a time.</p>
+   *
+   * @param <TSource> Element type
+   * @param <TKey> Key type */
+  private static class SortEnumerator<TSource, TKey>
+      implements Enumerator<TSource> {
+    /** Maximum number of runs that are merged at once. If more runs are
+     * spilled, they are merged in several passes, so that the number of open
+     * files stays bounded however large the input. */
+    static final int MERGE_WIDTH = 64;
+
+    private final Enumerable<TSource> source;
+    private final Function1<TSource, TKey> keySelector;
+    private final Comparator<TKey> comparator;
+    private final MemoryBudget budget;
+
+    private final List<Run<TSource, TKey>> runs =
+        new ArrayList<Run<TSource, TKey>>();
+    private PriorityQueue<Run<TSource, TKey>> queue;
+    /** Run that supplied the current element, and must be advanced before
+     * the next element is chosen. */
+    private Run<TSource, TKey> last;
+    private long reserved;
+    private TSource current;
+
+    SortEnumerator(Enumerable<TSource> source,
+        Function1<TSource, TKey> keySelector,
+        Comparator<TKey> comparator,
+        MemoryBudget budget) {
+      this.source = source;
+      this.keySelector = keySelector;
+      this.comparator = comparator;
+      this.budget = budget;
+    }
+
+    /** Reads and sorts the input. */
+    private void sort() {
+      final List<Pair<TKey, TSource>> chunk =
+          new ArrayList<Pair<TKey, TSource>>();
+      final List<SpillFile> files = new ArrayList<SpillFile>();
+      final Enumerator<TSource> enumerator = source.enumerator();
+      try {
+        while (enumerator.moveNext()) {
+          final TSource row = enumerator.current();
+          final long size = MemoryBudget.estimateSize(row) + 32;
+          boolean reservedRow = budget.reserve(size);
+          if (!reservedRow && !chunk.isEmpty()) {
+            files.add(spill(chunk));
+            chunk.clear();
+            budget.release(reserved);
+            reserved = 0;
+            reservedRow = budget.reserve(size);
+          }
+          if (reservedRow) {
+            reserved += size;
+          }
+          // If the row does not fit into an empty budget, keep it anyway.
+          chunk.add(Pair.of(keySelector.apply(row), row));
+        }
+      } finally {
+        enumerator.close();
+      }
+      sortChunk(chunk);
+      // Merge until the spilled runs, plus the run in memory, fit into one
+      // final merge.
+      List<SpillFile> spilled = files;
+      while (spilled.size() >= MERGE_WIDTH) {
+        spilled = mergePass(spilled);
+      }
+      final Enumerator<TSource> chunkEnumerator =
+          Linq4j.iterableEnumerator(Pair.right(chunk));
+      queue = newQueue(spilled.size() + 1);
+      for (SpillFile file : spilled) {
+        runs.add(new Run<TSource, TKey>(runs.size(),
+            file.<TSource>enumerator()));
+      }
+      runs.add(new Run<TSource, TKey>(runs.size(), chunkEnumerator));
+      for (Run<TSource, TKey> run : runs) {
+        if (run.advance(keySelector)) {
+          queue.add(run);
+        }
+      }
+    }
+
+    /** Merges each group of up to {@link #MERGE_WIDTH} consecutive runs into
+     * a single, larger run. Groups keep their order, so rows with equal keys
+     * keep their order too. */
+    private List<SpillFile> mergePass(List<SpillFile> files) {
+      final List<SpillFile> merged = new ArrayList<SpillFile>();
+      for (int i = 0; i < files.size(); i += MERGE_WIDTH) {
+        merged.add(
+            merge(files.subList(i, Math.min(i + MERGE_WIDTH, files.size()))));
+      }
+      return merged;
+    }
+
+    /** Merges sorted runs into a new run, deleting the inputs. */
+    private SpillFile merge(List<SpillFile> files) {
+      final List<Run<TSource, TKey>> inputs =
+          new ArrayList<Run<TSource, TKey>>();
+      final SpillFile output = budget.createSpillFile();
+      try {
+        final PriorityQueue<Run<TSource, TKey>> mergeQueue =
+            newQueue(files.size());
+        for (SpillFile file : files) {
+          final Run<TSource, TKey> run =
+              new Run<TSource, TKey>(inputs.size(),
+                  file.<TSource>enumerator());
+          inputs.add(run);
+          if (run.advance(keySelector)) {
+            mergeQueue.add(run);
+          }
+        }
+        for (;;) {
+          final Run<TSource, TKey> run = mergeQueue.poll();
+          if (run == null) {
+            break;
+          }
+          output.write(run.row);
+          if (run.advance(keySelector)) {
+            mergeQueue.add(run);
+          }
+        }
+        output.finishWriting();
+        return output;
+      } catch (RuntimeException e) {
+        output.delete();
+        throw e;
+      } finally {
+        // Closing a spill file's enumerator deletes the file.
+        for (Run<TSource, TKey> run : inputs) {
+          run.enumerator.close();
+        }
+      }
+    }
+
+    private PriorityQueue<Run<TSource, TKey>> newQueue(int size) {
+      return new PriorityQueue<Run<TSource, TKey>>(Math.max(size, 1),
+          new Comparator<Run<TSource, TKey>>() {
+            public int compare(Run<TSource, TKey> o1,
+                Run<TSource, TKey> o2) {
+              final int c = comparator.compare(o1.key, o2.key);
+              return c != 0 ? c : o1.ordinal - o2.ordinal;
+            }
+          });
+    }
+
+    private void sortChunk(List<Pair<TKey, TSource>> chunk) {
+      // Collections.sort is stable, so rows with equal keys keep their order
+      Collections.sort(chunk,
+          new Comparator<Pair<TKey, TSource>>() {
+            public int compare(Pair<TKey, TSource> o1,
+                Pair<TKey, TSource> o2) {
+              return comparator.compare(o1.left, o2.left);
+            }
+          });
+    }
+
+    private SpillFile spill(List<Pair<TKey, TSource>> chunk) {
+      sortChunk(chunk);
+      final SpillFile file = budget.createSpillFile();
+      for (Pair<TKey, TSource> pair : chunk) {
+        file.write(pair.right);
+      }
+      file.finishWriting();
+      return file;
+    }
+
+    public TSource current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (queue == null) {
+        sort();
+      }
+      if (last != null) {
+        if (last.advance(keySelector)) {
+          queue.add(last);
+        }
+        last = null;
+      }
+      final Run<TSource, TKey> run = queue.poll();
+      if (run == null) {
+        return false;
+      }
+      current = run.row;
+      last = run;
+      return true;
+    }
+
+    public void reset() {
+      close();
+      current = null;
+    }
+
+    public void close() {
+      for (Run<TSource, TKey> run : runs) {
+        run.enumerator.close();
+      }
+      runs.clear();
+      queue = null;
+      last = null;
+      budget.release(reserved);
+      reserved = 0;
+    }
+  }
+
+  /** Sorted sequence of rows being merged by {@link SortEnumerator}. */
+  private static class Run<TSource, TKey> {
+    final int ordinal;
+    final Enumerator<TSource> enumerator;
+    TSource row;
+    TKey key;
+
+    Run(int ordinal, Enumerator<TSource> enumerator) {
+      this.ordinal = ordinal;
+      this.enumerator = enumerator;
+    }
+
+    boolean advance(Function1<TSource, TKey> keySelector) {
+      if (!enumerator.moveNext()) {
+        return false;
+      }
+      row = enumerator.current();
+      key = keySelector.apply(row);
+      return true;
+    }
+  }
+
+  /** Enumerator that implements
+   * {@link Enumerables#groupBy(Enumerable, Function1, Function0, Function2, Function2, EqualityComparer, DataContext)}.
+   *
+   * @param <TSource> Element type
+   * @param <TKey> Key type
+   * @param <TAccumulate> Accumulator type
+   * @param <TResult> Result type */
+  private static class GroupByEnumerator<TSource, TKey, TAccumulate, TResult>
+      implements Enumerator<TResult> {
+    /** Number of partitions that a spilled input is split into. */
+    private static final int PARTITION_COUNT = 16;
+    /** Depth beyond which partitions are aggregated in memory regardless of
+     * the budget. Each level uses 4 different bits of the hash code. */
+    private static final int MAX_DEPTH = 4;
+
+    private final Enumerable<TSource> source;
+    private final Function1<TSource, TKey> keySelector;
+    private final Function0<TAccumulate> accumulatorInitializer;
+    private final Function2<TAccumulate, TSource, TAccumulate>
+    accumulatorAdder;
+    private final Function2<TKey, TAccumulate, TResult> resultSelector;
+    private final EqualityComparer<TKey> comparer;
+    private final MemoryBudget budget;
+
+    /** Partitions not yet aggregated, and their depth; null until the input
+     * has been read. */
+    private Deque<Pair<SpillFile, Integer>> partitions;
+    private Iterator<Map.Entry<Object, TAccumulate>> iterator;
+    private long reserved;
+    private TResult current;
+
+    GroupByEnumerator(Enumerable<TSource> source,
+        Function1<TSource, TKey> keySelector,
+        Function0<TAccumulate> accumulatorInitializer,
+        Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+        Function2<TKey, TAccumulate, TResult> resultSelector,
+        EqualityComparer<TKey> comparer,
+        MemoryBudget budget) {
+      this.source = source;
+      this.keySelector = keySelector;
+      this.accumulatorInitializer = accumulatorInitializer;
+      this.accumulatorAdder = accumulatorAdder;
+      this.resultSelector = resultSelector;
+      this.comparer = comparer;
+      this.budget = budget;
+    }
+
+    private int partition(TKey key, int depth) {
+      final int hash = comparer != null ? comparer.hashCode(key)
+          : key == null ? 0
+          : key.hashCode();
+      return Integer.rotateLeft(hash * 0x9E3779B9, depth * 4) >>> 28;
+    }
+
+    /** Aggregates an input. Rows of groups that do not fit are written to
+     * partitions of depth {@code depth + 1}. */
+    private void aggregate(Enumerator<TSource> enumerator, int depth) {
+      final Map<Object, TAccumulate> map = new HashMap<Object, TAccumulate>();
+      SpillFile[] files = null;
+      try {
+        while (enumerator.moveNext()) {
+          final TSource row = enumerator.current();
+          final TKey key = keySelector.apply(row);
+          final Object mapKey =
+              comparer == null ? key : new ComparerKey<TKey>(key, comparer);
+          TAccumulate accumulator;
+          if (map.containsKey(mapKey)) {
+            accumulator = map.get(mapKey);
+          } else {
+            if (files == null && depth < MAX_DEPTH) {
+              final long size = MemoryBudget.estimateSize(row) + 64;
+              if (budget.reserve(size)) {
+                reserved += size;
+              } else {
+                files = new SpillFile[PARTITION_COUNT];
+                for (int i = 0; i < files.length; i++) {
+                  files[i] = budget.createSpillFile();
+                }
+              }
+            }
+            if (files != null) {
+              files[partition(key, depth)].write(row);
+              continue;
+            }
+            accumulator = accumulatorInitializer.apply();
+          }
+          map.put(mapKey, accumulatorAdder.apply(accumulator, row));
+        }
+      } finally {
+        enumerator.close();
+      }
+      if (files != null) {
+        for (SpillFile file : files) {
+          if (file.getRowCount() == 0) {
+            file.delete();
+          } else {
+            partitions.push(Pair.of(file, depth + 1));
+          }
+        }
+      }
+      iterator = map.entrySet().iterator();
+    }
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      for (;;) {
+        if (iterator != null) {
+          if (iterator.hasNext()) {
+            final Map.Entry<Object, TAccumulate> entry = iterator.next();
+            final Object mapKey = entry.getKey();
+            //noinspection unchecked
+            final TKey key = comparer == null
+                ? (TKey) mapKey
+                : ((ComparerKey<TKey>) mapKey).key;
+            current = resultSelector.apply(key, entry.getValue());
+            return true;
+          }
+          releaseMap();
+        }
+        if (partitions == null) {
+          partitions = new ArrayDeque<Pair<SpillFile, Integer>>();
+          aggregate(source.enumerator(), 0);
+          continue;
+        }
+        final Pair<SpillFile, Integer> partition = partitions.poll();
+        if (partition == null) {
+          return false;
+        }
+        aggregate(partition.left.<TSource>enumerator(), partition.right);
+      }
+    }
+
+    private void releaseMap() {
+      iterator = null;
+      budget.release(reserved);
+      reserved = 0;
+    }
+
+    public void reset() {
+      close();
+      current = null;
+    }
+
+    public void close() {
+      releaseMap();
+      if (partitions != null) {
+        for (Pair<SpillFile, Integer> partition : partitions) {
+          partition.left.delete();
+        }
+        partitions = null;
+      }
+    }
+  }
+
+  /** Key of a hash map that compares keys using an
+   * {@link EqualityComparer}.
+   *
+   * @param <T> Key type */
+  private static class ComparerKey<T> {
+    final T key;
+    final EqualityComparer<T> comparer;
+
+    ComparerKey(T key, EqualityComparer<T> comparer) {
+      this.key = key;
+      this.comparer = comparer;
+    }
+
+    @Override public int hashCode() {
+      return comparer.hashCode(key);
+    }
+
+    @Override public boolean equals(Object obj) {
+      //noinspection unchecked
+      return obj == this
+          || obj instanceof ComparerKey
+          && comparer.equal(key, ((ComparerKey<T>) obj).key);
+    }
+  }
 }
 
 // End Enumerables.java
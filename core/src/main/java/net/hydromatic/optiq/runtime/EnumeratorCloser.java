@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.linq4j.Enumerator;
+
+import net.hydromatic.optiq.DataContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enumerators that operators of a statement have started, and that must be
+ * closed when the statement's result set is closed, even if their rows were
+ * never read.
+ *
+ * <p>For example, in parallel mode the JDBC adapter starts each back-end
+ * query on a background thread as soon as the statement starts executing;
+ * if the statement finishes without reading that query's rows, the
+ * background thread must still be stopped and the back-end connection
+ * released.</p>
+ *
+ * <p>There is one closer per statement execution, available as the
+ * {@link DataContext.Variable#ENUMERATOR_CLOSER} variable.</p>
+ */
+public class EnumeratorCloser {
+  private final List<Enumerator> list = new ArrayList<Enumerator>();
+  private boolean closed;
+
+  /** Registers an enumerator to be closed when the statement is closed. If
+   * the statement is already closed, closes the enumerator immediately. */
+  public void add(Enumerator enumerator) {
+    synchronized (this) {
+      if (!closed) {
+        list.add(enumerator);
+        return;
+      }
+    }
+    close(enumerator);
+  }
+
+  /** Closes every registered enumerator. Enumerators registered after this
+   * call are closed as soon as they are registered. */
+  public void closeAll() {
+    final List<Enumerator> enumerators;
+    synchronized (this) {
+      closed = true;
+      enumerators = new ArrayList<Enumerator>(list);
+      list.clear();
+    }
+    for (Enumerator enumerator : enumerators) {
+      close(enumerator);
+    }
+  }
+
+  private static void close(Enumerator enumerator) {
+    try {
+      enumerator.close();
+    } catch (RuntimeException e) {
+      // ignore; the statement is closing
+    }
+  }
+
+  /** Returns an enumerator that reads from a given enumerator and, when
+   * closed, closes it and then every registered enumerator. */
+  public <T> Enumerator<T> wrap(final Enumerator<T> enumerator) {
+    return new Enumerator<T>() {
+      public T current() {
+        return enumerator.current();
+      }
+
+      public boolean moveNext() {
+        return enumerator.moveNext();
+      }
+
+      public void reset() {
+        enumerator.reset();
+      }
+
+      public void close() {
+        try {
+          enumerator.close();
+        } finally {
+          closeAll();
+        }
+      }
+    };
+  }
+}
+
+// End EnumeratorCloser.java
@@ -50,7 +50,8 @@ public enum Hook {
   /** Called by the planner after substituting a materialization. */
   SUB,
 
-  /** Called when a constant expression is being reduced. */
+  /** Called when constant expressions have been reduced, with the generated
+   * code (null if the expressions were interpreted) and the values. */
   EXPRESSION_REDUCER,
 
   /** Called to create a Program to optimize the statement. */
@@ -59,10 +60,25 @@ public enum Hook {
   /** Called when materialization is created. */
   CREATE_MATERIALIZATION,
 
+  /** Called with the statistics of a
+   * {@link net.hydromatic.optiq.prepare.CompiledClassCache} after each
+   * lookup. */
+  COMPILED_CLASS_CACHE,
+
   /** Called with a query that has been generated to send to a back-end system.
    * The query might be a SQL string (for the JDBC adapter), a list of Mongo
    * pipeline expressions (for the MongoDB adapter), et cetera. */
-  QUERY_PLAN;
+  QUERY_PLAN,
+
+  /** Called with the {@link org.eigenbase.relopt.RelOptRuleProfiler} of a
+   * statement's planner after the statement has been optimized, if the
+   * "ruleProfile" connection property is true. */
+  RULE_PROFILE,
+
+  /** Called with the number of row ranges when a vectorized plan is
+   * executed on several threads; see the "parallelism" connection
+   * property. */
+  VECTOR_PARTITIONS;
 
   private final List<Function<Object, Object>> handlers =
       new CopyOnWriteArrayList<Function<Object, Object>>();
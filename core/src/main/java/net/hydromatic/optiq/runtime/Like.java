@@ -16,10 +16,17 @@
  */
 package net.hydromatic.optiq.runtime;
 
+import net.hydromatic.linq4j.function.Deterministic;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
 /**
  * Utilities for converting SQL {@code LIKE} and {@code SIMILAR} operators
- * to regular expressions.
+ * to regular expressions, and for matching strings against them.
  */
+@Deterministic
 public class Like {
   private static final String JAVA_REGEX_SPECIALS = "[]()|^-+*?{}$\\";
   private static final String SQL_SIMILAR_SPECIALS = "[]()|^-+*_%?{}";
@@ -40,26 +47,140 @@ public class Like {
     "[:alnum:]", "\\p{Alnum}"
   };
 
+  /** Maximum number of matchers held in each cache. If a cache grows beyond
+   * this size, it is cleared. */
+  private static final int CACHE_SIZE = 1000;
+
+  private static final ConcurrentMap<String, Matcher> LIKE_MATCHERS =
+      new ConcurrentHashMap<String, Matcher>();
+
+  private static final ConcurrentMap<String, Matcher> SIMILAR_MATCHERS =
+      new ConcurrentHashMap<String, Matcher>();
+
+  /** Matcher that matches any string. */
+  private static final Matcher ANY =
+      new Matcher() {
+        public boolean matches(String s) {
+          return true;
+        }
+      };
+
   private Like() {
   }
 
   /**
-   * Translates a SQL LIKE pattern to Java regex pattern, with optional
-   * escape string.
+   * Returns a matcher for a SQL LIKE pattern, with optional escape string.
+   *
+   * <p>Patterns that consist of a literal string, optionally preceded or
+   * followed by '%', are matched without using a regular expression.
+   * Matchers are cached, so it is cheap to call this method for each row;
+   * if the pattern is constant, the code generator hoists the call into a
+   * static field, so it is called just once.</p>
    */
-  static String sqlToRegexLike(
-      String sqlPattern,
-      CharSequence escapeStr) {
-    final char escapeChar;
-    if (escapeStr != null) {
-      if (escapeStr.length() != 1) {
-        throw invalidEscapeCharacter(escapeStr.toString());
+  public static Matcher likeMatcher(String sqlPattern, String escapeStr) {
+    final char escapeChar = escapeChar(escapeStr);
+    final String key = escapeChar + sqlPattern;
+    Matcher matcher = LIKE_MATCHERS.get(key);
+    if (matcher == null) {
+      matcher = simpleLikeMatcher(sqlPattern, escapeChar);
+      if (matcher == null) {
+        matcher =
+            new RegexMatcher(
+                Pattern.compile(sqlToRegexLike(sqlPattern, escapeChar),
+                    Pattern.DOTALL));
+      }
+      cache(LIKE_MATCHERS, key, matcher);
+    }
+    return matcher;
+  }
+
+  /**
+   * Returns a matcher for a SQL SIMILAR pattern, with optional escape
+   * string. Matchers are cached.
+   */
+  public static Matcher similarMatcher(String sqlPattern, String escapeStr) {
+    final char escapeChar = escapeChar(escapeStr);
+    final String key = escapeChar + sqlPattern;
+    Matcher matcher = SIMILAR_MATCHERS.get(key);
+    if (matcher == null) {
+      matcher =
+          new RegexMatcher(
+              Pattern.compile(sqlToRegexSimilar(sqlPattern, escapeChar)));
+      cache(SIMILAR_MATCHERS, key, matcher);
+    }
+    return matcher;
+  }
+
+  private static void cache(ConcurrentMap<String, Matcher> map, String key,
+      Matcher matcher) {
+    if (map.size() >= CACHE_SIZE) {
+      map.clear();
+    }
+    map.put(key, matcher);
+  }
+
+  private static char escapeChar(CharSequence escapeStr) {
+    if (escapeStr == null) {
+      return 0;
+    }
+    if (escapeStr.length() != 1) {
+      throw invalidEscapeCharacter(escapeStr.toString());
+    }
+    return escapeStr.charAt(0);
+  }
+
+  /**
+   * Returns a matcher for a LIKE pattern of the form "abc", "abc%", "%abc"
+   * or "%abc%", or null if the pattern is more complex.
+   */
+  private static Matcher simpleLikeMatcher(String sqlPattern,
+      char escapeChar) {
+    final int len = sqlPattern.length();
+    int start = 0;
+    while (start < len && sqlPattern.charAt(start) == '%') {
+      ++start;
+    }
+    if (start == len) {
+      return start > 0 ? ANY : new ExactMatcher("");
+    }
+    final StringBuilder buf = new StringBuilder(len);
+    int i = start;
+    for (; i < len; i++) {
+      char c = sqlPattern.charAt(i);
+      if (c == escapeChar) {
+        if (i == len - 1) {
+          throw invalidEscapeSequence(sqlPattern, i);
+        }
+        char nextChar = sqlPattern.charAt(i + 1);
+        if (nextChar != '_' && nextChar != '%' && nextChar != escapeChar) {
+          throw invalidEscapeSequence(sqlPattern, i);
+        }
+        buf.append(nextChar);
+        ++i;
+      } else if (c == '_') {
+        return null;
+      } else if (c == '%') {
+        break;
+      } else {
+        buf.append(c);
+      }
+    }
+    final boolean trailing = i < len;
+    for (; i < len; i++) {
+      if (sqlPattern.charAt(i) != '%') {
+        return null;
       }
-      escapeChar = escapeStr.charAt(0);
+    }
+    final String literal = buf.toString();
+    if (start > 0) {
+      return trailing
+          ? new ContainsMatcher(literal)
+          : new SuffixMatcher(literal);
     } else {
-      escapeChar = 0;
+      return trailing
+          ? new PrefixMatcher(literal)
+          : new ExactMatcher(literal);
     }
-    return sqlToRegexLike(sqlPattern, escapeChar);
   }
 
   /**
@@ -204,25 +325,6 @@ private static int sqlSimilarRewriteCharEnumeration(
     return i - 1;
   }
 
-  /**
-   * Translates a SQL SIMILAR pattern to Java regex pattern, with optional
-   * escape string.
-   */
-  static String sqlToRegexSimilar(
-      String sqlPattern,
-      CharSequence escapeStr) {
-    final char escapeChar;
-    if (escapeStr != null) {
-      if (escapeStr.length() != 1) {
-        throw invalidEscapeCharacter(escapeStr.toString());
-      }
-      escapeChar = escapeStr.charAt(0);
-    } else {
-      escapeChar = 0;
-    }
-    return sqlToRegexSimilar(sqlPattern, escapeChar);
-  }
-
   /**
    * Translates SQL SIMILAR pattern to Java regex pattern.
    */
@@ -303,6 +405,78 @@ static String sqlToRegexSimilar(
 
     return javaPattern.toString();
   }
+
+  /** Tests whether strings match a pattern. Thread-safe. */
+  public abstract static class Matcher {
+    /** Returns whether a string matches this pattern. The string must not
+     * be null. */
+    public abstract boolean matches(String s);
+  }
+
+  /** Matcher that uses a regular expression. */
+  private static class RegexMatcher extends Matcher {
+    private final Pattern pattern;
+
+    RegexMatcher(Pattern pattern) {
+      this.pattern = pattern;
+    }
+
+    public boolean matches(String s) {
+      return pattern.matcher(s).matches();
+    }
+  }
+
+  /** Matcher for a pattern without wildcards, such as "abc". */
+  private static class ExactMatcher extends Matcher {
+    private final String literal;
+
+    ExactMatcher(String literal) {
+      this.literal = literal;
+    }
+
+    public boolean matches(String s) {
+      return s.equals(literal);
+    }
+  }
+
+  /** Matcher for a pattern such as "abc%". */
+  private static class PrefixMatcher extends Matcher {
+    private final String literal;
+
+    PrefixMatcher(String literal) {
+      this.literal = literal;
+    }
+
+    public boolean matches(String s) {
+      return s.startsWith(literal);
+    }
+  }
+
+  /** Matcher for a pattern such as "%abc". */
+  private static class SuffixMatcher extends Matcher {
+    private final String literal;
+
+    SuffixMatcher(String literal) {
+      this.literal = literal;
+    }
+
+    public boolean matches(String s) {
+      return s.endsWith(literal);
+    }
+  }
+
+  /** Matcher for a pattern such as "%abc%". */
+  private static class ContainsMatcher extends Matcher {
+    private final String literal;
+
+    ContainsMatcher(String literal) {
+      this.literal = literal;
+    }
+
+    public boolean matches(String s) {
+      return s.contains(literal);
+    }
+  }
 }
 
 // End Like.java
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Multi-map whose keys are primitive {@code long} values.
+ *
+ * <p>Uses open addressing with linear probing, so unlike a
+ * {@code HashMap<Long, List<V>>} it does not allocate a boxed key, a map
+ * entry and a list for each distinct key. Values with the same key are
+ * chained, in insertion order, through an array of entry ordinals.</p>
+ *
+ * <p>Values are accessed by entry ordinal:</p>
+ *
+ * <blockquote><pre>
+ * for (int e = map.first(key); e >= 0; e = map.next(e)) {
+ *   V value = map.get(e);
+ * }</pre>
+ * </blockquote>
+ *
+ * @param <V> Value type
+ */
+public class LongHashMultiMap<V> {
+  private static final int NONE = -1;
+
+  /** Key of each slot. Valid only if {@link #heads}[slot] is not NONE. */
+  private long[] keys;
+  /** First entry of each slot, or NONE if the slot is empty. */
+  private int[] heads;
+  /** Last entry of each slot. */
+  private int[] tails;
+  private int mask;
+  private int keyCount;
+
+  private Object[] values;
+  /** Next entry with the same key, or NONE. */
+  private int[] nexts;
+  private int size;
+
+  public LongHashMultiMap() {
+    this(16);
+  }
+
+  public LongHashMultiMap(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    allocateSlots(capacity);
+    values = new Object[Math.max(expectedSize, 16)];
+    nexts = new int[values.length];
+  }
+
+  private void allocateSlots(int capacity) {
+    keys = new long[capacity];
+    heads = new int[capacity];
+    tails = new int[capacity];
+    Arrays.fill(heads, NONE);
+    mask = capacity - 1;
+  }
+
+  static int hash(long key) {
+    final long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /** Returns the slot that holds a key, or the empty slot where the key would
+   * be placed. */
+  private int slot(long key) {
+    int slot = hash(key) & mask;
+    while (heads[slot] != NONE && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /** Adds a value. */
+  public void put(long key, V value) {
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size * 2);
+      nexts = Arrays.copyOf(nexts, size * 2);
+    }
+    final int entry = size++;
+    values[entry] = value;
+    nexts[entry] = NONE;
+    final int slot = slot(key);
+    if (heads[slot] == NONE) {
+      keys[slot] = key;
+      heads[slot] = entry;
+      tails[slot] = entry;
+      if (++keyCount * 2 > heads.length) {
+        rehash();
+      }
+    } else {
+      nexts[tails[slot]] = entry;
+      tails[slot] = entry;
+    }
+  }
+
+  private void rehash() {
+    final long[] oldKeys = keys;
+    final int[] oldHeads = heads;
+    final int[] oldTails = tails;
+    allocateSlots(oldHeads.length * 2);
+    for (int i = 0; i < oldHeads.length; i++) {
+      if (oldHeads[i] != NONE) {
+        final int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        heads[slot] = oldHeads[i];
+        tails[slot] = oldTails[i];
+      }
+    }
+  }
+
+  /** Returns the ordinal of the first entry with a given key, or -1 if there
+   * is none. */
+  public int first(long key) {
+    return heads[slot(key)];
+  }
+
+  /** Returns the ordinal of the next entry with the same key as a given entry,
+   * or -1 if there is none. */
+  public int next(int entry) {
+    return nexts[entry];
+  }
+
+  /** Returns the value of an entry. */
+  public V get(int entry) {
+    //noinspection unchecked
+    return (V) values[entry];
+  }
+
+  /** Returns the number of entries (values). Entry ordinals are between 0
+   * and {@code size() - 1}, in insertion order. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the number of distinct keys. */
+  public int keyCount() {
+    return keyCount;
+  }
+}
+
+// End LongHashMultiMap.java
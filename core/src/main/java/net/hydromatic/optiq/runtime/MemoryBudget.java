@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.optiq.DataContext;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Amount of memory that the operators of a statement may use to hold rows
+ * before they spill to disk.
+ *
+ * <p>Operators that accumulate state (sort, aggregate, join) reserve an
+ * estimate of the size of each row they hold. When a reservation fails, the
+ * operator writes rows to a {@link SpillFile} in the spill directory.</p>
+ *
+ * <p>There is one budget per statement execution, available as the
+ * {@link DataContext.Variable#MEMORY_BUDGET} variable; if that variable is
+ * not set, operators never spill.</p>
+ */
+public class MemoryBudget {
+  private final long limit;
+  private final File spillDirectory;
+  private final AtomicLong used = new AtomicLong();
+  private final AtomicLong spillCount = new AtomicLong();
+
+  /** Creates a MemoryBudget.
+   *
+   * @param limit Number of bytes that operators may reserve
+   * @param spillDirectory Directory for spill files, or null to use the
+   *                       system temporary directory
+   */
+  public MemoryBudget(long limit, File spillDirectory) {
+    this.limit = limit;
+    this.spillDirectory = spillDirectory;
+  }
+
+  /** Returns the budget of a statement, or null if the statement has no
+   * budget. */
+  public static MemoryBudget of(DataContext root) {
+    return root == null
+        ? null
+        : (MemoryBudget) root.get(DataContext.Variable.MEMORY_BUDGET.camelName);
+  }
+
+  /** Reserves memory. Returns false, and reserves nothing, if the reservation
+   * would exceed the budget. */
+  public boolean reserve(long bytes) {
+    for (;;) {
+      final long current = used.get();
+      final long next = current + bytes;
+      if (next > limit) {
+        return false;
+      }
+      if (used.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /** Releases memory that was previously reserved. */
+  public void release(long bytes) {
+    used.addAndGet(-bytes);
+  }
+
+  /** Returns the number of bytes currently reserved. */
+  public long getUsed() {
+    return used.get();
+  }
+
+  /** Returns the number of spill files created so far. */
+  public long getSpillCount() {
+    return spillCount.get();
+  }
+
+  /** Creates a spill file. */
+  public SpillFile createSpillFile() {
+    spillCount.incrementAndGet();
+    return SpillFile.create(spillDirectory);
+  }
+
+  /** Estimates the number of bytes on the heap used by a row. Rows are
+   * typically arrays of boxed values, or records whose size is assumed to be
+   * similar. */
+  public static long estimateSize(Object o) {
+    if (o == null) {
+      return 8;
+    }
+    if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      long size = 16 + 8 * objects.length;
+      for (Object object : objects) {
+        size += estimateSize(object);
+      }
+      return size;
+    }
+    if (o instanceof List) {
+      final List list = (List) o;
+      long size = 24 + 8 * list.size();
+      for (Object object : list) {
+        size += estimateSize(object);
+      }
+      return size;
+    }
+    if (o instanceof String) {
+      return 40 + 2 * ((String) o).length();
+    }
+    if (o instanceof BigDecimal) {
+      return 64;
+    }
+    if (o instanceof Number || o instanceof Boolean
+        || o instanceof Character) {
+      return 16;
+    }
+    return 64;
+  }
+}
+
+// End MemoryBudget.java
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+/**
+ * Computes the minimum or maximum of the values in a sliding window.
+ *
+ * <p>Values are added in ascending order of their index, and are removed in
+ * the same order. The deque holds only the values that may yet become the
+ * extremum: when a value is added, it discards the values that were added
+ * before it and are no better. Thus the values in the deque are monotonic,
+ * and the extremum is at the head. Each value is added and discarded at
+ * most once, so the amortized cost of each operation is constant.</p>
+ *
+ * <p>Generated code uses this class to implement the {@code MIN} and
+ * {@code MAX} windowed aggregate functions.</p>
+ */
+@SuppressWarnings("unchecked")
+public class MinMaxDeque {
+  private final boolean min;
+  private int[] indexes = new int[8];
+  private Comparable[] values = new Comparable[8];
+  private int head;
+  private int size;
+
+  /** Creates a MinMaxDeque.
+   *
+   * @param min Whether to compute the minimum (true) or the maximum (false)
+   */
+  public MinMaxDeque(boolean min) {
+    this.min = min;
+  }
+
+  /** Adds a value. Its index must be greater than the index of any value
+   * previously added.
+   *
+   * @param index Index of the value
+   * @param value Value; not null
+   */
+  public void add(int index, Comparable value) {
+    while (size > 0) {
+      final int tail = slot(size - 1);
+      final int c = values[tail].compareTo(value);
+      if (min ? c < 0 : c > 0) {
+        break;
+      }
+      values[tail] = null;
+      --size;
+    }
+    if (size == indexes.length) {
+      grow();
+    }
+    final int slot = slot(size);
+    indexes[slot] = index;
+    values[slot] = value;
+    ++size;
+  }
+
+  /** Removes the value with a given index, and any values with lower
+   * indexes. */
+  public void remove(int index) {
+    while (size > 0 && indexes[head] <= index) {
+      values[head] = null;
+      head = (head + 1) & (indexes.length - 1);
+      --size;
+    }
+  }
+
+  /** Returns whether the deque is empty. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the minimum (or maximum) value, or null if the deque is
+   * empty. */
+  public Comparable get() {
+    return size == 0 ? null : values[head];
+  }
+
+  private int slot(int i) {
+    return (head + i) & (indexes.length - 1);
+  }
+
+  private void grow() {
+    final int[] newIndexes = new int[indexes.length * 2];
+    final Comparable[] newValues = new Comparable[values.length * 2];
+    for (int i = 0; i < size; i++) {
+      final int slot = slot(i);
+      newIndexes[i] = indexes[slot];
+      newValues[i] = values[slot];
+    }
+    indexes = newIndexes;
+    values = newValues;
+    head = 0;
+  }
+}
+
+// End MinMaxDeque.java
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.linq4j.Enumerable;
+import net.hydromatic.linq4j.Enumerator;
+
+import java.util.concurrent.*;
+
+/**
+ * Enumerator that reads rows from another enumerator on a background thread,
+ * into a bounded buffer, and returns them from the buffer.
+ *
+ * <p>Reading starts as soon as the enumerator is created. The background
+ * thread blocks when the buffer is full, so at most {@code bufferSize} rows
+ * are held in memory; use {@link Integer#MAX_VALUE} to buffer every row.
+ * When the underlying enumerator is exhausted, fails, or this enumerator is
+ * closed, the background thread closes the underlying enumerator; only the
+ * background thread ever calls it.</p>
+ *
+ * <p>Useful when the underlying enumerator waits for a remote source (for
+ * example a JDBC result set), so that the wait overlaps with the work done
+ * on rows that have already arrived.</p>
+ *
+ * @param <T> Element type
+ */
+public class PrefetchEnumerator<T> implements Enumerator<T> {
+  /** Threads that read ahead. Threads are created on demand, and are daemon
+   * threads so that they do not prevent the JVM from exiting. */
+  private static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              final Thread thread = new Thread(r, "optiq-prefetch");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  /** Placed in the buffer after the last row. */
+  private static final Object END = new Object();
+
+  /** Placed in the buffer to represent a null row; a
+   * {@link BlockingQueue} cannot hold null. */
+  private static final Object NULL = new Object();
+
+  private final BlockingQueue<Object> queue;
+  private volatile boolean closed;
+  private boolean done;
+  private Object current;
+
+  /** Creates a PrefetchEnumerator and starts reading from the underlying
+   * enumerator. */
+  public PrefetchEnumerator(final Enumerator<T> enumerator, int bufferSize) {
+    assert bufferSize > 0;
+    this.queue = new LinkedBlockingQueue<Object>(bufferSize);
+    EXECUTOR.execute(
+        new Runnable() {
+          public void run() {
+            fill(enumerator);
+          }
+        });
+  }
+
+  /** Creates a PrefetchEnumerator that, on a background thread, creates an
+   * enumerator from an enumerable and starts reading from it. Use this
+   * constructor if creating the enumerator is itself expensive; for
+   * example, if it executes a query. */
+  public PrefetchEnumerator(final Enumerable<T> enumerable, int bufferSize) {
+    assert bufferSize > 0;
+    this.queue = new LinkedBlockingQueue<Object>(bufferSize);
+    EXECUTOR.execute(
+        new Runnable() {
+          public void run() {
+            final Enumerator<T> enumerator;
+            try {
+              enumerator = enumerable.enumerator();
+            } catch (Throwable e) {
+              put(new Failure(e));
+              return;
+            }
+            fill(enumerator);
+          }
+        });
+  }
+
+  private void fill(Enumerator<T> enumerator) {
+    Object last = END;
+    try {
+      while (!closed && enumerator.moveNext()) {
+        final T row = enumerator.current();
+        if (!put(row == null ? NULL : row)) {
+          return;
+        }
+      }
+    } catch (Throwable e) {
+      last = new Failure(e);
+    } finally {
+      try {
+        enumerator.close();
+      } catch (Throwable e) {
+        // ignore
+      }
+    }
+    put(last);
+  }
+
+  /** Adds an element to the buffer, waiting for space if necessary. Returns
+   * false if the consumer closed this enumerator before there was space. */
+  private boolean put(Object o) {
+    try {
+      while (!closed) {
+        if (queue.offer(o, 100, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return false;
+  }
+
+  public T current() {
+    //noinspection unchecked
+    return current == NULL ? null : (T) current;
+  }
+
+  public boolean moveNext() {
+    if (done) {
+      return false;
+    }
+    final Object o;
+    try {
+      o = queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    if (o == END) {
+      done = true;
+      return false;
+    }
+    if (o instanceof Failure) {
+      done = true;
+      final Throwable e = ((Failure) o).e;
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      if (e instanceof Error) {
+        throw (Error) e;
+      }
+      throw new RuntimeException(e);
+    }
+    current = o;
+    return true;
+  }
+
+  public void reset() {
+    throw new UnsupportedOperationException();
+  }
+
+  public void close() {
+    closed = true;
+    done = true;
+    current = null;
+    queue.clear();
+  }
+
+  /** Placed in the buffer if reading from the underlying enumerator
+   * fails. */
+  private static class Failure {
+    final Throwable e;
+
+    Failure(Throwable e) {
+      this.e = e;
+    }
+  }
+}
+
+// End PrefetchEnumerator.java
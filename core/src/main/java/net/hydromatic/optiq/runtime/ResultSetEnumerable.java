@@ -23,6 +23,8 @@
 import net.hydromatic.linq4j.function.Function0;
 import net.hydromatic.linq4j.function.Function1;
 
+import net.hydromatic.optiq.DataContext;
+
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -39,6 +41,8 @@
   private final DataSource dataSource;
   private final String sql;
   private final Function1<ResultSet, Function0<T>> rowBuilderFactory;
+  private final int fetchSize;
+  private final int prefetchSize;
   private static final Logger LOGGER = Logger.getLogger(
       ResultSetEnumerable.class.getName());
 
@@ -95,10 +99,14 @@ public Object[] apply() {
   private ResultSetEnumerable(
       DataSource dataSource,
       String sql,
-      Function1<ResultSet, Function0<T>> rowBuilderFactory) {
+      Function1<ResultSet, Function0<T>> rowBuilderFactory,
+      int fetchSize,
+      int prefetchSize) {
     this.dataSource = dataSource;
     this.sql = sql;
     this.rowBuilderFactory = rowBuilderFactory;
+    this.fetchSize = fetchSize;
+    this.prefetchSize = prefetchSize;
   }
 
   /** Creates an ResultSetEnumerable. */
@@ -119,7 +127,44 @@ public static <T> Enumerable<T> of(
       DataSource dataSource,
       String sql,
       Function1<ResultSet, Function0<T>> rowBuilderFactory) {
-    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory);
+    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory, 0,
+        0);
+  }
+
+  /** Executes a SQL query and returns the results as an enumerator, using a
+   * row builder to convert JDBC column values into rows, and the fetch size,
+   * prefetch size and parallelism of the current statement (see
+   * {@link DataContext.Variable#JDBC_FETCH_SIZE},
+   * {@link DataContext.Variable#JDBC_PREFETCH_SIZE} and
+   * {@link DataContext.Variable#JDBC_PARALLEL}).
+   *
+   * <p>In parallel mode, the query starts executing immediately, so that
+   * several back-end queries in the same statement run concurrently. The
+   * background reader is registered with the statement's
+   * {@link DataContext.Variable#ENUMERATOR_CLOSER}, so that it stops, and
+   * releases its connection, when the statement's result set is closed,
+   * even if its rows are never read.</p> */
+  public static <T> Enumerable<T> of(
+      DataSource dataSource,
+      String sql,
+      Function1<ResultSet, Function0<T>> rowBuilderFactory,
+      DataContext root) {
+    final Integer fetchSize = DataContext.Variable.JDBC_FETCH_SIZE.get(root);
+    final Integer prefetchSize =
+        DataContext.Variable.JDBC_PREFETCH_SIZE.get(root);
+    final Boolean parallel = DataContext.Variable.JDBC_PARALLEL.get(root);
+    if (parallel != null && parallel) {
+      // Rows are read on a background thread already; don't prefetch again.
+      final EnumeratorCloser closer =
+          DataContext.Variable.ENUMERATOR_CLOSER.get(root);
+      return new EagerEnumerable<T>(
+          new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory,
+              fetchSize == null ? 0 : fetchSize, 0),
+          closer);
+    }
+    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory,
+        fetchSize == null ? 0 : fetchSize,
+        prefetchSize == null ? 0 : prefetchSize);
   }
 
   public Enumerator<T> enumerator() {
@@ -135,10 +180,18 @@ public Enumerator<T> enumerator() {
           LOGGER.fine("Failed to set query timeout.");
         }
       }
+      if (fetchSize > 0) {
+        statement.setFetchSize(fetchSize);
+      }
       final ResultSet resultSet = statement.executeQuery(sql);
       statement = null;
       connection = null;
-      return new ResultSetEnumerator<T>(resultSet, rowBuilderFactory);
+      final Enumerator<T> enumerator =
+          new ResultSetEnumerator<T>(resultSet, rowBuilderFactory);
+      if (prefetchSize > 0) {
+        return new PrefetchEnumerator<T>(enumerator, prefetchSize);
+      }
+      return enumerator;
     } catch (SQLException e) {
       throw new RuntimeException("while executing SQL [" + sql + "]", e);
     } finally {
@@ -159,6 +212,44 @@ public Enumerator<T> enumerator() {
     }
   }
 
+  /** Enumerable that starts executing its query, on a background thread, as
+   * soon as it is created, and buffers all of the rows.
+   *
+   * <p>The first call to {@link #enumerator()} returns the buffered rows;
+   * later calls execute the query again. The background reader stops, and
+   * closes the result set, when it has read every row, or when the
+   * buffered enumerator is closed, either by whoever called
+   * {@link #enumerator()} or by the statement's
+   * {@link EnumeratorCloser}.</p>
+   *
+   * <p>The buffer is unbounded, so that the reader never waits for a
+   * consumer; a plan may read one input completely (say, the build side of
+   * a hash join) before it reads another, and if the other input's reader
+   * were blocked on a full buffer, its back-end connection would stay open
+   * all that time. The cost is that, until it is read, the buffer holds
+   * every row of the query.</p> */
+  private static class EagerEnumerable<T> extends AbstractEnumerable<T> {
+    private final Enumerable<T> enumerable;
+    private Enumerator<T> first;
+
+    EagerEnumerable(Enumerable<T> enumerable, EnumeratorCloser closer) {
+      this.enumerable = enumerable;
+      this.first = new PrefetchEnumerator<T>(enumerable, Integer.MAX_VALUE);
+      if (closer != null) {
+        closer.add(first);
+      }
+    }
+
+    public synchronized Enumerator<T> enumerator() {
+      final Enumerator<T> enumerator = first;
+      if (enumerator != null) {
+        first = null;
+        return enumerator;
+      }
+      return enumerable.enumerator();
+    }
+  }
+
   /** Implementation of {@link Enumerator} that reads from a
    * {@link ResultSet}. */
   private static class ResultSetEnumerator<T> implements Enumerator<T> {
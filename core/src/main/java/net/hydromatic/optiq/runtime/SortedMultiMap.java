@@ -16,6 +16,12 @@
  */
 package net.hydromatic.optiq.runtime;
 
+import net.hydromatic.linq4j.Enumerable;
+import net.hydromatic.linq4j.Enumerator;
+import net.hydromatic.linq4j.function.Function1;
+
+import org.eigenbase.util.Util;
+
 import java.util.*;
 
 /**
@@ -69,6 +75,69 @@ public static <V> Iterator<V[]> singletonArrayIterator(
     multiMap.put("x", list);
     return multiMap.arrays(comparator);
   }
+
+  /** Returns an iterator over runs of consecutive values that have the same
+   * key, each as an array.
+   *
+   * <p>Unlike {@link #arrays(java.util.Comparator)}, only one run is in memory
+   * at a time, but values with the same key must arrive together; for
+   * instance, because the source is sorted on the key.</p>
+   *
+   * @param source Values, grouped by key
+   * @param keySelector Returns the key of a value
+   * @param comparator Sorts each run; if null, values are returned in the
+   *                   order they arrive
+   */
+  public static <K, V> Iterator<V[]> adjacentArrays(
+      final Enumerable<V> source,
+      final Function1<V, K> keySelector,
+      final Comparator<V> comparator) {
+    final Enumerator<V> enumerator = source.enumerator();
+    final List<V> list = new ArrayList<V>();
+    final boolean empty = !enumerator.moveNext();
+    if (empty) {
+      enumerator.close();
+    }
+    return new Iterator<V[]>() {
+      boolean hasNext = !empty;
+
+      public boolean hasNext() {
+        return hasNext;
+      }
+
+      public V[] next() {
+        if (!hasNext) {
+          throw new NoSuchElementException();
+        }
+        final V first = enumerator.current();
+        final K key = keySelector.apply(first);
+        list.add(first);
+        for (;;) {
+          if (!enumerator.moveNext()) {
+            hasNext = false;
+            enumerator.close();
+            break;
+          }
+          final V v = enumerator.current();
+          if (!Util.equal(key, keySelector.apply(v))) {
+            break;
+          }
+          list.add(v);
+        }
+        @SuppressWarnings("unchecked")
+        final V[] vs = (V[]) list.toArray();
+        list.clear();
+        if (comparator != null) {
+          Arrays.sort(vs, comparator);
+        }
+        return vs;
+      }
+
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
 }
 
 // End SortedMultiMap.java
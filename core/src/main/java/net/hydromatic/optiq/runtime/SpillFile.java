@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.linq4j.Enumerator;
+
+import java.io.*;
+import java.util.NoSuchElementException;
+
+/**
+ * Temporary file to which an operator writes rows when it exceeds its
+ * {@link MemoryBudget}, and from which it later reads them back.
+ *
+ * <p>Rows that are arrays, and values of common types (integers, strings,
+ * and so forth), are written in a compact tagged format; other objects are
+ * written using Java serialization, and must therefore be
+ * {@link Serializable}.</p>
+ *
+ * <p>Call {@link #write} zero or more times, then {@link #enumerator()} to
+ * read the rows in the order they were written. The file is deleted by
+ * {@link #delete()}, and also when the enumerator is closed.</p>
+ */
+public class SpillFile {
+  private static final int NULL = 0;
+  private static final int ARRAY = 1;
+  private static final int INTEGER = 2;
+  private static final int LONG = 3;
+  private static final int DOUBLE = 4;
+  private static final int STRING = 5;
+  private static final int BOOLEAN = 6;
+  private static final int OBJECT = 7;
+
+  /** Number of rows after which the serialization stream forgets the objects
+   * it has written, so that it does not hold on to every row. */
+  private static final int RESET_INTERVAL = 1024;
+
+  private final File file;
+  private ObjectOutputStream out;
+  private int rowCount;
+  private ClassLoader classLoader;
+
+  private SpillFile(File file, ObjectOutputStream out) {
+    this.file = file;
+    this.out = out;
+  }
+
+  /** Creates a spill file in a given directory, or in the system temporary
+   * directory if {@code directory} is null. */
+  public static SpillFile create(File directory) {
+    try {
+      final File file = File.createTempFile("optiq", ".spill", directory);
+      file.deleteOnExit();
+      final ObjectOutputStream out =
+          new ObjectOutputStream(
+              new BufferedOutputStream(new FileOutputStream(file)));
+      return new SpillFile(file, out);
+    } catch (IOException e) {
+      throw new RuntimeException("while creating spill file", e);
+    }
+  }
+
+  /** Returns the number of rows written. */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /** Writes a row. */
+  public void write(Object row) {
+    if (out == null) {
+      throw new IllegalStateException("spill file is closed for writing");
+    }
+    try {
+      writeValue(row);
+      if (++rowCount % RESET_INTERVAL == 0) {
+        out.reset();
+      }
+    } catch (NotSerializableException e) {
+      throw new RuntimeException("cannot spill value of class "
+          + e.getMessage() + "; increase memoryBudget", e);
+    } catch (IOException e) {
+      throw new RuntimeException("while writing spill file " + file, e);
+    }
+  }
+
+  private void writeValue(Object o) throws IOException {
+    if (o == null) {
+      out.writeByte(NULL);
+    } else if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      out.writeByte(ARRAY);
+      out.writeInt(objects.length);
+      for (Object object : objects) {
+        writeValue(object);
+      }
+    } else if (o instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) o);
+    } else if (o instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) o);
+    } else if (o instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) o);
+    } else if (o instanceof String && ((String) o).length() < 16384) {
+      // writeUTF is limited to 65535 bytes; longer strings are serialized
+      out.writeByte(STRING);
+      out.writeUTF((String) o);
+    } else if (o instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) o);
+    } else {
+      if (classLoader == null) {
+        // Rows may be instances of generated classes, which the default
+        // class loader of ObjectInputStream cannot see.
+        classLoader = o.getClass().getClassLoader();
+      }
+      out.writeByte(OBJECT);
+      out.writeObject(o);
+    }
+  }
+
+  /** Finishes writing, and releases the file handle held for writing.
+   * Operators that create many spill files call this as soon as each file
+   * is complete, so that they do not hold one open handle per file. */
+  public void finishWriting() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        throw new RuntimeException("while writing spill file " + file, e);
+      }
+      out = null;
+    }
+  }
+
+  /** Finishes writing, and returns an enumerator over the rows written. */
+  public <T> Enumerator<T> enumerator() {
+    finishWriting();
+    try {
+      final ObjectInputStream in =
+          new ObjectInputStream(
+              new BufferedInputStream(new FileInputStream(file))) {
+            @Override protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+              if (classLoader != null) {
+                try {
+                  return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                  // fall through
+                }
+              }
+              return super.resolveClass(desc);
+            }
+          };
+      return new SpillEnumerator<T>(in);
+    } catch (IOException e) {
+      throw new RuntimeException("while reading spill file " + file, e);
+    }
+  }
+
+  private Object readValue(ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    final int tag = in.readByte();
+    switch (tag) {
+    case NULL:
+      return null;
+    case ARRAY:
+      final Object[] objects = new Object[in.readInt()];
+      for (int i = 0; i < objects.length; i++) {
+        objects[i] = readValue(in);
+      }
+      return objects;
+    case INTEGER:
+      return in.readInt();
+    case LONG:
+      return in.readLong();
+    case DOUBLE:
+      return in.readDouble();
+    case STRING:
+      return in.readUTF();
+    case BOOLEAN:
+      return in.readBoolean();
+    case OBJECT:
+      return in.readObject();
+    default:
+      throw new IllegalStateException("unknown tag " + tag + " in " + file);
+    }
+  }
+
+  /** Closes and deletes the file. */
+  public void delete() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      out = null;
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  /** Enumerator that reads rows from a spill file. */
+  private class SpillEnumerator<T> implements Enumerator<T> {
+    private ObjectInputStream in;
+    private int remaining = rowCount;
+    private T current;
+
+    SpillEnumerator(ObjectInputStream in) {
+      this.in = in;
+    }
+
+    public T current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (remaining == 0) {
+        return false;
+      }
+      try {
+        //noinspection unchecked
+        current = (T) readValue(in);
+      } catch (IOException e) {
+        throw new RuntimeException("while reading spill file " + file, e);
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException("while reading spill file " + file, e);
+      }
+      --remaining;
+      return true;
+    }
+
+    public void reset() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        in = null;
+      }
+      current = null;
+      delete();
+    }
+  }
+}
+
+// End SpillFile.java
@@ -34,7 +34,6 @@
 import java.sql.Timestamp;
 import java.text.DecimalFormat;
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * Helper methods to implement SQL functions in generated code.
@@ -268,26 +267,22 @@ public static ByteString overlay(ByteString s, ByteString r, int start,
 
   /** SQL {@code LIKE} function. */
   public static boolean like(String s, String pattern) {
-    final String regex = Like.sqlToRegexLike(pattern, null);
-    return Pattern.matches(regex, s);
+    return Like.likeMatcher(pattern, null).matches(s);
   }
 
   /** SQL {@code LIKE} function with escape. */
   public static boolean like(String s, String pattern, String escape) {
-    final String regex = Like.sqlToRegexLike(pattern, escape);
-    return Pattern.matches(regex, s);
+    return Like.likeMatcher(pattern, escape).matches(s);
   }
 
   /** SQL {@code SIMILAR} function. */
   public static boolean similar(String s, String pattern) {
-    final String regex = Like.sqlToRegexSimilar(pattern, null);
-    return Pattern.matches(regex, s);
+    return Like.similarMatcher(pattern, null).matches(s);
   }
 
   /** SQL {@code SIMILAR} function with escape. */
   public static boolean similar(String s, String pattern, String escape) {
-    final String regex = Like.sqlToRegexSimilar(pattern, escape);
-    return Pattern.matches(regex, s);
+    return Like.similarMatcher(pattern, escape).matches(s);
   }
 
   // =
@@ -0,0 +1,1367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.linq4j.AbstractEnumerable;
+import net.hydromatic.linq4j.Enumerable;
+import net.hydromatic.linq4j.Enumerator;
+import net.hydromatic.linq4j.expressions.Primitive;
+
+import net.hydromatic.optiq.DataContext;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runtime support for vectorized (batch-at-a-time) execution.
+ *
+ * <p>A plan is a tree of {@link Node}s. Each node produces a sequence of
+ * {@link Batch}es of up to {@link #BATCH_SIZE} rows. A batch stores each
+ * column as an array of primitives: a {@code long[]} for integral and boolean
+ * values (booleans are 0 or 1), and a {@code double[]} for floating-point
+ * values. Values are never null.</p>
+ *
+ * <p>Code generated for the
+ * {@link net.hydromatic.optiq.rules.vector.VectorRel vector calling convention}
+ * calls the factory methods of this class to build a plan, and
+ * {@link #toEnumerable} to execute it.</p>
+ */
+public class Vectors {
+  /** Maximum number of rows in a batch. */
+  public static final int BATCH_SIZE = 1024;
+
+  /** Threads that execute partitions of vectorized plans. Threads are
+   * created on demand, and are daemon threads so that they do not prevent the
+   * JVM from exiting. */
+  private static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              final Thread thread = new Thread(r, "optiq-vector");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  private Vectors() {}
+
+  /** Returns whether each of a list of primitive types (see
+   * {@link Primitive#valueOf(String)}) is stored as {@code double}. */
+  private static boolean[] doubles(String[] primitives) {
+    final boolean[] doubles = new boolean[primitives.length];
+    for (int i = 0; i < primitives.length; i++) {
+      doubles[i] = isDouble(Primitive.valueOf(primitives[i]));
+    }
+    return doubles;
+  }
+
+  private static boolean isDouble(Primitive primitive) {
+    return primitive == Primitive.DOUBLE || primitive == Primitive.FLOAT;
+  }
+
+  private static Batch newBatch(boolean[] doubles) {
+    final Batch batch = new Batch(doubles.length);
+    for (int i = 0; i < doubles.length; i++) {
+      batch.columns[i] =
+          doubles[i] ? new double[BATCH_SIZE] : new long[BATCH_SIZE];
+    }
+    return batch;
+  }
+
+  // Plan nodes
+
+  /** Creates a node that reads columns of a table. */
+  public static Node scan(ColumnarTable table, int[] fields,
+      String[] primitives) {
+    return scan(table, fields, primitives, -1, Long.MIN_VALUE, Long.MAX_VALUE);
+  }
+
+  /** Creates a node that reads columns of a table, skipping rows that the
+   * table knows cannot have a value of column {@code filterColumn} between
+   * {@code lower} and {@code upper}.
+   *
+   * <p>The range is a hint: some rows outside it may still be returned, so
+   * the caller must still apply the filter.</p>
+   *
+   * @param table Table
+   * @param fields Ordinals of columns to read
+   * @param primitives Primitive type of each column read
+   * @param filterColumn Ordinal of the column in the table to which the range
+   *                     applies, or -1 to read every row
+   * @param lower Lowest value of the range (inclusive)
+   * @param upper Highest value of the range (inclusive)
+   */
+  public static Node scan(final ColumnarTable table, final int[] fields,
+      String[] primitives, final int filterColumn, final long lower,
+      final long upper) {
+    return new Node(doubles(primitives)) {
+      Cursor open(int parallelism, int partition, int partitionCount) {
+        final ColumnarTable.Reader reader = table.reader();
+        final long rowCount = reader.getRowCount();
+        final int end = (int) (rowCount * (partition + 1) / partitionCount);
+        final Batch batch = newBatch(doubles);
+        return new Cursor() {
+          int offset = (int) (rowCount * partition / partitionCount);
+
+          public Batch next() {
+            if (filterColumn >= 0 && offset < end) {
+              offset = reader.seek(filterColumn, offset, end, lower, upper);
+            }
+            if (offset >= end) {
+              return null;
+            }
+            final int count = Math.min(BATCH_SIZE, end - offset);
+            for (int i = 0; i < fields.length; i++) {
+              if (doubles[i]) {
+                reader.read(fields[i], offset, count,
+                    (double[]) batch.columns[i]);
+              } else {
+                reader.read(fields[i], offset, count,
+                    (long[]) batch.columns[i]);
+              }
+            }
+            batch.size = count;
+            offset += count;
+            return batch;
+          }
+
+          public void close() {
+          }
+        };
+      }
+
+      @Override boolean isPartitionable() {
+        return true;
+      }
+    };
+  }
+
+  /** Creates a node that reads rows from an enumerable. A row with one column
+   * is its value; a row with several columns is an {@code Object[]}. */
+  public static Node fromEnumerable(final Enumerable<?> rows,
+      String[] primitives) {
+    return new Node(doubles(primitives)) {
+      Cursor open(int parallelism, int partition, int partitionCount) {
+        final Enumerator<?> enumerator = rows.enumerator();
+        final Batch batch = newBatch(doubles);
+        return new Cursor() {
+          public Batch next() {
+            int n = 0;
+            while (n < BATCH_SIZE && enumerator.moveNext()) {
+              final Object row = enumerator.current();
+              for (int i = 0; i < doubles.length; i++) {
+                final Object value =
+                    doubles.length == 1 ? row : ((Object[]) row)[i];
+                if (doubles[i]) {
+                  ((double[]) batch.columns[i])[n] =
+                      ((Number) value).doubleValue();
+                } else if (value instanceof Boolean) {
+                  ((long[]) batch.columns[i])[n] = (Boolean) value ? 1 : 0;
+                } else {
+                  ((long[]) batch.columns[i])[n] =
+                      ((Number) value).longValue();
+                }
+              }
+              ++n;
+            }
+            batch.size = n;
+            return n == 0 ? null : batch;
+          }
+
+          public void close() {
+            enumerator.close();
+          }
+        };
+      }
+    };
+  }
+
+  /** Creates a node that filters and projects its input.
+   *
+   * @param input Input
+   * @param condition Condition, or null; rows for which it evaluates to 0 are
+   *                  discarded
+   * @param projects Expressions to compute for each remaining row
+   */
+  public static Node calc(final Node input, final Expr condition,
+      final Expr[] projects) {
+    final boolean[] doubles = new boolean[projects.length];
+    for (int i = 0; i < projects.length; i++) {
+      doubles[i] = projects[i].isDouble;
+    }
+    return new Node(doubles) {
+      Cursor open(int parallelism, int partition, int partitionCount) {
+        final Cursor cursor =
+            input.open(parallelism, partition, partitionCount);
+        final Evaluator conditionEvaluator =
+            condition == null ? null : condition.evaluator();
+        final Evaluator[] evaluators = new Evaluator[projects.length];
+        for (int i = 0; i < projects.length; i++) {
+          evaluators[i] = projects[i].evaluator();
+        }
+        final Batch filtered = newBatch(input.doubles);
+        final Batch output = new Batch(projects.length);
+        final int[] selection = new int[BATCH_SIZE];
+        return new Cursor() {
+          public Batch next() {
+            for (;;) {
+              Batch batch = cursor.next();
+              if (batch == null) {
+                return null;
+              }
+              if (conditionEvaluator != null) {
+                final long[] mask =
+                    (long[]) conditionEvaluator.evaluate(batch);
+                int n = 0;
+                for (int i = 0; i < batch.size; i++) {
+                  // Branch-free: mask values are 0 or 1.
+                  selection[n] = i;
+                  n += (int) mask[i];
+                }
+                if (n == 0) {
+                  continue;
+                }
+                if (n < batch.size) {
+                  compact(batch, selection, n, filtered);
+                  batch = filtered;
+                }
+              }
+              output.size = batch.size;
+              for (int i = 0; i < evaluators.length; i++) {
+                output.columns[i] = evaluators[i].evaluate(batch);
+              }
+              return output;
+            }
+          }
+
+          public void close() {
+            cursor.close();
+          }
+        };
+      }
+
+      @Override boolean isPartitionable() {
+        return input.isPartitionable();
+      }
+    };
+  }
+
+  /** Copies the selected rows of a batch into another batch. */
+  private static void compact(Batch batch, int[] selection, int n,
+      Batch target) {
+    for (int c = 0; c < batch.columns.length; c++) {
+      final Object column = batch.columns[c];
+      if (column instanceof double[]) {
+        final double[] source = (double[]) column;
+        final double[] dest = (double[]) target.columns[c];
+        for (int i = 0; i < n; i++) {
+          dest[i] = source[selection[i]];
+        }
+      } else {
+        final long[] source = (long[]) column;
+        final long[] dest = (long[]) target.columns[c];
+        for (int i = 0; i < n; i++) {
+          dest[i] = source[selection[i]];
+        }
+      }
+    }
+    target.size = n;
+  }
+
+  /** Creates a node that aggregates its input.
+   *
+   * <p>The output has the group key (if any) followed by one column per
+   * aggregate function. If there is no group key, the output has one row even
+   * if the input is empty; in that case, only {@code COUNT} returns the value
+   * that SQL requires.</p>
+   *
+   * <p>If the node may use more than one thread and its input is
+   * partitionable, each thread computes partial aggregates over a range of
+   * rows, and the partial aggregates are then merged.</p>
+   *
+   * @param input Input
+   * @param groupField Ordinal of the integral group key, or -1
+   * @param functions Aggregate functions: "COUNT", "SUM", "MIN" or "MAX"
+   * @param args Ordinal of each function's argument, or -1 for
+   *             {@code COUNT(*)}
+   */
+  public static Node aggregate(final Node input, final int groupField,
+      String[] functions, final int[] args) {
+    final int offset = groupField < 0 ? 0 : 1;
+    final boolean[] doubles = new boolean[offset + functions.length];
+    if (groupField >= 0 && input.doubles[groupField]) {
+      throw new IllegalArgumentException("group key must be integral");
+    }
+    final AggFunction[] aggs = new AggFunction[functions.length];
+    for (int i = 0; i < functions.length; i++) {
+      aggs[i] = AggFunction.valueOf(functions[i]);
+      doubles[offset + i] =
+          aggs[i] != AggFunction.COUNT && input.doubles[args[i]];
+    }
+    return new Node(doubles) {
+      Cursor open(int parallelism, int partition, int partitionCount) {
+        if (parallelism <= 1 || !input.isPartitionable()) {
+          return new AggregateCursor(input.open(parallelism, 0, 1),
+              groupField, aggs, args, this.doubles);
+        }
+        Hook.VECTOR_PARTITIONS.run(parallelism);
+        final List<AggregateCursor> cursors = new ArrayList<AggregateCursor>();
+        for (int i = 0; i < parallelism; i++) {
+          cursors.add(
+              new AggregateCursor(input.open(1, i, parallelism), groupField,
+                  aggs, args, this.doubles));
+        }
+        return new ParallelAggregateCursor(cursors);
+      }
+    };
+  }
+
+  /** Converts the output of a plan into an enumerable. A row with one column
+   * is its value; a row with several columns is an {@code Object[]}.
+   *
+   * @param node Plan
+   * @param primitives Java type of each column (see
+   *                   {@link Primitive#valueOf(String)}), used to box values
+   */
+  public static Enumerable<Object> toEnumerable(Node node,
+      String[] primitives) {
+    return toEnumerable(node, primitives, null);
+  }
+
+  /** Converts the output of a plan into an enumerable, using as many threads
+   * as the {@link net.hydromatic.optiq.DataContext.Variable#PARALLELISM}
+   * variable of the statement allows.
+   *
+   * <p>If the plan is partitionable (it has no aggregate), each thread
+   * executes the plan over a range of rows, and the rows are returned in the
+   * same order as if the plan were executed by one thread.</p>
+   *
+   * @param node Plan
+   * @param primitives Java type of each column (see
+   *                   {@link Primitive#valueOf(String)}), used to box values
+   * @param root Data context, or null
+   */
+  public static Enumerable<Object> toEnumerable(final Node node,
+      String[] primitives, DataContext root) {
+    final Integer parallelism = root == null
+        ? null
+        : (Integer) root.get(DataContext.Variable.PARALLELISM.camelName);
+    final int threadCount = parallelism == null ? 1 : parallelism;
+    final Primitive[] types = new Primitive[primitives.length];
+    for (int i = 0; i < primitives.length; i++) {
+      types[i] = Primitive.valueOf(primitives[i]);
+    }
+    return new AbstractEnumerable<Object>() {
+      public Enumerator<Object> enumerator() {
+        return new Enumerator<Object>() {
+          Cursor cursor = open(node, threadCount);
+          Batch batch;
+          int i;
+          boolean done;
+          Object current;
+
+          public Object current() {
+            return current;
+          }
+
+          public boolean moveNext() {
+            for (;;) {
+              if (batch != null && ++i < batch.size) {
+                current = row(batch, i);
+                return true;
+              }
+              if (done) {
+                return false;
+              }
+              batch = cursor.next();
+              i = -1;
+              if (batch == null) {
+                done = true;
+                return false;
+              }
+            }
+          }
+
+          private Object row(Batch batch, int i) {
+            if (types.length == 1) {
+              return box(batch.columns[0], i, types[0]);
+            }
+            final Object[] row = new Object[types.length];
+            for (int c = 0; c < types.length; c++) {
+              row[c] = box(batch.columns[c], i, types[c]);
+            }
+            return row;
+          }
+
+          public void reset() {
+            cursor.close();
+            cursor = open(node, threadCount);
+            batch = null;
+            done = false;
+            current = null;
+          }
+
+          public void close() {
+            cursor.close();
+          }
+        };
+      }
+    };
+  }
+
+  private static Cursor open(Node node, int parallelism) {
+    if (parallelism > 1 && node.isPartitionable()) {
+      return new ParallelCursor(node, parallelism);
+    }
+    return node.open(parallelism, 0, 1);
+  }
+
+  private static Object box(Object column, int i, Primitive primitive) {
+    switch (primitive) {
+    case DOUBLE:
+      return ((double[]) column)[i];
+    case FLOAT:
+      return (float) ((double[]) column)[i];
+    case BOOLEAN:
+      return ((long[]) column)[i] != 0;
+    case BYTE:
+      return (byte) ((long[]) column)[i];
+    case SHORT:
+      return (short) ((long[]) column)[i];
+    case INT:
+      return (int) ((long[]) column)[i];
+    default:
+      return ((long[]) column)[i];
+    }
+  }
+
+  // Expressions
+
+  /** Creates an expression that returns a column of the input. */
+  public static Expr field(final int ordinal, boolean isDouble) {
+    return new Expr(isDouble) {
+      Evaluator evaluator() {
+        return new Evaluator() {
+          Object evaluate(Batch batch) {
+            return batch.columns[ordinal];
+          }
+        };
+      }
+    };
+  }
+
+  /** Creates an integral or boolean literal. */
+  public static Expr literal(final long value) {
+    return new Expr(false) {
+      Evaluator evaluator() {
+        final long[] values = new long[BATCH_SIZE];
+        Arrays.fill(values, value);
+        return new Evaluator() {
+          Object evaluate(Batch batch) {
+            return values;
+          }
+        };
+      }
+    };
+  }
+
+  /** Creates a floating-point literal. */
+  public static Expr literal(final double value) {
+    return new Expr(true) {
+      Evaluator evaluator() {
+        final double[] values = new double[BATCH_SIZE];
+        Arrays.fill(values, value);
+        return new Evaluator() {
+          Object evaluate(Batch batch) {
+            return values;
+          }
+        };
+      }
+    };
+  }
+
+  /** Creates an expression that converts a value to a given primitive type
+   * (see {@link Primitive#valueOf(String)}). Integral values are narrowed the
+   * same way as by a Java cast. */
+  public static Expr cast(final Expr operand, String primitive) {
+    final Primitive target = Primitive.valueOf(primitive);
+    if (isDouble(target)) {
+      if (operand.isDouble) {
+        return operand;
+      }
+      return new Expr(true) {
+        Evaluator evaluator() {
+          final Evaluator evaluator = operand.evaluator();
+          final double[] result = new double[BATCH_SIZE];
+          return new Evaluator() {
+            Object evaluate(Batch batch) {
+              final long[] values = (long[]) evaluator.evaluate(batch);
+              for (int i = 0; i < batch.size; i++) {
+                result[i] = values[i];
+              }
+              return result;
+            }
+          };
+        }
+      };
+    }
+    if (target == Primitive.LONG && !operand.isDouble) {
+      return operand;
+    }
+    return new Expr(false) {
+      Evaluator evaluator() {
+        final Evaluator evaluator = operand.evaluator();
+        final long[] result = new long[BATCH_SIZE];
+        return new Evaluator() {
+          Object evaluate(Batch batch) {
+            final int n = batch.size;
+            if (operand.isDouble) {
+              final double[] values = (double[]) evaluator.evaluate(batch);
+              for (int i = 0; i < n; i++) {
+                result[i] = (long) values[i];
+              }
+            } else {
+              System.arraycopy(evaluator.evaluate(batch), 0, result, 0, n);
+            }
+            switch (target) {
+            case INT:
+              for (int i = 0; i < n; i++) {
+                result[i] = (int) result[i];
+              }
+              break;
+            case SHORT:
+              for (int i = 0; i < n; i++) {
+                result[i] = (short) result[i];
+              }
+              break;
+            case BYTE:
+              for (int i = 0; i < n; i++) {
+                result[i] = (byte) result[i];
+              }
+              break;
+            case BOOLEAN:
+              for (int i = 0; i < n; i++) {
+                result[i] = result[i] != 0 ? 1 : 0;
+              }
+              break;
+            }
+            return result;
+          }
+        };
+      }
+    };
+  }
+
+  /** Creates a call to an operator.
+   *
+   * <p>Supported operators are the arithmetic operators "+", "-", "*", "/"
+   * and "NEG" (unary minus); the comparison operators "=", "&lt;&gt;",
+   * "&lt;", "&lt;=", "&gt;", "&gt;="; and the logical operators "AND", "OR"
+   * and "NOT". If one operand of an arithmetic or comparison operator is
+   * floating-point, the other is converted to floating-point.</p>
+   */
+  public static Expr call(String op, Expr[] operands) {
+    final Operator operator = Operator.of(op);
+    switch (operator) {
+    case AND:
+    case OR:
+      Expr e = operands[0];
+      for (int i = 1; i < operands.length; i++) {
+        e = new BinaryExpr(operator, e, operands[i], false);
+      }
+      return e;
+    case NOT:
+    case NEG:
+      return new UnaryExpr(operator, operands[0]);
+    default:
+      Expr left = operands[0];
+      Expr right = operands[1];
+      final boolean isDouble = left.isDouble || right.isDouble;
+      if (isDouble) {
+        left = cast(left, "DOUBLE");
+        right = cast(right, "DOUBLE");
+      }
+      return new BinaryExpr(operator, left, right,
+          isDouble && operator.arithmetic);
+    }
+  }
+
+  /** Operator of a vectorized expression. */
+  private enum Operator {
+    PLUS("+", true), MINUS("-", true), TIMES("*", true), DIVIDE("/", true),
+    NEG("NEG", true),
+    EQUALS("=", false), NOT_EQUALS("<>", false), LESS_THAN("<", false),
+    LESS_THAN_OR_EQUAL("<=", false), GREATER_THAN(">", false),
+    GREATER_THAN_OR_EQUAL(">=", false),
+    AND("AND", false), OR("OR", false), NOT("NOT", false);
+
+    final String symbol;
+    final boolean arithmetic;
+
+    Operator(String symbol, boolean arithmetic) {
+      this.symbol = symbol;
+      this.arithmetic = arithmetic;
+    }
+
+    static Operator of(String symbol) {
+      for (Operator operator : values()) {
+        if (operator.symbol.equals(symbol)) {
+          return operator;
+        }
+      }
+      throw new IllegalArgumentException("unknown operator " + symbol);
+    }
+  }
+
+  /** Expression with one operand. */
+  private static class UnaryExpr extends Expr {
+    final Operator operator;
+    final Expr operand;
+
+    UnaryExpr(Operator operator, Expr operand) {
+      super(operand.isDouble && operator == Operator.NEG);
+      this.operator = operator;
+      this.operand = operand;
+    }
+
+    Evaluator evaluator() {
+      final Evaluator evaluator = operand.evaluator();
+      final Object result =
+          isDouble ? new double[BATCH_SIZE] : new long[BATCH_SIZE];
+      return new Evaluator() {
+        Object evaluate(Batch batch) {
+          final int n = batch.size;
+          if (isDouble) {
+            final double[] a = (double[]) evaluator.evaluate(batch);
+            final double[] r = (double[]) result;
+            for (int i = 0; i < n; i++) {
+              r[i] = -a[i];
+            }
+          } else {
+            final long[] a = (long[]) evaluator.evaluate(batch);
+            final long[] r = (long[]) result;
+            if (operator == Operator.NOT) {
+              for (int i = 0; i < n; i++) {
+                r[i] = a[i] ^ 1;
+              }
+            } else {
+              for (int i = 0; i < n; i++) {
+                r[i] = -a[i];
+              }
+            }
+          }
+          return result;
+        }
+      };
+    }
+  }
+
+  /** Expression with two operands of the same type. */
+  private static class BinaryExpr extends Expr {
+    final Operator operator;
+    final Expr left;
+    final Expr right;
+
+    BinaryExpr(Operator operator, Expr left, Expr right, boolean isDouble) {
+      super(isDouble);
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    Evaluator evaluator() {
+      final Evaluator leftEvaluator = left.evaluator();
+      final Evaluator rightEvaluator = right.evaluator();
+      if (left.isDouble) {
+        return isDouble
+            ? new DoubleArithmeticEvaluator(operator, leftEvaluator,
+                rightEvaluator)
+            : new DoubleComparisonEvaluator(operator, leftEvaluator,
+                rightEvaluator);
+      }
+      return new LongEvaluator(operator, leftEvaluator, rightEvaluator);
+    }
+  }
+
+  /** Evaluates an arithmetic operator whose operands and result are
+   * floating-point. */
+  private static class DoubleArithmeticEvaluator extends Evaluator {
+    final Operator operator;
+    final Evaluator left;
+    final Evaluator right;
+    final double[] r = new double[BATCH_SIZE];
+
+    DoubleArithmeticEvaluator(Operator operator, Evaluator left,
+        Evaluator right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    Object evaluate(Batch batch) {
+      final int n = batch.size;
+      final double[] a = (double[]) left.evaluate(batch);
+      final double[] b = (double[]) right.evaluate(batch);
+      switch (operator) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] - b[i];
+        }
+        break;
+      case TIMES:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] * b[i];
+        }
+        break;
+      case DIVIDE:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] / b[i];
+        }
+        break;
+      default:
+        throw new AssertionError(operator);
+      }
+      return r;
+    }
+  }
+
+  /** Evaluates a comparison operator whose operands are floating-point. */
+  private static class DoubleComparisonEvaluator extends Evaluator {
+    final Operator operator;
+    final Evaluator left;
+    final Evaluator right;
+    final long[] r = new long[BATCH_SIZE];
+
+    DoubleComparisonEvaluator(Operator operator, Evaluator left,
+        Evaluator right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    Object evaluate(Batch batch) {
+      final int n = batch.size;
+      final double[] a = (double[]) left.evaluate(batch);
+      final double[] b = (double[]) right.evaluate(batch);
+      switch (operator) {
+      case EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] == b[i] ? 1 : 0;
+        }
+        break;
+      case NOT_EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] != b[i] ? 1 : 0;
+        }
+        break;
+      case LESS_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] < b[i] ? 1 : 0;
+        }
+        break;
+      case LESS_THAN_OR_EQUAL:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] <= b[i] ? 1 : 0;
+        }
+        break;
+      case GREATER_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] > b[i] ? 1 : 0;
+        }
+        break;
+      case GREATER_THAN_OR_EQUAL:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] >= b[i] ? 1 : 0;
+        }
+        break;
+      default:
+        throw new AssertionError(operator);
+      }
+      return r;
+    }
+  }
+
+  /** Evaluates an arithmetic, comparison or logical operator whose operands
+   * are integral. */
+  private static class LongEvaluator extends Evaluator {
+    final Operator operator;
+    final Evaluator left;
+    final Evaluator right;
+    final long[] r = new long[BATCH_SIZE];
+
+    LongEvaluator(Operator operator, Evaluator left, Evaluator right) {
+      this.operator = operator;
+      this.left = left;
+      this.right = right;
+    }
+
+    Object evaluate(Batch batch) {
+      final int n = batch.size;
+      final long[] a = (long[]) left.evaluate(batch);
+      final long[] b = (long[]) right.evaluate(batch);
+      switch (operator) {
+      case PLUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] + b[i];
+        }
+        break;
+      case MINUS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] - b[i];
+        }
+        break;
+      case TIMES:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] * b[i];
+        }
+        break;
+      case DIVIDE:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] / b[i];
+        }
+        break;
+      case EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] == b[i] ? 1 : 0;
+        }
+        break;
+      case NOT_EQUALS:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] != b[i] ? 1 : 0;
+        }
+        break;
+      case LESS_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] < b[i] ? 1 : 0;
+        }
+        break;
+      case LESS_THAN_OR_EQUAL:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] <= b[i] ? 1 : 0;
+        }
+        break;
+      case GREATER_THAN:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] > b[i] ? 1 : 0;
+        }
+        break;
+      case GREATER_THAN_OR_EQUAL:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] >= b[i] ? 1 : 0;
+        }
+        break;
+      case AND:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] & b[i];
+        }
+        break;
+      case OR:
+        for (int i = 0; i < n; i++) {
+          r[i] = a[i] | b[i];
+        }
+        break;
+      default:
+        throw new AssertionError(operator);
+      }
+      return r;
+    }
+  }
+
+  /** Aggregate function supported by {@link #aggregate}. */
+  private enum AggFunction {
+    COUNT, SUM, MIN, MAX
+  }
+
+  /** Cursor that implements {@link #aggregate}. Reads all input, then returns
+   * one row per group. */
+  private static class AggregateCursor implements Cursor {
+    private final Cursor input;
+    private final int groupField;
+    private final AggFunction[] aggs;
+    private final int[] args;
+    private final boolean[] doubles;
+    private final int offset;
+    private final Batch output;
+    /** Maps each value of the group key to the ordinal of its group; null if
+     * there is no group key. */
+    private final LongHashMultiMap<Integer> map;
+
+    private int groupCount;
+    private long[] keys;
+    /** Accumulator of each aggregate function; a long[] or double[] with one
+     * entry per group. */
+    private final Object[] accumulators;
+    private int emitted = -1;
+
+    AggregateCursor(Cursor input, int groupField, AggFunction[] aggs,
+        int[] args, boolean[] doubles) {
+      this.input = input;
+      this.groupField = groupField;
+      this.aggs = aggs;
+      this.args = args;
+      this.doubles = doubles;
+      this.offset = groupField < 0 ? 0 : 1;
+      this.output = newBatch(doubles);
+      this.accumulators = new Object[aggs.length];
+      this.map = groupField < 0 ? null : new LongHashMultiMap<Integer>();
+      final int capacity = groupField < 0 ? 1 : 64;
+      keys = new long[capacity];
+      for (int j = 0; j < aggs.length; j++) {
+        accumulators[j] = doubles[offset + j]
+            ? new double[capacity]
+            : new long[capacity];
+      }
+    }
+
+    /** Reads all input and computes the aggregates. */
+    void aggregate() {
+      final int[] groups = new int[BATCH_SIZE];
+      if (groupField < 0) {
+        addGroup(0);
+      }
+      for (Batch batch; (batch = input.next()) != null;) {
+        final int n = batch.size;
+        if (map != null) {
+          final long[] k = (long[]) batch.columns[groupField];
+          for (int i = 0; i < n; i++) {
+            groups[i] = group(k[i]);
+          }
+        }
+        for (int j = 0; j < aggs.length; j++) {
+          accumulate(j, batch, groups, n);
+        }
+      }
+      emitted = 0;
+    }
+
+    /** Returns the ordinal of the group with a given key, creating the group
+     * if it does not exist. */
+    private int group(long key) {
+      final int e = map.first(key);
+      if (e >= 0) {
+        return map.get(e);
+      }
+      final int g = groupCount;
+      addGroup(key);
+      map.put(key, g);
+      return g;
+    }
+
+    /** Adds the partial aggregates computed by another cursor (over a
+     * different range of the same input) into this cursor's aggregates. */
+    void merge(AggregateCursor other) {
+      for (int g = 0; g < other.groupCount; g++) {
+        final int target = map == null ? 0 : group(other.keys[g]);
+        for (int j = 0; j < aggs.length; j++) {
+          if (accumulators[j] instanceof double[]) {
+            final double[] acc = (double[]) accumulators[j];
+            final double v = ((double[]) other.accumulators[j])[g];
+            switch (aggs[j]) {
+            case MIN:
+              acc[target] = Math.min(acc[target], v);
+              break;
+            case MAX:
+              acc[target] = Math.max(acc[target], v);
+              break;
+            default:
+              acc[target] += v;
+            }
+          } else {
+            final long[] acc = (long[]) accumulators[j];
+            final long v = ((long[]) other.accumulators[j])[g];
+            switch (aggs[j]) {
+            case MIN:
+              acc[target] = Math.min(acc[target], v);
+              break;
+            case MAX:
+              acc[target] = Math.max(acc[target], v);
+              break;
+            default:
+              // COUNT and SUM
+              acc[target] += v;
+            }
+          }
+        }
+      }
+    }
+
+    private void addGroup(long key) {
+      final int g = groupCount++;
+      if (g == keys.length) {
+        keys = Arrays.copyOf(keys, g * 2);
+        for (int j = 0; j < aggs.length; j++) {
+          accumulators[j] = accumulators[j] instanceof double[]
+              ? Arrays.copyOf((double[]) accumulators[j], g * 2)
+              : Arrays.copyOf((long[]) accumulators[j], g * 2);
+        }
+      }
+      keys[g] = key;
+      for (int j = 0; j < aggs.length; j++) {
+        if (accumulators[j] instanceof double[]) {
+          ((double[]) accumulators[j])[g] =
+              aggs[j] == AggFunction.MIN ? Double.POSITIVE_INFINITY
+              : aggs[j] == AggFunction.MAX ? Double.NEGATIVE_INFINITY
+              : 0d;
+        } else {
+          ((long[]) accumulators[j])[g] =
+              aggs[j] == AggFunction.MIN ? Long.MAX_VALUE
+              : aggs[j] == AggFunction.MAX ? Long.MIN_VALUE
+              : 0L;
+        }
+      }
+    }
+
+    private void accumulate(int j, Batch batch, int[] groups, int n) {
+      if (aggs[j] == AggFunction.COUNT) {
+        final long[] acc = (long[]) accumulators[j];
+        for (int i = 0; i < n; i++) {
+          ++acc[groups[i]];
+        }
+        return;
+      }
+      final Object column = batch.columns[args[j]];
+      if (accumulators[j] instanceof double[]) {
+        final double[] acc = (double[]) accumulators[j];
+        final double[] v = (double[]) column;
+        switch (aggs[j]) {
+        case SUM:
+          for (int i = 0; i < n; i++) {
+            acc[groups[i]] += v[i];
+          }
+          break;
+        case MIN:
+          for (int i = 0; i < n; i++) {
+            acc[groups[i]] = Math.min(acc[groups[i]], v[i]);
+          }
+          break;
+        case MAX:
+          for (int i = 0; i < n; i++) {
+            acc[groups[i]] = Math.max(acc[groups[i]], v[i]);
+          }
+          break;
+        }
+      } else {
+        final long[] acc = (long[]) accumulators[j];
+        final long[] v = (long[]) column;
+        switch (aggs[j]) {
+        case SUM:
+          for (int i = 0; i < n; i++) {
+            acc[groups[i]] += v[i];
+          }
+          break;
+        case MIN:
+          for (int i = 0; i < n; i++) {
+            acc[groups[i]] = Math.min(acc[groups[i]], v[i]);
+          }
+          break;
+        case MAX:
+          for (int i = 0; i < n; i++) {
+            acc[groups[i]] = Math.max(acc[groups[i]], v[i]);
+          }
+          break;
+        }
+      }
+    }
+
+    public Batch next() {
+      if (emitted < 0) {
+        aggregate();
+      }
+      final int n = Math.min(BATCH_SIZE, groupCount - emitted);
+      if (n <= 0) {
+        return null;
+      }
+      if (offset > 0) {
+        System.arraycopy(keys, emitted, output.columns[0], 0, n);
+      }
+      for (int j = 0; j < aggs.length; j++) {
+        System.arraycopy(accumulators[j], emitted, output.columns[offset + j],
+            0, n);
+      }
+      output.size = n;
+      emitted += n;
+      return output;
+    }
+
+    public void close() {
+      input.close();
+    }
+  }
+
+  /** Cursor that computes partial aggregates over several partitions of its
+   * input in parallel, then merges them. */
+  private static class ParallelAggregateCursor implements Cursor {
+    private final List<AggregateCursor> cursors;
+    private boolean started;
+
+    ParallelAggregateCursor(List<AggregateCursor> cursors) {
+      this.cursors = cursors;
+    }
+
+    public Batch next() {
+      final AggregateCursor first = cursors.get(0);
+      if (!started) {
+        started = true;
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final AggregateCursor cursor : cursors) {
+          futures.add(
+              EXECUTOR.submit(
+                  new Runnable() {
+                    public void run() {
+                      cursor.aggregate();
+                    }
+                  }));
+        }
+        for (Future<?> future : futures) {
+          await(future);
+        }
+        for (AggregateCursor cursor : cursors.subList(1, cursors.size())) {
+          first.merge(cursor);
+        }
+      }
+      return first.next();
+    }
+
+    public void close() {
+      for (AggregateCursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+
+  private static void await(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw propagate(e.getCause());
+    }
+  }
+
+  private static RuntimeException propagate(Throwable e) {
+    if (e instanceof RuntimeException) {
+      return (RuntimeException) e;
+    }
+    if (e instanceof Error) {
+      throw (Error) e;
+    }
+    return new RuntimeException(e);
+  }
+
+  /** Cursor that executes a partitionable node over several partitions in
+   * parallel.
+   *
+   * <p>Each partition has a bounded queue of batches; the consumer reads the
+   * queues in partition order, so rows are returned in the same order as by a
+   * single thread, and a partition that gets ahead of the consumer waits.</p>
+   */
+  private static class ParallelCursor implements Cursor {
+    private static final Object END = new Object();
+    private static final int QUEUE_CAPACITY = 4;
+
+    private final Node node;
+    private final List<BlockingQueue<Object>> queues =
+        new ArrayList<BlockingQueue<Object>>();
+    private volatile boolean closed;
+    private int partition = -1;
+
+    ParallelCursor(Node node, int parallelism) {
+      this.node = node;
+      for (int i = 0; i < parallelism; i++) {
+        queues.add(new ArrayBlockingQueue<Object>(QUEUE_CAPACITY));
+      }
+    }
+
+    private void start() {
+      Hook.VECTOR_PARTITIONS.run(queues.size());
+      for (int i = 0; i < queues.size(); i++) {
+        final int p = i;
+        EXECUTOR.submit(
+            new Runnable() {
+              public void run() {
+                produce(p);
+              }
+            });
+      }
+      partition = 0;
+    }
+
+    private void produce(int p) {
+      final BlockingQueue<Object> queue = queues.get(p);
+      Object end = END;
+      try {
+        final Cursor cursor = node.open(1, p, queues.size());
+        try {
+          for (Batch batch; !closed && (batch = cursor.next()) != null;) {
+            if (!offer(queue, copy(batch))) {
+              return;
+            }
+          }
+        } finally {
+          cursor.close();
+        }
+      } catch (Throwable e) {
+        end = e;
+      }
+      offer(queue, end);
+    }
+
+    /** Adds an element to a queue, waiting for space unless this cursor is
+     * closed. */
+    private boolean offer(BlockingQueue<Object> queue, Object o) {
+      try {
+        while (!closed) {
+          if (queue.offer(o, 100, TimeUnit.MILLISECONDS)) {
+            return true;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+
+    public Batch next() {
+      if (partition < 0) {
+        start();
+      }
+      while (partition < queues.size()) {
+        final Object o;
+        try {
+          o = queues.get(partition).take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+        if (o == END) {
+          ++partition;
+        } else if (o instanceof Throwable) {
+          throw propagate((Throwable) o);
+        } else {
+          return (Batch) o;
+        }
+      }
+      return null;
+    }
+
+    public void close() {
+      closed = true;
+      for (BlockingQueue<Object> queue : queues) {
+        queue.clear();
+      }
+    }
+  }
+
+  /** Copies the valid part of a batch. */
+  private static Batch copy(Batch batch) {
+    final Batch copy = new Batch(batch.columns.length);
+    copy.size = batch.size;
+    for (int c = 0; c < batch.columns.length; c++) {
+      final Object column = batch.columns[c];
+      copy.columns[c] = column instanceof double[]
+          ? Arrays.copyOf((double[]) column, batch.size)
+          : Arrays.copyOf((long[]) column, batch.size);
+    }
+    return copy;
+  }
+
+  /** Batch of rows, stored column-wise. */
+  public static class Batch {
+    /** Number of rows. */
+    public int size;
+    /** Values of each column; a {@code long[]} or {@code double[]} whose
+     * first {@link #size} entries are valid. */
+    public final Object[] columns;
+
+    public Batch(int columnCount) {
+      this.columns = new Object[columnCount];
+    }
+  }
+
+  /** Node of a vectorized plan. A node is immutable; each call to
+   * {@link #open()} creates independent execution state. */
+  public abstract static class Node {
+    /** Whether each output column is {@code double[]} (otherwise it is
+     * {@code long[]}). */
+    final boolean[] doubles;
+
+    Node(boolean[] doubles) {
+      this.doubles = doubles;
+    }
+
+    /** Starts executing this node. */
+    public Cursor open() {
+      return open(1, 0, 1);
+    }
+
+    /** Starts executing this node over a partition of its input.
+     *
+     * @param parallelism Number of threads this node may use
+     * @param partition Ordinal of the range of rows to read
+     * @param partitionCount Number of ranges; must be 1 unless
+     *                       {@link #isPartitionable()}
+     */
+    abstract Cursor open(int parallelism, int partition, int partitionCount);
+
+    /** Returns whether this node can read a given range of the rows of its
+     * input, and therefore can be executed by several threads. */
+    boolean isPartitionable() {
+      return false;
+    }
+  }
+
+  /** Execution state of a {@link Node}. */
+  public interface Cursor {
+    /** Returns the next batch, or null if there are no more. The batch, and
+     * the arrays it references, are valid only until the next call. */
+    Batch next();
+
+    /** Releases resources. */
+    void close();
+  }
+
+  /** Expression evaluated over a batch. Immutable. */
+  public abstract static class Expr {
+    /** Whether this expression returns {@code double[]} (otherwise it returns
+     * {@code long[]}). */
+    final boolean isDouble;
+
+    Expr(boolean isDouble) {
+      this.isDouble = isDouble;
+    }
+
+    /** Creates execution state for this expression. */
+    abstract Evaluator evaluator();
+  }
+
+  /** Execution state of an {@link Expr}. */
+  abstract static class Evaluator {
+    /** Evaluates the expression for each row of a batch, and returns a
+     * {@code long[]} or {@code double[]}. The array may belong to the batch,
+     * and is valid until the next call. */
+    abstract Object evaluate(Batch batch);
+  }
+}
+
+// End Vectors.java
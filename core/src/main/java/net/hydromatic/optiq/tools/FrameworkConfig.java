@@ -107,6 +107,20 @@ public interface FrameworkConfig {
    * calling {@link org.eigenbase.relopt.RelOptPlanner#getContext()}.
    */
   Context getContext();
+
+  /**
+   * Returns the maximum time, in milliseconds, that the planner may spend
+   * optimizing a statement before it returns the best plan found so far.
+   * 0 means no limit.
+   */
+  long getPlannerTimeBudget();
+
+  /**
+   * Returns the maximum number of rules that the planner may fire while
+   * optimizing a statement before it returns the best plan found so far.
+   * 0 means no limit.
+   */
+  int getPlannerTickBudget();
 }
 
 // End FrameworkConfig.java
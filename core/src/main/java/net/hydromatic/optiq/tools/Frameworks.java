@@ -175,12 +175,15 @@ public static class ConfigBuilder {
     private SchemaPlus defaultSchema;
     private RelOptCostFactory costFactory;
     private SqlParserImplFactory parserFactory = SqlParserImpl.FACTORY;
+    private long plannerTimeBudget;
+    private int plannerTickBudget;
 
     private ConfigBuilder() {}
 
     public FrameworkConfig build() {
       return new StdFrameworkConfig(context, convertletTable, operatorTable,
-          programs, traitDefs, lex, defaultSchema, costFactory, parserFactory);
+          programs, traitDefs, lex, defaultSchema, costFactory, parserFactory,
+          plannerTimeBudget, plannerTickBudget);
     }
 
     public ConfigBuilder context(Context c) {
@@ -250,6 +253,18 @@ public ConfigBuilder parserFactory(SqlParserImplFactory parserFactory) {
       this.parserFactory = Preconditions.checkNotNull(parserFactory);
       return this;
     }
+
+    public ConfigBuilder plannerTimeBudget(long millis) {
+      Preconditions.checkArgument(millis >= 0);
+      this.plannerTimeBudget = millis;
+      return this;
+    }
+
+    public ConfigBuilder plannerTickBudget(int ticks) {
+      Preconditions.checkArgument(ticks >= 0);
+      this.plannerTickBudget = ticks;
+      return this;
+    }
   }
 
   /**
@@ -266,6 +281,8 @@ static class StdFrameworkConfig implements FrameworkConfig {
     private final SchemaPlus defaultSchema;
     private final RelOptCostFactory costFactory;
     private final SqlParserImplFactory parserFactory;
+    private final long plannerTimeBudget;
+    private final int plannerTickBudget;
 
     public StdFrameworkConfig(Context context,
         SqlRexConvertletTable convertletTable,
@@ -275,7 +292,9 @@ public StdFrameworkConfig(Context context,
         Lex lex,
         SchemaPlus defaultSchema,
         RelOptCostFactory costFactory,
-        SqlParserImplFactory parserFactory) {
+        SqlParserImplFactory parserFactory,
+        long plannerTimeBudget,
+        int plannerTickBudget) {
       this.context = context;
       this.convertletTable = convertletTable;
       this.operatorTable = operatorTable;
@@ -285,6 +304,8 @@ public StdFrameworkConfig(Context context,
       this.defaultSchema = defaultSchema;
       this.costFactory = costFactory;
       this.parserFactory = parserFactory;
+      this.plannerTimeBudget = plannerTimeBudget;
+      this.plannerTickBudget = plannerTickBudget;
     }
 
     public Lex getLex() {
@@ -322,6 +343,14 @@ public Context getContext() {
     public SqlOperatorTable getOperatorTable() {
       return operatorTable;
     }
+
+    public long getPlannerTimeBudget() {
+      return plannerTimeBudget;
+    }
+
+    public int getPlannerTickBudget() {
+      return plannerTickBudget;
+    }
   }
 }
 
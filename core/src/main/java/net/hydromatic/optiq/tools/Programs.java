@@ -174,12 +174,35 @@ public RelNode run(RelOptPlanner planner, RelNode rel,
    * if there are 6 or more joins (7 or more relations). */
   public static Program heuristicJoinOrder(final Collection<RelOptRule> rules,
       final boolean bushy) {
+    return joinOrder(rules, bushy ? 2 : 6,
+        bushy
+            ? OptimizeBushyJoinRule.INSTANCE
+            : LoptOptimizeJoinRule.INSTANCE);
+  }
+
+  /** Creates a program that finds the optimal join order by dynamic
+   * programming (via {@link org.eigenbase.rel.rules.ConvertMultiJoinRule},
+   * {@link org.eigenbase.rel.rules.MultiJoinRel} and
+   * {@link org.eigenbase.rel.rules.OptimizeDpJoinRule}) if there are 2 or
+   * more joins. Joins of more than
+   * {@link org.eigenbase.rel.rules.OptimizeDpJoinRule#DEFAULT_MAX_FACTORS}
+   * relations are ordered heuristically. */
+  public static Program dpJoinOrder(final Collection<RelOptRule> rules) {
+    return joinOrder(rules, 2, OptimizeDpJoinRule.INSTANCE);
+  }
+
+  /** Creates a program that, if there are {@code minJoinCount} or more joins,
+   * gathers the joins into a {@link org.eigenbase.rel.rules.MultiJoinRel}
+   * and orders them using {@code joinOrderRule}; otherwise applies
+   * {@code rules}. */
+  private static Program joinOrder(final Collection<RelOptRule> rules,
+      final int minJoinCount, final RelOptRule joinOrderRule) {
     return new Program() {
       public RelNode run(RelOptPlanner planner, RelNode rel,
           RelTraitSet requiredOutputTraits) {
         final int joinCount = RelOptUtil.countJoins(rel);
         final Program program;
-        if (joinCount < (bushy ? 2 : 6)) {
+        if (joinCount < minJoinCount) {
           program = ofRules(rules);
         } else {
           // Create a program that gathers together joins as a MultiJoinRel.
@@ -192,7 +215,7 @@ public RelNode run(RelOptPlanner planner, RelNode rel,
               of(hep, false, new DefaultRelMetadataProvider());
 
           // Create a program that contains a rule to expand a MultiJoinRel
-          // into heuristically ordered joins.
+          // into ordered joins.
           // We use the rule set passed in, but remove SwapJoinRule and
           // PushJoinThroughJoinRule, because they cause exhaustive search.
           final List<RelOptRule> list = Lists.newArrayList(rules);
@@ -201,9 +224,7 @@ public RelNode run(RelOptPlanner planner, RelNode rel,
                   CommutativeJoinRule.INSTANCE,
                   PushJoinThroughJoinRule.LEFT,
                   PushJoinThroughJoinRule.RIGHT));
-          list.add(bushy
-              ? OptimizeBushyJoinRule.INSTANCE
-              : LoptOptimizeJoinRule.INSTANCE);
+          list.add(joinOrderRule);
           final Program program2 = ofRules(list);
 
           program = sequence(program1, program2);
@@ -23,37 +23,67 @@
 import org.eigenbase.relopt.*;
 
 import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
 
 /**
  * Implementation of the {@link RelMetadataProvider}
  * interface that caches results from an underlying provider.
+ *
+ * <p>The cache has an array of slots for each relational expression, one slot
+ * per metadata method. Where possible, metadata objects are instances of a
+ * class generated by {@code MetadataHandlerCompiler} that accesses its slots
+ * directly; otherwise they are proxies.</p>
+ *
+ * <p>The cache is bounded. When it holds more than a given number of values,
+ * it evicts all of the values of the least recently used relational
+ * expressions. It is also called by the planner, and removes the values of a
+ * relational expression as soon as the planner discards it; for example,
+ * when {@link org.eigenbase.relopt.volcano.VolcanoPlanner} merges two sets,
+ * the subsets of the set that is merged away.</p>
+ *
+ * <p>Call {@link #statistics()} to find out how effective the cache is.</p>
  */
 public class CachingRelMetadataProvider implements RelMetadataProvider {
+  /** Default maximum number of values in a cache. Override by setting the
+   * system property "optiq.metadata.cache.max.size". */
+  public static final int DEFAULT_MAX_SIZE =
+      Integer.getInteger("optiq.metadata.cache.max.size", 100000);
+
   //~ Instance fields --------------------------------------------------------
 
-  private final Map<List, CacheEntry> cache;
+  private final Cache cache;
 
   private final RelMetadataProvider underlyingProvider;
 
-  private final RelOptPlanner planner;
-
-  private static final Object NULL_SENTINEL = new Object() {
-    @Override
-    public String toString() {
-      return "{null}";
-    }
-  };
-
   //~ Constructors -----------------------------------------------------------
 
   public CachingRelMetadataProvider(
       RelMetadataProvider underlyingProvider,
       RelOptPlanner planner) {
-    this.underlyingProvider = underlyingProvider;
-    this.planner = planner;
+    this(underlyingProvider, planner, DEFAULT_MAX_SIZE);
+  }
 
-    cache = new HashMap<List, CacheEntry>();
+  /**
+   * Creates a CachingRelMetadataProvider.
+   *
+   * @param underlyingProvider Provider that computes values not in the cache
+   * @param planner Planner; provides timestamps, and notifies the cache when
+   *   it discards relational expressions
+   * @param maxSize Maximum number of values to hold
+   */
+  public CachingRelMetadataProvider(
+      RelMetadataProvider underlyingProvider,
+      RelOptPlanner planner,
+      int maxSize) {
+    this.underlyingProvider = underlyingProvider;
+    this.cache = new Cache(planner, maxSize);
+    if (planner instanceof AbstractRelOptPlanner) {
+      // A handler, unlike a listener, does not make the planner create an
+      // event for everything it does.
+      ((AbstractRelOptPlanner) planner).addDiscardHandler(
+          cache.new DiscardHandler());
+    } else {
+      planner.addListener(cache.new DiscardListener());
+    }
   }
 
   //~ Methods ----------------------------------------------------------------
@@ -68,6 +98,16 @@ public Function<RelNode, Metadata> apply(Class<? extends RelNode> relClass,
 
     // TODO jvs 30-Mar-2006: Use meta-metadata to decide which metadata
     // query results can stay fresh until the next Ice Age.
+    final List<Method> methods = MetadataHandlerCompiler.methods(metadataClass);
+    final int[] slots = new int[methods.size()];
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = cache.slot(methods.get(i));
+    }
+    final Function<RelNode, Metadata> compiled =
+        MetadataHandlerCompiler.caching(metadataClass, function, cache, slots);
+    if (compiled != null) {
+      return compiled;
+    }
     return new Function<RelNode, Metadata>() {
       public Metadata apply(RelNode input) {
         final Metadata metadata = function.apply(input);
@@ -77,12 +117,268 @@ public Metadata apply(RelNode input) {
     };
   }
 
+  /** Returns a snapshot of this cache's statistics. */
+  public Statistics statistics() {
+    return cache.statistics();
+  }
+
+  /** Removes all values from this cache. Does not reset statistics. */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
   //~ Inner Classes ----------------------------------------------------------
 
+  /** Cache of metadata values.
+   *
+   * <p>Each relational expression has an array of slots, indexed by
+   * metadata method. If the method has no arguments, its slot holds a
+   * {@link CacheEntry}; otherwise it holds a map from argument lists to
+   * entries.</p>
+   *
+   * <p>Relational expressions are held in least-recently-used order. The
+   * size of the cache is the number of entries.</p>
+   *
+   * <p>Public because generated code calls it; not intended to be used
+   * otherwise.</p> */
+  public static final class Cache {
+    /** Value returned by {@link #get} if a value is not in the cache, or is
+     * stale. */
+    public static final Object MISS = new Object() {
+      @Override
+      public String toString() {
+        return "{miss}";
+      }
+    };
+
+    private final RelOptPlanner planner;
+
+    private final int maxSize;
+
+    private final LinkedHashMap<RelNode, Object[]> map =
+        new LinkedHashMap<RelNode, Object[]>(16, 0.75f, true);
+
+    private final Map<Method, Integer> slots = new HashMap<Method, Integer>();
+
+    private int size;
+    private long hitCount;
+    private long missCount;
+    private long staleCount;
+    private long evictionCount;
+    private long discardCount;
+
+    Cache(RelOptPlanner planner, int maxSize) {
+      this.planner = planner;
+      this.maxSize = maxSize;
+    }
+
+    /** Returns the slot of a metadata method, allocating one if necessary. */
+    int slot(Method method) {
+      Integer slot = slots.get(method);
+      if (slot == null) {
+        slot = slots.size();
+        slots.put(method, slot);
+      }
+      return slot;
+    }
+
+    /** Returns the cached value of a metadata method, or {@link #MISS}.
+     *
+     * @param rel Relational expression
+     * @param slot Slot of the metadata method
+     * @param args Arguments, or null if the method has no arguments
+     */
+    public Object get(RelNode rel, int slot, Object[] args) {
+      final Object[] values = map.get(rel);
+      if (values == null || slot >= values.length) {
+        ++missCount;
+        return MISS;
+      }
+      Object o = values[slot];
+      if (o != null && args != null) {
+        //noinspection unchecked
+        o = ((Map<List<Object>, CacheEntry>) o).get(Arrays.asList(args));
+      }
+      if (o == null) {
+        ++missCount;
+        return MISS;
+      }
+      // An entry is valid only if read at the timestamp when it was written.
+      // Remove a stale entry now, in case it is not replaced.
+      final CacheEntry entry = (CacheEntry) o;
+      if (entry.timestamp != planner.getRelMetadataTimestamp(rel)) {
+        ++staleCount;
+        if (args == null) {
+          values[slot] = null;
+        } else {
+          ((Map) values[slot]).remove(Arrays.asList(args));
+        }
+        --size;
+        return MISS;
+      }
+      ++hitCount;
+      return entry.result;
+    }
+
+    /** Stores the value of a metadata method. Null values are not stored. */
+    public void put(RelNode rel, int slot, Object[] args, Object result) {
+      if (result == null || maxSize <= 0) {
+        return;
+      }
+      Object[] values = map.get(rel);
+      if (values == null || slot >= values.length) {
+        final Object[] values0 = values;
+        values = new Object[slots.size()];
+        if (values0 != null) {
+          System.arraycopy(values0, 0, values, 0, values0.length);
+        }
+        map.put(rel, values);
+      }
+      final CacheEntry entry = new CacheEntry();
+      entry.timestamp = planner.getRelMetadataTimestamp(rel);
+      entry.result = result;
+      final Object previous;
+      if (args == null) {
+        previous = values[slot];
+        values[slot] = entry;
+      } else {
+        //noinspection unchecked
+        Map<List<Object>, CacheEntry> entries =
+            (Map<List<Object>, CacheEntry>) values[slot];
+        if (entries == null) {
+          entries = new HashMap<List<Object>, CacheEntry>();
+          values[slot] = entries;
+        }
+        previous = entries.put(Arrays.asList(args), entry);
+      }
+      if (previous == null && ++size > maxSize) {
+        evict(rel);
+      }
+    }
+
+    /** Removes least recently used relational expressions until the cache is
+     * within its bound. Never removes {@code current}, the one just
+     * written. */
+    private void evict(RelNode current) {
+      final Iterator<Map.Entry<RelNode, Object[]>> iterator =
+          map.entrySet().iterator();
+      while (size > maxSize && iterator.hasNext()) {
+        final Map.Entry<RelNode, Object[]> e = iterator.next();
+        if (e.getKey() == current) {
+          break;
+        }
+        size -= count(e.getValue());
+        ++evictionCount;
+        iterator.remove();
+      }
+    }
+
+    /** Removes the values of a relational expression that the planner has
+     * discarded. */
+    void discard(RelNode rel) {
+      final Object[] values = map.remove(rel);
+      if (values != null) {
+        size -= count(values);
+        ++discardCount;
+      }
+    }
+
+    void invalidateAll() {
+      map.clear();
+      size = 0;
+    }
+
+    /** Returns the number of entries in an array of slots. */
+    private static int count(Object[] values) {
+      int n = 0;
+      for (Object value : values) {
+        if (value instanceof Map) {
+          n += ((Map) value).size();
+        } else if (value != null) {
+          ++n;
+        }
+      }
+      return n;
+    }
+
+    Statistics statistics() {
+      return new Statistics(hitCount, missCount, staleCount, evictionCount,
+          discardCount, size);
+    }
+
+    /** Removes the values of each relational expression that the planner
+     * discards. */
+    private class DiscardHandler implements Function<RelNode, Void> {
+      public Void apply(RelNode rel) {
+        discard(rel);
+        return null;
+      }
+    }
+
+    /** Removes the values of each relational expression that the planner
+     * discards, for a planner that does not support
+     * {@link AbstractRelOptPlanner#addDiscardHandler discard handlers}. */
+    private class DiscardListener implements RelOptListener {
+      public void relDiscarded(RelDiscardedEvent event) {
+        discard(event.getRel());
+      }
+
+      public void relEquivalenceFound(RelEquivalenceEvent event) {
+      }
+
+      public void ruleAttempted(RuleAttemptedEvent event) {
+      }
+
+      public void ruleProductionSucceeded(RuleProductionEvent event) {
+      }
+
+      public void relChosen(RelChosenEvent event) {
+      }
+    }
+  }
+
+  /** Snapshot of the statistics of a {@link CachingRelMetadataProvider}. */
+  public static class Statistics {
+    /** Number of lookups that found a valid value. */
+    public final long hitCount;
+    /** Number of lookups that found no value. */
+    public final long missCount;
+    /** Number of lookups that found a value computed at an earlier
+     * timestamp, and therefore had to re-compute it. */
+    public final long staleCount;
+    /** Number of relational expressions whose values were evicted because
+     * the cache was full. */
+    public final long evictionCount;
+    /** Number of relational expressions whose values were removed because
+     * the planner discarded them. */
+    public final long discardCount;
+    /** Number of values in the cache. */
+    public final long size;
+
+    public Statistics(long hitCount, long missCount, long staleCount,
+        long evictionCount, long discardCount, long size) {
+      this.hitCount = hitCount;
+      this.missCount = missCount;
+      this.staleCount = staleCount;
+      this.evictionCount = evictionCount;
+      this.discardCount = discardCount;
+      this.size = size;
+    }
+
+    @Override public String toString() {
+      return "{hits: " + hitCount
+          + ", misses: " + missCount
+          + ", stale: " + staleCount
+          + ", evictions: " + evictionCount
+          + ", discards: " + discardCount
+          + ", size: " + size
+          + "}";
+    }
+  }
+
   /** An entry in the cache. Consists of the cached object and the timestamp
    * when the entry is valid. If read at a later timestamp, the entry will be
-   * invalid and will be re-computed as if it did not exist. The net effect is a
-   * lazy-flushing cache. */
+   * invalid and will be re-computed as if it did not exist. */
   private static class CacheEntry {
     long timestamp;
 
@@ -102,36 +398,18 @@ public CachingInvocationHandler(Metadata metadata) {
 
     public Object invoke(Object proxy, Method method, Object[] args)
         throws Throwable {
-      // Compute hash key.
-      final ImmutableList.Builder<Object> builder = ImmutableList.builder();
-      builder.add(method);
-      builder.add(metadata.rel());
-      if (args != null) {
-        for (Object arg : args) {
-          // Replace null values because ImmutableList does not allow them.
-          builder.add(arg == null ? NULL_SENTINEL : arg);
-        }
-      }
-      List<Object> key = builder.build();
-
-      long timestamp = planner.getRelMetadataTimestamp(metadata.rel());
+      final RelNode rel = metadata.rel();
+      final int slot = cache.slot(method);
 
       // Perform cache lookup.
-      CacheEntry entry = cache.get(key);
-      if (entry != null) {
-        if (timestamp == entry.timestamp) {
-          return entry.result;
-        }
+      final Object o = cache.get(rel, slot, args);
+      if (o != Cache.MISS) {
+        return o;
       }
 
       // Cache miss or stale.
       Object result = method.invoke(metadata, args);
-      if (result != null) {
-        entry = new CacheEntry();
-        entry.timestamp = timestamp;
-        entry.result = result;
-        cache.put(key, entry);
-      }
+      cache.put(rel, slot, args, result);
       return result;
     }
   }
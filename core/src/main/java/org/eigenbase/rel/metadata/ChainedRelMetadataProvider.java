@@ -33,6 +33,10 @@
  * <p>When a consumer calls the {@link #apply} method to ask for a provider
  * for a particular type of {@link RelNode} and {@link Metadata}, scans the list
  * of underlying providers.</p>
+ *
+ * <p>If more than one provider can supply the metadata, the metadata object
+ * calls each in turn. Where possible it is an instance of a class generated by
+ * {@code MetadataHandlerCompiler}; otherwise it is a proxy.</p>
  */
 public class ChainedRelMetadataProvider implements RelMetadataProvider {
   //~ Instance fields --------------------------------------------------------
@@ -68,6 +72,11 @@ public Function<RelNode, Metadata> apply(Class<? extends RelNode> relClass,
     case 1:
       return functions.get(0);
     default:
+      final Function<RelNode, Metadata> compiled =
+          MetadataHandlerCompiler.chain(metadataClass, functions);
+      if (compiled != null) {
+        return compiled;
+      }
       return new Function<RelNode, Metadata>() {
         public Metadata apply(RelNode input) {
           final List<Metadata> metadataList = Lists.newArrayList();
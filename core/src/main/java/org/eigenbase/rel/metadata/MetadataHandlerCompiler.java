@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eigenbase.rel.metadata;
+
+import java.io.StringReader;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.util.*;
+
+import net.hydromatic.optiq.prepare.CompiledClassCache;
+
+import com.google.common.base.Function;
+import com.google.common.cache.*;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Primitives;
+
+import org.codehaus.commons.compiler.*;
+
+/**
+ * Generates and compiles Java classes that implement {@link Metadata}
+ * interfaces by calling handler methods, chains of metadata objects and
+ * caches directly, rather than via {@link java.lang.reflect.Proxy} and
+ * {@link Method#invoke}.
+ *
+ * <p>Each generated class also implements {@link Function}, creating an
+ * instance of itself for a given {@link RelNode}, so that the function
+ * returned by {@link RelMetadataProvider#apply} is the generated code.</p>
+ *
+ * <p>Code can only be generated if every class that it mentions is public,
+ * because it is loaded by a different class loader. If it cannot be
+ * generated, the methods in this class return null, and the caller should
+ * fall back to a proxy.</p>
+ */
+final class MetadataHandlerCompiler {
+  private static final String CLASS_NAME = "GeneratedMetadata";
+
+  /** Compiled classes, keyed by parent class loader, metadata interface and
+   * source code.
+   *
+   * <p>The cache is bounded, and holds classes weakly. Each compiled class
+   * has its own class loader, and the key holds the provider's class loader;
+   * once no metadata provider uses a class, both can be garbage-collected. */
+  private static final LoadingCache<List<Object>, Class> CACHE =
+      CacheBuilder.newBuilder()
+          .maximumSize(CompiledClassCache.DEFAULT_MAX_SIZE)
+          .weakValues()
+          .build(
+              new CacheLoader<List<Object>, Class>() {
+                @Override
+                public Class load(List<Object> key) throws Exception {
+                  return compile((ClassLoader) key.get(0), (Class) key.get(1),
+                      (String) key.get(2));
+                }
+              });
+
+  private MetadataHandlerCompiler() {
+  }
+
+  /** Returns the methods of a metadata interface, other than
+   * {@link Metadata#rel()}, in a deterministic order. */
+  static List<Method> methods(Class<? extends Metadata> metadataClass) {
+    final SortedMap<String, Method> map = new TreeMap<String, Method>();
+    for (Method method : metadataClass.getMethods()) {
+      if (method.getName().equals("rel")
+          && method.getParameterTypes().length == 0) {
+        continue;
+      }
+      final String key =
+          method.getName() + Arrays.asList(method.getParameterTypes());
+      if (!map.containsKey(key)) {
+        map.put(key, method);
+      }
+    }
+    return ImmutableList.copyOf(map.values());
+  }
+
+  /** Generates a metadata class that implements {@code method} by calling
+   * {@code handler}, a method on {@code target} whose first parameter is the
+   * relational expression. */
+  static Function<RelNode, Metadata> handler(
+      Class<? extends Metadata> metadataClass, Method method, Method handler,
+      Object target) {
+    final List<Method> methods = methods(metadataClass);
+    final Class<?> relClass = handler.getParameterTypes()[0];
+    final Class<?> targetClass = handler.getDeclaringClass();
+    if (methods.size() != 1
+        || !methods.get(0).equals(method)
+        || !isPublic(metadataClass)
+        || !isPublic(targetClass)
+        || !isPublic(relClass)
+        || !isPublic(method)
+        || !isPublic(handler)) {
+      return null;
+    }
+    final StringBuilder buf = new StringBuilder();
+    header(buf, metadataClass);
+    buf.append("  private final ").append(name(targetClass))
+        .append(" target;\n")
+        .append("  public ").append(CLASS_NAME)
+        .append("(org.eigenbase.rel.RelNode rel, Object target) {\n")
+        .append("    this.rel = rel;\n")
+        .append("    this.target = (").append(name(targetClass))
+        .append(") target;\n")
+        .append("  }\n")
+        .append("  public Object apply(Object rel) {\n")
+        .append("    return new ").append(CLASS_NAME)
+        .append("((org.eigenbase.rel.RelNode) rel, target);\n")
+        .append("  }\n");
+    declare(buf, method);
+    buf.append("    return target.").append(handler.getName())
+        .append("((").append(name(relClass)).append(") rel");
+    for (int i = 0; i < method.getParameterTypes().length; i++) {
+      buf.append(", a").append(i);
+    }
+    buf.append(");\n")
+        .append("  }\n");
+    return instantiate(target.getClass().getClassLoader(), metadataClass,
+        buf.toString(), target);
+  }
+
+  /** Generates a metadata class that calls each of a list of metadata
+   * objects in turn, returning the first non-null result. */
+  static Function<RelNode, Metadata> chain(
+      Class<? extends Metadata> metadataClass,
+      List<Function<RelNode, Metadata>> functions) {
+    final List<Method> methods = methods(metadataClass);
+    if (!isPublic(metadataClass) || !canImplement(methods)) {
+      return null;
+    }
+    final String type = name(metadataClass);
+    final StringBuilder buf = new StringBuilder();
+    header(buf, metadataClass);
+    buf.append("  private final com.google.common.base.Function[]")
+        .append(" functions;\n")
+        .append("  private final ").append(type).append("[] metadata;\n")
+        .append("  private int count;\n")
+        .append("  public ").append(CLASS_NAME)
+        .append("(org.eigenbase.rel.RelNode rel, Object functions) {\n")
+        .append("    this.rel = rel;\n")
+        .append("    this.functions =\n")
+        .append("        (com.google.common.base.Function[]) functions;\n")
+        .append("    this.metadata = new ").append(type)
+        .append("[this.functions.length];\n")
+        .append("    if (rel != null) {\n")
+        .append("      for (int i = 0; i < this.functions.length; i++) {\n")
+        .append("        final Object o = this.functions[i].apply(rel);\n")
+        .append("        if (o != null) {\n")
+        .append("          metadata[count++] = (").append(type)
+        .append(") o;\n")
+        .append("        }\n")
+        .append("      }\n")
+        .append("    }\n")
+        .append("  }\n")
+        .append("  public Object apply(Object rel) {\n")
+        .append("    return new ").append(CLASS_NAME)
+        .append("((org.eigenbase.rel.RelNode) rel, functions);\n")
+        .append("  }\n");
+    for (Method method : methods) {
+      declare(buf, method);
+      buf.append("    for (int i = 0; i < count; i++) {\n")
+          .append("      final ").append(name(method.getReturnType()))
+          .append(" o = metadata[i].").append(method.getName()).append("(");
+      arguments(buf, method, false);
+      buf.append(");\n")
+          .append("      if (o != null) {\n")
+          .append("        return o;\n")
+          .append("      }\n")
+          .append("    }\n")
+          .append("    return null;\n")
+          .append("  }\n");
+    }
+    return instantiate(metadataClass.getClassLoader(), metadataClass,
+        buf.toString(), functions.toArray(new Function[functions.size()]));
+  }
+
+  /** Generates a metadata class that looks up each method call in a cache,
+   * and otherwise calls the metadata object created by {@code function} and
+   * stores the result in the cache.
+   *
+   * @param slots Cache slot of each method, in the order returned by
+   *   {@link #methods(Class)}
+   */
+  static Function<RelNode, Metadata> caching(
+      Class<? extends Metadata> metadataClass,
+      Function<RelNode, Metadata> function,
+      CachingRelMetadataProvider.Cache cache, int[] slots) {
+    final List<Method> methods = methods(metadataClass);
+    if (!isPublic(metadataClass) || !canImplement(methods)) {
+      return null;
+    }
+    final String type = name(metadataClass);
+    final String cacheType = name(CachingRelMetadataProvider.Cache.class);
+    final StringBuilder buf = new StringBuilder();
+    header(buf, metadataClass);
+    buf.append("  private final Object[] state;\n")
+        .append("  private final com.google.common.base.Function function;\n")
+        .append("  private final ").append(cacheType).append(" cache;\n")
+        .append("  private final int[] slots;\n")
+        .append("  private ").append(type).append(" metadata;\n")
+        .append("  public ").append(CLASS_NAME)
+        .append("(org.eigenbase.rel.RelNode rel, Object state) {\n")
+        .append("    this.rel = rel;\n")
+        .append("    this.state = (Object[]) state;\n")
+        .append("    this.function =\n")
+        .append("        (com.google.common.base.Function) this.state[0];\n")
+        .append("    this.cache = (").append(cacheType)
+        .append(") this.state[1];\n")
+        .append("    this.slots = (int[]) this.state[2];\n")
+        .append("  }\n")
+        .append("  public Object apply(Object rel) {\n")
+        .append("    return new ").append(CLASS_NAME)
+        .append("((org.eigenbase.rel.RelNode) rel, state);\n")
+        .append("  }\n")
+        .append("  private ").append(type).append(" metadata() {\n")
+        .append("    if (metadata == null) {\n")
+        .append("      metadata = (").append(type)
+        .append(") function.apply(rel);\n")
+        .append("    }\n")
+        .append("    return metadata;\n")
+        .append("  }\n");
+    for (int i = 0; i < methods.size(); i++) {
+      final Method method = methods.get(i);
+      final String returnType = name(method.getReturnType());
+      declare(buf, method);
+      buf.append("    final Object[] args = ");
+      if (method.getParameterTypes().length == 0) {
+        buf.append("null");
+      } else {
+        buf.append("new Object[] {");
+        arguments(buf, method, true);
+        buf.append("}");
+      }
+      buf.append(";\n")
+          .append("    final Object o = cache.get(rel, slots[").append(i)
+          .append("], args);\n")
+          .append("    if (o != ").append(cacheType).append(".MISS) {\n")
+          .append("      return (").append(returnType).append(") o;\n")
+          .append("    }\n")
+          .append("    final ").append(returnType)
+          .append(" result = metadata().").append(method.getName())
+          .append("(");
+      arguments(buf, method, false);
+      buf.append(");\n")
+          .append("    cache.put(rel, slots[").append(i)
+          .append("], args, result);\n")
+          .append("    return result;\n")
+          .append("  }\n");
+    }
+    return instantiate(metadataClass.getClassLoader(), metadataClass,
+        buf.toString(), new Object[] {function, cache, slots});
+  }
+
+  /** Generates the fields and methods common to every metadata class. */
+  private static void header(StringBuilder buf, Class<?> metadataClass) {
+    buf.append("  private final org.eigenbase.rel.RelNode rel;\n")
+        .append("  public org.eigenbase.rel.RelNode rel() {\n")
+        .append("    return rel;\n")
+        .append("  }\n")
+        .append("  public String toString() {\n")
+        .append("    return \"").append(metadataClass.getSimpleName())
+        .append("(\" + rel + \")\";\n")
+        .append("  }\n");
+  }
+
+  /** Generates the declaration of a method that implements {@code method}. */
+  private static void declare(StringBuilder buf, Method method) {
+    buf.append("  public ").append(name(method.getReturnType())).append(" ")
+        .append(method.getName()).append("(");
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      buf.append(name(parameterTypes[i])).append(" a").append(i);
+    }
+    buf.append(")");
+    final Class<?>[] exceptionTypes = method.getExceptionTypes();
+    for (int i = 0; i < exceptionTypes.length; i++) {
+      buf.append(i == 0 ? " throws " : ", ")
+          .append(name(exceptionTypes[i]));
+    }
+    buf.append(" {\n");
+  }
+
+  /** Generates the argument list for a call, optionally boxing primitive
+   * arguments. */
+  private static void arguments(StringBuilder buf, Method method,
+      boolean box) {
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      if (box && parameterTypes[i].isPrimitive()) {
+        buf.append(name(Primitives.wrap(parameterTypes[i])))
+            .append(".valueOf(a").append(i).append(")");
+      } else {
+        buf.append("a").append(i);
+      }
+    }
+  }
+
+  /** Compiles a class body and creates a prototype instance, whose
+   * {@link Function#apply} method creates instances for particular
+   * relational expressions. Returns null if the code does not compile. */
+  private static Function<RelNode, Metadata> instantiate(
+      ClassLoader classLoader, Class<? extends Metadata> metadataClass,
+      String body, Object state) {
+    if (classLoader == null) {
+      classLoader = MetadataHandlerCompiler.class.getClassLoader();
+    }
+    try {
+      final Class clazz =
+          CACHE.get(ImmutableList.<Object>of(classLoader, metadataClass, body));
+      //noinspection unchecked
+      return (Function<RelNode, Metadata>) clazz
+          .getConstructor(RelNode.class, Object.class)
+          .newInstance(null, state);
+    } catch (ExecutionException e) {
+      return null;
+    } catch (RuntimeException e) {
+      return null;
+    } catch (Exception e) {
+      throw Util.newInternal(e, "while instantiating generated metadata");
+    }
+  }
+
+  private static Class compile(ClassLoader classLoader, Class metadataClass,
+      String body) throws Exception {
+    final IClassBodyEvaluator cbe =
+        CompilerFactoryFactory.getDefaultCompilerFactory()
+            .newClassBodyEvaluator();
+    cbe.setClassName(CLASS_NAME);
+    cbe.setImplementedInterfaces(
+        new Class[] {metadataClass, Function.class});
+    cbe.setParentClassLoader(classLoader);
+    cbe.cook(new StringReader(body));
+    return cbe.getClazz();
+  }
+
+  /** Returns whether generated code can implement every method. Each must
+   * be accessible, and return an object (not a primitive or void), so that
+   * null can mean "not known". */
+  private static boolean canImplement(List<Method> methods) {
+    for (Method method : methods) {
+      if (method.getReturnType().isPrimitive() || !isPublic(method)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether generated code can call a method: the method and all of
+   * the types in its signature must be public. */
+  private static boolean isPublic(Method method) {
+    if (!Modifier.isPublic(method.getModifiers())
+        || !isPublic(method.getReturnType())) {
+      return false;
+    }
+    for (Class<?> c : method.getParameterTypes()) {
+      if (!isPublic(c)) {
+        return false;
+      }
+    }
+    for (Class<?> c : method.getExceptionTypes()) {
+      if (!isPublic(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether a class, and every class that encloses it, is public. */
+  private static boolean isPublic(Class<?> c) {
+    while (c.isArray()) {
+      c = c.getComponentType();
+    }
+    if (c.isPrimitive()) {
+      return true;
+    }
+    for (; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())
+          || c.getCanonicalName() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String name(Class<?> c) {
+    return c.getCanonicalName();
+  }
+}
+
+// End MetadataHandlerCompiler.java
@@ -38,6 +38,9 @@
  * can handle.</p>
  *
  * <p>For an example, see {@link RelMdColumnOrigins#SOURCE}.
+ *
+ * <p>Where possible, the metadata objects are instances of a class generated
+ * by {@code MetadataHandlerCompiler} that calls the method directly.</p>
  */
 public class ReflectiveRelMetadataProvider
     implements RelMetadataProvider, ReflectiveVisitor {
@@ -106,41 +109,7 @@ public static RelMetadataProvider reflectiveSource(Method method,
           //noinspection unchecked
           final Class<RelNode> key = (Class) parameterTypes1[0];
           final Function<RelNode, Metadata> function =
-              new Function<RelNode, Metadata>() {
-                public Metadata apply(final RelNode rel) {
-                  return (Metadata) Proxy.newProxyInstance(
-                      metadataClass0.getClassLoader(),
-                      new Class[]{metadataClass0},
-                      new InvocationHandler() {
-                        public Object invoke(Object proxy, Method method,
-                            Object[] args) throws Throwable {
-                          // Suppose we are an implementation of Selectivity
-                          // that wraps "filter", a FilterRel, Then we implement
-                          //   Selectivity.selectivity(rex)
-                          // by calling method
-                          //   new SelectivityImpl().selectivity(filter, rex)
-                          if (method.equals(
-                              BuiltinMethod.METADATA_REL.method)) {
-                            return rel;
-                          }
-                          if (method.equals(
-                              BuiltinMethod.OBJECT_TO_STRING.method)) {
-                            return metadataClass0.getSimpleName() + "(" + rel
-                                + ")";
-                          }
-                          final Object[] args1;
-                          if (args == null) {
-                            args1 = new Object[]{rel};
-                          } else {
-                            args1 = new Object[args.length + 1];
-                            args1[0] = rel;
-                            System.arraycopy(args, 0, args1, 1, args.length);
-                          }
-                          return method1.invoke(target, args1);
-                        }
-                      });
-                }
-              };
+              new HandlerFunction(metadataClass0, method, method1, target);
           treeMap.put(key, function);
         }
       }
@@ -162,18 +131,97 @@ public Function<RelNode, Metadata> apply(
       //noinspection SuspiciousMethodCalls
       final Function<RelNode, Metadata> function = map.get(relClass);
       if (function != null) {
-        return function;
+        return compiled(function);
       }
       for (Map.Entry<Class<RelNode>, Function<RelNode, Metadata>> entry
           : map.entrySet()) {
         if (entry.getKey().isAssignableFrom(relClass)) {
           // REVIEW: We are assuming that the first we find is the "best".
-          return entry.getValue();
+          return compiled(entry.getValue());
         }
       }
     }
     return null;
   }
+
+  /** If a function is a handler, returns the generated code that calls it
+   * directly. */
+  private static Function<RelNode, Metadata> compiled(
+      Function<RelNode, Metadata> function) {
+    if (function instanceof HandlerFunction) {
+      return ((HandlerFunction) function).compiled();
+    }
+    return function;
+  }
+
+  //~ Inner Classes ----------------------------------------------------------
+
+  /** Function that creates metadata objects that implement a metadata method
+   * by calling a handler method.
+   *
+   * <p>Its {@link #apply} method creates a proxy that calls the handler via
+   * reflection. {@link #compiled()} generates, on first call, a class that
+   * calls the handler directly; the proxy is used only if code cannot be
+   * generated (say because the handler's class is not public).</p> */
+  private static class HandlerFunction implements Function<RelNode, Metadata> {
+    private final Class<?> metadataClass0;
+    private final Method method;
+    private final Method handler;
+    private final Object target;
+    private Function<RelNode, Metadata> compiled;
+
+    HandlerFunction(Class<?> metadataClass0, Method method, Method handler,
+        Object target) {
+      this.metadataClass0 = metadataClass0;
+      this.method = method;
+      this.handler = handler;
+      this.target = target;
+    }
+
+    synchronized Function<RelNode, Metadata> compiled() {
+      if (compiled == null) {
+        //noinspection unchecked
+        compiled = MetadataHandlerCompiler.handler(
+            (Class<? extends Metadata>) metadataClass0, method, handler,
+            target);
+        if (compiled == null) {
+          compiled = this;
+        }
+      }
+      return compiled;
+    }
+
+    public Metadata apply(final RelNode rel) {
+      return (Metadata) Proxy.newProxyInstance(
+          metadataClass0.getClassLoader(),
+          new Class[]{metadataClass0},
+          new InvocationHandler() {
+            public Object invoke(Object proxy, Method method,
+                Object[] args) throws Throwable {
+              // Suppose we are an implementation of Selectivity
+              // that wraps "filter", a FilterRel, Then we implement
+              //   Selectivity.selectivity(rex)
+              // by calling method
+              //   new SelectivityImpl().selectivity(filter, rex)
+              if (method.equals(BuiltinMethod.METADATA_REL.method)) {
+                return rel;
+              }
+              if (method.equals(BuiltinMethod.OBJECT_TO_STRING.method)) {
+                return metadataClass0.getSimpleName() + "(" + rel + ")";
+              }
+              final Object[] args1;
+              if (args == null) {
+                args1 = new Object[]{rel};
+              } else {
+                args1 = new Object[args.length + 1];
+                args1[0] = rel;
+                System.arraycopy(args, 0, args1, 1, args.length);
+              }
+              return handler.invoke(target, args1);
+            }
+          });
+    }
+  }
 }
 
 // End ReflectiveRelMetadataProvider.java
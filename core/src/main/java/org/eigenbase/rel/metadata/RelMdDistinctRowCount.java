@@ -26,6 +26,7 @@
 import org.eigenbase.util14.*;
 
 import net.hydromatic.optiq.BuiltinMethod;
+import net.hydromatic.optiq.ColumnStatistic;
 import net.hydromatic.optiq.util.BitSets;
 
 /**
@@ -252,6 +253,43 @@ public Double getDistinctRowCount(
         RelMetadataQuery.getRowCount(rel));
   }
 
+  public Double getDistinctRowCount(
+      TableAccessRelBase rel,
+      BitSet groupKey,
+      RexNode predicate) {
+    if (groupKey.isEmpty()
+        || RelMdUtil.areColumnsDefinitelyUnique(rel, groupKey)) {
+      return getDistinctRowCount((RelNode) rel, groupKey, predicate);
+    }
+
+    // Multiply the number of distinct values of each column, counting null
+    // as a value, but there cannot be more combinations than rows.
+    final double rowCount = rel.getRows();
+    double distinctRowCount = 1.0;
+    for (int column : BitSets.toIter(groupKey)) {
+      final ColumnStatistic statistic =
+          RelMdUtil.getColumnStatistic(rel, column);
+      if (statistic == null || statistic.getDistinctCount() == null) {
+        return getDistinctRowCount((RelNode) rel, groupKey, predicate);
+      }
+      double distinctCount = statistic.getDistinctCount();
+      if (statistic.getNullFraction() == null
+          || statistic.getNullFraction() > 0.0) {
+        distinctCount += 1.0;
+      }
+      distinctRowCount *= distinctCount;
+    }
+    distinctRowCount = Math.min(distinctRowCount, rowCount);
+    if ((predicate == null) || predicate.isAlwaysTrue()) {
+      return distinctRowCount;
+    }
+    final Double selectivity = RelMetadataQuery.getSelectivity(rel, predicate);
+    if (selectivity == null) {
+      return null;
+    }
+    return RelMdUtil.numDistinctVals(distinctRowCount, rowCount * selectivity);
+  }
+
   // Catch-all rule when none of the others apply.
   public Double getDistinctRowCount(
       RelNode rel,
@@ -22,9 +22,13 @@
 import org.eigenbase.rel.rules.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.rex.*;
+import org.eigenbase.sql.SqlKind;
 import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.SqlTypeName;
 
 import net.hydromatic.optiq.BuiltinMethod;
+import net.hydromatic.optiq.ColumnStatistic;
+import net.hydromatic.optiq.Histogram;
 import net.hydromatic.optiq.util.BitSets;
 
 /**
@@ -177,6 +181,168 @@ public Double getSelectivity(ProjectRelBase rel, RexNode predicate) {
     }
   }
 
+  public Double getSelectivity(TableAccessRelBase rel, RexNode predicate) {
+    if ((predicate == null) || predicate.isAlwaysTrue()) {
+      return 1.0;
+    }
+
+    // Estimate each conjunct from the statistics of the column it
+    // references; guess if there are no statistics.
+    double sel = 1.0;
+    for (RexNode pred : RelOptUtil.conjunctions(predicate)) {
+      Double columnSel = getColumnSelectivity(rel, pred);
+      if (columnSel == null) {
+        columnSel = RelMdUtil.guessSelectivity(pred);
+      }
+      sel *= columnSel;
+    }
+    return sel;
+  }
+
+  /**
+   * Estimates the selectivity of a predicate that compares a column with a
+   * literal, or tests whether a column is null, using the statistics of the
+   * column. Returns null if the predicate has any other form, or if the
+   * statistics are not known.
+   */
+  private static Double getColumnSelectivity(TableAccessRelBase rel,
+      RexNode pred) {
+    if (!(pred instanceof RexCall)) {
+      return null;
+    }
+    final List<RexNode> operands = ((RexCall) pred).getOperands();
+    SqlKind kind = pred.getKind();
+    switch (kind) {
+    case IS_NULL:
+    case IS_NOT_NULL:
+      if (!(operands.get(0) instanceof RexInputRef)) {
+        return null;
+      }
+      final ColumnStatistic statistic =
+          RelMdUtil.getColumnStatistic(rel,
+              ((RexInputRef) operands.get(0)).getIndex());
+      if (statistic == null || statistic.getNullFraction() == null) {
+        return null;
+      }
+      return kind == SqlKind.IS_NULL
+          ? statistic.getNullFraction()
+          : 1.0 - statistic.getNullFraction();
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      break;
+    default:
+      return null;
+    }
+    RexNode op0 = operands.get(0);
+    RexNode op1 = operands.get(1);
+    if (op0 instanceof RexLiteral && op1 instanceof RexInputRef) {
+      // "literal < column" is equivalent to "column > literal"
+      op0 = operands.get(1);
+      op1 = operands.get(0);
+      kind = reverse(kind);
+    }
+    if (!(op0 instanceof RexInputRef) || !(op1 instanceof RexLiteral)) {
+      return null;
+    }
+    final ColumnStatistic statistic =
+        RelMdUtil.getColumnStatistic(rel, ((RexInputRef) op0).getIndex());
+    if (statistic == null) {
+      return null;
+    }
+    final RexLiteral literal = (RexLiteral) op1;
+    final SqlTypeName columnTypeName = op0.getType().getSqlTypeName();
+    if ((SqlTypeName.DATETIME_TYPES.contains(columnTypeName)
+        || SqlTypeName.DATETIME_TYPES.contains(literal.getTypeName()))
+        && columnTypeName != literal.getTypeName()) {
+      // Statistics hold DATE and TIME values as int and TIMESTAMP values as
+      // long, and so does the literal; numbers from different types cannot
+      // be compared.
+      return null;
+    }
+    if (SqlTypeName.BINARY_TYPES.contains(literal.getTypeName())) {
+      // Binary values have no order that statistics could use.
+      return null;
+    }
+    final Object value = literal.getValue3();
+    if (!(value instanceof Comparable)) {
+      return null;
+    }
+    Histogram histogram = statistic.getHistogram();
+    if (histogram == null
+        && statistic.getMin() != null
+        && statistic.getMax() != null) {
+      // Without a histogram, assume values are uniform between min and max.
+      histogram =
+          Histogram.of(
+              Arrays.asList(statistic.getMin(), statistic.getMax()), 1);
+    }
+    if (histogram == null) {
+      return null;
+    }
+    final Double below = histogram.fractionBelow((Comparable) value, false);
+    final Double notAbove = histogram.fractionBelow((Comparable) value, true);
+    if (below == null || notAbove == null) {
+      return null;
+    }
+    final double notNull =
+        statistic.getNullFraction() == null
+            ? 1.0
+            : 1.0 - statistic.getNullFraction();
+    final double sel;
+    switch (kind) {
+    case EQUALS:
+    case NOT_EQUALS:
+      double equal = notAbove - below;
+      if (notAbove > 0.0 && below < 1.0) {
+        // Value is within the range of the column. Unless the histogram
+        // shows it to be frequent, assume that all values are equally
+        // frequent.
+        final Double distinctCount = statistic.getDistinctCount();
+        if (distinctCount != null && distinctCount >= 1.0) {
+          equal = Math.max(equal, 1.0 / distinctCount);
+        } else if (equal == 0.0) {
+          return null;
+        }
+      }
+      sel = kind == SqlKind.EQUALS ? equal : 1.0 - equal;
+      break;
+    case LESS_THAN:
+      sel = below;
+      break;
+    case LESS_THAN_OR_EQUAL:
+      sel = notAbove;
+      break;
+    case GREATER_THAN:
+      sel = 1.0 - notAbove;
+      break;
+    default:
+      sel = 1.0 - below;
+      break;
+    }
+    // Don't estimate fewer than one row; a row count of zero would make
+    // every plan that reads this table look free.
+    return Math.max(sel * notNull, 1.0 / Math.max(rel.getRows(), 1.0));
+  }
+
+  private static SqlKind reverse(SqlKind kind) {
+    switch (kind) {
+    case LESS_THAN:
+      return SqlKind.GREATER_THAN;
+    case LESS_THAN_OR_EQUAL:
+      return SqlKind.GREATER_THAN_OR_EQUAL;
+    case GREATER_THAN:
+      return SqlKind.LESS_THAN;
+    case GREATER_THAN_OR_EQUAL:
+      return SqlKind.LESS_THAN_OR_EQUAL;
+    default:
+      return kind;
+    }
+  }
+
   // Catch-all rule when none of the others apply.
   public Double getSelectivity(RelNode rel, RexNode predicate) {
     return RelMdUtil.guessSelectivity(predicate);
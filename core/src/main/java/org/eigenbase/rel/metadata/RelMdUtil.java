@@ -29,6 +29,9 @@
 import org.eigenbase.util.Holder;
 import org.eigenbase.util14.*;
 
+import net.hydromatic.optiq.ColumnStatistic;
+import net.hydromatic.optiq.Statistic;
+import net.hydromatic.optiq.Table;
 import net.hydromatic.optiq.util.BitSets;
 
 import com.google.common.collect.ImmutableList;
@@ -363,6 +366,28 @@ public static double capInfinity(Double d) {
     return d.isInfinite() ? Double.MAX_VALUE : d;
   }
 
+  /**
+   * Returns statistics about a column of the table read by a table access,
+   * or null if the table does not know them.
+   *
+   * @param rel    table access
+   * @param column ordinal of column
+   * @return statistics about the column, or null
+   */
+  public static ColumnStatistic getColumnStatistic(
+      TableAccessRelBase rel,
+      int column) {
+    final Table table = rel.getTable().unwrap(Table.class);
+    if (table == null) {
+      return null;
+    }
+    final Statistic statistic = table.getStatistic();
+    if (statistic == null) {
+      return null;
+    }
+    return statistic.getColumnStatistic(column);
+  }
+
   /**
    * Returns default estimates for selectivities, in the absence of stats.
    *
@@ -0,0 +1,352 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eigenbase.rel.rules;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.RelMdUtil;
+import org.eigenbase.rel.metadata.RelMetadataQuery;
+import org.eigenbase.relopt.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.SqlKind;
+import org.eigenbase.util.Pair;
+import org.eigenbase.util.mapping.Mappings;
+
+import net.hydromatic.optiq.util.BitSets;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Planner rule that finds the optimal ordering for join operators, which may
+ * be bushy, by dynamic programming over the subsets of the join's inputs.
+ *
+ * <p>It is triggered by the pattern {@link MultiJoinRel}.
+ *
+ * <p>For each subset of the inputs, in increasing order of size, the rule
+ * finds the cheapest way to split the subset into two smaller subsets that are
+ * connected by a join condition, using the cheapest plans of the smaller
+ * subsets, which it has already memoized. (This is the "DPsub" algorithm.) The
+ * cost of a plan is the total number of rows produced by its joins; the number
+ * of rows of each input comes from {@link RelMetadataQuery#getRowCount}, and
+ * the selectivity of an equi-join condition from the number of distinct values
+ * of its columns ({@link RelMetadataQuery#getDistinctRowCount}). Cartesian
+ * products are only considered if the join graph is not connected.
+ *
+ * <p>The number of subsets grows exponentially with the number of inputs, and
+ * the number of splits considered is O(3<sup>n</sup>). If there are more
+ * inputs than a given limit, or the join has outer joins or a post-join
+ * filter, the rule delegates to a fallback rule, by default the greedy
+ * {@link LoptOptimizeJoinRule}.
+ *
+ * <p>It is similar to {@link OptimizeBushyJoinRule}, which is heuristic.
+ */
+public class OptimizeDpJoinRule extends RelOptRule {
+  /** Largest permitted value of the maximum number of inputs. The rule
+   * considers about 3<sup>n</sup> splits for n inputs, all within one rule
+   * call; for 12 inputs that is about half a million. */
+  public static final int MAX_MAX_FACTORS = 12;
+
+  /** Default maximum number of inputs that the rule will optimize by dynamic
+   * programming; set by the system property "optiq.join.dp.max.factors", but
+   * no more than {@link #MAX_MAX_FACTORS}. */
+  public static final int DEFAULT_MAX_FACTORS =
+      Math.min(Integer.getInteger("optiq.join.dp.max.factors", 10),
+          MAX_MAX_FACTORS);
+
+  public static final OptimizeDpJoinRule INSTANCE =
+      new OptimizeDpJoinRule(RelFactories.DEFAULT_JOIN_FACTORY,
+          RelFactories.DEFAULT_PROJECT_FACTORY, DEFAULT_MAX_FACTORS,
+          LoptOptimizeJoinRule.INSTANCE);
+
+  private final RelFactories.JoinFactory joinFactory;
+  private final RelFactories.ProjectFactory projectFactory;
+  private final int maxFactors;
+  private final RelOptRule fallback;
+
+  /** Creates an OptimizeDpJoinRule.
+   *
+   * @param joinFactory Factory to create joins
+   * @param projectFactory Factory to create projects
+   * @param maxFactors Maximum number of inputs to optimize by dynamic
+   *                   programming; between 2 and {@link #MAX_MAX_FACTORS}
+   * @param fallback Rule to apply to joins with more inputs, or with outer
+   *                 joins; its operand must match a {@link MultiJoinRel}
+   */
+  public OptimizeDpJoinRule(RelFactories.JoinFactory joinFactory,
+      RelFactories.ProjectFactory projectFactory, int maxFactors,
+      RelOptRule fallback) {
+    super(operand(MultiJoinRel.class, any()));
+    Preconditions.checkArgument(
+        maxFactors >= 2 && maxFactors <= MAX_MAX_FACTORS,
+        "maxFactors must be between 2 and " + MAX_MAX_FACTORS);
+    this.joinFactory = Preconditions.checkNotNull(joinFactory);
+    this.projectFactory = Preconditions.checkNotNull(projectFactory);
+    this.maxFactors = maxFactors;
+    this.fallback = Preconditions.checkNotNull(fallback);
+  }
+
+  @Override public void onMatch(RelOptRuleCall call) {
+    final MultiJoinRel multiJoinRel = call.rel(0);
+    if (!canOptimize(multiJoinRel)) {
+      fallback.onMatch(call);
+      return;
+    }
+
+    final LoptMultiJoin multiJoin = new LoptMultiJoin(multiJoinRel);
+    final int n = multiJoin.getNumJoinFactors();
+    final int all = (1 << n) - 1;
+
+    // Each edge is a join condition, and the bit mask of the inputs it
+    // references. Conditions that reference fewer than two inputs do not
+    // connect inputs, and are applied at the top join.
+    final List<LoptMultiJoin.Edge> edges = Lists.newArrayList();
+    final List<RexNode> topConditions = Lists.newArrayList();
+    for (RexNode node : multiJoin.getJoinFilters()) {
+      final LoptMultiJoin.Edge edge = multiJoin.createEdge(node);
+      if (edge.factors.cardinality() < 2) {
+        topConditions.add(node);
+      } else {
+        edges.add(edge);
+      }
+    }
+    final int[] edgeMasks = new int[edges.size()];
+    final double[] selectivities = new double[edges.size()];
+    for (int i = 0; i < edges.size(); i++) {
+      final LoptMultiJoin.Edge edge = edges.get(i);
+      edgeMasks[i] = mask(edge.factors);
+      selectivities[i] = selectivity(multiJoin, edge);
+    }
+
+    // Memo, indexed by bit mask of inputs: number of rows, cost of the
+    // cheapest plan, and the left side of the cheapest plan's top join.
+    final double[] rows = new double[all + 1];
+    final double[] costs = new double[all + 1];
+    final int[] bestLefts = new int[all + 1];
+    for (int i = 0; i < n; i++) {
+      rows[1 << i] = rowCount(multiJoin.getJoinFactor(i));
+    }
+    for (int s = 1; s <= all; s++) {
+      final int low = s & -s;
+      if (s != low) {
+        // The number of rows of a set of inputs does not depend on how they
+        // are joined: it is the product of the inputs' rows and the
+        // selectivities of the conditions among them.
+        double r = rows[s ^ low] * rows[low];
+        for (int e = 0; e < edgeMasks.length; e++) {
+          if ((edgeMasks[e] & low) != 0 && (edgeMasks[e] & ~s) == 0) {
+            r *= selectivities[e];
+          }
+        }
+        rows[s] = r;
+      }
+    }
+    if (!enumerate(all, edgeMasks, rows, costs, bestLefts, false)) {
+      // The join graph is not connected. Allow cartesian products.
+      enumerate(all, edgeMasks, rows, costs, bestLefts, true);
+    }
+
+    // Build the cheapest plan.
+    final int[] fieldOffsets = new int[n];
+    for (int i = 0, x = 0; i < n; i++) {
+      fieldOffsets[i] = x;
+      x += multiJoin.getNumFieldsInJoinFactor(i);
+    }
+    final Pair<RelNode, Mappings.TargetMapping> top =
+        build(multiJoin, all, all, bestLefts, rows, edges, edgeMasks,
+            topConditions, fieldOffsets);
+    final RelNode project =
+        RelOptUtil.createProject(projectFactory, top.left,
+            Mappings.asList(top.right));
+
+    call.transformTo(project);
+  }
+
+  /** Returns whether this rule can optimize a join by dynamic programming,
+   * rather than delegating to the fallback rule. */
+  private boolean canOptimize(MultiJoinRel multiJoinRel) {
+    if (multiJoinRel.getInputs().size() > maxFactors
+        || multiJoinRel.isFullOuterJoin()
+        || multiJoinRel.getPostJoinFilter() != null) {
+      return false;
+    }
+    for (JoinRelType joinType : multiJoinRel.getJoinTypes()) {
+      if (joinType != JoinRelType.INNER) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Populates the memo with the cheapest plan for each subset of inputs,
+   * in increasing order of subset (so that a subset's subsets are done
+   * first). Returns whether there is a plan for all inputs. */
+  private static boolean enumerate(int all, int[] edgeMasks, double[] rows,
+      double[] costs, int[] bestLefts, boolean allowCartesian) {
+    Arrays.fill(costs, Double.POSITIVE_INFINITY);
+    for (int s = 1; s <= all; s++) {
+      final int low = s & -s;
+      if (s == low) {
+        costs[s] = 0d;
+        continue;
+      }
+      // Consider each split of s into non-empty s1 and s2. To consider each
+      // split only once, s1 contains the lowest input.
+      for (int s1 = (s - 1) & s; s1 > 0; s1 = (s1 - 1) & s) {
+        if ((s1 & low) == 0) {
+          continue;
+        }
+        final int s2 = s ^ s1;
+        final double cost = costs[s1] + costs[s2] + rows[s];
+        if (cost < costs[s]
+            && (allowCartesian || connected(s1, s2, edgeMasks))) {
+          costs[s] = cost;
+          bestLefts[s] = s1;
+        }
+      }
+    }
+    return costs[all] < Double.POSITIVE_INFINITY;
+  }
+
+  /** Returns whether there is a join condition between two sets of inputs,
+   * and that condition references no other inputs. */
+  private static boolean connected(int s1, int s2, int[] edgeMasks) {
+    final int s = s1 | s2;
+    for (int edgeMask : edgeMasks) {
+      if ((edgeMask & s1) != 0
+          && (edgeMask & s2) != 0
+          && (edgeMask & ~s) == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Creates the cheapest plan for a set of inputs. Returns the relational
+   * expression, and a mapping from the fields of the multi-join to its
+   * fields. */
+  private Pair<RelNode, Mappings.TargetMapping> build(LoptMultiJoin multiJoin,
+      int s, int all, int[] bestLefts, double[] rows,
+      List<LoptMultiJoin.Edge> edges, int[] edgeMasks,
+      List<RexNode> topConditions, int[] fieldOffsets) {
+    if ((s & -s) == s) {
+      final int i = Integer.numberOfTrailingZeros(s);
+      final RelNode rel = multiJoin.getJoinFactor(i);
+      final Mappings.TargetMapping mapping =
+          Mappings.offsetSource(
+              Mappings.createIdentity(rel.getRowType().getFieldCount()),
+              fieldOffsets[i],
+              multiJoin.getNumTotalFields());
+      return Pair.of(rel, mapping);
+    }
+
+    // As in OptimizeBushyJoinRule, the input with fewer rows is on the left.
+    int s1 = bestLefts[s];
+    int s2 = s ^ s1;
+    if (rows[s2] < rows[s1]) {
+      final int t = s1;
+      s1 = s2;
+      s2 = t;
+    }
+    final Pair<RelNode, Mappings.TargetMapping> leftPair =
+        build(multiJoin, s1, all, bestLefts, rows, edges, edgeMasks,
+            topConditions, fieldOffsets);
+    final Pair<RelNode, Mappings.TargetMapping> rightPair =
+        build(multiJoin, s2, all, bestLefts, rows, edges, edgeMasks,
+            topConditions, fieldOffsets);
+    final RelNode left = leftPair.left;
+    final RelNode right = rightPair.left;
+    final Mappings.TargetMapping mapping =
+        Mappings.merge(leftPair.right,
+            Mappings.offsetTarget(rightPair.right,
+                left.getRowType().getFieldCount()));
+
+    // The conditions of this join are those that reference inputs on both
+    // sides, and no inputs outside this join.
+    final List<RexNode> conditions = Lists.newArrayList();
+    for (int e = 0; e < edgeMasks.length; e++) {
+      final int edgeMask = edgeMasks[e];
+      if ((edgeMask & ~s) == 0
+          && (edgeMask & s1) != 0
+          && (edgeMask & s2) != 0) {
+        conditions.add(edges.get(e).condition);
+      }
+    }
+    if (s == all) {
+      conditions.addAll(topConditions);
+    }
+    final RexBuilder rexBuilder = left.getCluster().getRexBuilder();
+    final RexVisitor<RexNode> shuttle =
+        new RexPermuteInputsShuttle(mapping, left, right);
+    final RexNode condition =
+        RexUtil.composeConjunction(rexBuilder, conditions, false);
+    final RelNode join =
+        joinFactory.createJoin(left, right, condition.accept(shuttle),
+            JoinRelType.INNER, ImmutableSet.<String>of(), false);
+    return Pair.of(join, mapping);
+  }
+
+  private static int mask(BitSet factors) {
+    int mask = 0;
+    for (int i : BitSets.toIter(factors)) {
+      mask |= 1 << i;
+    }
+    return mask;
+  }
+
+  private static double rowCount(RelNode rel) {
+    final Double rowCount = RelMetadataQuery.getRowCount(rel);
+    return rowCount == null ? 1d : Math.max(rowCount, 1d);
+  }
+
+  /** Estimates the selectivity of a join condition. If the condition is an
+   * equality between columns of two inputs, and their numbers of distinct
+   * values are known, the selectivity is 1 / the larger number of distinct
+   * values; otherwise it is a guess. */
+  private static double selectivity(LoptMultiJoin multiJoin,
+      LoptMultiJoin.Edge edge) {
+    final RexNode condition = edge.condition;
+    if (condition.isA(SqlKind.EQUALS)) {
+      final List<RexNode> operands = ((RexCall) condition).getOperands();
+      final Double ndv0 = distinctRowCount(multiJoin, operands.get(0));
+      final Double ndv1 = distinctRowCount(multiJoin, operands.get(1));
+      if (ndv0 != null && ndv1 != null) {
+        return 1d / Math.max(Math.max(ndv0, ndv1), 1d);
+      }
+    }
+    return RelMdUtil.guessSelectivity(condition);
+  }
+
+  private static Double distinctRowCount(LoptMultiJoin multiJoin,
+      RexNode node) {
+    if (!(node instanceof RexInputRef)) {
+      return null;
+    }
+    final int field = ((RexInputRef) node).getIndex();
+    final int factor = multiJoin.findRef(field);
+    return RelMetadataQuery.getDistinctRowCount(
+        multiJoin.getJoinFactor(factor),
+        BitSets.of(field - multiJoin.getJoinStart(factor)),
+        null);
+  }
+}
+
+// End OptimizeDpJoinRule.java
@@ -27,6 +27,7 @@
 
 import static org.eigenbase.util.Static.RESOURCE;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 
@@ -53,6 +54,9 @@ public abstract class AbstractRelOptPlanner implements RelOptPlanner {
 
   private MulticastRelOptListener listener;
 
+  private final List<Function<RelNode, Void>> discardHandlers =
+      new ArrayList<Function<RelNode, Void>>();
+
   private Pattern ruleDescExclusionFilter;
 
   private CancelFlag cancelFlag;
@@ -253,6 +257,21 @@ public void addListener(RelOptListener newListener) {
     listener.addListener(newListener);
   }
 
+  /**
+   * Adds a function to be called each time this planner discards a
+   * relational expression.
+   *
+   * <p>Unlike a {@link RelOptListener}, a handler does not cause the planner
+   * to create an event object for every rule attempted and every
+   * relational expression registered; so a component such as a metadata
+   * cache can observe discards without slowing down planning.</p>
+   *
+   * @param handler Function to call with each discarded expression
+   */
+  public void addDiscardHandler(Function<RelNode, Void> handler) {
+    discardHandlers.add(handler);
+  }
+
   // implement RelOptPlanner
   public void registerMetadataProviders(List<RelMetadataProvider> list) {
   }
@@ -410,6 +429,9 @@ protected void notifyEquivalence(
    */
   protected void notifyDiscard(
       RelNode rel) {
+    for (Function<RelNode, Void> handler : discardHandlers) {
+      handler.apply(rel);
+    }
     if (listener != null) {
       RelOptListener.RelDiscardedEvent event =
           new RelOptListener.RelDiscardedEvent(
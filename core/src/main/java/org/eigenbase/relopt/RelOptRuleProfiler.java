@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eigenbase.relopt;
+
+import java.util.*;
+
+import org.eigenbase.relopt.volcano.RelSubset;
+
+/**
+ * Listener that records, for each {@link RelOptRule}, how often it fires, how
+ * often it produces a new expression, how long it spends in
+ * {@link RelOptRule#onMatch(RelOptRuleCall)}, and how many relational
+ * expressions it registers with the planner.
+ *
+ * <p>To profile a planner, add a profiler using
+ * {@link RelOptPlanner#addListener(RelOptListener)}, call
+ * {@link RelOptPlanner#findBestExp()}, then call {@link #getStatistics()} or
+ * {@link #report()}. It works with both
+ * {@link org.eigenbase.relopt.volcano.VolcanoPlanner} and
+ * {@link org.eigenbase.relopt.hep.HepPlanner}. Optiq adds a profiler to each
+ * statement's planner if the "ruleProfile" connection property is true, and
+ * passes it to {@link net.hydromatic.optiq.runtime.Hook#RULE_PROFILE}.</p>
+ *
+ * <p>Rules whose expense is out of proportion to the number of expressions
+ * they produce are candidates for removal from a rule set.</p>
+ */
+public class RelOptRuleProfiler implements RelOptListener {
+  //~ Instance fields --------------------------------------------------------
+
+  private final Map<RelOptRule, Counter> counters =
+      new LinkedHashMap<RelOptRule, Counter>();
+
+  /** Start times of the rule calls currently in
+   * {@link RelOptRule#onMatch(RelOptRuleCall)}. A rule may fire while another
+   * is being applied, so this is a stack. */
+  private final List<Long> startTimes = new ArrayList<Long>();
+
+  /** Counters of the rules whose productions are currently being registered.
+   * Expressions registered in the meantime are charged to the top one. */
+  private final List<Counter> producers = new ArrayList<Counter>();
+
+  //~ Methods ----------------------------------------------------------------
+
+  private Counter counter(RelOptRuleCall call) {
+    final RelOptRule rule = call.getRule();
+    Counter counter = counters.get(rule);
+    if (counter == null) {
+      counter = new Counter();
+      counters.put(rule, counter);
+    }
+    return counter;
+  }
+
+  // implement RelOptListener
+  public void relEquivalenceFound(RelEquivalenceEvent event) {
+    // A subset is a new equivalence class, not a new expression.
+    if (!producers.isEmpty() && !(event.getRel() instanceof RelSubset)) {
+      ++producers.get(producers.size() - 1).registeredCount;
+    }
+  }
+
+  // implement RelOptListener
+  public void ruleAttempted(RuleAttemptedEvent event) {
+    if (event.isBefore()) {
+      ++counter(event.getRuleCall()).attemptCount;
+      startTimes.add(System.nanoTime());
+    } else {
+      final long start = startTimes.remove(startTimes.size() - 1);
+      counter(event.getRuleCall()).nanos += System.nanoTime() - start;
+    }
+  }
+
+  // implement RelOptListener
+  public void ruleProductionSucceeded(RuleProductionEvent event) {
+    if (event.isBefore()) {
+      final Counter counter = counter(event.getRuleCall());
+      ++counter.productionCount;
+      producers.add(counter);
+    } else {
+      producers.remove(producers.size() - 1);
+    }
+  }
+
+  // implement RelOptListener
+  public void relDiscarded(RelDiscardedEvent event) {
+  }
+
+  // implement RelOptListener
+  public void relChosen(RelChosenEvent event) {
+  }
+
+  /** Clears all counters. */
+  public void reset() {
+    counters.clear();
+    startTimes.clear();
+    producers.clear();
+  }
+
+  /** Returns the statistics of each rule that has fired, most expensive
+   * first. */
+  public List<RuleStatistics> getStatistics() {
+    final List<RuleStatistics> list = new ArrayList<RuleStatistics>();
+    for (Map.Entry<RelOptRule, Counter> entry : counters.entrySet()) {
+      final Counter counter = entry.getValue();
+      list.add(
+          new RuleStatistics(entry.getKey(), counter.attemptCount,
+              counter.productionCount, counter.registeredCount,
+              counter.nanos));
+    }
+    Collections.sort(list,
+        new Comparator<RuleStatistics>() {
+          public int compare(RuleStatistics o1, RuleStatistics o2) {
+            return o1.nanos < o2.nanos ? 1
+                : o1.nanos > o2.nanos ? -1
+                : o1.rule.toString().compareTo(o2.rule.toString());
+          }
+        });
+    return list;
+  }
+
+  /** Returns a report of the statistics, one line per rule, most expensive
+   * first. */
+  public String report() {
+    final StringBuilder buf = new StringBuilder();
+    buf.append("Rule                                                    ")
+        .append("Attempts Productions Registered    Millis\n");
+    long attemptCount = 0;
+    long productionCount = 0;
+    long registeredCount = 0;
+    long nanos = 0;
+    for (RuleStatistics statistics : getStatistics()) {
+      attemptCount += statistics.attemptCount;
+      productionCount += statistics.productionCount;
+      registeredCount += statistics.registeredCount;
+      nanos += statistics.nanos;
+      line(buf, statistics.rule.toString(), statistics.attemptCount,
+          statistics.productionCount, statistics.registeredCount,
+          statistics.nanos);
+    }
+    line(buf, "Total", attemptCount, productionCount, registeredCount, nanos);
+    return buf.toString();
+  }
+
+  private static void line(StringBuilder buf, String name, long attemptCount,
+      long productionCount, long registeredCount, long nanos) {
+    buf.append(
+        String.format("%-55s %9d %11d %10d %9d\n", name, attemptCount,
+            productionCount, registeredCount, nanos / 1000000L));
+  }
+
+  @Override public String toString() {
+    return getStatistics().toString();
+  }
+
+  //~ Inner Classes ----------------------------------------------------------
+
+  /** Mutable counters for a rule. */
+  private static class Counter {
+    long attemptCount;
+    long productionCount;
+    long registeredCount;
+    long nanos;
+  }
+
+  /** Statistics of the calls to a rule. */
+  public static class RuleStatistics {
+    public final RelOptRule rule;
+    /** Number of times the rule's {@code onMatch} method was called. */
+    public final long attemptCount;
+    /** Number of expressions the rule produced, via
+     * {@link RelOptRuleCall#transformTo(org.eigenbase.rel.RelNode)}. */
+    public final long productionCount;
+    /** Number of relational expressions registered with the planner while
+     * registering the rule's productions. Includes new inputs of the
+     * produced expressions; excludes productions that were already known. */
+    public final long registeredCount;
+    /** Time spent in the rule's {@code onMatch} method, in nanoseconds. */
+    public final long nanos;
+
+    public RuleStatistics(RelOptRule rule, long attemptCount,
+        long productionCount, long registeredCount, long nanos) {
+      this.rule = rule;
+      this.attemptCount = attemptCount;
+      this.productionCount = productionCount;
+      this.registeredCount = registeredCount;
+      this.nanos = nanos;
+    }
+
+    @Override public String toString() {
+      return "{rule: " + rule
+          + ", attempts: " + attemptCount
+          + ", productions: " + productionCount
+          + ", registered: " + registeredCount
+          + ", millis: " + nanos / 1000000L
+          + "}";
+    }
+  }
+}
+
+// End RelOptRuleProfiler.java
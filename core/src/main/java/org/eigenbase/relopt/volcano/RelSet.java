@@ -269,6 +269,7 @@ void mergeWith(
       for (RelNode otherRel : otherSubset.getRels()) {
         planner.reregister(this, otherRel);
       }
+      planner.notifyDiscard(otherSubset);
     }
 
     // Has another set merged with this?
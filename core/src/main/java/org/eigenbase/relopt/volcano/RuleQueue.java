@@ -270,6 +270,7 @@ void updateImportance(RelSubset subset, Double importance) {
       if (relMatchMap.containsKey(subset)) {
         for (VolcanoRuleMatch match : relMatchMap.get(subset)) {
           match.clearCachedImportance();
+          matchList.heap.update(match);
         }
       }
     }
@@ -335,7 +336,7 @@ void addMatch(VolcanoRuleMatch match) {
                 + matchName);
       }
 
-      matchList.list.add(match);
+      matchList.heap.add(match);
 
       matchList.matchMap.put(
           planner.getSubset(match.rels[0]), match);
@@ -437,15 +438,16 @@ VolcanoRuleMatch popMatch(VolcanoPlannerPhase phase) {
           + " after phase complete");
     }
 
-    final List<VolcanoRuleMatch> matchList = phaseMatchList.list;
+    final MatchHeap heap = phaseMatchList.heap;
     VolcanoRuleMatch match;
     for (;;) {
-      if (matchList.isEmpty()) {
+      if (heap.isEmpty()) {
         return null;
       }
       if (LOGGER.isLoggable(Level.FINEST)) {
+        final List<VolcanoRuleMatch> matchList = heap.toList();
         Collections.sort(matchList, ruleMatchImportanceComparator);
-        match = matchList.remove(0);
+        matchList.remove(0); // the match we are about to pop
 
         StringBuilder b = new StringBuilder();
         b.append("Sorted rule queue:");
@@ -458,22 +460,8 @@ VolcanoRuleMatch popMatch(VolcanoPlannerPhase phase) {
         }
 
         LOGGER.finest(b.toString());
-      } else {
-        // If we're not tracing, it's not worth the effort of sorting the
-        // list to find the minimum.
-        match = null;
-        int bestPos = -1;
-        int i = -1;
-        for (VolcanoRuleMatch match2 : matchList) {
-          ++i;
-          if (match == null
-              || ruleMatchImportanceComparator.compare(match2, match) < 0) {
-            bestPos = i;
-            match = match2;
-          }
-        }
-        match = matchList.remove(bestPos);
       }
+      match = heap.poll();
 
       if (skipMatch(match)) {
         if (LOGGER.isLoggable(Level.FINE)) {
@@ -664,6 +652,189 @@ public int compare(
     }
   }
 
+  /**
+   * Binary heap of {@link VolcanoRuleMatch rule-matches}, the most important
+   * at the top.
+   *
+   * <p>Each match is held with the importance it had when it was added or last
+   * repositioned. A match remembers its position in the heap of each phase,
+   * so that when the importance of a subset changes, the planner can move
+   * each of the subset's matches to its new position in O(log n) time.
+   * Popping the most important match is also O(log n), whereas scanning a
+   * list for the most important match is O(n).</p>
+   *
+   * <p>Importance is recomputed lazily. {@link #update} only notes that a
+   * match's importance may have changed; the match's importance is computed,
+   * and the match moved, when the next match is {@link #poll polled}. So a
+   * match whose subset's importance changes several times between polls,
+   * or that is in the heap of a phase that is not running, is computed at
+   * most once per poll.</p>
+   *
+   * <p>Ties are broken in the same way as
+   * {@link RuleMatchImportanceComparator}, so that the order is
+   * deterministic.</p>
+   */
+  static class MatchHeap {
+    /** Ordinal of the phase; index into
+     * {@link VolcanoRuleMatch#heapPositions}. */
+    private final int ordinal;
+    private VolcanoRuleMatch[] matches = new VolcanoRuleMatch[16];
+    private double[] importances = new double[16];
+    private int size;
+    /** Matches whose importance may have changed since they were
+     * positioned. */
+    private final List<VolcanoRuleMatch> stale =
+        new ArrayList<VolcanoRuleMatch>();
+
+    MatchHeap(int ordinal) {
+      this.ordinal = ordinal;
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void clear() {
+      for (VolcanoRuleMatch match : stale) {
+        match.heapStale[ordinal] = false;
+      }
+      stale.clear();
+      Arrays.fill(matches, 0, size, null);
+      size = 0;
+    }
+
+    /** Returns the matches in the heap, in no particular order. */
+    List<VolcanoRuleMatch> toList() {
+      return new ArrayList<VolcanoRuleMatch>(
+          Arrays.asList(matches).subList(0, size));
+    }
+
+    /** Returns whether a match is in this heap. */
+    boolean contains(VolcanoRuleMatch match) {
+      final int i = match.heapPositions[ordinal];
+      return i >= 0 && i < size && matches[i] == match;
+    }
+
+    /** Adds a match. */
+    void add(VolcanoRuleMatch match) {
+      if (size == matches.length) {
+        matches = Arrays.copyOf(matches, size * 2);
+        importances = Arrays.copyOf(importances, size * 2);
+      }
+      set(size, match, match.getImportance());
+      siftUp(size++);
+    }
+
+    /** Removes and returns the most important match, or returns null if the
+     * heap is empty. */
+    VolcanoRuleMatch poll() {
+      if (!stale.isEmpty()) {
+        reposition();
+      }
+      if (size == 0) {
+        return null;
+      }
+      final VolcanoRuleMatch match = matches[0];
+      --size;
+      if (size > 0) {
+        set(0, matches[size], importances[size]);
+        siftDown(0);
+      }
+      matches[size] = null;
+      match.heapPositions[ordinal] = -1;
+      return match;
+    }
+
+    /** Notes that the importance of a match may have changed. The match
+     * will be moved to its correct position before the next match is polled.
+     * Does nothing if the match is not in this heap. */
+    void update(VolcanoRuleMatch match) {
+      if (contains(match) && !match.heapStale[ordinal]) {
+        match.heapStale[ordinal] = true;
+        stale.add(match);
+      }
+    }
+
+    /** Recomputes the importance of each stale match, and moves it to its
+     * correct position. The matches are moved one at a time; the others are
+     * still in the correct position for the importance they are held with,
+     * so the heap is valid after each move. */
+    private void reposition() {
+      for (VolcanoRuleMatch match : stale) {
+        match.heapStale[ordinal] = false;
+        if (!contains(match)) {
+          continue;
+        }
+        final int i = match.heapPositions[ordinal];
+        final double importance = match.getImportance();
+        final double previous = importances[i];
+        importances[i] = importance;
+        final int c = Double.compare(importance, previous);
+        if (c > 0) {
+          siftUp(i);
+        } else if (c < 0) {
+          siftDown(i);
+        }
+      }
+      stale.clear();
+    }
+
+    private void set(int i, VolcanoRuleMatch match, double importance) {
+      matches[i] = match;
+      importances[i] = importance;
+      match.heapPositions[ordinal] = i;
+    }
+
+    /** Returns whether the match at position {@code i} should be popped
+     * before the match at position {@code j}. */
+    private boolean before(int i, int j) {
+      final int c = Double.compare(importances[i], importances[j]);
+      if (c != 0) {
+        return c > 0;
+      }
+      return compareRels(matches[i].rels, matches[j].rels) > 0;
+    }
+
+    private void siftUp(int i) {
+      while (i > 0) {
+        final int parent = (i - 1) >>> 1;
+        if (!before(i, parent)) {
+          break;
+        }
+        swap(i, parent);
+        i = parent;
+      }
+    }
+
+    private void siftDown(int i) {
+      for (;;) {
+        final int left = 2 * i + 1;
+        if (left >= size) {
+          break;
+        }
+        final int right = left + 1;
+        final int child =
+            right < size && before(right, left) ? right : left;
+        if (!before(child, i)) {
+          break;
+        }
+        swap(i, child);
+        i = child;
+      }
+    }
+
+    private void swap(int i, int j) {
+      final VolcanoRuleMatch match = matches[i];
+      final double importance = importances[i];
+      set(i, matches[j], importances[j]);
+      set(j, match, importance);
+    }
+  }
+
   /**
    * PhaseMatchList represents a set of {@link VolcanoRuleMatch rule-matches}
    * for a particular {@link VolcanoPlannerPhase phase of the planner's
@@ -676,18 +847,12 @@ private static class PhaseMatchList {
     final VolcanoPlannerPhase phase;
 
     /**
-     * Current list of VolcanoRuleMatches for this phase. New rule-matches
-     * are appended to the end of this list. When removing a rule-match, the
-     * list is sorted and the highest importance rule-match removed. It is
-     * important for performance that this list remain mostly sorted.
-     *
-     * <p>Use a hunkList because {@link java.util.ArrayList} does not implement
-     * remove(0) efficiently.</p>
+     * Heap of VolcanoRuleMatches for this phase, the most important first.
      */
-    final List<VolcanoRuleMatch> list = new ChunkList<VolcanoRuleMatch>();
+    final MatchHeap heap;
 
     /**
-     * A set of rule-match names contained in {@link #list}. Allows fast
+     * A set of rule-match names contained in {@link #heap}. Allows fast
      * detection of duplicate rule-matches.
      */
     final Set<String> names = new HashSet<String>();
@@ -704,10 +869,11 @@ private static class PhaseMatchList {
 
     PhaseMatchList(VolcanoPlannerPhase phase) {
       this.phase = phase;
+      this.heap = new MatchHeap(phase.ordinal());
     }
 
     void clear() {
-      list.clear();
+      heap.clear();
       names.clear();
       matchMap.clear();
     }
@@ -177,6 +177,31 @@ public List<String> apply(RelOptTable relOptTable) {
    */
   RelOptListener listener;
 
+  /**
+   * Multicast listener that was created when a second listener was added, or
+   * null.
+   */
+  private MulticastRelOptListener multicastListener;
+
+  /**
+   * Maximum time, in milliseconds, that {@link #findBestExp()} may run before
+   * returning the best plan found so far; 0 means no limit.
+   */
+  private long timeBudget;
+
+  /**
+   * Maximum number of ticks that {@link #findBestExp()} may run before
+   * returning the best plan found so far; 0 means no limit.
+   */
+  private int tickBudget;
+
+  /**
+   * Statistics of each phase of the most recent call to
+   * {@link #findBestExp()}.
+   */
+  private final List<PhaseStatistics> phaseStatistics =
+      new ArrayList<PhaseStatistics>();
+
   /**
    * Dump of the root relational expression, as it was before any rules were
    * applied. For debugging.
@@ -660,7 +685,19 @@ public RelOptPlanner chooseDelegate() {
   public RelNode findBestExp() {
     useApplicableMaterializations();
     int cumulativeTicks = 0;
+    final long deadline =
+        timeBudget > 0
+            ? System.nanoTime() + timeBudget * 1000000L
+            : Long.MAX_VALUE;
+    boolean exhausted = false;
+    phaseStatistics.clear();
     for (VolcanoPlannerPhase phase : VolcanoPlannerPhase.values()) {
+      if (exhausted) {
+        ruleQueue.phaseCompleted(phase);
+        continue;
+      }
+      final long phaseStart = System.nanoTime();
+      int ruleFirings = 0;
       setInitialImportance();
 
       RelOptCost targetCost = costFactory.makeHugeCost();
@@ -715,6 +752,15 @@ public RelNode findBestExp() {
               + "; COST = " + root.bestCost);
         }
 
+        // Out of time? Return the best plan so far, provided that there is
+        // one.
+        if (((tickBudget > 0 && cumulativeTicks > tickBudget)
+                || (deadline != Long.MAX_VALUE && System.nanoTime() > deadline))
+            && !root.bestCost.isInfinite()) {
+          exhausted = true;
+          break;
+        }
+
         VolcanoRuleMatch match = ruleQueue.popMatch(phase);
         if (match == null) {
           break;
@@ -722,6 +768,7 @@ public RelNode findBestExp() {
 
         assert match.getRule().matches(match);
         match.onMatch();
+        ++ruleFirings;
 
         // The root may have been merged with another
         // subset. Find the new root subset.
@@ -729,6 +776,12 @@ public RelNode findBestExp() {
       }
 
       ruleQueue.phaseCompleted(phase);
+      phaseStatistics.add(
+          new PhaseStatistics(phase, tick, ruleFirings,
+              System.nanoTime() - phaseStart, exhausted));
+    }
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine("Phase statistics: " + phaseStatistics);
     }
     if (LOGGER.isLoggable(Level.FINER)) {
       StringWriter sw = new StringWriter();
@@ -1312,6 +1365,7 @@ void rename(RelNode rel) {
             "After renaming rel#" + rel.getId()
             + ", it is now equivalent to rel#" + equivRel.getId());
         mapDigestToRel.put(key, equivRel);
+        notifyDiscard(rel);
 
         RelSubset equivRelSubset = getSubset(equivRel);
         ruleQueue.recompute(equivRelSubset, true);
@@ -1728,14 +1782,62 @@ private RelSubset registerSubset(
     return subset;
   }
 
+  /**
+   * Sets the maximum time that {@link #findBestExp()} may run.
+   *
+   * <p>When the time is up, the planner stops firing rules and returns the
+   * best plan it has found so far. If it has not yet found an implementable
+   * plan, it carries on until it does.</p>
+   *
+   * @param millis Time budget in milliseconds; 0 means no limit
+   */
+  public void setTimeBudget(long millis) {
+    this.timeBudget = millis;
+  }
+
+  /**
+   * Sets the maximum number of ticks (iterations, each of which fires at
+   * most one rule) that {@link #findBestExp()} may run, across all phases.
+   * Behaves like {@link #setTimeBudget(long)}.
+   *
+   * @param ticks Tick budget; 0 means no limit
+   */
+  public void setTickBudget(int ticks) {
+    this.tickBudget = ticks;
+  }
+
+  /**
+   * Returns statistics for each phase of the most recent call to
+   * {@link #findBestExp()}.
+   */
+  public List<PhaseStatistics> getPhaseStatistics() {
+    return ImmutableList.copyOf(phaseStatistics);
+  }
+
   // implement RelOptPlanner
   public void addListener(RelOptListener newListener) {
-    // TODO jvs 6-Apr-2006:  new superclass AbstractRelOptPlanner
-    // now defines a multicast listener; just need to hook it in
+    if (listener == null) {
+      listener = newListener;
+    } else {
+      // The second listener converts this planner to a multicast listener.
+      // Each event is still created at most once.
+      if (multicastListener == null) {
+        multicastListener = new MulticastRelOptListener();
+        multicastListener.addListener(listener);
+        listener = multicastListener;
+      }
+      multicastListener.addListener(newListener);
+    }
+  }
+
+  @Override protected void notifyDiscard(RelNode rel) {
+    // Calls the discard handlers. This planner holds its listeners itself,
+    // so the base class has no listener to notify.
+    super.notifyDiscard(rel);
     if (listener != null) {
-      throw Util.needToImplement("multiple VolcanoPlanner listeners");
+      listener.relDiscarded(
+          new RelOptListener.RelDiscardedEvent(this, rel));
     }
-    listener = newListener;
   }
 
   // implement RelOptPlanner
@@ -1893,6 +1995,40 @@ static class RuleProvenance extends Provenance {
       this.callId = callId;
     }
   }
+
+  /**
+   * Statistics of one phase of a call to {@link #findBestExp()}.
+   */
+  public static class PhaseStatistics {
+    public final VolcanoPlannerPhase phase;
+    /** Number of iterations of the main loop. */
+    public final int ticks;
+    /** Number of rule matches fired. */
+    public final int ruleFirings;
+    /** Elapsed time, in nanoseconds. */
+    public final long elapsedNanos;
+    /** Whether the planner stopped because its time or tick budget ran out;
+     * if so, later phases were skipped. */
+    public final boolean budgetExhausted;
+
+    public PhaseStatistics(VolcanoPlannerPhase phase, int ticks,
+        int ruleFirings, long elapsedNanos, boolean budgetExhausted) {
+      this.phase = phase;
+      this.ticks = ticks;
+      this.ruleFirings = ruleFirings;
+      this.elapsedNanos = elapsedNanos;
+      this.budgetExhausted = budgetExhausted;
+    }
+
+    @Override public String toString() {
+      return "{phase: " + phase
+          + ", ticks: " + ticks
+          + ", ruleFirings: " + ruleFirings
+          + ", millis: " + elapsedNanos / 1000000L
+          + (budgetExhausted ? ", budgetExhausted: true" : "")
+          + "}";
+    }
+  }
 }
 
 // End VolcanoPlanner.java
@@ -16,6 +16,8 @@
  */
 package org.eigenbase.relopt.volcano;
 
+import java.util.Arrays;
+
 import org.eigenbase.rel.*;
 import org.eigenbase.relopt.*;
 
@@ -24,6 +26,10 @@
  * frozen in time.
  */
 class VolcanoRuleMatch extends VolcanoRuleCall {
+  //~ Static fields/initializers ---------------------------------------------
+
+  private static final int PHASE_COUNT = VolcanoPlannerPhase.values().length;
+
   //~ Instance fields --------------------------------------------------------
 
   private final RelSet targetSet;
@@ -32,6 +38,15 @@ class VolcanoRuleMatch extends VolcanoRuleCall {
   private final VolcanoPlanner volcanoPlanner;
   private double cachedImportance = Double.NaN;
 
+  /** Position of this match in the {@link RuleQueue.MatchHeap} of each
+   * planner phase, indexed by phase ordinal; -1 if not in the heap. */
+  final int[] heapPositions = new int[PHASE_COUNT];
+
+  /** Whether this match's importance may have changed since it was last
+   * positioned in the {@link RuleQueue.MatchHeap} of each planner phase,
+   * indexed by phase ordinal. */
+  final boolean[] heapStale = new boolean[PHASE_COUNT];
+
   //~ Constructors -----------------------------------------------------------
 
   /**
@@ -54,6 +69,7 @@ class VolcanoRuleMatch extends VolcanoRuleCall {
 
     // Try to deduce which subset the result will belong to. Assume --
     // for now -- that the set is the same as the root relexp.
+    Arrays.fill(heapPositions, -1);
     targetSet = volcanoPlanner.getSet(rels[0]);
     assert targetSet != null : rels[0].toString() + " isn't in a set";
     digest = computeDigest();
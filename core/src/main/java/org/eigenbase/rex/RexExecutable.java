@@ -21,12 +21,14 @@
 import java.io.StringReader;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.eigenbase.util.Pair;
 
 import net.hydromatic.linq4j.function.Function1;
 
 import net.hydromatic.optiq.DataContext;
+import net.hydromatic.optiq.prepare.CompiledClassCache;
 import net.hydromatic.optiq.runtime.Hook;
 import net.hydromatic.optiq.runtime.Utilities;
 
@@ -40,28 +42,52 @@
 public class RexExecutable {
   public static final String GENERATED_CLASS_NAME = "Reducer";
 
+  /** Classes compiled from generated code, shared by all planners. Planning
+   * the same statement again, or another statement with the same constant
+   * expressions, does not compile again. */
+  public static final CompiledClassCache CACHE =
+      new CompiledClassCache("rex", CompiledClassCache.DEFAULT_MAX_SIZE);
+
   private final Function1<DataContext, Object[]> compiledFunction;
   private final String code;
   private DataContext dataContext;
 
-  public RexExecutable(String code, Object reason) {
+  public RexExecutable(final String code, Object reason) {
+    this(code, reason, CACHE);
+  }
+
+  /** Creates a RexExecutable, looking for the compiled class in a given
+   * cache. */
+  public RexExecutable(final String code, Object reason,
+      CompiledClassCache cache) {
     try {
+      final Class clazz =
+          cache.get(code,
+              new Callable<Class>() {
+                public Class call() throws Exception {
+                  return compile(code);
+                }
+              });
       //noinspection unchecked
-      compiledFunction =
-          (Function1) ClassBodyEvaluator.createFastClassBodyEvaluator(
-              new Scanner(null, new StringReader(code)),
-              GENERATED_CLASS_NAME,
-              Utilities.class,
-              new Class[] {Function1.class, Serializable.class},
-              getClass().getClassLoader());
-    } catch (CompileException e) {
-      throw new RuntimeException("While compiling " + reason, e);
-    } catch (IOException e) {
+      compiledFunction = (Function1) clazz.newInstance();
+    } catch (Exception e) {
       throw new RuntimeException("While compiling " + reason, e);
     }
     this.code = code;
   }
 
+  private static Class compile(String code)
+      throws CompileException, IOException {
+    final ClassBodyEvaluator cbe = new ClassBodyEvaluator();
+    cbe.setClassName(GENERATED_CLASS_NAME);
+    cbe.setExtendedClass(Utilities.class);
+    cbe.setImplementedInterfaces(
+        new Class[] {Function1.class, Serializable.class});
+    cbe.setParentClassLoader(RexExecutable.class.getClassLoader());
+    cbe.cook(new Scanner(null, new StringReader(code)));
+    return cbe.getClazz();
+  }
+
   public void setDataContext(DataContext dataContext) {
     this.dataContext = dataContext;
   }
@@ -69,6 +95,16 @@ public void setDataContext(DataContext dataContext) {
   public void reduce(RexBuilder rexBuilder, List<RexNode> constExps,
       List<RexNode> reducedValues) {
     Object[] values = compiledFunction.apply(dataContext);
+    reduce(rexBuilder, constExps, values, code, reducedValues);
+  }
+
+  /** Converts the values of constant expressions into literals.
+   *
+   * @param code Generated code that computed the values, or null if they were
+   *             computed by {@link RexInterpreter}
+   */
+  static void reduce(RexBuilder rexBuilder, List<RexNode> constExps,
+      Object[] values, String code, List<RexNode> reducedValues) {
     assert values.length == constExps.size();
     final List<Object> valueList = Arrays.asList(values);
     for (Pair<RexNode, Object> value : Pair.zip(constExps, valueList)) {
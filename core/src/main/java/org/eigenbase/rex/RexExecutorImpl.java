@@ -30,6 +30,7 @@
 import net.hydromatic.optiq.DataContext;
 import net.hydromatic.optiq.impl.java.JavaTypeFactory;
 import net.hydromatic.optiq.jdbc.JavaTypeFactoryImpl;
+import net.hydromatic.optiq.prepare.CompiledClassCache;
 import net.hydromatic.optiq.prepare.OptiqPrepareImpl;
 import net.hydromatic.optiq.rules.java.RexToLixTranslator;
 import net.hydromatic.optiq.rules.java.RexToLixTranslator.InputGetter;
@@ -42,9 +43,17 @@
 public class RexExecutorImpl implements RelOptPlanner.Executor {
 
   private final DataContext dataContext;
+  private final CompiledClassCache cache;
 
   public RexExecutorImpl(DataContext dataContext) {
+    this(dataContext, RexExecutable.CACHE);
+  }
+
+  /** Creates a RexExecutorImpl that keeps the classes it compiles in a given
+   * cache, rather than the cache shared by all executors. */
+  public RexExecutorImpl(DataContext dataContext, CompiledClassCache cache) {
     this.dataContext = dataContext;
+    this.cache = cache;
   }
 
   private String compile(RexBuilder rexBuilder, List<RexNode> constExps,
@@ -100,15 +109,42 @@ public RexExecutable getExecutable(RexBuilder rexBuilder, List<RexNode> exps,
     final InputGetter getter =
         new DataContextInputGetter(rowType, rexBuilder.getTypeFactory());
     final String code = compile(rexBuilder, exps, getter, rowType);
-    return new RexExecutable(code, "generated Rex code");
+    return new RexExecutable(code, "generated Rex code", cache);
   }
 
   /**
-   * Do constant reduction using generated code.
+   * Do constant reduction.
+   *
+   * <p>Expressions that {@link RexInterpreter} can evaluate are evaluated
+   * directly, which is much cheaper than generating and compiling code. The
+   * others are evaluated using generated code.</p>
    */
   public void reduce(RexBuilder rexBuilder, List<RexNode> constExps,
       List<RexNode> reducedValues) {
-    final String code = compile(rexBuilder, constExps,
+    final Object[] values = new Object[constExps.size()];
+    final List<Integer> compiledOrdinals = new ArrayList<Integer>();
+    final List<RexNode> compiledExps = new ArrayList<RexNode>();
+    for (int i = 0; i < constExps.size(); i++) {
+      final RexNode constExp = constExps.get(i);
+      if (RexInterpreter.canInterpret(constExp)) {
+        try {
+          values[i] = RexInterpreter.evaluate(constExp, null);
+          continue;
+        } catch (UnsupportedOperationException e) {
+          // A value that the interpreter cannot handle, such as an integer
+          // overflow; use generated code.
+        }
+      }
+      compiledOrdinals.add(i);
+      compiledExps.add(constExp);
+    }
+    if (compiledExps.isEmpty()) {
+      RexExecutable.reduce(rexBuilder, constExps, values, null,
+          reducedValues);
+      return;
+    }
+
+    final String code = compile(rexBuilder, compiledExps,
         new RexToLixTranslator.InputGetter() {
           public Expression field(BlockBuilder list, int index,
               Type storageType) {
@@ -116,9 +152,14 @@ public Expression field(BlockBuilder list, int index,
           }
         });
 
-    final RexExecutable executable = new RexExecutable(code, constExps);
+    final RexExecutable executable =
+        new RexExecutable(code, compiledExps, cache);
     executable.setDataContext(dataContext);
-    executable.reduce(rexBuilder, constExps, reducedValues);
+    final Object[] compiledValues = executable.execute();
+    for (int i = 0; i < compiledOrdinals.size(); i++) {
+      values[compiledOrdinals.get(i)] = compiledValues[i];
+    }
+    RexExecutable.reduce(rexBuilder, constExps, values, code, reducedValues);
   }
 
   /**
@@ -0,0 +1,695 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eigenbase.rex;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.eigenbase.reltype.RelDataType;
+import org.eigenbase.sql.SqlKind;
+import org.eigenbase.sql.SqlOperator;
+import org.eigenbase.sql.fun.SqlStdOperatorTable;
+import org.eigenbase.sql.type.SqlTypeName;
+import org.eigenbase.util.NlsString;
+import org.eigenbase.util14.DateTimeUtil;
+
+import net.hydromatic.optiq.runtime.SqlFunctions;
+
+/**
+ * Evaluates {@link RexNode} expressions without generating code.
+ *
+ * <p>Supports literals, input references, arithmetic, comparisons, logical
+ * operators, {@code CASE}, numeric and character {@code CAST}, and a few
+ * string functions. Values have the same Java representation as in generated
+ * code: for example, an {@code INTEGER} value is an {@link Integer}, a
+ * {@code DOUBLE} value is a {@link Double}, a {@code VARCHAR} value is a
+ * {@link String}, and a {@code DATE} value is an {@link Integer} number of
+ * days since the epoch.</p>
+ *
+ * <p>Use {@link #canInterpret(RexNode)} to find out whether an expression
+ * uses only what the interpreter supports. Even so, if the result might not
+ * be identical to that of generated code (for instance, if integer
+ * arithmetic would overflow), throws {@link UnsupportedOperationException}.
+ * The caller should then evaluate the expression using generated code.</p>
+ */
+public class RexInterpreter implements RexVisitor<Object> {
+  /** Types of literal that {@link #visitLiteral(RexLiteral)} supports. */
+  private static final EnumSet<SqlTypeName> LITERAL_TYPES =
+      EnumSet.of(SqlTypeName.CHAR, SqlTypeName.VARCHAR, SqlTypeName.BOOLEAN,
+          SqlTypeName.DECIMAL, SqlTypeName.TINYINT, SqlTypeName.SMALLINT,
+          SqlTypeName.INTEGER, SqlTypeName.BIGINT, SqlTypeName.REAL,
+          SqlTypeName.FLOAT, SqlTypeName.DOUBLE, SqlTypeName.DATE,
+          SqlTypeName.TIME, SqlTypeName.TIMESTAMP);
+
+  private final Object[] row;
+
+  private RexInterpreter(Object[] row) {
+    this.row = row;
+  }
+
+  /** Evaluates an expression.
+   *
+   * @param e Expression
+   * @param row Values of input fields; may be null if the expression does not
+   *            reference any input fields
+   * @return Value of the expression
+   * @throws UnsupportedOperationException if the expression cannot be
+   *   interpreted
+   */
+  public static Object evaluate(RexNode e, Object[] row) {
+    return e.accept(new RexInterpreter(row));
+  }
+
+  /** Returns whether an expression consists only of operators, literals and
+   * types that this interpreter supports. Callers should check this before
+   * calling {@link #evaluate(RexNode, Object[])}, rather than relying on
+   * the exception.
+   *
+   * <p>If this method returns true, {@link #evaluate} may still throw, but
+   * only for particular values: an integer overflow, division by zero, or a
+   * result that is NaN or infinite.</p>
+   *
+   * @param e Expression
+   * @return Whether the expression can be interpreted
+   */
+  public static boolean canInterpret(RexNode e) {
+    if (e instanceof RexInputRef) {
+      return true;
+    }
+    if (e instanceof RexLiteral) {
+      return ((RexLiteral) e).getValue() == null
+          || LITERAL_TYPES.contains(e.getType().getSqlTypeName());
+    }
+    if (!(e instanceof RexCall) || e instanceof RexOver) {
+      return false;
+    }
+    final RexCall call = (RexCall) e;
+    final List<RexNode> operands = call.getOperands();
+    for (RexNode operand : operands) {
+      if (!canInterpret(operand)) {
+        return false;
+      }
+    }
+    switch (call.getKind()) {
+    case AND:
+    case OR:
+    case NOT:
+    case CASE:
+    case IS_NULL:
+    case IS_NOT_NULL:
+    case IS_TRUE:
+    case IS_NOT_TRUE:
+    case IS_FALSE:
+    case IS_NOT_FALSE:
+      return true;
+    case PLUS:
+    case MINUS:
+    case TIMES:
+    case DIVIDE:
+    case MINUS_PREFIX:
+    case PLUS_PREFIX:
+      return isJavaNumber(call.getType()) && allJavaNumbers(operands);
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      return comparable(operands.get(0).getType(), operands.get(1).getType());
+    case CAST:
+      return canCast(operands.get(0).getType(), call.getType());
+    }
+    final SqlOperator op = call.getOperator();
+    if (op == SqlStdOperatorTable.CONCAT
+        || op == SqlStdOperatorTable.UPPER
+        || op == SqlStdOperatorTable.LOWER) {
+      return allStrings(operands);
+    } else if (op == SqlStdOperatorTable.CHAR_LENGTH
+        || op == SqlStdOperatorTable.CHARACTER_LENGTH) {
+      return isJavaNumber(call.getType()) && allStrings(operands);
+    } else if (op == SqlStdOperatorTable.SUBSTRING) {
+      return allStrings(operands.subList(0, 1))
+          && allJavaNumbers(operands.subList(1, operands.size()));
+    }
+    return false;
+  }
+
+  /** Returns whether values of a type are represented as a Java number that
+   * {@link #number(Object)} accepts. */
+  private static boolean isJavaNumber(RelDataType type) {
+    final SqlTypeName typeName = type.getSqlTypeName();
+    return SqlTypeName.INT_TYPES.contains(typeName)
+        || SqlTypeName.APPROX_TYPES.contains(typeName);
+  }
+
+  private static boolean allJavaNumbers(List<RexNode> operands) {
+    for (RexNode operand : operands) {
+      if (!isJavaNumber(operand.getType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean allStrings(List<RexNode> operands) {
+    for (RexNode operand : operands) {
+      final SqlTypeName typeName = operand.getType().getSqlTypeName();
+      if (!SqlTypeName.CHAR_TYPES.contains(typeName)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns whether {@link #compare(RexCall, Object, Object)} can compare
+   * values of two types. DATE, TIME and TIMESTAMP values are Java numbers. */
+  private static boolean comparable(RelDataType type0, RelDataType type1) {
+    final SqlTypeName name0 = type0.getSqlTypeName();
+    final SqlTypeName name1 = type1.getSqlTypeName();
+    if (SqlTypeName.CHAR_TYPES.contains(name0)) {
+      return SqlTypeName.CHAR_TYPES.contains(name1);
+    }
+    if (name0 == SqlTypeName.BOOLEAN) {
+      return name1 == SqlTypeName.BOOLEAN;
+    }
+    return (isJavaNumber(type0) || SqlTypeName.DATETIME_TYPES.contains(name0))
+        && (isJavaNumber(type1) || SqlTypeName.DATETIME_TYPES.contains(name1));
+  }
+
+  /** Returns whether {@link #cast(RelDataType, RelDataType, Object)}
+   * supports a conversion. */
+  private static boolean canCast(RelDataType fromType, RelDataType toType) {
+    final SqlTypeName toName = toType.getSqlTypeName();
+    switch (toName) {
+    case TINYINT:
+    case SMALLINT:
+    case INTEGER:
+    case BIGINT:
+    case REAL:
+    case FLOAT:
+    case DOUBLE:
+      return isJavaNumber(fromType);
+    case CHAR:
+    case VARCHAR:
+      return SqlTypeName.CHAR_TYPES.contains(fromType.getSqlTypeName());
+    case BOOLEAN:
+    case DECIMAL:
+    case DATE:
+    case TIME:
+      return fromType.getSqlTypeName() == toName;
+    default:
+      return false;
+    }
+  }
+
+  private static UnsupportedOperationException unsupported(Object o) {
+    return new UnsupportedException("cannot interpret " + o);
+  }
+
+  public Object visitInputRef(RexInputRef inputRef) {
+    if (row == null) {
+      throw unsupported(inputRef);
+    }
+    return row[inputRef.getIndex()];
+  }
+
+  public Object visitLocalRef(RexLocalRef localRef) {
+    throw unsupported(localRef);
+  }
+
+  public Object visitLiteral(RexLiteral literal) {
+    final Comparable value = literal.getValue();
+    if (value == null) {
+      return null;
+    }
+    switch (literal.getType().getSqlTypeName()) {
+    case CHAR:
+    case VARCHAR:
+      return ((NlsString) value).getValue();
+    case BOOLEAN:
+    case DECIMAL:
+      return value;
+    case TINYINT:
+    case SMALLINT:
+    case INTEGER:
+    case BIGINT:
+    case REAL:
+    case FLOAT:
+    case DOUBLE:
+      return coerce((BigDecimal) value, literal.getType());
+    case DATE:
+      return (int)
+          (((Calendar) value).getTimeInMillis() / DateTimeUtil.MILLIS_PER_DAY);
+    case TIME:
+      return (int)
+          (((Calendar) value).getTimeInMillis() % DateTimeUtil.MILLIS_PER_DAY);
+    case TIMESTAMP:
+      return ((Calendar) value).getTimeInMillis();
+    default:
+      throw unsupported(literal);
+    }
+  }
+
+  public Object visitCall(RexCall call) {
+    final List<RexNode> operands = call.getOperands();
+    switch (call.getKind()) {
+    case AND:
+      return and(operands);
+    case OR:
+      return or(operands);
+    case CASE:
+      return case_(call);
+    case IS_NULL:
+      return operands.get(0).accept(this) == null;
+    case IS_NOT_NULL:
+      return operands.get(0).accept(this) != null;
+    case IS_TRUE:
+      return Boolean.TRUE.equals(operands.get(0).accept(this));
+    case IS_NOT_TRUE:
+      return !Boolean.TRUE.equals(operands.get(0).accept(this));
+    case IS_FALSE:
+      return Boolean.FALSE.equals(operands.get(0).accept(this));
+    case IS_NOT_FALSE:
+      return !Boolean.FALSE.equals(operands.get(0).accept(this));
+    }
+
+    // The remaining operators return null if any argument is null.
+    final List<Object> values = new ArrayList<Object>(operands.size());
+    for (RexNode operand : operands) {
+      final Object value = operand.accept(this);
+      if (value == null) {
+        return null;
+      }
+      values.add(value);
+    }
+    switch (call.getKind()) {
+    case NOT:
+      return !bool(values.get(0));
+    case PLUS:
+    case MINUS:
+    case TIMES:
+    case DIVIDE:
+      return arithmetic(call, values.get(0), values.get(1));
+    case MINUS_PREFIX:
+      return negate(call, values.get(0));
+    case PLUS_PREFIX:
+      return coerce(number(values.get(0)), call.getType());
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      return compare(call, values.get(0), values.get(1));
+    case CAST:
+      return cast(operands.get(0).getType(), call.getType(), values.get(0));
+    }
+    final SqlOperator op = call.getOperator();
+    if (op == SqlStdOperatorTable.CONCAT) {
+      return SqlFunctions.concat(string(values.get(0)), string(values.get(1)));
+    } else if (op == SqlStdOperatorTable.UPPER) {
+      return SqlFunctions.upper(string(values.get(0)));
+    } else if (op == SqlStdOperatorTable.LOWER) {
+      return SqlFunctions.lower(string(values.get(0)));
+    } else if (op == SqlStdOperatorTable.CHAR_LENGTH
+        || op == SqlStdOperatorTable.CHARACTER_LENGTH) {
+      return coerce(SqlFunctions.charLength(string(values.get(0))),
+          call.getType());
+    } else if (op == SqlStdOperatorTable.SUBSTRING) {
+      final String s = string(values.get(0));
+      final int from = number(values.get(1)).intValue();
+      return values.size() == 2
+          ? SqlFunctions.substring(s, from)
+          : SqlFunctions.substring(s, from, number(values.get(2)).intValue());
+    }
+    throw unsupported(call);
+  }
+
+  public Object visitOver(RexOver over) {
+    throw unsupported(over);
+  }
+
+  public Object visitCorrelVariable(RexCorrelVariable correlVariable) {
+    throw unsupported(correlVariable);
+  }
+
+  public Object visitDynamicParam(RexDynamicParam dynamicParam) {
+    throw unsupported(dynamicParam);
+  }
+
+  public Object visitRangeRef(RexRangeRef rangeRef) {
+    throw unsupported(rangeRef);
+  }
+
+  public Object visitFieldAccess(RexFieldAccess fieldAccess) {
+    throw unsupported(fieldAccess);
+  }
+
+  /** Evaluates AND using three-valued logic. Stops at the first FALSE. */
+  private Object and(List<RexNode> operands) {
+    boolean unknown = false;
+    for (RexNode operand : operands) {
+      final Object value = operand.accept(this);
+      if (value == null) {
+        unknown = true;
+      } else if (!bool(value)) {
+        return false;
+      }
+    }
+    return unknown ? null : true;
+  }
+
+  /** Evaluates OR using three-valued logic. Stops at the first TRUE. */
+  private Object or(List<RexNode> operands) {
+    boolean unknown = false;
+    for (RexNode operand : operands) {
+      final Object value = operand.accept(this);
+      if (value == null) {
+        unknown = true;
+      } else if (bool(value)) {
+        return true;
+      }
+    }
+    return unknown ? null : false;
+  }
+
+  /** Evaluates {@code CASE WHEN c0 THEN v0 ... ELSE vn END}. Operands are
+   * {@code [c0, v0, ..., vn]}. */
+  private Object case_(RexCall call) {
+    final List<RexNode> operands = call.getOperands();
+    int i = 0;
+    for (; i + 1 < operands.size(); i += 2) {
+      if (Boolean.TRUE.equals(operands.get(i).accept(this))) {
+        break;
+      }
+    }
+    final Object value = operands.get(i < operands.size() - 1 ? i + 1 : i)
+        .accept(this);
+    return value instanceof Number && !(value instanceof BigDecimal)
+        ? coerce((Number) value, call.getType())
+        : value;
+  }
+
+  /** Evaluates unary minus. */
+  private static Object negate(RexCall call, Object o) {
+    final Number n = number(o);
+    if (isIntegral(n)) {
+      final long x = n.longValue();
+      if (x == Long.MIN_VALUE) {
+        throw unsupported(call);
+      }
+      return coerce(-x, call.getType());
+    }
+    return n instanceof Double
+        ? coerce(-n.doubleValue(), call.getType())
+        : coerce(-n.floatValue(), call.getType());
+  }
+
+  /** Evaluates a binary arithmetic operator, using the same numeric
+   * promotion as Java. */
+  private static Object arithmetic(RexCall call, Object o0, Object o1) {
+    final Number n0 = number(o0);
+    final Number n1 = number(o1);
+    if (isIntegral(n0) && isIntegral(n1)) {
+      final BigInteger x = BigInteger.valueOf(n0.longValue());
+      final BigInteger y = BigInteger.valueOf(n1.longValue());
+      final BigInteger result;
+      switch (call.getKind()) {
+      case PLUS:
+        result = x.add(y);
+        break;
+      case MINUS:
+        result = x.subtract(y);
+        break;
+      case TIMES:
+        result = x.multiply(y);
+        break;
+      default:
+        if (y.signum() == 0) {
+          throw unsupported(call);
+        }
+        result = x.divide(y); // truncates, like Java
+        break;
+      }
+      // Java computes in int unless an argument is a long. If that would
+      // overflow, the result wraps; don't try to reproduce that.
+      final boolean isLong = n0 instanceof Long || n1 instanceof Long;
+      if (result.bitLength() > (isLong ? 63 : 31)) {
+        throw unsupported(call);
+      }
+      return coerce(result.longValue(), call.getType());
+    }
+    final double result;
+    if (n0 instanceof Double || n1 instanceof Double) {
+      final double x = n0.doubleValue();
+      final double y = n1.doubleValue();
+      switch (call.getKind()) {
+      case PLUS:
+        result = x + y;
+        break;
+      case MINUS:
+        result = x - y;
+        break;
+      case TIMES:
+        result = x * y;
+        break;
+      default:
+        result = x / y;
+        break;
+      }
+    } else {
+      final float x = n0.floatValue();
+      final float y = n1.floatValue();
+      switch (call.getKind()) {
+      case PLUS:
+        result = x + y;
+        break;
+      case MINUS:
+        result = x - y;
+        break;
+      case TIMES:
+        result = x * y;
+        break;
+      default:
+        result = x / y;
+        break;
+      }
+    }
+    if (Double.isNaN(result) || Double.isInfinite(result)) {
+      throw unsupported(call);
+    }
+    return coerce(result, call.getType());
+  }
+
+  /** Evaluates a comparison operator. Numbers are compared after Java numeric
+   * promotion, strings using {@link String#compareTo(String)}. */
+  private static Object compare(RexCall call, Object o0, Object o1) {
+    final int c;
+    if (o0 instanceof String && o1 instanceof String) {
+      c = ((String) o0).compareTo((String) o1);
+    } else if (o0 instanceof Boolean && o1 instanceof Boolean) {
+      switch (call.getKind()) {
+      case EQUALS:
+        return o0.equals(o1);
+      case NOT_EQUALS:
+        return !o0.equals(o1);
+      default:
+        throw unsupported(call);
+      }
+    } else {
+      final Number n0 = number(o0);
+      final Number n1 = number(o1);
+      if (isIntegral(n0) && isIntegral(n1)) {
+        final long x = n0.longValue();
+        final long y = n1.longValue();
+        c = x < y ? -1 : x == y ? 0 : 1;
+      } else if (n0 instanceof Double || n1 instanceof Double) {
+        final double x = n0.doubleValue();
+        final double y = n1.doubleValue();
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+          throw unsupported(call);
+        }
+        c = x < y ? -1 : x == y ? 0 : 1;
+      } else {
+        final float x = n0.floatValue();
+        final float y = n1.floatValue();
+        if (Float.isNaN(x) || Float.isNaN(y)) {
+          throw unsupported(call);
+        }
+        c = x < y ? -1 : x == y ? 0 : 1;
+      }
+    }
+    switch (call.getKind()) {
+    case EQUALS:
+      return c == 0;
+    case NOT_EQUALS:
+      return c != 0;
+    case LESS_THAN:
+      return c < 0;
+    case LESS_THAN_OR_EQUAL:
+      return c <= 0;
+    case GREATER_THAN:
+      return c > 0;
+    default:
+      return c >= 0;
+    }
+  }
+
+  /** Evaluates a CAST, following
+   * {@link net.hydromatic.optiq.rules.java.RexToLixTranslator}. */
+  private static Object cast(RelDataType fromType, RelDataType toType,
+      Object value) {
+    switch (toType.getSqlTypeName()) {
+    case TINYINT:
+    case SMALLINT:
+    case INTEGER:
+    case BIGINT:
+    case REAL:
+    case FLOAT:
+    case DOUBLE:
+      return coerce(number(value), toType);
+    case CHAR:
+    case VARCHAR:
+      switch (fromType.getSqlTypeName()) {
+      case CHAR:
+      case VARCHAR:
+        break;
+      default:
+        throw unsupported(toType);
+      }
+      String s = string(value);
+      if (fromType.getSqlTypeName() == SqlTypeName.CHAR
+          && toType.getSqlTypeName() == SqlTypeName.VARCHAR) {
+        s = SqlFunctions.rtrim(s);
+      }
+      final int precision = toType.getPrecision();
+      if (precision >= 0
+          && fromType.getPrecision() >= 0
+          && fromType.getPrecision() > precision) {
+        s = SqlFunctions.truncate(s, precision);
+      }
+      return s;
+    case BOOLEAN:
+    case DECIMAL:
+    case DATE:
+    case TIME:
+      if (fromType.getSqlTypeName() == toType.getSqlTypeName()) {
+        return value;
+      }
+      // fall through
+    default:
+      throw unsupported(toType);
+    }
+  }
+
+  /** Converts a number to the Java representation of a numeric type, as a
+   * Java cast would, provided that the value is in range. */
+  private static Object coerce(Number n, RelDataType type) {
+    switch (type.getSqlTypeName()) {
+    case REAL:
+    case FLOAT:
+      return n.floatValue();
+    case DOUBLE:
+      return n.doubleValue();
+    case TINYINT:
+      return (byte) integral(n, Byte.MIN_VALUE, Byte.MAX_VALUE);
+    case SMALLINT:
+      return (short) integral(n, Short.MIN_VALUE, Short.MAX_VALUE);
+    case INTEGER:
+      return (int) integral(n, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    case BIGINT:
+      return integral(n, Long.MIN_VALUE, Long.MAX_VALUE);
+    default:
+      throw unsupported(type);
+    }
+  }
+
+  /** Converts a number to a long, truncating any fraction. Throws if the
+   * result would be outside the given range. */
+  private static long integral(Number n, long min, long max) {
+    final BigDecimal d;
+    if (isIntegral(n)) {
+      d = BigDecimal.valueOf(n.longValue());
+    } else if (n instanceof BigDecimal) {
+      d = (BigDecimal) n;
+    } else {
+      final double x = n.doubleValue();
+      if (Double.isNaN(x) || Double.isInfinite(x)) {
+        throw unsupported(n);
+      }
+      d = new BigDecimal(x);
+    }
+    final BigInteger i = d.toBigInteger(); // truncates, like a Java cast
+    if (i.compareTo(BigInteger.valueOf(min)) < 0
+        || i.compareTo(BigInteger.valueOf(max)) > 0) {
+      throw unsupported(n);
+    }
+    return i.longValue();
+  }
+
+  private static boolean isIntegral(Number n) {
+    return n instanceof Integer
+        || n instanceof Long
+        || n instanceof Short
+        || n instanceof Byte;
+  }
+
+  /** Casts a value to a number that Java can do arithmetic on; throws for
+   * any other value, including {@link BigDecimal}. */
+  private static Number number(Object o) {
+    if (o instanceof Number
+        && (isIntegral((Number) o) || o instanceof Double
+            || o instanceof Float)) {
+      return (Number) o;
+    }
+    throw unsupported(o);
+  }
+
+  private static String string(Object o) {
+    if (o instanceof String) {
+      return (String) o;
+    }
+    throw unsupported(o);
+  }
+
+  private static boolean bool(Object o) {
+    if (o instanceof Boolean) {
+      return (Boolean) o;
+    }
+    throw unsupported(o);
+  }
+
+  /** Thrown if an expression cannot be interpreted. Does not fill in its
+   * stack trace: the caller is expected to catch it and fall back to
+   * generated code, so the trace would never be used. */
+  private static class UnsupportedException
+      extends UnsupportedOperationException {
+    UnsupportedException(String message) {
+      super(message);
+    }
+
+    @Override public Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+}
+
+// End RexInterpreter.java
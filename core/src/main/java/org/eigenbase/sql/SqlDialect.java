@@ -413,6 +413,116 @@ public boolean supportsCharSet() {
     }
   }
 
+  /**
+   * Returns whether the dialect can limit the number of rows that a query
+   * returns, for instance {@code FETCH NEXT 10 ROWS ONLY} or
+   * {@code LIMIT 10}.
+   *
+   * @see #unparseOffsetFetch
+   */
+  public boolean supportsFetch() {
+    switch (databaseProduct) {
+    case HIVE:
+    case PHOENIX:
+      return true;
+    default:
+      return supportsOffset();
+    }
+  }
+
+  /**
+   * Returns whether the dialect can skip the first rows that a query
+   * returns, for instance {@code OFFSET 10 ROWS} or {@code OFFSET 10}.
+   *
+   * @see #unparseOffsetFetch
+   */
+  public boolean supportsOffset() {
+    switch (databaseProduct) {
+    case DERBY:
+    case HSQLDB:
+    case INFOBRIGHT:
+    case LUCIDDB:
+    case MYSQL:
+    case NETEZZA:
+    case OPTIQ:
+    case PARACCEL:
+    case POSTGRESQL:
+    case VERTICA:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Writes the clauses that skip and limit the rows returned by a query, in
+   * the syntax of this dialect.
+   *
+   * @param writer Writer
+   * @param offset Number of rows to skip, or null
+   * @param fetch  Maximum number of rows to return, or null
+   */
+  public void unparseOffsetFetch(SqlWriter writer, SqlNode offset,
+      SqlNode fetch) {
+    switch (databaseProduct) {
+    case HIVE:
+    case INFOBRIGHT:
+    case MYSQL:
+    case NETEZZA:
+    case PARACCEL:
+    case PHOENIX:
+    case POSTGRESQL:
+    case VERTICA:
+      // "LIMIT n OFFSET m"
+      if (fetch != null
+          || offset != null && (databaseProduct == DatabaseProduct.MYSQL
+              || databaseProduct == DatabaseProduct.INFOBRIGHT)) {
+        final SqlWriter.Frame fetchFrame =
+            writer.startList(SqlWriter.FrameTypeEnum.FETCH);
+        writer.newlineAndIndent();
+        writer.keyword("LIMIT");
+        if (fetch != null) {
+          fetch.unparse(writer, -1, -1);
+        } else {
+          // MySQL does not allow OFFSET without LIMIT.
+          writer.literal("18446744073709551615");
+        }
+        writer.endList(fetchFrame);
+      }
+      if (offset != null) {
+        final SqlWriter.Frame offsetFrame =
+            writer.startList(SqlWriter.FrameTypeEnum.OFFSET);
+        writer.newlineAndIndent();
+        writer.keyword("OFFSET");
+        offset.unparse(writer, -1, -1);
+        writer.endList(offsetFrame);
+      }
+      break;
+    default:
+      // "OFFSET m ROWS FETCH NEXT n ROWS ONLY", per the SQL standard
+      if (offset != null) {
+        final SqlWriter.Frame offsetFrame =
+            writer.startList(SqlWriter.FrameTypeEnum.OFFSET);
+        writer.newlineAndIndent();
+        writer.keyword("OFFSET");
+        offset.unparse(writer, -1, -1);
+        writer.keyword("ROWS");
+        writer.endList(offsetFrame);
+      }
+      if (fetch != null) {
+        final SqlWriter.Frame fetchFrame =
+            writer.startList(SqlWriter.FrameTypeEnum.FETCH);
+        writer.newlineAndIndent();
+        writer.keyword("FETCH");
+        writer.keyword("NEXT");
+        fetch.unparse(writer, -1, -1);
+        writer.keyword("ROWS");
+        writer.keyword("ONLY");
+        writer.endList(fetchFrame);
+      }
+    }
+  }
+
   /**
    * A few utility functions copied from org.eigenbase.util.Util. We have
    * copied them because we wish to keep SqlDialect's dependencies to a
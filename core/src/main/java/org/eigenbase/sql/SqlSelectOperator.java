@@ -238,6 +238,10 @@ public void unparse(
       unparseListClause(writer, select.orderBy);
       writer.endList(orderFrame);
     }
+    if (select.offset != null || select.fetch != null) {
+      writer.getDialect().unparseOffsetFetch(writer, select.offset,
+          select.fetch);
+    }
     writer.endList(selectFrame);
   }
 
@@ -19,6 +19,9 @@
 import net.hydromatic.linq4j.Enumerable;
 import net.hydromatic.linq4j.Linq4j;
 
+import net.hydromatic.optiq.ColumnStatistic;
+import net.hydromatic.optiq.Histogram;
+import net.hydromatic.optiq.Table;
 import net.hydromatic.optiq.jdbc.JavaTypeFactoryImpl;
 
 import org.eigenbase.reltype.RelDataType;
@@ -26,7 +29,15 @@
 
 import org.junit.Test;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -349,6 +360,359 @@ public class ArrayTableTest {
         "Column(representation=ObjectArray(ordinal=2), value=[Bill, Sebastian, Theodore, Eric])");
   }
 
+  /** Tests that a column with long runs of equal values is run-length
+   * encoded, and that a reader can skip runs. */
+  @Test public void testRunLength() {
+    final ColumnLoader.ValueSet valueSet =
+        new ColumnLoader.ValueSet(int.class);
+    for (int i = 0; i < 3000; i++) {
+      valueSet.add(i / 1000 * 10);
+    }
+    final ArrayTable.Column pair = valueSet.freeze(0, null);
+    assertEquals(
+        ArrayTable.RepresentationType.RUN_LENGTH_PRIMITIVE_ARRAY,
+        pair.representation.getType());
+    assertEquals(3000, pair.representation.size(pair.dataSet));
+    assertEquals(0, pair.representation.getObject(pair.dataSet, 0));
+    assertEquals(0, pair.representation.getObject(pair.dataSet, 999));
+    assertEquals(10, pair.representation.getObject(pair.dataSet, 1000));
+    assertEquals(20, pair.representation.getInt(pair.dataSet, 2999));
+    assertEquals(3, pair.cardinality);
+
+    final ArrayTable.Content content =
+        new ArrayTable.Content(Arrays.asList(pair), 3000, -1);
+    final long[] longs = new long[4];
+    content.read(0, 998, 4, longs);
+    assertEquals("[0, 0, 10, 10]", Arrays.toString(longs));
+
+    // Rows 0 to 999 have value 0; the first row with value 20 is 2000.
+    assertEquals(2000, content.seek(0, 0, 3000, 15, 25));
+    assertEquals(2500, content.seek(0, 2500, 3000, 15, 25));
+    assertEquals(500, content.seek(0, 500, 3000, 0, 10));
+    assertEquals(1500, content.seek(0, 0, 1500, 15, 25));
+    assertEquals(3000, content.seek(0, 0, 3000, 30, 40));
+
+    // Permuting decodes and re-encodes.
+    final int[] sources = new int[3000];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = 2999 - i;
+    }
+    final Object permuted =
+        pair.representation.permute(pair.dataSet, sources);
+    assertEquals(20, pair.representation.getObject(permuted, 0));
+    assertEquals(0, pair.representation.getObject(permuted, 2999));
+  }
+
+  /** Tests that a column of large values that are close together is stored
+   * as offsets from the minimum value. */
+  @Test public void testFrameOfReference() {
+    final ColumnLoader.ValueSet valueSet =
+        new ColumnLoader.ValueSet(long.class);
+    final long base = 1400000000000L;
+    for (int i = 0; i < 100; i++) {
+      valueSet.add(base + (i * 37) % 100);
+    }
+    final ArrayTable.Column pair = valueSet.freeze(0, null);
+    assertEquals(
+        ArrayTable.RepresentationType.FRAME_OF_REFERENCE_PRIMITIVE_ARRAY,
+        pair.representation.getType());
+    final ArrayTable.FrameOfReferencePrimitiveArray representation =
+        (ArrayTable.FrameOfReferencePrimitiveArray) pair.representation;
+    assertEquals(base, representation.base);
+    assertEquals(
+        7,
+        ((ArrayTable.BitSlicedPrimitiveArray) representation.representation)
+            .bitCount);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(base + (i * 37) % 100,
+          representation.getObject(pair.dataSet, i));
+    }
+  }
+
+  /** Tests that columns moved off the heap return the same values. */
+  @Test public void testToDirect() {
+    final ColumnLoader.ValueSet bitSliced =
+        new ColumnLoader.ValueSet(int.class);
+    final ColumnLoader.ValueSet bytes = new ColumnLoader.ValueSet(int.class);
+    final ColumnLoader.ValueSet doubles =
+        new ColumnLoader.ValueSet(double.class);
+    final ColumnLoader.ValueSet strings =
+        new ColumnLoader.ValueSet(String.class);
+    for (int i = 0; i < 3000; i++) {
+      bitSliced.add(i % 10);
+      bytes.add(i % 200 - 100);
+      doubles.add(i * 1.5D);
+      strings.add(i % 3 == 0 ? "foo" : "bar");
+    }
+    for (ColumnLoader.ValueSet valueSet
+        : Arrays.asList(bitSliced, bytes, doubles, strings)) {
+      final ArrayTable.Column column = valueSet.freeze(0, null);
+      final ArrayTable.Column direct = column.toDirect();
+      assertEquals(asList(column), asList(direct));
+      final int[] sources = new int[3000];
+      for (int i = 0; i < sources.length; i++) {
+        sources[i] = 2999 - i;
+      }
+      assertEquals(asList(column.permute(sources)),
+          asList(direct.permute(sources)));
+    }
+
+    final ArrayTable.Content content =
+        new ArrayTable.Content(
+            Arrays.asList(bytes.freeze(0, null).toDirect(),
+                doubles.freeze(1, null).toDirect()),
+            3000, -1);
+    final long[] longs = new long[3];
+    content.read(0, 99, 3, longs);
+    assertEquals("[-1, 0, 1]", Arrays.toString(longs));
+    final double[] doubles2 = new double[2];
+    content.read(1, 2, 2, doubles2);
+    assertEquals("[3.0, 4.5]", Arrays.toString(doubles2));
+  }
+
+  /** Tests that columns written to a {@link ColumnFile} read back the same
+   * values. */
+  @Test public void testColumnFile() throws Exception {
+    final List<ColumnLoader.ValueSet> valueSets =
+        new ArrayList<ColumnLoader.ValueSet>();
+    final ColumnLoader.ValueSet bitSliced =
+        new ColumnLoader.ValueSet(int.class);
+    final ColumnLoader.ValueSet runLength =
+        new ColumnLoader.ValueSet(int.class);
+    final ColumnLoader.ValueSet frameOfReference =
+        new ColumnLoader.ValueSet(long.class);
+    final ColumnLoader.ValueSet doubles =
+        new ColumnLoader.ValueSet(double.class);
+    final ColumnLoader.ValueSet dictionary =
+        new ColumnLoader.ValueSet(String.class);
+    final ColumnLoader.ValueSet objects =
+        new ColumnLoader.ValueSet(String.class);
+    final ColumnLoader.ValueSet constant =
+        new ColumnLoader.ValueSet(int.class);
+    for (int i = 0; i < 3000; i++) {
+      bitSliced.add(i % 10);
+      runLength.add(i / 1000);
+      frameOfReference.add(1400000000000L + i % 100);
+      doubles.add(i * 1.5D);
+      dictionary.add(i % 3 == 0 ? "foo" : null);
+      objects.add("s" + i);
+      constant.add(7);
+    }
+    valueSets.addAll(
+        Arrays.asList(bitSliced, runLength, frameOfReference, doubles,
+            dictionary, objects, constant));
+    final List<ArrayTable.Column> columns = new ArrayList<ArrayTable.Column>();
+    for (int i = 0; i < valueSets.size(); i++) {
+      columns.add(valueSets.get(i).freeze(i, null));
+    }
+    final ArrayTable.Content content =
+        new ArrayTable.Content(columns, 3000, -1);
+    final JavaTypeFactoryImpl typeFactory = new JavaTypeFactoryImpl();
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("bitSliced", typeFactory.createType(int.class))
+            .add("runLength", typeFactory.createType(int.class))
+            .add("frameOfReference", typeFactory.createType(long.class))
+            .add("doubles", typeFactory.createType(double.class))
+            .add("dictionary", typeFactory.createType(String.class))
+            .add("objects", typeFactory.createType(String.class))
+            .add("constant", typeFactory.createType(int.class))
+            .build();
+    final File file = File.createTempFile("ArrayTableTest", ".columns");
+    try {
+      ColumnFile.write(content, rowType, file);
+      final ArrayTable.Content content2 = ColumnFile.read(file, rowType);
+      assertEquals(3000, content2.size);
+      assertEquals(-1, content2.sortField);
+      assertEquals(columns.size(), content2.columns.size());
+      for (int i = 0; i < columns.size(); i++) {
+        final ArrayTable.Column column = columns.get(i);
+        final ArrayTable.Column column2 = content2.columns.get(i);
+        assertEquals(column.representation.toString(),
+            column2.representation.toString());
+        assertEquals(column.cardinality, column2.cardinality);
+        assertEquals(String.valueOf(column.statistic),
+            String.valueOf(column2.statistic));
+        assertEquals(asList(column), asList(column2));
+      }
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /** Tests that a column file written by an earlier version, or a file that
+   * is not a column file, is ignored, and that a clone table backed by such a
+   * file loads from its source and overwrites the file. */
+  @Test public void testColumnFileOldVersion() throws Exception {
+    final JavaTypeFactoryImpl typeFactory = new JavaTypeFactoryImpl();
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createType(int.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final File file = File.createTempFile("ArrayTableTest", ".columns");
+    try {
+      // Header of a version 1 file, for a table of no rows and no columns.
+      final DataOutputStream out =
+          new DataOutputStream(new FileOutputStream(file));
+      out.writeInt(0x4F505451);
+      out.writeInt(1);
+      out.writeInt(0);
+      out.writeInt(-1);
+      out.writeInt(0);
+      out.close();
+      assertNull(ColumnFile.read(file, rowType));
+
+      final Enumerable<Object[]> enumerable =
+          Linq4j.asEnumerable(
+              Arrays.asList(
+                  new Object[]{100, "Bill"},
+                  new Object[]{200, "Eric"}));
+      final Table table =
+          CloneSchema.createCloneTable(typeFactory,
+              RelDataTypeImpl.proto(rowType), null, enumerable, false, file);
+      assertEquals(2d, table.getStatistic().getRowCount(), 0d);
+      final ArrayTable.Content content = ColumnFile.read(file, rowType);
+      assertNotNull(content);
+      assertEquals(2, content.size);
+      assertEquals(2, content.columns.size());
+
+      // A file that is not a column file is ignored too.
+      final DataOutputStream out2 =
+          new DataOutputStream(new FileOutputStream(file));
+      out2.writeUTF("not a column file");
+      out2.close();
+      assertNull(ColumnFile.read(file, rowType));
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /** Tests that a clone table ignores a column file written for a table
+   * with the same number of fields but different field names or types, and
+   * a column file that is truncated; it loads from its source and
+   * overwrites the file. */
+  @Test public void testColumnFileStale() throws Exception {
+    final JavaTypeFactoryImpl typeFactory = new JavaTypeFactoryImpl();
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createType(int.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final RelDataType renamedRowType =
+        typeFactory.builder()
+            .add("deptno", typeFactory.createType(int.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final RelDataType retypedRowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createType(long.class))
+            .add("name", typeFactory.createType(String.class))
+            .build();
+    final Enumerable<Object[]> enumerable =
+        Linq4j.asEnumerable(
+            Arrays.asList(
+                new Object[]{100, "Bill"},
+                new Object[]{200, "Eric"}));
+    final Enumerable<Object[]> enumerable2 =
+        Linq4j.asEnumerable(
+            Arrays.asList(
+                new Object[]{10L, "Sales"},
+                new Object[]{20L, "Marketing"},
+                new Object[]{30L, "HR"}));
+    final File file = File.createTempFile("ArrayTableTest", ".columns");
+    try {
+      CloneSchema.createCloneTable(typeFactory,
+          RelDataTypeImpl.proto(rowType), null, enumerable, false, file)
+          .getStatistic().getRowCount();
+      assertNotNull(ColumnFile.read(file, rowType));
+      assertNull(ColumnFile.read(file, renamedRowType));
+      assertNull(ColumnFile.read(file, retypedRowType));
+
+      // A field's type has changed; the table is loaded from its source.
+      final Table table =
+          CloneSchema.createCloneTable(typeFactory,
+              RelDataTypeImpl.proto(retypedRowType), null, enumerable2, false,
+              file);
+      assertEquals(3d, table.getStatistic().getRowCount(), 0d);
+      assertNull(ColumnFile.read(file, rowType));
+      final ArrayTable.Content content = ColumnFile.read(file, retypedRowType);
+      assertNotNull(content);
+      assertEquals(3, content.size);
+
+      // Truncate the file to half its length. Reading it fails, so the table
+      // is loaded from its source.
+      final byte[] bytes = new byte[(int) file.length()];
+      final DataInputStream in = new DataInputStream(new FileInputStream(file));
+      in.readFully(bytes);
+      in.close();
+      final FileOutputStream out = new FileOutputStream(file);
+      out.write(bytes, 0, bytes.length / 2);
+      out.close();
+      try {
+        final Object o = ColumnFile.read(file, retypedRowType);
+        fail("expected error, got " + o);
+      } catch (IOException e) {
+        // ok
+      }
+      final Table table2 =
+          CloneSchema.createCloneTable(typeFactory,
+              RelDataTypeImpl.proto(retypedRowType), null, enumerable2, false,
+              file);
+      assertEquals(3d, table2.getStatistic().getRowCount(), 0d);
+      assertEquals(3, ColumnFile.read(file, retypedRowType).size);
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /** Tests the statistics that {@link ColumnLoader} gathers about a
+   * column, and estimates made using its histogram. */
+  @Test public void testColumnStatistic() {
+    final ColumnLoader.ValueSet valueSet =
+        new ColumnLoader.ValueSet(Integer.class);
+    for (Integer i : Arrays.asList(null, 1, 2, 2, 2, 2, 3, 4, 5, null)) {
+      valueSet.add(i);
+    }
+    final ColumnStatistic statistic = valueSet.freeze(0, null).statistic;
+    assertEquals(5d, statistic.getDistinctCount(), 0d);
+    assertEquals(0.2d, statistic.getNullFraction(), 0d);
+    assertEquals(1, statistic.getMin());
+    assertEquals(5, statistic.getMax());
+
+    final Histogram histogram = statistic.getHistogram();
+    assertEquals(7, histogram.getBucketCount());
+    assertEquals("[1, 2, 2, 2, 2, 3, 4, 5]", histogram.toString());
+    assertEquals(0d, histogram.fractionBelow(0, true), 0d);
+    assertEquals(0d, histogram.fractionBelow(1, false), 0d);
+    assertEquals(1d, histogram.fractionBelow(5, true), 0d);
+    assertEquals(1d, histogram.fractionBelow(6, false), 0d);
+    // Values of other numeric types are compared by value.
+    assertEquals(5d / 7d, histogram.fractionBelow(3L, false), 1e-6);
+    assertEquals(5.5d / 7d, histogram.fractionBelow(3.5d, false), 1e-6);
+    assertNull(histogram.fractionBelow("x", false));
+
+    // 2 is a frequent value; 3 is not.
+    assertEquals(3d / 7d, histogram.fractionEqual(2), 1e-6);
+    assertEquals(0d, histogram.fractionEqual(3), 1e-6);
+
+    // The histogram of a large column has fewer buckets than values.
+    final List<Integer> values = new ArrayList<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      values.add(i);
+    }
+    final Histogram histogram2 = Histogram.of(values, 10);
+    assertEquals(10, histogram2.getBucketCount());
+    assertEquals(0.25d, histogram2.fractionBelow(250, false), 0.01d);
+  }
+
+  private static List asList(ArrayTable.Column column) {
+    return ArrayTable.Column.asList(column.representation, column.dataSet);
+  }
+
   private void checkColumn(ArrayTable.Column x,
       ArrayTable.RepresentationType expectedRepresentationType,
       String expectedString) {
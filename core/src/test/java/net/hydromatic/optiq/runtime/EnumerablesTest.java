@@ -17,14 +17,26 @@
 package net.hydromatic.optiq.runtime;
 
 import net.hydromatic.linq4j.Linq4j;
+import net.hydromatic.linq4j.Enumerable;
+import net.hydromatic.linq4j.QueryProvider;
+import net.hydromatic.linq4j.function.Function0;
 import net.hydromatic.linq4j.function.Function1;
+import net.hydromatic.linq4j.function.Function2;
 import net.hydromatic.linq4j.function.Functions;
 
+import net.hydromatic.optiq.DataContext;
+import net.hydromatic.optiq.SchemaPlus;
+import net.hydromatic.optiq.impl.java.JavaTypeFactory;
+
 import org.junit.Test;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -58,8 +70,182 @@ public Integer apply(Dept a0) {
         equalTo("[Emp(20, Theodore), Emp(20, Sebastian)]"));
   }
 
+  @Test public void testLongHashJoin() {
+    final Enumerable<Emp> emps =
+        Linq4j.asEnumerable(
+            Arrays.asList(
+                new Emp(10, "Fred"),
+                new Emp(20, "Theodore"),
+                new Emp(20, "Sebastian"),
+                new Emp(30, "Joe")));
+    final Enumerable<Dept> depts =
+        Linq4j.asEnumerable(
+            Arrays.asList(
+                new Dept(20, "Sales"),
+                new Dept(15, "Marketing")));
+    final Function1<Emp, Number> empKey =
+        new Function1<Emp, Number>() {
+          public Number apply(Emp a0) {
+            return a0.deptno;
+          }
+        };
+    final Function1<Dept, Number> deptKey =
+        new Function1<Dept, Number>() {
+          public Number apply(Dept a0) {
+            return a0.deptno;
+          }
+        };
+    final Function2<Emp, Dept, String> result =
+        new Function2<Emp, Dept, String>() {
+          public String apply(Emp v0, Dept v1) {
+            return v0 + "-" + v1;
+          }
+        };
+    final String inner =
+        "[Emp(20, Theodore)-Dept(20, Sales), Emp(20, Sebastian)-Dept(20, Sales)]";
+    for (boolean buildLeft : new boolean[] {false, true}) {
+      assertThat(
+          Enumerables.longHashJoin(emps, depts, empKey, deptKey, result,
+              false, false, buildLeft).toList().size(),
+          equalTo(2));
+    }
+    assertThat(
+        Enumerables.longHashJoin(emps, depts, empKey, deptKey, result,
+            false, false, false).toList().toString(),
+        equalTo(inner));
+
+    // Full outer join, building on either side.
+    for (boolean buildLeft : new boolean[] {false, true}) {
+      assertThat(
+          Enumerables.longHashJoin(emps, depts, empKey, deptKey, result,
+              true, true, buildLeft)
+              .orderBy(Functions.<String>identitySelector())
+              .toList().toString(),
+          equalTo("[Emp(10, Fred)-null, Emp(20, Sebastian)-Dept(20, Sales), "
+              + "Emp(20, Theodore)-Dept(20, Sales), Emp(30, Joe)-null, "
+              + "null-Dept(15, Marketing)]"));
+    }
+  }
+
+  /** Tests that sort, aggregate and join return the same results when they
+   * spill to disk as when they run in memory. */
+  @Test public void testSpill() {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      list.add((i * 37) % 101);
+    }
+    final Enumerable<Integer> ints = Linq4j.asEnumerable(list);
+    final MemoryBudget budget = new MemoryBudget(1000, null);
+    final DataContext root = dataContext(budget);
+    final Function1<Integer, Integer> identity =
+        Functions.identitySelector();
+
+    // Sort.
+    assertThat(Enumerables.orderBy(ints, identity, null, root).toList(),
+        equalTo(Enumerables.orderBy(ints, identity, null, null).toList()));
+    assertThat(budget.getSpillCount() > 0, is(true));
+    assertThat(budget.getUsed(), equalTo(0L));
+
+    // Aggregate. 101 groups do not fit into the budget.
+    final long spillCount = budget.getSpillCount();
+    final Function0<Integer> zero =
+        new Function0<Integer>() {
+          public Integer apply() {
+            return 0;
+          }
+        };
+    final Function2<Integer, Integer, Integer> count =
+        new Function2<Integer, Integer, Integer>() {
+          public Integer apply(Integer v0, Integer v1) {
+            return v0 + 1;
+          }
+        };
+    final Function2<Integer, Integer, String> format =
+        new Function2<Integer, Integer, String>() {
+          public String apply(Integer v0, Integer v1) {
+            return v0 + ":" + v1;
+          }
+        };
+    assertThat(
+        Enumerables.groupBy(ints, identity, zero, count, format, null, root)
+            .orderBy(Functions.<String>identitySelector()).toList(),
+        equalTo(
+            Enumerables.groupBy(ints, identity, zero, count, format, null,
+                null)
+                .orderBy(Functions.<String>identitySelector()).toList()));
+    assertThat(budget.getSpillCount() > spillCount, is(true));
+    assertThat(budget.getUsed(), equalTo(0L));
+
+    // Join, building on either side, inner and full outer.
+    final List<Emp> empList = new ArrayList<Emp>();
+    for (int i = 0; i < 200; i++) {
+      empList.add(new Emp(i % 60, "e" + i));
+    }
+    final List<Dept> deptList = new ArrayList<Dept>();
+    for (int i = 0; i < 50; i++) {
+      deptList.add(new Dept(i, "d" + i));
+    }
+    final Enumerable<Emp> emps = Linq4j.asEnumerable(empList);
+    final Enumerable<Dept> depts = Linq4j.asEnumerable(deptList);
+    final Function1<Emp, Number> empKey =
+        new Function1<Emp, Number>() {
+          public Number apply(Emp a0) {
+            return a0.deptno;
+          }
+        };
+    final Function1<Dept, Number> deptKey =
+        new Function1<Dept, Number>() {
+          public Number apply(Dept a0) {
+            return a0.deptno;
+          }
+        };
+    final Function2<Emp, Dept, String> result =
+        new Function2<Emp, Dept, String>() {
+          public String apply(Emp v0, Dept v1) {
+            return v0 + "-" + v1;
+          }
+        };
+    for (boolean outer : new boolean[] {false, true}) {
+      for (boolean buildLeft : new boolean[] {false, true}) {
+        final long joinSpillCount = budget.getSpillCount();
+        assertThat(
+            Enumerables.longHashJoin(emps, depts, empKey, deptKey, result,
+                outer, outer, buildLeft, root)
+                .orderBy(Functions.<String>identitySelector()).toList(),
+            equalTo(
+                Enumerables.longHashJoin(emps, depts, empKey, deptKey, result,
+                    outer, outer, buildLeft)
+                    .orderBy(Functions.<String>identitySelector()).toList()));
+        assertThat(budget.getSpillCount() > joinSpillCount, is(true));
+        assertThat(budget.getUsed(), equalTo(0L));
+      }
+    }
+  }
+
+  private static DataContext dataContext(final MemoryBudget budget) {
+    return new DataContext() {
+      public SchemaPlus getRootSchema() {
+        return null;
+      }
+
+      public JavaTypeFactory getTypeFactory() {
+        return null;
+      }
+
+      public QueryProvider getQueryProvider() {
+        return null;
+      }
+
+      public Object get(String name) {
+        return DataContext.Variable.MEMORY_BUDGET.camelName.equals(name)
+            ? budget
+            : null;
+      }
+    };
+  }
+
   /** Employee record. */
-  private static class Emp {
+  private static class Emp implements Serializable {
     final int deptno;
     final String name;
 
@@ -74,7 +260,7 @@ private static class Emp {
   }
 
   /** Department record. */
-  private static class Dept {
+  private static class Dept implements Serializable {
     final int deptno;
     final String name;
 
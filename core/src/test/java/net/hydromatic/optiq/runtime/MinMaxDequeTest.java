@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link net.hydromatic.optiq.runtime.MinMaxDeque}.
+ */
+public class MinMaxDequeTest {
+  @Test public void testMin() {
+    final MinMaxDeque deque = new MinMaxDeque(true);
+    assertTrue(deque.isEmpty());
+    assertNull(deque.get());
+    deque.add(0, 5);
+    deque.add(1, 3);
+    deque.add(2, 4);
+    assertEquals(3, deque.get());
+    deque.remove(0);
+    assertEquals(3, deque.get());
+    deque.remove(1);
+    assertEquals(4, deque.get());
+    deque.add(3, 4);
+    deque.remove(2);
+    assertEquals(4, deque.get());
+    deque.remove(3);
+    assertTrue(deque.isEmpty());
+  }
+
+  @Test public void testMax() {
+    final MinMaxDeque deque = new MinMaxDeque(false);
+    deque.add(0, "b");
+    deque.add(1, "a");
+    deque.add(2, "c");
+    assertEquals("c", deque.get());
+    deque.remove(1);
+    assertEquals("c", deque.get());
+  }
+
+  /** Compares the results of sliding windows of various widths against
+   * brute force. Uses enough values that the deque grows. */
+  @Test public void testSlidingWindow() {
+    final Random random = new Random(123);
+    final int[] values = new int[200];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextInt(50);
+    }
+    for (int width : new int[] {1, 2, 5, 17, 100}) {
+      final MinMaxDeque min = new MinMaxDeque(true);
+      final MinMaxDeque max = new MinMaxDeque(false);
+      for (int i = 0; i < values.length; i++) {
+        min.add(i, values[i]);
+        max.add(i, values[i]);
+        min.remove(i - width);
+        max.remove(i - width);
+        int expectedMin = Integer.MAX_VALUE;
+        int expectedMax = Integer.MIN_VALUE;
+        for (int j = Math.max(0, i - width + 1); j <= i; j++) {
+          expectedMin = Math.min(expectedMin, values[j]);
+          expectedMax = Math.max(expectedMax, values[j]);
+        }
+        assertEquals(expectedMin, min.get());
+        assertEquals(expectedMax, max.get());
+      }
+    }
+  }
+}
+
+// End MinMaxDequeTest.java
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq.runtime;
+
+import net.hydromatic.linq4j.Linq4j;
+import net.hydromatic.linq4j.function.Function1;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link net.hydromatic.optiq.runtime.SortedMultiMap}.
+ */
+public class SortedMultiMapTest {
+  private static final Function1<String, Character> FIRST_CHAR =
+      new Function1<String, Character>() {
+        public Character apply(String a0) {
+          return a0 == null ? null : a0.charAt(0);
+        }
+      };
+
+  private static final Comparator<String> REVERSE =
+      new Comparator<String>() {
+        public int compare(String o1, String o2) {
+          return o2.compareTo(o1);
+        }
+      };
+
+  @Test public void testAdjacentArrays() {
+    assertEquals("[[a1, a2], [b2, b1], [null], [c1]]",
+        toString(
+            SortedMultiMap.adjacentArrays(
+                Linq4j.asEnumerable(
+                    Arrays.asList("a1", "a2", "b2", "b1", null, "c1")),
+                FIRST_CHAR, null)));
+    assertEquals("[[a2, a1], [b2, b1]]",
+        toString(
+            SortedMultiMap.adjacentArrays(
+                Linq4j.asEnumerable(Arrays.asList("a1", "a2", "b2", "b1")),
+                FIRST_CHAR, REVERSE)));
+    assertEquals("[]",
+        toString(
+            SortedMultiMap.adjacentArrays(
+                Linq4j.asEnumerable(new ArrayList<String>()),
+                FIRST_CHAR, null)));
+  }
+
+  /** Prints arrays. They are really {@code Object[]}, so the element type
+   * must not be {@code String[]}, or the compiler would insert a cast. */
+  private static String toString(Iterator<? extends Object[]> iterator) {
+    final List<String> list = new ArrayList<String>();
+    while (iterator.hasNext()) {
+      list.add(Arrays.toString(iterator.next()));
+    }
+    return list.toString();
+  }
+}
+
+// End SortedMultiMapTest.java
@@ -87,6 +87,30 @@ public class JdbcAdapterTest {
             + "store_id=16; store_name=Store 16\n"
             + "store_id=24; store_name=Store 24\n");
   }
+
+  /** Tests that ORDER BY, OFFSET and FETCH are pushed down to the back-end
+   * database. */
+  @Test public void testSortOffsetFetchPlan() {
+    OptiqAssert.that()
+        .withModel(JdbcTest.FOODMART_MODEL)
+        .query(
+            "select \"store_id\", \"store_name\" from \"store\"\n"
+            + "where \"store_id\" > 0\n"
+            + "order by \"store_id\" offset 2 rows fetch next 3 rows only")
+        .runs()
+        .enable(OptiqAssert.CONNECTION_SPEC.url.startsWith("jdbc:hsqldb:"))
+        .planHasSql(
+            "SELECT \"store_id\", \"store_name\"\n"
+            + "FROM \"foodmart\".\"store\"\n"
+            + "WHERE \"store_id\" > 0\n"
+            + "ORDER BY \"store_id\"\n"
+            + "OFFSET 2 ROWS\n"
+            + "FETCH NEXT 3 ROWS ONLY")
+        .returns(
+            "store_id=3; store_name=Store 3\n"
+            + "store_id=4; store_name=Store 4\n"
+            + "store_id=5; store_name=Store 5\n");
+  }
 }
 
 // End JdbcAdapterTest.java
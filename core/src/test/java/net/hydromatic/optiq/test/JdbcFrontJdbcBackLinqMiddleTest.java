@@ -271,17 +271,18 @@ public class JdbcFrontJdbcBackLinqMiddleTest {
   }
 
   @Test public void testPlan3() {
-    // Plan should contain 'join'. If it doesn't, maybe int-vs-Integer
-    // data type incompatibility has caused it to use a cartesian product
-    // instead, and that would be wrong.
+    // Plan should contain a hash join on integer keys. If it doesn't, maybe
+    // int-vs-Integer data type incompatibility has caused it to use a
+    // cartesian product instead, and that would be wrong.
     //
-    // inventory_fact_1997 is on the LHS because it is larger than store.
+    // inventory_fact_1997 is on the LHS because it is larger than store;
+    // the hash table is built on store, the RHS.
     that()
         .with(OptiqAssert.Config.FOODMART_CLONE)
         .query(
             "select \"store\".\"store_country\" as \"c0\", sum(\"inventory_fact_1997\".\"supply_time\") as \"m0\" from \"store\" as \"store\", \"inventory_fact_1997\" as \"inventory_fact_1997\" where \"inventory_fact_1997\".\"store_id\" = \"store\".\"store_id\" group by \"store\".\"store_country\"")
         .planContains(
-            "  final net.hydromatic.linq4j.Enumerable _inputEnumerable1 = left.join(right, new net.hydromatic.linq4j.function.Function1() {\n");
+            "  final net.hydromatic.linq4j.Enumerable _inputEnumerable1 = net.hydromatic.optiq.runtime.Enumerables.longHashJoin(left, right, new net.hydromatic.linq4j.function.Function1() {\n");
   }
 }
 
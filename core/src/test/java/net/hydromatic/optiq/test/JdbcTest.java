@@ -20,6 +20,7 @@
 
 import net.hydromatic.linq4j.*;
 import net.hydromatic.linq4j.expressions.Types;
+import net.hydromatic.linq4j.function.Function0;
 import net.hydromatic.linq4j.function.Function1;
 import net.hydromatic.linq4j.function.Function2;
 
@@ -34,10 +35,14 @@
 import net.hydromatic.optiq.impl.jdbc.JdbcSchema;
 import net.hydromatic.optiq.jdbc.*;
 import net.hydromatic.optiq.jdbc.Driver;
+import net.hydromatic.optiq.prepare.CompiledClassCache;
 import net.hydromatic.optiq.prepare.OptiqPrepareImpl;
 import net.hydromatic.optiq.prepare.Prepare;
+import net.hydromatic.optiq.runtime.EnumeratorCloser;
 import net.hydromatic.optiq.runtime.Hook;
+import net.hydromatic.optiq.runtime.ResultSetEnumerable;
 import net.hydromatic.optiq.runtime.SqlFunctions;
+import net.hydromatic.optiq.runtime.Vectors;
 import net.hydromatic.optiq.tools.SqlRun;
 
 import org.eigenbase.rel.*;
@@ -971,6 +976,32 @@ public Object apply(OptiqConnection c) {
     connection.close();
   }
 
+  /** As {@link #testCloneSchema()} but storing column values off-heap. */
+  @Test public void testCloneSchemaOffHeap()
+      throws ClassNotFoundException, SQLException {
+    final OptiqConnection connection =
+        OptiqAssert.getConnection(OptiqAssert.SchemaSpec.JDBC_FOODMART);
+    final SchemaPlus rootSchema = connection.getRootSchema();
+    final SchemaPlus foodmart = rootSchema.getSubSchema("foodmart");
+    rootSchema.add("foodmart2", new CloneSchema(foodmart, true));
+    Statement statement = connection.createStatement();
+    ResultSet resultSet =
+        statement.executeQuery(
+            "select \"the_year\", count(*), sum(\"month_of_year\")\n"
+            + "from \"foodmart2\".\"time_by_day\"\n"
+            + "group by \"the_year\"\n"
+            + "order by 1");
+    assertTrue(resultSet.next());
+    assertEquals(1997, resultSet.getInt(1));
+    assertEquals(365, resultSet.getInt(2));
+    assertEquals(2382, resultSet.getInt(3));
+    assertTrue(resultSet.next());
+    assertEquals(1998, resultSet.getInt(1));
+    assertFalse(resultSet.next());
+    resultSet.close();
+    connection.close();
+  }
+
   @Test public void testCloneGroupBy() {
     OptiqAssert.that()
         .with(OptiqAssert.Config.FOODMART_CLONE)
@@ -1390,6 +1421,119 @@ public Object apply(OptiqConnection c) {
         .returnsCount(730);
   }
 
+  /** Tests the "jdbcFetchSize" and "jdbcPrefetchSize" connection
+   * properties, which read rows from the JDBC adapter in larger batches and
+   * on a background thread. */
+  @Test public void testJdbcPrefetch() {
+    final OptiqAssert.AssertThat with =
+        OptiqAssert.that()
+            .with(
+                ImmutableMap.of("model", "inline:" + FOODMART_MODEL,
+                    "jdbcFetchSize", "7",
+                    "jdbcPrefetchSize", "5"));
+    with.query("select \"time_id\" from \"foodmart\".\"time_by_day\"")
+        .returnsCount(730);
+    // The consumer stops after 3 rows, while the background thread is
+    // waiting to add more rows to the buffer.
+    with.query("select \"time_id\" from \"foodmart\".\"time_by_day\"\n"
+            + "limit 3")
+        .returnsCount(3);
+    with.query("select count(*) as c\n"
+            + "from \"foodmart\".\"time_by_day\" as t\n"
+            + "join \"foodmart\".\"sales_fact_1997\" as s\n"
+            + "on t.\"time_id\" = s.\"time_id\"")
+        .returns("C=86837\n");
+  }
+
+  /** Tests the "jdbcParallel" connection property, with a query that joins
+   * tables from two JDBC schemas, each of which sends a query to its
+   * back-end. */
+  @Test public void testJdbcParallel() {
+    final String model =
+        "{\n"
+        + "  version: '1.0',\n"
+        + "  defaultSchema: 'foodmart',\n"
+        + "   schemas: [\n"
+        + FOODMART_SCHEMA
+        + ",\n"
+        + FOODMART_SCHEMA.replace("name: 'foodmart'", "name: 'foodmart2'")
+        + "   ]\n"
+        + "}";
+    final String sql = "select count(*) as c\n"
+        + "from \"foodmart\".\"time_by_day\" as t\n"
+        + "join \"foodmart2\".\"sales_fact_1997\" as s\n"
+        + "on t.\"time_id\" = s.\"time_id\"";
+    for (String parallel : new String[] {"false", "true"}) {
+      OptiqAssert.that()
+          .with(
+              ImmutableMap.of("model", "inline:" + model,
+                  "jdbcParallel", parallel))
+          .query(sql)
+          .returns("C=86837\n");
+    }
+  }
+
+  /** Tests that, with the "jdbcParallel" connection property, a back-end
+   * query whose rows are never read is stopped when the statement's result
+   * set is closed. */
+  @Test public void testJdbcParallelUnread() {
+    final EnumeratorCloser closer = new EnumeratorCloser();
+    final DataContext dataContext = new DataContext() {
+      public SchemaPlus getRootSchema() {
+        return null;
+      }
+
+      public JavaTypeFactory getTypeFactory() {
+        return null;
+      }
+
+      public QueryProvider getQueryProvider() {
+        return null;
+      }
+
+      public Object get(String name) {
+        return DataContext.Variable.JDBC_PARALLEL.camelName.equals(name)
+            ? Boolean.TRUE
+            : DataContext.Variable.ENUMERATOR_CLOSER.camelName.equals(name)
+            ? closer
+            : null;
+      }
+    };
+    final DataSource dataSource =
+        JdbcSchema.dataSource(OptiqAssert.CONNECTION_SPEC.url,
+            OptiqAssert.CONNECTION_SPEC.driver,
+            OptiqAssert.CONNECTION_SPEC.username,
+            OptiqAssert.CONNECTION_SPEC.password);
+    final Enumerable<Object> enumerable =
+        ResultSetEnumerable.of(dataSource,
+            "select \"time_id\" from \"foodmart\".\"time_by_day\"",
+            new Function1<ResultSet, Function0<Object>>() {
+              public Function0<Object> apply(final ResultSet resultSet) {
+                return new Function0<Object>() {
+                  public Object apply() {
+                    try {
+                      return resultSet.getObject(1);
+                    } catch (SQLException e) {
+                      throw new RuntimeException(e);
+                    }
+                  }
+                };
+              }
+            },
+            dataContext);
+
+    // Close the statement's result set without reading the query's rows.
+    closer.wrap(Linq4j.emptyEnumerator()).close();
+
+    // The buffered enumerator has been closed, so returns no rows.
+    final Enumerator<Object> enumerator = enumerable.enumerator();
+    assertThat(enumerator.moveNext(), is(false));
+    enumerator.close();
+
+    // A second enumerator executes the query again.
+    assertThat(enumerable.count(), equalTo(730));
+  }
+
   /** Tests 3-way AND.
    *
    * <p>With <a href="https://issues.apache.org/jira/browse/OPTIQ-127">OPTIQ-127,
@@ -3901,6 +4045,107 @@ private void startOfGroupStep3(String startOfGroup) {
             "empid=200; commission=500; M=260");
   }
 
+  /** Tests aggregate functions over a sliding window. As the frame moves,
+   * each row that leaves it is removed from the accumulators, rather than
+   * the frame being recomputed. */
+  @Test public void testSlidingWindow() {
+    OptiqAssert.that()
+        .with(OptiqAssert.Config.REGULAR)
+        .query(
+            "select \"empid\",\n"
+            + "  sum(\"salary\") over w as s,\n"
+            + "  min(\"salary\") over w as mi,\n"
+            + "  max(\"commission\") over w as ma,\n"
+            + "  count(\"commission\") over w as c,\n"
+            + "  sum(\"commission\") over w as sc\n"
+            + "from \"hr\".\"emps\"\n"
+            + "window w as (order by \"empid\" rows 1 preceding)")
+        .returnsUnordered(
+            "empid=100; S=10000.0; MI=10000.0; MA=1000; C=1; SC=1000",
+            "empid=110; S=21500.0; MI=10000.0; MA=1000; C=2; SC=1250",
+            "empid=150; S=18500.0; MI=7000.0; MA=250; C=1; SC=250",
+            "empid=200; S=15000.0; MI=7000.0; MA=500; C=1; SC=500");
+    OptiqAssert.that()
+        .with(OptiqAssert.Config.REGULAR)
+        .query(
+            "select \"empid\",\n"
+            + "  sum(\"commission\") over w as sc,\n"
+            + "  max(\"commission\") over w as ma,\n"
+            + "  min(\"empid\") over (order by \"empid\"\n"
+            + "    rows between current row and unbounded following) as m\n"
+            + "from \"hr\".\"emps\"\n"
+            + "window w as (order by \"empid\"\n"
+            + "  rows between current row and current row)")
+        .returnsUnordered(
+            "empid=100; SC=1000; MA=1000; M=100",
+            "empid=110; SC=250; MA=250; M=110",
+            "empid=150; SC=null; MA=null; M=150",
+            "empid=200; SC=500; MA=500; M=200");
+  }
+
+  /** Tests SUM and AVG of DOUBLE values over a sliding window. Subtracting
+   * a floating-point value does not undo adding it, so these aggregates
+   * must be recomputed as the frame moves: removing 1e16 from
+   * 1e16 + 1 gives 0, not 1, and removing infinity from infinity gives
+   * NaN. */
+  @Test public void testSlidingWindowDouble() {
+    OptiqAssert.that()
+        .with(OptiqAssert.Config.REGULAR)
+        .query(
+            "select \"empid\",\n"
+            + "  sum(d) over w as s,\n"
+            + "  avg(d) over w as a\n"
+            + "from (\n"
+            + "  select \"empid\",\n"
+            + "    case when \"empid\" = 100 then 1e16 else 1 end as d\n"
+            + "  from \"hr\".\"emps\")\n"
+            + "window w as (order by \"empid\" rows 1 preceding)")
+        .returnsUnordered(
+            "empid=100; S=1.0E16; A=1.0E16",
+            "empid=110; S=1.0E16; A=5.0E15",
+            "empid=150; S=2.0; A=1.0",
+            "empid=200; S=2.0; A=1.0");
+    OptiqAssert.that()
+        .with(OptiqAssert.Config.REGULAR)
+        .query(
+            "select \"empid\",\n"
+            + "  sum(d) over w as s\n"
+            + "from (\n"
+            + "  select \"empid\",\n"
+            + "    case when \"empid\" = 100 then \"salary\" * 1e308\n"
+            + "      else 1 end as d\n"
+            + "  from \"hr\".\"emps\")\n"
+            + "window w as (order by \"empid\" rows 1 preceding)")
+        .returnsUnordered(
+            "empid=100; S=Infinity",
+            "empid=110; S=Infinity",
+            "empid=150; S=2.0",
+            "empid=200; S=2.0");
+  }
+
+  /** Tests windowed aggregation over an input that is already sorted on the
+   * partition and order keys, which can be read a partition at a time. */
+  @Test public void testWinAggSortedInput() {
+    OptiqAssert.that()
+        .with(OptiqAssert.Config.REGULAR)
+        .query(
+            "select \"deptno\", \"empid\",\n"
+            + "  count(*) over w as c,\n"
+            + "  sum(\"salary\") over w as s\n"
+            + "from (\n"
+            + "  select * from \"hr\".\"emps\"\n"
+            + "  order by \"deptno\", \"empid\" fetch next 10 rows only)\n"
+            + "window w as (partition by \"deptno\" order by \"empid\"\n"
+            + "  rows 1 preceding)")
+        .returnsUnordered(
+            "deptno=10; empid=100; C=1; S=10000.0",
+            "deptno=10; empid=110; C=2; S=21500.0",
+            "deptno=10; empid=150; C=2; S=18500.0",
+            "deptno=20; empid=200; C=1; S=8000.0")
+        .planContains(
+            "net.hydromatic.optiq.runtime.SortedMultiMap.adjacentArrays(");
+  }
+
   /** Tests windowed aggregation with no ORDER BY clause.
    *
    * <p>Test case for
@@ -4072,11 +4317,38 @@ private void startOfGroupStep3(String startOfGroup) {
         .query(
             "select * from \"hr\".\"emps\"\n"
             + "where \"name\" like '%i__'")
+        .planContains(
+            "static final net.hydromatic.optiq.runtime.Like.Matcher $L4J$C$")
         .returns(
             "empid=100; deptno=10; name=Bill; salary=10000.0; commission=1000\n"
             + "empid=150; deptno=10; name=Sebastian; salary=7000.0; commission=null\n");
   }
 
+  /** Tests LIKE with patterns that are matched without a regular
+   * expression, and with a pattern that is not constant. */
+  @Test public void testLikeSimplePatterns() {
+    final OptiqAssert.AssertThat with =
+        OptiqAssert.that().with(OptiqAssert.Config.REGULAR);
+    with.query(
+        "select \"name\" from \"hr\".\"emps\" where \"name\" like 'E%'")
+        .returns("name=Eric\n");
+    with.query(
+        "select \"name\" from \"hr\".\"emps\" where \"name\" like '%ore'")
+        .returns("name=Theodore\n");
+    with.query(
+        "select \"name\" from \"hr\".\"emps\" where \"name\" like '%ill%'")
+        .returns("name=Bill\n");
+    with.query(
+        "select \"name\" from \"hr\".\"emps\"\n"
+        + "where \"name\" not like 'Bill'")
+        .returnsUnordered("name=Eric", "name=Sebastian", "name=Theodore");
+    with.query(
+        "select \"name\" from \"hr\".\"emps\"\n"
+        + "where \"name\" like substring(\"name\" from 1 for 2) || '%'")
+        .returnsUnordered("name=Bill", "name=Eric", "name=Sebastian",
+            "name=Theodore");
+  }
+
   /** Tests array index. */
   @Test public void testArrayIndexing() {
     OptiqAssert.that()
@@ -5841,6 +6113,308 @@ public Void apply(Object[] args) {
     }
   }
 
+  /** Tests that a statement prepared a second time re-uses the class compiled
+   * the first time. */
+  @Test public void testCompiledClassCache() {
+    final List<CompiledClassCache.Statistics> statisticsList =
+        new ArrayList<CompiledClassCache.Statistics>();
+    final Hook.Closeable hook = Hook.COMPILED_CLASS_CACHE.addThread(
+        new Function<CompiledClassCache.Statistics, Void>() {
+          public Void apply(CompiledClassCache.Statistics statistics) {
+            if (statistics.name.equals("bindable")) {
+              statisticsList.add(statistics);
+            }
+            return null;
+          }
+        });
+    try {
+      testGroupByNull();
+      testGroupByNull();
+      assertThat(statisticsList.size(), equalTo(2));
+      assertThat(statisticsList.get(1).hitCount,
+          equalTo(statisticsList.get(0).hitCount + 1));
+      assertThat(statisticsList.get(1).missCount,
+          equalTo(statisticsList.get(0).missCount));
+    } finally {
+      hook.close();
+    }
+  }
+
+  /** Tests the plan cache, enabled by the "planCacheSize" connection
+   * property. A repeated statement is not parsed again, until the schema
+   * changes. */
+  @Test public void testPlanCache() throws Exception {
+    Class.forName("net.hydromatic.optiq.jdbc.Driver");
+    Properties info = new Properties();
+    info.put("planCacheSize", "10");
+    Connection connection =
+        DriverManager.getConnection("jdbc:optiq:", info);
+    OptiqConnection optiqConnection =
+        connection.unwrap(OptiqConnection.class);
+    SchemaPlus rootSchema = optiqConnection.getRootSchema();
+    rootSchema.add("hr", new ReflectiveSchema(new HrSchema()));
+    final int[] parseCount = {0};
+    final Hook.Closeable hook = Hook.PARSE_TREE.addThread(
+        new Function<Object[], Void>() {
+          public Void apply(Object[] args) {
+            ++parseCount[0];
+            return null;
+          }
+        });
+    try {
+      final String sql = "select count(*) as c from \"hr\".\"emps\"";
+      final Statement statement = connection.createStatement();
+      assertThat(OptiqAssert.toString(statement.executeQuery(sql)),
+          equalTo("C=4\n"));
+      assertThat(parseCount[0], equalTo(1));
+      assertThat(OptiqAssert.toString(statement.executeQuery(sql)),
+          equalTo("C=4\n"));
+      assertThat(parseCount[0], equalTo(1));
+
+      // Adding a schema invalidates the cached plan.
+      rootSchema.add("s", new AbstractSchema());
+      assertThat(OptiqAssert.toString(statement.executeQuery(sql)),
+          equalTo("C=4\n"));
+      assertThat(parseCount[0], equalTo(2));
+      statement.close();
+    } finally {
+      hook.close();
+      connection.close();
+    }
+  }
+
+  /** Tests that two result sets from the same cached plan, with different
+   * parameter values, can be open at the same time. Each execution must bind
+   * its own instance of the generated code. */
+  @Test public void testPlanCacheOpenResultSets() throws Exception {
+    Class.forName("net.hydromatic.optiq.jdbc.Driver");
+    Properties info = new Properties();
+    info.put("planCacheSize", "10");
+    Connection connection =
+        DriverManager.getConnection("jdbc:optiq:", info);
+    OptiqConnection optiqConnection =
+        connection.unwrap(OptiqConnection.class);
+    SchemaPlus rootSchema = optiqConnection.getRootSchema();
+    rootSchema.add("hr", new ReflectiveSchema(new HrSchema()));
+    final String sql =
+        "select \"empid\" from \"hr\".\"emps\" where \"deptno\" = ?";
+    final PreparedStatement ps1 = connection.prepareStatement(sql);
+    final PreparedStatement ps2 = connection.prepareStatement(sql);
+    ps1.setInt(1, 10);
+    ps2.setInt(1, 20);
+    final ResultSet resultSet1 = ps1.executeQuery();
+    final ResultSet resultSet2 = ps2.executeQuery();
+    assertThat(OptiqAssert.toString(resultSet1),
+        equalTo("empid=100\nempid=150\nempid=110\n"));
+    assertThat(OptiqAssert.toString(resultSet2),
+        equalTo("empid=200\n"));
+    ps1.close();
+    ps2.close();
+    connection.close();
+  }
+
+  /** Tests the interpreter, enabled by the "interpreterThreshold" connection
+   * property. Statements that the interpreter supports are not compiled;
+   * others are compiled as usual. */
+  @Test public void testInterpreter() throws Exception {
+    Class.forName("net.hydromatic.optiq.jdbc.Driver");
+    Properties info = new Properties();
+    info.put("interpreterThreshold", "1000000");
+    Connection connection =
+        DriverManager.getConnection("jdbc:optiq:", info);
+    OptiqConnection optiqConnection =
+        connection.unwrap(OptiqConnection.class);
+    SchemaPlus rootSchema = optiqConnection.getRootSchema();
+    rootSchema.add("hr", new ReflectiveSchema(new HrSchema()));
+    final int[] compileCount = {0};
+    final Hook.Closeable hook = Hook.COMPILED_CLASS_CACHE.addThread(
+        new Function<CompiledClassCache.Statistics, Void>() {
+          public Void apply(CompiledClassCache.Statistics statistics) {
+            if (statistics.name.equals("bindable")) {
+              ++compileCount[0];
+            }
+            return null;
+          }
+        });
+    try {
+      final Statement statement = connection.createStatement();
+      assertThat(
+          OptiqAssert.toString(
+              statement.executeQuery(
+                  "select \"empid\", \"name\", \"commission\" * 2 as c\n"
+                  + "from \"hr\".\"emps\"\n"
+                  + "where \"deptno\" = 10\n"
+                  + "order by \"empid\" desc")),
+          equalTo("empid=150; name=Sebastian; C=null\n"
+              + "empid=110; name=Theodore; C=500\n"
+              + "empid=100; name=Bill; C=2000\n"));
+      assertThat(
+          OptiqAssert.toString(
+              statement.executeQuery(
+                  "select \"name\" from \"hr\".\"emps\"\n"
+                  + "where \"empid\" < 150\n"
+                  + "union all\n"
+                  + "select \"name\" from \"hr\".\"emps\"\n"
+                  + "where \"deptno\" = 20")),
+          equalTo("name=Bill\n"
+              + "name=Theodore\n"
+              + "name=Eric\n"));
+      assertThat(
+          OptiqAssert.toString(
+              statement.executeQuery(
+                  "select \"name\" from \"hr\".\"emps\"\n"
+                  + "limit 2")),
+          equalTo("name=Bill\n"
+              + "name=Eric\n"));
+      assertThat(compileCount[0], equalTo(0));
+
+      // The interpreter supports every expression in this statement, but
+      // cannot evaluate the division for the second row, because the result
+      // is infinite. The statement falls back to generated code, which
+      // returns every row.
+      assertThat(
+          OptiqAssert.toString(
+              statement.executeQuery(
+                  "select \"empid\",\n"
+                  + "  case when \"deptno\" = 20 then \"salary\" / 0\n"
+                  + "    else \"salary\" end as s\n"
+                  + "from \"hr\".\"emps\"")),
+          equalTo("empid=100; S=10000.0\n"
+              + "empid=200; S=Infinity\n"
+              + "empid=150; S=7000.0\n"
+              + "empid=110; S=11500.0\n"));
+      assertThat(compileCount[0], equalTo(1));
+
+      // The interpreter does not support aggregation.
+      assertThat(
+          OptiqAssert.toString(
+              statement.executeQuery(
+                  "select count(*) as c from \"hr\".\"emps\"")),
+          equalTo("C=4\n"));
+      assertThat(compileCount[0], equalTo(2));
+      statement.close();
+    } finally {
+      hook.close();
+      connection.close();
+    }
+  }
+
+  /** Tests vectorized execution, enabled by the "vectorize" connection
+   * property, over the in-memory column store of a cloned schema. */
+  @Test public void testVectorize() throws Exception {
+    Class.forName("net.hydromatic.optiq.jdbc.Driver");
+    Properties info = new Properties();
+    info.put("vectorize", "true");
+    Connection connection =
+        DriverManager.getConnection("jdbc:optiq:", info);
+    OptiqConnection optiqConnection =
+        connection.unwrap(OptiqConnection.class);
+    SchemaPlus rootSchema = optiqConnection.getRootSchema();
+    SchemaPlus hr = rootSchema.add("hr", new ReflectiveSchema(new HrSchema()));
+    rootSchema.add("hr2", new CloneSchema(hr));
+    final String sql = "select \"deptno\", count(*) as c,\n"
+        + " sum(\"empid\") as s, max(\"salary\") as m\n"
+        + "from \"hr2\".\"emps\"\n"
+        + "where \"empid\" * 2 > 200\n"
+        + "group by \"deptno\"\n"
+        + "order by 1";
+    final Statement statement = connection.createStatement();
+    assertThat(OptiqAssert.toString(statement.executeQuery(sql)),
+        equalTo("deptno=10; C=2; S=260; M=11500.0\n"
+            + "deptno=20; C=1; S=200; M=8000.0\n"));
+    final String plan =
+        OptiqAssert.toString(statement.executeQuery("explain plan for " + sql));
+    assertThat(plan, containsString("VectorAggregateRel"));
+    assertThat(plan, containsString("VectorTableAccessRel"));
+
+    // Columns that are nullable or not numeric are not vectorized.
+    assertThat(
+        OptiqAssert.toString(
+            statement.executeQuery(
+                "select \"name\" from \"hr2\".\"emps\"\n"
+                + "where \"deptno\" = 20")),
+        equalTo("name=Eric\n"));
+
+    // Vectorized AND evaluates every operand for every row, so an integer
+    // division beneath AND is not vectorized. Here the divisor is 0 for
+    // every row in department 10, which the first conjunct filters out.
+    assertThat(
+        OptiqAssert.toString(
+            statement.executeQuery(
+                "select \"empid\" from \"hr2\".\"emps\"\n"
+                + "where \"deptno\" - 10 <> 0\n"
+                + "and \"empid\" / (\"deptno\" - 10) > 1")),
+        equalTo("empid=200\n"));
+    statement.close();
+    connection.close();
+  }
+
+  /** Tests that vectorized execution with the "parallelism" connection
+   * property splits the table into several ranges, and returns the same
+   * rows, in the same order, as with one thread. The table has several
+   * batches of rows per range. */
+  @Test public void testVectorizeParallel() throws Exception {
+    Class.forName("net.hydromatic.optiq.jdbc.Driver");
+    final String[] sqls = {
+      "select \"deptno\", count(*) as c, sum(\"empid\") as s,\n"
+      + " min(\"salary\") as m\n"
+      + "from \"hr2\".\"emps\"\n"
+      + "group by \"deptno\"\n"
+      + "order by 1",
+      "select count(*) as c, max(\"empid\") as m from \"hr2\".\"emps\"",
+      "select \"empid\", \"salary\" * 2 as s from \"hr2\".\"emps\"\n"
+      + "where \"deptno\" = 10",
+    };
+    final List<String> expected = new ArrayList<String>();
+    final List<Integer> partitionCounts = new ArrayList<Integer>();
+    final Hook.Closeable hook =
+        Hook.VECTOR_PARTITIONS.addThread(
+            new Function<Integer, Void>() {
+              public Void apply(Integer partitionCount) {
+                partitionCounts.add(partitionCount);
+                return null;
+              }
+            });
+    try {
+      for (String parallelism : new String[] {"1", "4"}) {
+        Properties info = new Properties();
+        info.put("vectorize", "true");
+        info.put("parallelism", parallelism);
+        Connection connection =
+            DriverManager.getConnection("jdbc:optiq:", info);
+        SchemaPlus rootSchema =
+            connection.unwrap(OptiqConnection.class).getRootSchema();
+        SchemaPlus hr =
+            rootSchema.add("hr",
+                new ReflectiveSchema(
+                    new ManyEmpsSchema(4 * 3 * Vectors.BATCH_SIZE)));
+        rootSchema.add("hr2", new CloneSchema(hr));
+        final Statement statement = connection.createStatement();
+        for (int i = 0; i < sqls.length; i++) {
+          partitionCounts.clear();
+          final String actual =
+              OptiqAssert.toString(statement.executeQuery(sqls[i]));
+          if (parallelism.equals("1")) {
+            assertThat(partitionCounts.isEmpty(), is(true));
+            expected.add(actual);
+          } else {
+            assertThat(partitionCounts, equalTo(Arrays.asList(4)));
+            assertThat(actual, equalTo(expected.get(i)));
+          }
+          final String plan =
+              OptiqAssert.toString(
+                  statement.executeQuery("explain plan for " + sqls[i]));
+          assertThat(plan, containsString("VectorTableAccessRel"));
+        }
+        statement.close();
+        connection.close();
+      }
+    } finally {
+      hook.close();
+    }
+    assertThat(expected.get(1), equalTo("C=12288; M=12287\n"));
+  }
+
   /** Tests {@link SqlDialect}. */
   @Test public void testDialect() {
     final String[] sqls = {null};
@@ -6008,6 +6582,20 @@ public RelDataType apply(RelDataTypeFactory typeFactory) {
         }, "values (1), (3), " + s, ImmutableList.<String>of());
   }
 
+  /** Schema with a table, "emps", of many employees in departments 10, 20
+   * and 30. */
+  public static class ManyEmpsSchema {
+    public final Employee[] emps;
+
+    public ManyEmpsSchema(int count) {
+      emps = new Employee[count];
+      for (int i = 0; i < count; i++) {
+        emps[i] =
+            new Employee(i, 10 * (i % 3 + 1), "e" + i, 10 * (i % 1000), null);
+      }
+    }
+  }
+
   public static class Employee {
     public final int empid;
     public final int deptno;
@@ -19,6 +19,8 @@
 import net.hydromatic.optiq.impl.clone.ArrayTableTest;
 import net.hydromatic.optiq.runtime.BinarySearchTest;
 import net.hydromatic.optiq.runtime.EnumerablesTest;
+import net.hydromatic.optiq.runtime.MinMaxDequeTest;
+import net.hydromatic.optiq.runtime.SortedMultiMapTest;
 import net.hydromatic.optiq.tools.FrameworksTest;
 import net.hydromatic.optiq.tools.PlannerTest;
 import net.hydromatic.optiq.tools.SqlRunTest;
@@ -73,6 +75,8 @@
     RelWriterTest.class,
     RexProgramTest.class,
     BinarySearchTest.class,
+    MinMaxDequeTest.class,
+    SortedMultiMapTest.class,
     EnumerablesTest.class,
 
     // medium tests (above 0.1s)
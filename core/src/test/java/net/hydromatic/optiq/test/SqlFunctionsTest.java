@@ -66,6 +66,59 @@ public class SqlFunctionsTest {
     assertEquals(" B0123b", initcap(" b0123B"));
   }
 
+  @Test public void testLike() {
+    // exact
+    assertTrue(like("abc", "abc"));
+    assertFalse(like("abcd", "abc"));
+    assertTrue(like("", ""));
+    assertFalse(like("a", ""));
+    // prefix, suffix, contains
+    assertTrue(like("abc", "ab%"));
+    assertTrue(like("ab", "ab%"));
+    assertFalse(like("xab", "ab%"));
+    assertTrue(like("xbc", "%bc"));
+    assertFalse(like("bcx", "%bc"));
+    assertTrue(like("xbcx", "%bc%"));
+    assertTrue(like("bc", "%%bc%%"));
+    assertFalse(like("xbx", "%bc%"));
+    assertTrue(like("", "%"));
+    assertTrue(like("a\nb", "a%"));
+    // wildcards that require a regular expression
+    assertTrue(like("abc", "a_c"));
+    assertFalse(like("abbc", "a_c"));
+    assertTrue(like("abbc", "a%c"));
+    assertTrue(like("a\nc", "a_c"));
+    assertTrue(like("a.c", "a.c"));
+    assertFalse(like("abc", "a.c"));
+    // escape
+    assertTrue(like("a%", "a!%", "!"));
+    assertFalse(like("ab", "a!%", "!"));
+    assertTrue(like("a%b", "%!%%", "!"));
+    assertTrue(like("a_b", "a!_b", "!"));
+    assertFalse(like("axb", "a!_b", "!"));
+    try {
+      final boolean b = like("a", "a!", "!");
+      fail("expected error, got " + b);
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(), equalTo("Invalid escape sequence 'a!', 1"));
+    }
+    // Matchers are cached.
+    assertSame(Like.likeMatcher("ab%", null), Like.likeMatcher("ab%", null));
+    assertNotSame(Like.likeMatcher("ab%", null),
+        Like.likeMatcher("ab%", "!"));
+  }
+
+  @Test public void testSimilar() {
+    assertTrue(similar("abc", "abc"));
+    assertTrue(similar("abc", "a(b|x)c"));
+    assertFalse(similar("ayc", "a(b|x)c"));
+    assertTrue(similar("abbbc", "ab+c"));
+    assertTrue(similar("a+c", "a!+c", "!"));
+    assertFalse(similar("aac", "a!+c", "!"));
+    assertSame(Like.similarMatcher("a%", null),
+        Like.similarMatcher("a%", null));
+  }
+
   @Test public void testLesser() {
     assertEquals("a", lesser("a", "bc"));
     assertEquals("ac", lesser("bc", "ac"));
@@ -561,6 +561,13 @@ private void checkJoinNWay(int n) throws Exception {
   /** Checks that a query returns a particular plan, using a planner with
    * OptimizeBushyJoinRule enabled. */
   private void checkBushy(String sql, String expected) throws Exception {
+    final String plan =
+        plan(Programs.heuristicJoinOrder(Programs.RULE_SET, true), sql);
+    assertThat(plan, containsString(expected));
+  }
+
+  /** Returns the plan of a query over FoodMart, using a given program. */
+  private String plan(Program program, String sql) throws Exception {
     final SchemaPlus rootSchema = Frameworks.createRootSchema(true);
     final FrameworkConfig config = Frameworks.newConfigBuilder()
         .lex(Lex.ORACLE)
@@ -568,7 +575,7 @@ private void checkBushy(String sql, String expected) throws Exception {
             OptiqAssert.addSchema(rootSchema,
                 OptiqAssert.SchemaSpec.CLONE_FOODMART))
         .traitDefs((List<RelTraitDef>) null)
-        .programs(Programs.heuristicJoinOrder(Programs.RULE_SET, true))
+        .programs(program)
         .build();
     Planner planner = Frameworks.getPlanner(config);
     SqlNode parse = planner.parse(sql);
@@ -578,7 +585,69 @@ private void checkBushy(String sql, String expected) throws Exception {
     RelTraitSet traitSet = planner.getEmptyTraitSet()
         .replace(EnumerableConvention.INSTANCE);
     RelNode transform = planner.transform(0, traitSet, convert);
-    assertThat(toString(transform), containsString(expected));
+    return toString(transform);
+  }
+
+  /** Tests the dynamic programming join algorithm,
+   * {@link org.eigenbase.rel.rules.OptimizeDpJoinRule}. All five tables are
+   * joined, without cartesian products. */
+  @Test public void testDpJoin() throws Exception {
+    final String plan =
+        plan(Programs.dpJoinOrder(Programs.RULE_SET),
+            "select *\n"
+            + "from \"sales_fact_1997\" as s\n"
+            + "  join \"customer\" as c using (\"customer_id\")\n"
+            + "  join \"product\" as p using (\"product_id\")\n"
+            + "  join \"product_class\" as pc using (\"product_class_id\")\n"
+            + "  join \"store\" as st using (\"store_id\")\n"
+            + "where c.\"city\" = 'San Francisco'\n");
+    assertThat(count(plan, "EnumerableJoinRel("), equalTo(4));
+    assertThat(plan, not(containsString("condition=[true]")));
+    for (String table : Arrays.asList("sales_fact_1997", "customer",
+        "product", "product_class", "store")) {
+      assertThat(plan, containsString("[foodmart2, " + table + "]"));
+    }
+  }
+
+  /** Tests the dynamic programming join algorithm against a query where not
+   * all tables have a join condition to the others. It uses only one
+   * cartesian product. */
+  @Test public void testDpCrossJoin() throws Exception {
+    final String plan =
+        plan(Programs.dpJoinOrder(Programs.RULE_SET),
+            "select * from \"sales_fact_1997\"\n"
+            + "join \"customer\" using (\"customer_id\")\n"
+            + "cross join \"department\"\n"
+            + "join \"employee\" using (\"department_id\")");
+    assertThat(count(plan, "EnumerableJoinRel("), equalTo(3));
+    assertThat(count(plan, "condition=[true]"), equalTo(1));
+  }
+
+  /** Tests that {@link org.eigenbase.rel.rules.OptimizeDpJoinRule} does not
+   * allow a maximum number of inputs so large that a single call would take
+   * too long. */
+  @Test public void testDpJoinMaxFactors() {
+    assertTrue(OptimizeDpJoinRule.DEFAULT_MAX_FACTORS
+        <= OptimizeDpJoinRule.MAX_MAX_FACTORS);
+    try {
+      final OptimizeDpJoinRule rule =
+          new OptimizeDpJoinRule(RelFactories.DEFAULT_JOIN_FACTORY,
+              RelFactories.DEFAULT_PROJECT_FACTORY,
+              OptimizeDpJoinRule.MAX_MAX_FACTORS + 1,
+              LoptOptimizeJoinRule.INSTANCE);
+      fail("expected error, got " + rule);
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), equalTo("maxFactors must be between 2 and "
+          + OptimizeDpJoinRule.MAX_MAX_FACTORS));
+    }
+  }
+
+  private static int count(String s, String seek) {
+    int n = 0;
+    for (int i = s.indexOf(seek); i >= 0; i = s.indexOf(seek, i + 1)) {
+      ++n;
+    }
+    return n;
   }
 
   /**
@@ -20,6 +20,7 @@
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.convert.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.rel.rules.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
@@ -118,6 +119,52 @@ static RelOptCluster newCluster(VolcanoPlanner planner) {
     assertTrue(result instanceof PhysSingleRel);
   }
 
+  /**
+   * Tests that a planner with a tick budget still finds an implementable
+   * plan, and that it records statistics for each phase.
+   */
+  @Test public void testTickBudget() {
+    for (int tickBudget : new int[] {0, 1}) {
+      VolcanoPlanner planner = new VolcanoPlanner();
+      planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
+      planner.setTickBudget(tickBudget);
+
+      planner.addRule(new PhysLeafRule());
+      planner.addRule(new GoodSingleRule());
+
+      RelOptCluster cluster = newCluster(planner);
+      NoneLeafRel leafRel =
+          new NoneLeafRel(
+              cluster,
+              "a");
+      NoneSingleRel singleRel =
+          new NoneSingleRel(
+              cluster,
+              leafRel);
+      RelNode convertedRel =
+          planner.changeTraits(
+              singleRel,
+              cluster.traitSetOf(PHYS_CALLING_CONVENTION));
+      planner.setRoot(convertedRel);
+      RelNode result = planner.chooseDelegate().findBestExp();
+      assertTrue(result instanceof PhysSingleRel);
+
+      final List<VolcanoPlanner.PhaseStatistics> statistics =
+          planner.getPhaseStatistics();
+      int ruleFirings = 0;
+      for (VolcanoPlanner.PhaseStatistics phaseStatistics : statistics) {
+        ruleFirings += phaseStatistics.ruleFirings;
+        if (tickBudget == 0) {
+          assertFalse(phaseStatistics.budgetExhausted);
+        }
+      }
+      assertTrue(ruleFirings >= 2);
+      if (tickBudget == 0) {
+        assertEquals(VolcanoPlannerPhase.values().length, statistics.size());
+      }
+    }
+  }
+
   /**
    * Tests a rule that is fired once per subset (whereas most rules are fired
    * once per rel in a set or rel in a subset)
@@ -430,6 +477,91 @@ public RelNode convert(RelNode rel) {
         null);
   }
 
+  /**
+   * Tests that a metadata cache removes the values of a relational expression
+   * that the planner discards, without registering a listener; a listener
+   * would make the planner create an event for everything it does.
+   */
+  @Test public void testMetadataCacheDiscard() {
+    final VolcanoPlanner planner = new VolcanoPlanner();
+    planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
+    final RelOptCluster cluster = newCluster(planner);
+    final CachingRelMetadataProvider provider =
+        new CachingRelMetadataProvider(new DefaultRelMetadataProvider(),
+            planner);
+    cluster.setMetadataProvider(provider);
+    assertNull(planner.listener);
+
+    final NoneLeafRel leafRel = new NoneLeafRel(cluster, "a");
+    assertThat(RelMetadataQuery.getRowCount(leafRel), notNullValue());
+    assertTrue(provider.statistics().size > 0);
+    planner.notifyDiscard(leafRel);
+    assertThat(provider.statistics().discardCount, equalTo(1L));
+    assertThat(provider.statistics().size, equalTo(0L));
+  }
+
+  /**
+   * Tests that {@link RuleQueue.MatchHeap} pops matches in order of
+   * importance, and ties in order of their rels, after matches have been
+   * added, updated and polled.
+   */
+  @Test public void testMatchHeap() {
+    final VolcanoPlanner planner = new VolcanoPlanner();
+    planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
+    final RelOptCluster cluster = newCluster(planner);
+    final RelOptRuleOperand operand = new PhysLeafRule().getOperand();
+    final Random random = new Random(1);
+    final RuleQueue.MatchHeap heap = new RuleQueue.MatchHeap(0);
+    final List<FixedImportanceMatch> all =
+        new ArrayList<FixedImportanceMatch>();
+    final List<FixedImportanceMatch> remaining =
+        new ArrayList<FixedImportanceMatch>();
+    final Comparator<VolcanoRuleMatch> order =
+        new Comparator<VolcanoRuleMatch>() {
+          public int compare(VolcanoRuleMatch m1, VolcanoRuleMatch m2) {
+            final int c =
+                Double.compare(m2.getImportance(), m1.getImportance());
+            return c != 0 ? c : RuleQueue.compareRels(m2.rels, m1.rels);
+          }
+        };
+    for (int round = 0; round < 3; round++) {
+      // Add matches. Importances have few distinct values, so there are
+      // many ties.
+      for (int i = 0; i < 50; i++) {
+        final RelNode rel =
+            planner.register(
+                new NoneLeafRel(cluster, "r" + round + "_" + i), null);
+        final FixedImportanceMatch match =
+            new FixedImportanceMatch(planner, operand, rel,
+                random.nextInt(10) / 10d);
+        heap.add(match);
+        all.add(match);
+        remaining.add(match);
+      }
+      // Change the importance of some matches, some of them several times,
+      // and some of them already polled, which the heap ignores.
+      for (int i = 0; i < 40; i++) {
+        final FixedImportanceMatch match =
+            all.get(random.nextInt(all.size()));
+        match.importance = random.nextInt(10) / 10d;
+        match.clearCachedImportance();
+        heap.update(match);
+      }
+      // Poll some matches.
+      Collections.sort(remaining, order);
+      for (int i = 0; i < 30; i++) {
+        assertSame(remaining.remove(0), heap.poll());
+      }
+      assertEquals(remaining.size(), heap.size());
+    }
+    Collections.sort(remaining, order);
+    for (FixedImportanceMatch match : remaining) {
+      assertSame(match, heap.poll());
+    }
+    assertTrue(heap.isEmpty());
+    assertNull(heap.poll());
+  }
+
   private void checkEvent(
       List<RelOptListener.RelEvent> eventList,
       int iEvent,
@@ -779,6 +911,21 @@ public void onMatch(RelOptRuleCall call) {
     }
   }
 
+  /** Rule match whose importance is set by the test. */
+  private static class FixedImportanceMatch extends VolcanoRuleMatch {
+    double importance;
+
+    FixedImportanceMatch(VolcanoPlanner planner, RelOptRuleOperand operand,
+        RelNode rel, double importance) {
+      super(planner, operand, new RelNode[] {rel});
+      this.importance = importance;
+    }
+
+    @Override double computeImportance() {
+      return importance;
+    }
+  }
+
   private static class TestListener implements RelOptListener {
     private List<RelEvent> eventList;
 
@@ -801,7 +948,7 @@ public void relChosen(RelChosenEvent event) {
 
     // implement RelOptListener
     public void relDiscarded(RelDiscardedEvent event) {
-      // Volcano is quite a packrat--it never discards anything!
+      // Volcano discards only when sets merge, and no sets merge here.
       throw Util.newInternal(event.toString());
     }
 
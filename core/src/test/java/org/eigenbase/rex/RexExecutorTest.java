@@ -26,6 +26,7 @@
 import org.eigenbase.sql.fun.SqlStdOperatorTable;
 import org.eigenbase.sql.type.SqlTypeName;
 import org.eigenbase.util.NlsString;
+import org.eigenbase.util.Pair;
 
 import net.hydromatic.linq4j.QueryProvider;
 
@@ -33,9 +34,12 @@
 import net.hydromatic.optiq.SchemaPlus;
 import net.hydromatic.optiq.Schemas;
 import net.hydromatic.optiq.impl.java.JavaTypeFactory;
+import net.hydromatic.optiq.prepare.CompiledClassCache;
+import net.hydromatic.optiq.runtime.Hook;
 import net.hydromatic.optiq.server.OptiqServerStatement;
 import net.hydromatic.optiq.tools.Frameworks;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 
 import org.junit.Assert;
@@ -43,6 +47,8 @@
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -54,6 +60,13 @@ public RexExecutorTest() {
   }
 
   protected void check(final Action action) throws Exception {
+    check(RexExecutable.CACHE, action);
+  }
+
+  /** Runs an action with an executor that keeps compiled classes in a given
+   * cache. */
+  protected void check(final CompiledClassCache cache, final Action action)
+      throws Exception {
     Frameworks.withPrepare(
         new Frameworks.PrepareAction<Void>() {
           public Void apply(RelOptCluster cluster, RelOptSchema relOptSchema,
@@ -61,7 +74,8 @@ public Void apply(RelOptCluster cluster, RelOptSchema relOptSchema,
             final RexBuilder rexBuilder = cluster.getRexBuilder();
             DataContext dataContext =
                 Schemas.createDataContext(statement.getConnection());
-            final RexExecutorImpl executor = new RexExecutorImpl(dataContext);
+            final RexExecutorImpl executor =
+                new RexExecutorImpl(dataContext, cache);
             action.check(rexBuilder, executor);
             return null;
           }
@@ -152,6 +166,76 @@ public void check(RexBuilder rexBuilder, RexExecutorImpl executor) {
     });
   }
 
+  /** Tests that simple constant expressions are evaluated without generating
+   * code, and that code generated for other expressions is compiled only
+   * once. */
+  @Test public void testInterpretAndCache() throws Exception {
+    final List<String> codes = new ArrayList<String>();
+    final Hook.Closeable hook = Hook.EXPRESSION_REDUCER.addThread(
+        new Function<Pair<String, Object[]>, Void>() {
+          public Void apply(Pair<String, Object[]> pair) {
+            codes.add(pair.left);
+            return null;
+          }
+        });
+    // Use a cache of our own; other tests, perhaps running at the same time,
+    // use the shared cache.
+    final CompiledClassCache cache = new CompiledClassCache("test", 10);
+    try {
+      check(cache, new Action() {
+        public void check(RexBuilder rexBuilder, RexExecutorImpl executor) {
+          final RexLiteral two =
+              rexBuilder.makeExactLiteral(BigDecimal.valueOf(2));
+          final RexNode plus =
+              rexBuilder.makeCall(SqlStdOperatorTable.PLUS, two,
+                  rexBuilder.makeCall(SqlStdOperatorTable.MULTIPLY, two,
+                      two));
+          final RexNode concat =
+              rexBuilder.makeCall(SqlStdOperatorTable.CONCAT,
+                  rexBuilder.makeLiteral("ab"),
+                  rexBuilder.makeLiteral("cd"));
+          final RexNode lessThan =
+              rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, plus, two);
+          final List<RexNode> reducedValues = new ArrayList<RexNode>();
+          executor.reduce(rexBuilder,
+              ImmutableList.of(plus, concat, lessThan), reducedValues);
+          assertThat(((RexLiteral) reducedValues.get(0)).getValue2(),
+              equalTo((Object) 6L));
+          assertThat(((RexLiteral) reducedValues.get(1)).getValue2(),
+              equalTo((Object) "abcd"));
+          assertThat(((RexLiteral) reducedValues.get(2)).getValue2(),
+              equalTo((Object) false));
+          assertThat(codes.size(), equalTo(1));
+          assertThat(codes.get(0), nullValue());
+
+          // ABS is not interpreted; the second time, the compiled class is
+          // in the cache.
+          final RexNode abs =
+              rexBuilder.makeCall(SqlStdOperatorTable.ABS,
+                  rexBuilder.makeExactLiteral(BigDecimal.valueOf(-5)));
+          assertThat(RexInterpreter.canInterpret(abs), equalTo(false));
+          assertThat(RexInterpreter.canInterpret(plus), equalTo(true));
+          for (int i = 0; i < 2; i++) {
+            reducedValues.clear();
+            executor.reduce(rexBuilder, ImmutableList.of(abs, plus),
+                reducedValues);
+            assertThat(((RexLiteral) reducedValues.get(0)).getValue2(),
+                equalTo((Object) 5L));
+            assertThat(((RexLiteral) reducedValues.get(1)).getValue2(),
+                equalTo((Object) 6L));
+          }
+          assertThat(codes.size(), equalTo(3));
+          assertThat(codes.get(1), notNullValue());
+          assertThat(codes.get(2), equalTo(codes.get(1)));
+          assertThat(cache.statistics().missCount, equalTo(1L));
+          assertThat(cache.statistics().hitCount, equalTo(1L));
+        }
+      });
+    } finally {
+      hook.close();
+    }
+  }
+
   /** Callback for {@link #check}. Test code will typically use {@code builder}
    * to create some expressions, call
    * {@link org.eigenbase.rex.RexExecutorImpl#reduce} to evaluate them into
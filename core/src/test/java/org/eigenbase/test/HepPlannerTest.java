@@ -18,10 +18,14 @@
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.rules.*;
+import org.eigenbase.relopt.*;
 import org.eigenbase.relopt.hep.*;
 
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
 /**
  * HepPlannerTest is a unit test for {@link HepPlanner}. See {@link
  * RelOptRulesTest} for an explanation of how to add tests; the tests in this
@@ -161,6 +165,39 @@ protected DiffRepository getDiffRepos() {
         programBuilder.build(),
         "select upper(name) from dept where deptno=20");
   }
+
+  /** Tests {@link RelOptRuleProfiler}. */
+  @Test public void testRuleProfiler() throws Exception {
+    HepProgramBuilder programBuilder = HepProgram.builder();
+    programBuilder.addRuleInstance(ProjectToCalcRule.INSTANCE);
+    programBuilder.addRuleInstance(FilterToCalcRule.INSTANCE);
+    programBuilder.addRuleInstance(MergeCalcRule.INSTANCE);
+    programBuilder.addRuleInstance(UnionToDistinctRule.INSTANCE);
+
+    final HepPlanner planner = new HepPlanner(programBuilder.build());
+    final RelOptRuleProfiler profiler = new RelOptRuleProfiler();
+    planner.addListener(profiler);
+    planner.setRoot(
+        tester.convertSqlToRel(
+            "select upper(name) from dept where deptno=20"));
+    planner.findBestExp();
+
+    // Each rule fired and produced a calc; the union rule did not match.
+    int n = 0;
+    for (RelOptRuleProfiler.RuleStatistics statistics
+        : profiler.getStatistics()) {
+      assertNotSame(UnionToDistinctRule.INSTANCE, statistics.rule);
+      assertTrue(statistics.attemptCount >= 1);
+      assertTrue(statistics.productionCount >= 1);
+      assertTrue(statistics.registeredCount >= statistics.productionCount);
+      ++n;
+    }
+    assertThat(n, equalTo(3));
+    assertThat(profiler.report(), containsString("MergeCalcRule"));
+
+    profiler.reset();
+    assertTrue(profiler.getStatistics().isEmpty());
+  }
 }
 
 // End HepPlannerTest.java
@@ -17,11 +17,18 @@
 package org.eigenbase.test;
 
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
+import org.eigenbase.rex.RexBuilder;
+import org.eigenbase.rex.RexNode;
+import org.eigenbase.sql.fun.SqlStdOperatorTable;
+import org.eigenbase.sql.type.SqlTypeName;
+
+import net.hydromatic.avatica.ByteString;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -467,6 +474,27 @@ private void checkFilterSelectivity(
         DEFAULT_SELECTIVITY);
   }
 
+  /** Tests that the selectivity of a comparison between a column and a
+   * binary literal is a guess, rather than an error. Binary values have no
+   * order that column statistics could use. */
+  @Test public void testSelectivityBinaryLiteral() {
+    RelNode rel = convertSql("select * from emp");
+    while (!(rel instanceof TableAccessRelBase)) {
+      rel = rel.getInput(0);
+    }
+    final RexBuilder rexBuilder = rel.getCluster().getRexBuilder();
+    final RexNode condition =
+        rexBuilder.makeCall(
+            rexBuilder.getTypeFactory().createSqlType(SqlTypeName.BOOLEAN),
+            SqlStdOperatorTable.EQUALS,
+            ImmutableList.<RexNode>of(
+                rexBuilder.makeInputRef(rel, 0),
+                rexBuilder.makeBinaryLiteral(
+                    new ByteString(new byte[] {(byte) 0xAB}))));
+    assertEquals(DEFAULT_EQUAL_SELECTIVITY,
+        RelMetadataQuery.getSelectivity(rel, condition), EPSILON);
+  }
+
   private void checkRelSelectivity(
       RelNode rel,
       double expected) {
@@ -600,6 +628,95 @@ private void checkRelSelectivity(
     assertThat(buf.size(), equalTo(7));
   }
 
+  /** Tests that metadata objects are instances of generated classes, not
+   * proxies, for a handler, a chain of providers and a cache. */
+  @Test public void testGeneratedMetadata() {
+    final List<String> buf = new ArrayList<String>();
+    ColTypeImpl.THREAD_LIST.set(buf);
+
+    final RelNode rel =
+        convertSql(
+            "select deptno, count(*) from emp where deptno > 10 "
+                + "group by deptno having count(*) = 0");
+    final RelMetadataProvider provider =
+        ChainedRelMetadataProvider.of(
+            ImmutableList.of(
+                ColTypeImpl.SOURCE, rel.getCluster().getMetadataProvider()));
+    rel.getCluster().setMetadataProvider(provider);
+    final ColType colType = rel.metadata(ColType.class);
+    assertThat(Proxy.isProxyClass(colType.getClass()), is(false));
+    assertThat(colType.rel(), sameInstance(rel));
+    assertThat(colType.getColType(0), equalTo("DEPTNO-rel"));
+    final BuiltInMetadata.RowCount rowCount =
+        rel.metadata(BuiltInMetadata.RowCount.class);
+    assertThat(Proxy.isProxyClass(rowCount.getClass()), is(false));
+    final Double expectedRowCount = rowCount.getRowCount();
+
+    rel.getCluster().setMetadataProvider(
+        new CachingRelMetadataProvider(provider,
+            rel.getCluster().getPlanner()));
+    final ColType colType2 = rel.metadata(ColType.class);
+    assertThat(Proxy.isProxyClass(colType2.getClass()), is(false));
+    assertThat(colType2.getColType(1), equalTo("EXPR$1-rel"));
+    assertThat(rel.metadata(ColType.class).getColType(1),
+        equalTo("EXPR$1-rel"));
+    assertThat(buf.toString(), equalTo("[DEPTNO-rel, EXPR$1-rel]"));
+    assertThat(rel.metadata(BuiltInMetadata.RowCount.class).getRowCount(),
+        equalTo(expectedRowCount));
+  }
+
+  /** Tests that {@link CachingRelMetadataProvider} is bounded, and counts
+   * hits, misses and stale values. */
+  @Test public void testMetadataCacheStatistics() {
+    final List<String> buf = new ArrayList<String>();
+    ColTypeImpl.THREAD_LIST.set(buf);
+
+    final RelNode rel =
+        convertSql(
+            "select deptno, count(*) from emp where deptno > 10 "
+                + "group by deptno having count(*) = 0");
+    final RelOptPlanner planner = rel.getCluster().getPlanner();
+    final CachingRelMetadataProvider provider =
+        new CachingRelMetadataProvider(
+            ChainedRelMetadataProvider.of(
+                ImmutableList.of(
+                    ColTypeImpl.SOURCE,
+                    rel.getCluster().getMetadataProvider())),
+            planner,
+            2);
+    rel.getCluster().setMetadataProvider(provider);
+    final RelNode input = rel.getInput(0);
+    assertThat(rel.metadata(ColType.class).getColType(0),
+        equalTo("DEPTNO-rel"));
+    assertThat(rel.metadata(ColType.class).getColType(0),
+        equalTo("DEPTNO-rel"));
+    assertThat(rel.metadata(ColType.class).getColType(1),
+        equalTo("EXPR$1-rel"));
+    assertThat(provider.statistics().toString(),
+        equalTo("{hits: 1, misses: 2, stale: 0, evictions: 0, discards: 0, "
+            + "size: 2}"));
+
+    // The cache holds 2 values. A third value evicts both values of the
+    // least recently used relational expression.
+    assertThat(input.metadata(ColType.class).getColType(0),
+        equalTo("DEPTNO-agg"));
+    assertThat(provider.statistics().toString(),
+        equalTo("{hits: 1, misses: 3, stale: 0, evictions: 1, discards: 0, "
+            + "size: 1}"));
+    assertThat(rel.metadata(ColType.class).getColType(0),
+        equalTo("DEPTNO-rel"));
+    assertThat(buf.size(), equalTo(4));
+
+    // With a different timestamp, a value is stale, and is re-computed.
+    ((MockRelOptPlanner) planner).setRelMetadataTimestamp(1);
+    assertThat(input.metadata(ColType.class).getColType(0),
+        equalTo("DEPTNO-agg"));
+    assertThat(buf.size(), equalTo(5));
+    assertThat(provider.statistics().toString(),
+        equalTo("{hits: 1, misses: 4, stale: 1, evictions: 1, discards: 0, "
+            + "size: 2}"));
+  }
+
   /** Custom metadata interface. */
   public interface ColType extends Metadata {
     String getColType(int column);
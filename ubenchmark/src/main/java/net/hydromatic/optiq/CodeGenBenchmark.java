@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq;
+
+import net.hydromatic.optiq.impl.java.ReflectiveSchema;
+import net.hydromatic.optiq.jdbc.OptiqConnection;
+import net.hydromatic.optiq.runtime.*;
+
+import com.google.common.base.Function;
+
+import org.codehaus.commons.compiler.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Measures the time to compile the Java code that Optiq generates for a
+ * query.
+ *
+ * <p>During setup, each query is prepared once and its generated source is
+ * captured using {@link Hook#JAVA_PLAN}. Each benchmark compiles the source
+ * using a new Janino class body evaluator, in the same way as
+ * {@code OptiqPrepareImpl}, and so bypasses the cache of compiled classes.
+ * {@code prepareXxx} benchmarks prepare the full statement, including
+ * parsing and planning, and hit the cache.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class CodeGenBenchmark {
+  static final String SCAN = "select * from hr.emps";
+
+  static final String AGGREGATE = "select deptno, count(*), sum(salary),\n"
+      + "  min(name)\n"
+      + "from hr.emps\n"
+      + "where empid > 10\n"
+      + "group by deptno\n"
+      + "order by 2 desc";
+
+  static final String JOIN = "select e.name, d.name, e.salary * 2\n"
+      + "from hr.emps as e\n"
+      + "join hr.depts as d on e.deptno = d.deptno\n"
+      + "where d.name like 'S%'";
+
+  /** Connection, and the code generated for each query. */
+  @State(Scope.Thread)
+  public static class GeneratedCode {
+    final Connection connection;
+    final Map<String, String> sources = new HashMap<String, String>();
+
+    public GeneratedCode() {
+      try {
+        Class.forName("net.hydromatic.optiq.jdbc.Driver");
+        final Properties info = new Properties();
+        info.put("lex", "JAVA");
+        connection = DriverManager.getConnection("jdbc:optiq:", info);
+        final OptiqConnection optiqConnection =
+            connection.unwrap(OptiqConnection.class);
+        optiqConnection.getRootSchema().add("hr",
+            new ReflectiveSchema(new HrSchema()));
+        for (String sql : Arrays.asList(SCAN, AGGREGATE, JOIN)) {
+          sources.put(sql, capture(sql));
+        }
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e);
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private String capture(String sql) throws SQLException {
+      final List<String> list = new ArrayList<String>();
+      final Hook.Closeable closeable =
+          Hook.JAVA_PLAN.addThread(
+              new Function<String, Void>() {
+                public Void apply(String source) {
+                  list.add(source);
+                  return null;
+                }
+              });
+      try {
+        connection.prepareStatement(sql).close();
+      } finally {
+        closeable.close();
+      }
+      if (list.size() != 1) {
+        throw new IllegalStateException("expected one plan for [" + sql
+            + "], got " + list.size());
+      }
+      return list.get(0);
+    }
+
+    /** Compiles the code generated for a query. */
+    Class compile(String sql) throws Exception {
+      final IClassBodyEvaluator cbe =
+          CompilerFactoryFactory.getDefaultCompilerFactory()
+              .newClassBodyEvaluator();
+      cbe.setClassName("Baz");
+      cbe.setExtendedClass(Utilities.class);
+      cbe.setImplementedInterfaces(new Class[]{Bindable.class, Typed.class});
+      cbe.setParentClassLoader(getClass().getClassLoader());
+      cbe.cook(new StringReader(sources.get(sql)));
+      return cbe.getClazz();
+    }
+
+    /** Prepares a statement, then closes it. */
+    int prepare(String sql) throws SQLException {
+      final PreparedStatement statement = connection.prepareStatement(sql);
+      try {
+        return statement.getMetaData().getColumnCount();
+      } finally {
+        statement.close();
+      }
+    }
+
+    @TearDown
+    public void close() throws SQLException {
+      connection.close();
+    }
+  }
+
+  @GenerateMicroBenchmark
+  public Class compileScan(GeneratedCode state) throws Exception {
+    return state.compile(SCAN);
+  }
+
+  @GenerateMicroBenchmark
+  public Class compileAggregate(GeneratedCode state) throws Exception {
+    return state.compile(AGGREGATE);
+  }
+
+  @GenerateMicroBenchmark
+  public Class compileJoin(GeneratedCode state) throws Exception {
+    return state.compile(JOIN);
+  }
+
+  @GenerateMicroBenchmark
+  public int prepareScan(GeneratedCode state) throws SQLException {
+    return state.prepare(SCAN);
+  }
+
+  @GenerateMicroBenchmark
+  public int prepareAggregate(GeneratedCode state) throws SQLException {
+    return state.prepare(AGGREGATE);
+  }
+
+  @GenerateMicroBenchmark
+  public int prepareJoin(GeneratedCode state) throws SQLException {
+    return state.prepare(JOIN);
+  }
+
+  // Disable checkstyle, so it doesn't complain about public fields.
+  //CHECKSTYLE: OFF
+
+  public static class HrSchema {
+    public final Employee[] emps = new Employee[100];
+    public final Department[] depts = new Department[10];
+
+    public HrSchema() {
+      for (int i = 0; i < emps.length; i++) {
+        emps[i] = new Employee(i, i % 12, "Emp" + i, 1000 + i * 10);
+      }
+      for (int i = 0; i < depts.length; i++) {
+        depts[i] = new Department(i, "Dept" + i);
+      }
+    }
+
+    @Override public String toString() {
+      return "HrSchema";
+    }
+  }
+
+  public static class Employee {
+    public final int empid;
+    public final int deptno;
+    public final String name;
+    public final int salary;
+
+    public Employee(int empid, int deptno, String name, int salary) {
+      this.empid = empid;
+      this.deptno = deptno;
+      this.name = name;
+      this.salary = salary;
+    }
+  }
+
+  public static class Department {
+    public final int deptno;
+    public final String name;
+
+    public Department(int deptno, String name) {
+      this.deptno = deptno;
+      this.name = name;
+    }
+  }
+}
+
+// End CodeGenBenchmark.java
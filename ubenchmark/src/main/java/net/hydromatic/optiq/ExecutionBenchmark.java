@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq;
+
+import net.hydromatic.optiq.impl.clone.CloneSchema;
+import net.hydromatic.optiq.impl.java.ReflectiveSchema;
+import net.hydromatic.optiq.jdbc.OptiqConnection;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Measures the throughput of executing queries that exercise each of the
+ * main operators of the enumerable calling convention
+ * ({@link net.hydromatic.optiq.rules.java.JavaRules}).
+ *
+ * <p>Each query runs against two copies of the same data: a
+ * {@link ReflectiveSchema} over Java arrays ({@code xxxReflective}), and a
+ * {@link CloneSchema} that holds the data in
+ * {@code net.hydromatic.optiq.impl.clone.ArrayTable}s ({@code xxxArray}).
+ * Statements are prepared during setup, so the benchmarks measure execution
+ * and fetching of rows, not planning.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+public class ExecutionBenchmark {
+  static final int EMP_COUNT = 10000;
+  static final int DEPT_COUNT = 100;
+
+  /** Queries, by name. In each, "s" is replaced by the schema name. */
+  static final Map<String, String> QUERIES =
+      new LinkedHashMap<String, String>();
+
+  static {
+    QUERIES.put("filter",
+        "select * from s.emps where salary > 5000");
+    QUERIES.put("project",
+        "select empid + 1, salary * 2 from s.emps");
+    QUERIES.put("aggregate",
+        "select deptno, count(*), sum(salary), max(empid)\n"
+        + "from s.emps group by deptno");
+    QUERIES.put("sort",
+        "select * from s.emps order by salary desc, empid");
+    QUERIES.put("join",
+        "select e.name, d.name from s.emps as e\n"
+        + "join s.depts as d on e.deptno = d.deptno");
+    QUERIES.put("union",
+        "select deptno from s.emps union select deptno from s.depts");
+    QUERIES.put("minus",
+        "select deptno from s.depts except select deptno from s.emps");
+    QUERIES.put("limit",
+        "select * from s.emps order by empid limit 10");
+    QUERIES.put("window",
+        "select empid, sum(salary) over (partition by deptno order by empid\n"
+        + "  rows 10 preceding) from s.emps");
+  }
+
+  /** Connection with a reflective schema ("R") and a clone of it ("A"),
+   * and a prepared statement for each query and schema. */
+  @State(Scope.Thread)
+  public static class Statements {
+    final Connection connection;
+    final Map<String, PreparedStatement> statements =
+        new HashMap<String, PreparedStatement>();
+
+    public Statements() {
+      try {
+        Class.forName("net.hydromatic.optiq.jdbc.Driver");
+        final Properties info = new Properties();
+        info.put("lex", "JAVA");
+        connection = DriverManager.getConnection("jdbc:optiq:", info);
+        final OptiqConnection optiqConnection =
+            connection.unwrap(OptiqConnection.class);
+        final SchemaPlus rootSchema = optiqConnection.getRootSchema();
+        final SchemaPlus reflective =
+            rootSchema.add("R", new ReflectiveSchema(new Data()));
+        rootSchema.add("A", new CloneSchema(reflective));
+        for (Map.Entry<String, String> entry : QUERIES.entrySet()) {
+          for (String schema : Arrays.asList("R", "A")) {
+            final String sql =
+                entry.getValue().replaceAll("\\bs\\.", schema + ".");
+            statements.put(entry.getKey() + schema,
+                connection.prepareStatement(sql));
+          }
+        }
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e);
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    /** Executes a query and reads all of its rows. Returns the number of
+     * rows, so that the work is not eliminated. */
+    int run(String query, String schema) throws SQLException {
+      final ResultSet resultSet =
+          statements.get(query + schema).executeQuery();
+      int n = 0;
+      try {
+        final int columnCount = resultSet.getMetaData().getColumnCount();
+        while (resultSet.next()) {
+          for (int i = 1; i <= columnCount; i++) {
+            if (resultSet.getObject(i) != null) {
+              ++n;
+            }
+          }
+        }
+      } finally {
+        resultSet.close();
+      }
+      return n;
+    }
+
+    @TearDown
+    public void close() throws SQLException {
+      connection.close();
+    }
+  }
+
+  @GenerateMicroBenchmark
+  public int filterReflective(Statements state) throws SQLException {
+    return state.run("filter", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int filterArray(Statements state) throws SQLException {
+    return state.run("filter", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int projectReflective(Statements state) throws SQLException {
+    return state.run("project", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int projectArray(Statements state) throws SQLException {
+    return state.run("project", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int aggregateReflective(Statements state) throws SQLException {
+    return state.run("aggregate", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int aggregateArray(Statements state) throws SQLException {
+    return state.run("aggregate", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int sortReflective(Statements state) throws SQLException {
+    return state.run("sort", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int sortArray(Statements state) throws SQLException {
+    return state.run("sort", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int joinReflective(Statements state) throws SQLException {
+    return state.run("join", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int joinArray(Statements state) throws SQLException {
+    return state.run("join", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int unionReflective(Statements state) throws SQLException {
+    return state.run("union", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int unionArray(Statements state) throws SQLException {
+    return state.run("union", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int minusReflective(Statements state) throws SQLException {
+    return state.run("minus", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int minusArray(Statements state) throws SQLException {
+    return state.run("minus", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int limitReflective(Statements state) throws SQLException {
+    return state.run("limit", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int limitArray(Statements state) throws SQLException {
+    return state.run("limit", "A");
+  }
+
+  @GenerateMicroBenchmark
+  public int windowReflective(Statements state) throws SQLException {
+    return state.run("window", "R");
+  }
+
+  @GenerateMicroBenchmark
+  public int windowArray(Statements state) throws SQLException {
+    return state.run("window", "A");
+  }
+
+  // Disable checkstyle, so it doesn't complain about public fields.
+  //CHECKSTYLE: OFF
+
+  /** Data set. Each employee is in a random department, some of which do not
+   * exist. */
+  public static class Data {
+    public final Employee[] emps = new Employee[EMP_COUNT];
+    public final Department[] depts = new Department[DEPT_COUNT];
+
+    public Data() {
+      final Random random = new Random(0);
+      for (int i = 0; i < emps.length; i++) {
+        emps[i] = new Employee(i, random.nextInt(DEPT_COUNT + 10),
+            "Emp" + i, random.nextInt(10000));
+      }
+      for (int i = 0; i < depts.length; i++) {
+        depts[i] = new Department(i, "Dept" + i);
+      }
+    }
+
+    @Override public String toString() {
+      return "Data";
+    }
+  }
+
+  public static class Employee {
+    public final int empid;
+    public final int deptno;
+    public final String name;
+    public final int salary;
+
+    public Employee(int empid, int deptno, String name, int salary) {
+      this.empid = empid;
+      this.deptno = deptno;
+      this.name = name;
+      this.salary = salary;
+    }
+  }
+
+  public static class Department {
+    public final int deptno;
+    public final String name;
+
+    public Department(int deptno, String name) {
+      this.deptno = deptno;
+      this.name = name;
+    }
+  }
+}
+
+// End ExecutionBenchmark.java
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.hydromatic.optiq;
+
+import net.hydromatic.optiq.config.Lex;
+import net.hydromatic.optiq.impl.tpch.TpchSchema;
+import net.hydromatic.optiq.rules.java.EnumerableConvention;
+import net.hydromatic.optiq.tools.*;
+
+import org.eigenbase.rel.RelNode;
+import org.eigenbase.sql.SqlNode;
+import org.eigenbase.sql.parser.SqlParseException;
+import org.eigenbase.sql.parser.SqlParser;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the time to parse, validate and plan TPC-H queries.
+ *
+ * <p>The queries are a subset of those in {@code TpchTest} in the plus
+ * module, over a {@link TpchSchema}. Planning does not read any data.</p>
+ *
+ * <ul>
+ *   <li>{@code parseXx} measures {@link SqlParser};</li>
+ *   <li>{@code validateXx} measures parsing plus validation by
+ *   {@link org.eigenbase.sql.validate.SqlValidatorImpl};</li>
+ *   <li>{@code planXx} measures parsing, validation, conversion to relational
+ *   algebra, and optimization by
+ *   {@link org.eigenbase.relopt.volcano.VolcanoPlanner} into enumerable
+ *   convention.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class PlannerBenchmark {
+  static final String Q01 = "select\n"
+      + "  l_returnflag,\n"
+      + "  l_linestatus,\n"
+      + "  sum(l_quantity) as sum_qty,\n"
+      + "  sum(l_extendedprice) as sum_base_price,\n"
+      + "  sum(l_extendedprice * (1 - l_discount)) as sum_disc_price,\n"
+      + "  sum(l_extendedprice * (1 - l_discount) * (1 + l_tax)) as sum_charge,\n"
+      + "  avg(l_quantity) as avg_qty,\n"
+      + "  avg(l_extendedprice) as avg_price,\n"
+      + "  avg(l_discount) as avg_disc,\n"
+      + "  count(*) as count_order\n"
+      + "from\n"
+      + "  tpch.lineitem\n"
+      + "group by\n"
+      + "  l_returnflag,\n"
+      + "  l_linestatus\n"
+      + "order by\n"
+      + "  l_returnflag,\n"
+      + "  l_linestatus";
+
+  static final String Q03 = "select\n"
+      + "  l.l_orderkey,\n"
+      + "  sum(l.l_extendedprice * (1 - l.l_discount)) as revenue,\n"
+      + "  o.o_orderdate,\n"
+      + "  o.o_shippriority\n"
+      + "from\n"
+      + "  tpch.customer c,\n"
+      + "  tpch.orders o,\n"
+      + "  tpch.lineitem l\n"
+      + "where\n"
+      + "  c.c_mktsegment = 'HOUSEHOLD'\n"
+      + "  and c.c_custkey = o.o_custkey\n"
+      + "  and l.l_orderkey = o.o_orderkey\n"
+      + "group by\n"
+      + "  l.l_orderkey,\n"
+      + "  o.o_orderdate,\n"
+      + "  o.o_shippriority\n"
+      + "order by\n"
+      + "  revenue desc,\n"
+      + "  o.o_orderdate\n"
+      + "limit 10";
+
+  static final String Q05 = "select\n"
+      + "  n.n_name,\n"
+      + "  sum(l.l_extendedprice * (1 - l.l_discount)) as revenue\n"
+      + "from\n"
+      + "  tpch.customer c,\n"
+      + "  tpch.orders o,\n"
+      + "  tpch.lineitem l,\n"
+      + "  tpch.supplier s,\n"
+      + "  tpch.nation n,\n"
+      + "  tpch.region r\n"
+      + "where\n"
+      + "  c.c_custkey = o.o_custkey\n"
+      + "  and l.l_orderkey = o.o_orderkey\n"
+      + "  and l.l_suppkey = s.s_suppkey\n"
+      + "  and c.c_nationkey = s.s_nationkey\n"
+      + "  and s.s_nationkey = n.n_nationkey\n"
+      + "  and n.n_regionkey = r.r_regionkey\n"
+      + "  and r.r_name = 'EUROPE'\n"
+      + "group by\n"
+      + "  n.n_name\n"
+      + "order by\n"
+      + "  revenue desc";
+
+  static final String Q06 = "select\n"
+      + "  sum(l_extendedprice * l_discount) as revenue\n"
+      + "from\n"
+      + "  tpch.lineitem\n"
+      + "where\n"
+      + "  l_discount between 0.03 - 0.01 and 0.03 + 0.01\n"
+      + "  and l_quantity < 24";
+
+  static final String Q08 = "select\n"
+      + "  o_year,\n"
+      + "  sum(case\n"
+      + "    when nation = 'EGYPT' then volume\n"
+      + "    else 0\n"
+      + "  end) / sum(volume) as mkt_share\n"
+      + "from\n"
+      + "  (\n"
+      + "    select\n"
+      + "      extract(year from o.o_orderdate) as o_year,\n"
+      + "      l.l_extendedprice * (1 - l.l_discount) as volume,\n"
+      + "      n2.n_name as nation\n"
+      + "    from\n"
+      + "      tpch.part p,\n"
+      + "      tpch.supplier s,\n"
+      + "      tpch.lineitem l,\n"
+      + "      tpch.orders o,\n"
+      + "      tpch.customer c,\n"
+      + "      tpch.nation n1,\n"
+      + "      tpch.nation n2,\n"
+      + "      tpch.region r\n"
+      + "    where\n"
+      + "      p.p_partkey = l.l_partkey\n"
+      + "      and s.s_suppkey = l.l_suppkey\n"
+      + "      and l.l_orderkey = o.o_orderkey\n"
+      + "      and o.o_custkey = c.c_custkey\n"
+      + "      and c.c_nationkey = n1.n_nationkey\n"
+      + "      and n1.n_regionkey = r.r_regionkey\n"
+      + "      and r.r_name = 'MIDDLE EAST'\n"
+      + "      and s.s_nationkey = n2.n_nationkey\n"
+      + "      and o.o_orderdate between date '1995-01-01'\n"
+      + "        and date '1996-12-31'\n"
+      + "      and p.p_type = 'PROMO BRUSHED COPPER'\n"
+      + "  ) as all_nations\n"
+      + "group by\n"
+      + "  o_year\n"
+      + "order by\n"
+      + "  o_year";
+
+  static final String Q10 = "select\n"
+      + "  c.c_custkey,\n"
+      + "  c.c_name,\n"
+      + "  sum(l.l_extendedprice * (1 - l.l_discount)) as revenue,\n"
+      + "  c.c_acctbal,\n"
+      + "  n.n_name,\n"
+      + "  c.c_address,\n"
+      + "  c.c_phone,\n"
+      + "  c.c_comment\n"
+      + "from\n"
+      + "  tpch.customer c,\n"
+      + "  tpch.orders o,\n"
+      + "  tpch.lineitem l,\n"
+      + "  tpch.nation n\n"
+      + "where\n"
+      + "  c.c_custkey = o.o_custkey\n"
+      + "  and l.l_orderkey = o.o_orderkey\n"
+      + "  and o.o_orderdate >= date '1994-03-01'\n"
+      + "  and o.o_orderdate < date '1994-03-01' + interval '3' month\n"
+      + "  and l.l_returnflag = 'R'\n"
+      + "  and c.c_nationkey = n.n_nationkey\n"
+      + "group by\n"
+      + "  c.c_custkey,\n"
+      + "  c.c_name,\n"
+      + "  c.c_acctbal,\n"
+      + "  c.c_phone,\n"
+      + "  n.n_name,\n"
+      + "  c.c_address,\n"
+      + "  c.c_comment\n"
+      + "order by\n"
+      + "  revenue desc\n"
+      + "limit 20";
+
+  static final String Q14 = "select\n"
+      + "  100.00 * sum(case\n"
+      + "    when p.p_type like 'PROMO%'\n"
+      + "      then l.l_extendedprice * (1 - l.l_discount)\n"
+      + "    else 0\n"
+      + "  end) / sum(l.l_extendedprice * (1 - l.l_discount)) as promo_revenue\n"
+      + "from\n"
+      + "  tpch.lineitem l,\n"
+      + "  tpch.part p\n"
+      + "where\n"
+      + "  l.l_partkey = p.p_partkey\n"
+      + "  and l.l_shipdate >= date '1994-08-01'\n"
+      + "  and l.l_shipdate < date '1994-08-01' + interval '1' month";
+
+  /** Planner over the TPC-H schema, one per thread. */
+  @State(Scope.Thread)
+  public static class TpchPlanner {
+    final Planner planner;
+
+    public TpchPlanner() {
+      this(0);
+    }
+
+    protected TpchPlanner(int tickBudget) {
+      final SchemaPlus rootSchema = Frameworks.createRootSchema(false);
+      rootSchema.add("TPCH", new TpchSchema(0.01D, 1, 1, true));
+      final FrameworkConfig config = Frameworks.newConfigBuilder()
+          .lex(Lex.ORACLE)
+          .defaultSchema(rootSchema)
+          .programs(Programs.ofRules(Programs.RULE_SET))
+          .plannerTickBudget(tickBudget)
+          .build();
+      planner = Frameworks.getPlanner(config);
+    }
+
+    SqlNode parse(String sql) throws SqlParseException {
+      return SqlParser.create(sql).parseQuery();
+    }
+
+    SqlNode validate(String sql) throws Exception {
+      planner.reset();
+      return planner.validate(planner.parse(sql));
+    }
+
+    RelNode plan(String sql) throws Exception {
+      planner.reset();
+      final RelNode rel =
+          planner.convert(planner.validate(planner.parse(sql)));
+      return planner.transform(0,
+          planner.getEmptyTraitSet().replace(EnumerableConvention.INSTANCE),
+          rel);
+    }
+  }
+
+  /** Planner over the TPC-H schema that stops after a fixed number of rule
+   * firings. Exhaustive search of a query that joins many tables takes too
+   * long to benchmark; with a tick budget, planning time is dominated by the
+   * cost of choosing the next rule match from a large queue. */
+  @State(Scope.Thread)
+  public static class BudgetedTpchPlanner extends TpchPlanner {
+    public BudgetedTpchPlanner() {
+      super(20000);
+    }
+  }
+
+  @GenerateMicroBenchmark
+  public SqlNode parse01(TpchPlanner state) throws SqlParseException {
+    return state.parse(Q01);
+  }
+
+  @GenerateMicroBenchmark
+  public SqlNode parse10(TpchPlanner state) throws SqlParseException {
+    return state.parse(Q10);
+  }
+
+  @GenerateMicroBenchmark
+  public SqlNode validate01(TpchPlanner state) throws Exception {
+    return state.validate(Q01);
+  }
+
+  @GenerateMicroBenchmark
+  public SqlNode validate10(TpchPlanner state) throws Exception {
+    return state.validate(Q10);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan01(TpchPlanner state) throws Exception {
+    return state.plan(Q01);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan03(TpchPlanner state) throws Exception {
+    return state.plan(Q03);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan05(TpchPlanner state) throws Exception {
+    return state.plan(Q05);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan06(TpchPlanner state) throws Exception {
+    return state.plan(Q06);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan08(BudgetedTpchPlanner state) throws Exception {
+    return state.plan(Q08);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan10(TpchPlanner state) throws Exception {
+    return state.plan(Q10);
+  }
+
+  @GenerateMicroBenchmark
+  public RelNode plan14(TpchPlanner state) throws Exception {
+    return state.plan(Q14);
+  }
+}
+
+// End PlannerBenchmark.java